@@ -24,7 +24,10 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -74,6 +77,41 @@ public class ForeignHost {
 
     public static final int POISON_PILL = -1;
     public static final int STOPNODE_NOTICE = -2;
+    // A frame carrying several messages, each framed as it would be on its own
+    public static final int COALESCED_MESSAGES = -3;
+    // Sent on a site's old connection when moving it to another, and acknowledged once delivered up to it
+    public static final int REBIND_BARRIER = -4;
+    public static final int REBIND_BARRIER_ACK = -5;
+
+    /*
+     * Coalescing packs the messages queued for a host by the time its network thread gets
+     * around to writing into one frame. It is opt-in because hosts without support for
+     * COALESCED_MESSAGES frames can't read them, so every host in the cluster needs it.
+     */
+    public static final String COALESCE_MESSAGES_PROPERTY = "COALESCE_FOREIGN_HOST_MESSAGES";
+    // Messages this large are sent in frames of their own
+    static final int COALESCE_MAX_MESSAGE_BYTES = Integer.getInteger("COALESCE_MAX_MESSAGE_BYTES", 4096);
+    // Frames are kept small enough to serialize straight into a network buffer
+    static final int COALESCE_MAX_FRAME_BYTES = Integer.getInteger("COALESCE_MAX_FRAME_BYTES", 16 * 1024);
+    private static final int COALESCED_HEADER_BYTES = 4 + 8 + 4 + 4;
+
+    private final boolean m_coalesce;
+    private final ConcurrentLinkedQueue<PendingMessage> m_pendingMessages = new ConcurrentLinkedQueue<PendingMessage>();
+    private final AtomicBoolean m_coalescedFrameQueued = new AtomicBoolean(false);
+
+    /*
+     * Frame and message counts for the messages sent to this host, and the time coalesced
+     * messages waited for their frame. Only updated by the network thread, except for the
+     * interval max which interval collection also resets.
+     */
+    private volatile long m_messagesSent = 0;
+    private volatile long m_framesSent = 0;
+    private volatile long m_coalesceDelayNanos = 0;
+    private volatile long m_maxCoalesceDelayNanos = 0;
+    private final AtomicLong m_intervalMaxCoalesceDelayNanos = new AtomicLong();
+    private long m_lastMessagesSent = 0;
+    private long m_lastFramesSent = 0;
+    private long m_lastCoalesceDelayNanos = 0;
 
     public static final int CRASH_ALL = 0;
     public static final int CRASH_ME = 1;
@@ -161,6 +199,7 @@ public class ForeignHost {
         m_deadHostTimeout = deadHostTimeout;
         m_listeningAddress = listeningAddress;
         m_network = network;
+        m_coalesce = Boolean.getBoolean(COALESCE_MESSAGES_PROPERTY);
 
         setLogRate(deadHostTimeout);
     }
@@ -231,7 +270,13 @@ public class ForeignHost {
         }
 
         // if this link is "gone silent" for partition tests, just drop the message on the floor
-        if (!m_linkCutForTest.get()) {
+        if (!m_linkCutForTest.get() && m_coalesce) {
+            m_pendingMessages.offer(new PendingMessage(destinations, message));
+            // One frame in the write queue at a time picks up everything queued behind it
+            if (m_coalescedFrameQueued.compareAndSet(false, true)) {
+                m_network.enqueue(new CoalescedFrame());
+            }
+        } else if (!m_linkCutForTest.get()) {
             m_network.enqueue(
                     new DeferredSerialization() {
                         @Override
@@ -244,6 +289,9 @@ public class ForeignHost {
                             }
                             message.flattenToBuffer(buf);
                             buf.flip();
+                            m_messagesSent++;
+                            m_framesSent++;
+                            recordSent(destinations, buf.limit());
                         }
 
                         @Override
@@ -301,6 +349,177 @@ public class ForeignHost {
         }
     }
 
+    /**
+     * Count the traffic sent to sites bound to a connection, which the bindings are balanced by.
+     * Called by the network thread.
+     */
+    private void recordSent(long destinations[], int bytes) {
+        final Map<Long, SiteConnectionBinding> bindings = m_hostMessenger.m_siteBindings;
+        if (bindings.isEmpty()) {
+            return;
+        }
+        for (int ii = 0; ii < destinations.length; ii++) {
+            final SiteConnectionBinding binding = bindings.get(destinations[ii]);
+            if (binding != null) {
+                binding.recordSent(bytes);
+            }
+        }
+    }
+
+    private static final class PendingMessage {
+        final long m_destinations[];
+        final VoltMessage m_message;
+        // A control frame, without the length prefix, queued in order with the messages
+        final ByteBuffer m_control;
+        final int m_size;
+        final long m_queuedNanos = System.nanoTime();
+
+        PendingMessage(long destinations[], VoltMessage message) {
+            m_destinations = destinations;
+            m_message = message;
+            m_control = null;
+            m_size = 8 + 4 + 8 * destinations.length + message.getSerializedSize();
+        }
+
+        PendingMessage(ByteBuffer control) {
+            m_destinations = null;
+            m_message = null;
+            m_control = control;
+            m_size = control.remaining();
+        }
+
+        /**
+         * Serialize as framed on its own, without the length prefix. Messages check that they
+         * fill the buffer exactly, so each gets a slice of its own.
+         */
+        void serialize(ByteBuffer buf) throws IOException {
+            if (m_control != null) {
+                buf.put(m_control);
+                return;
+            }
+            final int oldLimit = buf.limit();
+            buf.limit(buf.position() + m_size);
+            final ByteBuffer slice = buf.slice();
+            buf.position(buf.limit());
+            buf.limit(oldLimit);
+
+            slice.putLong(m_message.m_sourceHSId);
+            slice.putInt(m_destinations.length);
+            for (int ii = 0; ii < m_destinations.length; ii++) {
+                slice.putLong(m_destinations[ii]);
+            }
+            m_message.flattenToBuffer(slice);
+        }
+    }
+
+    /**
+     * The messages pending for this host when the network thread serializes its write queue.
+     * A single message goes out as a regular frame, several as one COALESCED_MESSAGES frame:
+     * the usual length prefix, a source of -1, the COALESCED_MESSAGES marker and the message
+     * count, followed by each message with its own length prefix.
+     */
+    private final class CoalescedFrame implements DeferredSerialization {
+        private final ArrayList<PendingMessage> m_messages = new ArrayList<PendingMessage>();
+        private int m_size;
+
+        @Override
+        public int getSerializedSize() {
+            // Messages queued from here on may need a frame of their own
+            m_coalescedFrameQueued.set(false);
+            PendingMessage pending;
+            int size = 0;
+            while ((pending = m_pendingMessages.peek()) != null) {
+                if (!m_messages.isEmpty() &&
+                        (pending.m_size > COALESCE_MAX_MESSAGE_BYTES ||
+                         size + 4 + pending.m_size > COALESCE_MAX_FRAME_BYTES - COALESCED_HEADER_BYTES)) {
+                    // Leave it for the next frame, keeping the messages in order
+                    if (m_coalescedFrameQueued.compareAndSet(false, true)) {
+                        m_network.enqueue(new CoalescedFrame());
+                    }
+                    break;
+                }
+                m_pendingMessages.poll();
+                m_messages.add(pending);
+                size += 4 + pending.m_size;
+                if (pending.m_size > COALESCE_MAX_MESSAGE_BYTES) {
+                    break;
+                }
+            }
+            if (m_messages.isEmpty()) {
+                // Picked up by a frame queued earlier
+                return EMPTY_MESSAGE_LENGTH;
+            }
+            m_size = m_messages.size() == 1 ? 4 + m_messages.get(0).m_size : COALESCED_HEADER_BYTES + size;
+            return m_size;
+        }
+
+        @Override
+        public void serialize(ByteBuffer buf) throws IOException {
+            buf.putInt(m_size - 4);
+            if (m_messages.size() > 1) {
+                buf.putLong(-1);
+                buf.putInt(COALESCED_MESSAGES);
+                buf.putInt(m_messages.size());
+            }
+            final long now = System.nanoTime();
+            long delay = 0;
+            for (PendingMessage pending : m_messages) {
+                if (m_messages.size() > 1) {
+                    buf.putInt(pending.m_size);
+                }
+                pending.serialize(buf);
+                delay += now - pending.m_queuedNanos;
+                if (pending.m_destinations != null) {
+                    recordSent(pending.m_destinations, 4 + pending.m_size);
+                }
+            }
+            buf.flip();
+            m_messagesSent += m_messages.size();
+            m_framesSent++;
+            m_coalesceDelayNanos += delay;
+            final long longestDelay = now - m_messages.get(0).m_queuedNanos;
+            m_maxCoalesceDelayNanos = Math.max(m_maxCoalesceDelayNanos, longestDelay);
+            m_intervalMaxCoalesceDelayNanos.accumulateAndGet(longestDelay, Math::max);
+        }
+
+        @Override
+        public void cancel() {}
+
+        @Override
+        public String toString() {
+            return "CoalescedFrame of " + m_messages.size() + " messages";
+        }
+    }
+
+    /**
+     * Messages and frames sent to this host and the total nanoseconds coalesced messages
+     * waited for their frame, and the longest any message waited, since the last interval
+     * collection if interval is true.
+     */
+    synchronized long[] getMessagingStats(boolean interval) {
+        final long messages = m_messagesSent;
+        final long frames = m_framesSent;
+        final long delay = m_coalesceDelayNanos;
+        if (!interval) {
+            return new long[] { messages, frames, delay, m_maxCoalesceDelayNanos };
+        }
+        final long stats[] = new long[] {
+                messages - m_lastMessagesSent, frames - m_lastFramesSent,
+                delay - m_lastCoalesceDelayNanos, m_intervalMaxCoalesceDelayNanos.getAndSet(0) };
+        m_lastMessagesSent = messages;
+        m_lastFramesSent = frames;
+        m_lastCoalesceDelayNanos = delay;
+        return stats;
+    }
+
+    boolean isCoalescing() {
+        return m_coalesce;
+    }
+
+    int hostId() {
+        return m_hostId;
+    }
+
     String hostnameAndIPAndPort() {
         return m_network.getHostnameAndIPAndPort();
     }
@@ -393,6 +612,27 @@ public class ForeignHost {
             hostLog.info("Receive StopNode notice for host " + targetHostId);
             m_hostMessenger.addStopNodeNotice(targetHostId);
             return;
+        } else if (destCount == REBIND_BARRIER) {
+            // Everything sent to the site ahead of the barrier has been delivered
+            sendRebindControl(REBIND_BARRIER_ACK, in.getLong(), in.getLong());
+            return;
+        } else if (destCount == REBIND_BARRIER_ACK) {
+            final long hsId = in.getLong();
+            m_hostMessenger.completeSiteRebind(hsId, in.getLong());
+            return;
+        } else if (destCount == COALESCED_MESSAGES) {
+            final int messageCount = in.getInt();
+            for (int i = 0; i < messageCount; i++) {
+                final int length = in.getInt();
+                // Messages check that they consume the buffer exactly, so each gets a slice of its own
+                final int oldLimit = in.limit();
+                in.limit(in.position() + length);
+                final ByteBuffer message = in.slice();
+                in.position(in.limit());
+                in.limit(oldLimit);
+                handleRead(message, c);
+            }
+            return;
         }
 
         recvDests = new long[destCount];
@@ -462,6 +702,38 @@ public class ForeignHost {
         return m_network.enqueueAndDrain(message);
     }
 
+    /**
+     * Send a barrier behind the messages already queued for a site that is moving to another
+     * connection. The remote host acknowledges it once it has delivered them.
+     */
+    void sendRebindBarrier(long hsId, long token) {
+        sendRebindControl(REBIND_BARRIER, hsId, token);
+    }
+
+    private void sendRebindControl(int type, long hsId, long token) {
+        // if this link is "gone silent" for partition tests, just drop the message on the floor
+        if (m_linkCutForTest.get()) {
+            return;
+        }
+        ByteBuffer message = ByteBuffer.allocate(32);
+        message.putInt(message.capacity() - 4);
+        message.putLong(-1);
+        message.putInt(type);
+        message.putLong(hsId);
+        message.putLong(token);
+        message.flip();
+        if (m_coalesce) {
+            // Queued messages are still waiting for a frame, stay behind them
+            message.position(4);
+            m_pendingMessages.offer(new PendingMessage(message.slice()));
+            if (m_coalescedFrameQueued.compareAndSet(false, true)) {
+                m_network.enqueue(new CoalescedFrame());
+            }
+        } else {
+            m_network.enqueue(message);
+        }
+    }
+
     public void updateDeadHostTimeout(int timeout) {
         m_deadHostTimeout = timeout;
         setLogRate(timeout);
@@ -45,9 +45,11 @@ import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
@@ -341,10 +343,10 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
     Map<Integer, ArrayList<ForeignHost>> m_picoZombieForeignHosts = new HashMap<> ();
 
     /*
-     * Reference to the target HSId to FH mapping
+     * The connection each site on another host is sent to over, for hosts with secondary connections
      * Updates via COW
      */
-    volatile ImmutableMap<Long, ForeignHost> m_fhMapping = ImmutableMap.of();
+    volatile ImmutableMap<Long, SiteConnectionBinding> m_siteBindings = ImmutableMap.of();
 
     /*
      * References to all the local mailboxes
@@ -364,7 +366,8 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
     /* Peers within the same partition group */
     private Set<Integer> m_peers;
     private final AtomicInteger m_nextSiteId = new AtomicInteger(0);
-    private final AtomicInteger m_nextForeignHost = new AtomicInteger();
+    private final AtomicLong m_nextRebindToken = new AtomicLong();
+    private ScheduledExecutorService m_siteRebalancer;
     private final AtomicBoolean m_paused = new AtomicBoolean(false);
 
     /*
@@ -373,7 +376,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
     private final JoinAcceptor m_acceptor;
     private final SSLContext m_sslContext;
 
-    private static final String SECONDARY_PICONETWORK_THREADS = "secondaryPicoNetworkThreads";
+    static final String SECONDARY_PICONETWORK_THREADS = "secondaryPicoNetworkThreads";
 
     public Mailbox getMailbox(long hsId) {
         return m_siteMailboxes.get(hsId);
@@ -384,6 +387,8 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         m_hostWatcher = hostWatcher;
         m_sslContext = sslContext;
         m_network = new VoltNetworkPool(m_config.networkThreads, 0, m_config.coreBindIds, "Server");
+        // Port rebalancing is opt in
+        m_network.enableRebalancing(Long.getLong("NETWORK_REBALANCE_INTERVAL_MS", 0));
         m_acceptor = config.acceptor;
         //This ref is updated after the mesh decision is made.
         m_paused.set(m_config.startPause);
@@ -833,8 +838,8 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                 }
             };
 
-            m_fhMapping = ImmutableMap.<Long, ForeignHost>builder()
-                    .putAll(Maps.filterKeys(m_fhMapping, hostIdNotEqual))
+            m_siteBindings = ImmutableMap.<Long, SiteConnectionBinding>builder()
+                    .putAll(Maps.filterKeys(m_siteBindings, hostIdNotEqual))
                     .build();
         }
         assert(Thread.holdsLock(this)); // Make sure m_zombieForeignHosts is protected
@@ -1165,9 +1170,10 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                 return;
             }
         }
-        // Now it's time to use secondary pico network, see comments in presend() to know why we can't
+        // Now it's time to use secondary pico network, see comments in siteBinding() to know why we can't
         // do this earlier.
         m_hasAllSecondaryConnectionCreated = true;
+        startSiteRebalancer();
 }
 
 
@@ -1359,35 +1365,8 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
             }
             return null;
         }
-        ForeignHost fhost = null;
-        if (fhosts.size() == 1 || CoreUtils.getSiteIdFromHSId(hsId) < 0 ) {
-            // Always use primary connection to send to well-known mailboxes
-            fhost = getPrimary(fhosts, hostId);
-        } else {
-            /**
-             * Because the secondary connections are created late in the initialization, after cluster mesh network has
-             * established, but before the whole cluster has been initialized. It's possible that some non-transactional
-             * iv2 messages to be sent through foreign host when there is only one primary connection, So in
-             * case of binding all sites to the primary connection, this check has been added to prevent it.
-             */
-            if (m_hasAllSecondaryConnectionCreated) {
-                // assign a foreign host for regular mailbox
-                fhost = m_fhMapping.get(hsId);
-                if (fhost == null) {
-                    int index = Math.abs(m_nextForeignHost.getAndIncrement() % fhosts.size());
-                    fhost = (ForeignHost) fhosts.toArray()[index];
-                    if (hostLog.isDebugEnabled()) {
-                        hostLog.debug("bind " + CoreUtils.getHostIdFromHSId(hsId) + ":" + CoreUtils.getSiteIdFromHSId(hsId) +
-                                " to " + fhost.hostnameAndIPAndPort());
-                    }
-                    bindForeignHost(hsId, fhost);
-                }
-            } else {
-                // otherwise use primary for a short while
-                // REPAIR_LOG_REQUEST, REPAIR_LOG_RESPONSE,DummyTaskMessage, DUMMY_TRANSACTION_RESPONSE will be sent on primary
-                fhost = getPrimary(fhosts, hostId);
-            }
-        }
+        // Sites bound to secondary connections are sent to by siteBinding(), everything else uses the primary
+        ForeignHost fhost = getPrimary(fhosts, hostId);
         if (!fhost.isUp()) {
             if (!m_shuttingDown) {
                 networkLog.info("Attempted delivery of message to failed site: " + CoreUtils.hsIdToString(hsId));
@@ -1415,15 +1394,224 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         }
     }
 
-    private void bindForeignHost(Long hsId, ForeignHost fh) {
+    /**
+     * The connection binding for a site on a host with secondary connections, or null if messages
+     * to the hsId go over the primary connection or are delivered locally.
+     */
+    private SiteConnectionBinding siteBinding(long hsId) {
+        /**
+         * Because the secondary connections are created late in the initialization, after cluster mesh network has
+         * established, but before the whole cluster has been initialized. It's possible that some non-transactional
+         * iv2 messages to be sent through foreign host when there is only one primary connection, So in
+         * case of binding all sites to the primary connection, this check has been added to prevent it.
+         * REPAIR_LOG_REQUEST, REPAIR_LOG_RESPONSE, DummyTaskMessage, DUMMY_TRANSACTION_RESPONSE will be sent on primary.
+         */
+        if (!m_hasAllSecondaryConnectionCreated) {
+            return null;
+        }
+        SiteConnectionBinding binding = m_siteBindings.get(hsId);
+        if (binding != null) {
+            return binding;
+        }
+        // Always use primary connection to send to well-known mailboxes
+        if ((int)hsId == m_localHostId || CoreUtils.getSiteIdFromHSId(hsId) < 0) {
+            return null;
+        }
+        ImmutableCollection<ForeignHost> fhosts = m_foreignHosts.get((int)hsId);
+        if (fhosts.size() < 2) {
+            return null;
+        }
+        return bindForeignHost(hsId, fhosts);
+    }
+
+    /**
+     * The binding for a site on a host {@link #presend} found up, or null if the site isn't bound
+     * or its connection has failed, in which case messages go over the primary connection.
+     */
+    private SiteConnectionBinding liveSiteBinding(long hsId) {
+        final SiteConnectionBinding binding = siteBinding(hsId);
+        if (binding == null || !binding.foreignHost().isUp()) {
+            return null;
+        }
+        return binding;
+    }
+
+    /**
+     * Bind a site to the connection carrying the least traffic to its host, going by the load
+     * the rebalancer last measured, and then to the one with the fewest sites.
+     */
+    private SiteConnectionBinding bindForeignHost(long hsId, ImmutableCollection<ForeignHost> fhosts) {
         synchronized (m_mapLock) {
-            if (m_fhMapping.containsKey(hsId)) {
-                return;
+            SiteConnectionBinding binding = m_siteBindings.get(hsId);
+            if (binding != null) {
+                return binding;
+            }
+            final Map<ForeignHost, long[]> loads = new HashMap<ForeignHost, long[]>();
+            for (ForeignHost fh : fhosts) {
+                if (fh.isUp()) {
+                    loads.put(fh, new long[2]);
+                }
+            }
+            for (SiteConnectionBinding b : m_siteBindings.values()) {
+                final long load[] = loads.get(b.foreignHost());
+                if (load != null) {
+                    load[0] += b.load();
+                    load[1]++;
+                }
+            }
+            ForeignHost fhost = null;
+            long least[] = null;
+            for (Entry<ForeignHost, long[]> e : loads.entrySet()) {
+                final long load[] = e.getValue();
+                if (least == null || load[0] < least[0] || (load[0] == least[0] && load[1] < least[1])) {
+                    fhost = e.getKey();
+                    least = load;
+                }
+            }
+            if (fhost == null) {
+                fhost = getPrimary(fhosts, (int)hsId);
+            }
+            if (hostLog.isDebugEnabled()) {
+                hostLog.debug("bind " + CoreUtils.getHostIdFromHSId(hsId) + ":" + CoreUtils.getSiteIdFromHSId(hsId) +
+                        " to " + fhost.hostnameAndIPAndPort());
+            }
+            binding = new SiteConnectionBinding(hsId, fhost);
+            ImmutableMap.Builder<Long, SiteConnectionBinding> b = ImmutableMap.builder();
+            m_siteBindings = b.putAll(m_siteBindings)
+                              .put(hsId, binding)
+                              .build();
+            return binding;
+        }
+    }
+
+    /*
+     * Sites bound to secondary connections are periodically moved from the connection to a host
+     * carrying the most traffic to the one carrying the least. Moving a site requires the remote
+     * host to acknowledge a REBIND_BARRIER, so like coalescing it is opt-in until every host in
+     * the cluster supports it.
+     */
+    public static final String SITE_REBALANCE_INTERVAL_PROPERTY = "SITE_CONNECTION_REBALANCE_INTERVAL_MS";
+    // Connections carrying less than this many bytes per second, counting each message as extra bytes, stay put
+    static final long SITE_REBALANCE_MIN_LOAD_PER_SECOND = 4 * 1024 * 1024;
+    // Rebalance when the busiest connection to a host carries this many times the load of the quietest
+    static final double SITE_REBALANCE_IMBALANCE_FACTOR = 1.5;
+    // Moves the remote host hasn't acknowledged in this long are abandoned
+    static final long SITE_REBIND_TIMEOUT_MS = 10 * 1000;
+
+    private synchronized void startSiteRebalancer() {
+        final long intervalMs = Long.getLong(SITE_REBALANCE_INTERVAL_PROPERTY, 0);
+        if (intervalMs <= 0 || m_siteRebalancer != null || m_secondaryConnections == 0) {
+            return;
+        }
+        m_siteRebalancer = CoreUtils.getScheduledThreadPoolExecutor("Site Connection Rebalancer", 1, CoreUtils.SMALL_STACK_SIZE);
+        m_siteRebalancer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    rebalanceSiteBindings(SITE_REBALANCE_MIN_LOAD_PER_SECOND * intervalMs / 1000);
+                } catch (Exception e) {
+                    hostLog.warn("Failed to rebalance sites across connections", e);
+                }
             }
-            ImmutableMap.Builder<Long, ForeignHost> b = ImmutableMap.builder();
-            m_fhMapping = b.putAll(m_fhMapping)
-                           .put(hsId, fh)
-                           .build();
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Measure the traffic sent to each bound site since the previous round and, for each host,
+     * move one site from the busiest connection to the quietest when they are out of balance.
+     * The site moved is the busiest one that doesn't simply make the quietest connection the
+     * busiest. Hosts with a move still in progress are left alone.
+     */
+    void rebalanceSiteBindings(long minLoad) {
+        final Map<Integer, List<SiteConnectionBinding>> hostBindings = new HashMap<Integer, List<SiteConnectionBinding>>();
+        for (SiteConnectionBinding binding : m_siteBindings.values()) {
+            binding.sampleLoad(VoltNetworkPool.MESSAGE_LOAD_BYTES);
+            final int hostId = CoreUtils.getHostIdFromHSId(binding.m_hsId);
+            List<SiteConnectionBinding> bindings = hostBindings.get(hostId);
+            if (bindings == null) {
+                bindings = new ArrayList<SiteConnectionBinding>();
+                hostBindings.put(hostId, bindings);
+            }
+            bindings.add(binding);
+        }
+
+        final long now = System.currentTimeMillis();
+        for (Entry<Integer, List<SiteConnectionBinding>> e : hostBindings.entrySet()) {
+            boolean rebinding = false;
+            for (SiteConnectionBinding binding : e.getValue()) {
+                if (binding.isRebinding()) {
+                    rebinding = true;
+                    if (binding.rebindAgeMillis(now) > SITE_REBIND_TIMEOUT_MS) {
+                        hostLog.warn("Host " + e.getKey() + " did not acknowledge moving site " + binding +
+                                ", leaving it on its connection");
+                        binding.abortRebind();
+                    }
+                }
+            }
+            if (rebinding) {
+                continue;
+            }
+
+            final Map<ForeignHost, Long> loads = new HashMap<ForeignHost, Long>();
+            for (ForeignHost fh : m_foreignHosts.get(e.getKey())) {
+                if (fh.isUp()) {
+                    loads.put(fh, 0L);
+                }
+            }
+            for (SiteConnectionBinding binding : e.getValue()) {
+                final Long load = loads.get(binding.foreignHost());
+                if (load != null) {
+                    loads.put(binding.foreignHost(), load + binding.load());
+                }
+            }
+            if (loads.size() < 2) {
+                continue;
+            }
+            Entry<ForeignHost, Long> hottest = null;
+            Entry<ForeignHost, Long> coolest = null;
+            for (Entry<ForeignHost, Long> load : loads.entrySet()) {
+                if (hottest == null || load.getValue() > hottest.getValue()) {
+                    hottest = load;
+                }
+                if (coolest == null || load.getValue() < coolest.getValue()) {
+                    coolest = load;
+                }
+            }
+            if (hottest.getValue() < minLoad ||
+                    hottest.getValue() <= coolest.getValue() * SITE_REBALANCE_IMBALANCE_FACTOR) {
+                continue;
+            }
+            final long toMove = (hottest.getValue() - coolest.getValue()) / 2;
+            SiteConnectionBinding candidate = null;
+            for (SiteConnectionBinding binding : e.getValue()) {
+                if (binding.foreignHost() == hottest.getKey() && binding.load() > 0 && binding.load() <= toMove &&
+                        (candidate == null || binding.load() > candidate.load())) {
+                    candidate = binding;
+                }
+            }
+            if (candidate != null) {
+                rebindSite(candidate, coolest.getKey());
+            }
+        }
+    }
+
+    /**
+     * Start moving a site to another connection to its host. Messages keep arriving in the order
+     * they were sent while it moves. Returns false if the site is already moving.
+     */
+    boolean rebindSite(SiteConnectionBinding binding, ForeignHost target) {
+        if (hostLog.isDebugEnabled()) {
+            hostLog.debug("rebind " + binding + " to " + target.hostnameAndIPAndPort() +
+                    ", load " + binding.load());
+        }
+        return binding.beginRebind(target, m_nextRebindToken.incrementAndGet());
+    }
+
+    /** The remote host delivered everything sent to a moving site ahead of its barrier */
+    void completeSiteRebind(long hsId, long token) {
+        final SiteConnectionBinding binding = m_siteBindings.get(hsId);
+        if (binding != null) {
+            binding.completeRebind(token);
         }
     }
 
@@ -1565,10 +1753,17 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
     {
         assert(message != null);
 
+        // Local delivery, or a host that is gone, doesn't go near a binding
         ForeignHost host = presend(destinationHSId, message);
-        if (host != null) {
-            host.send(new long [] { destinationHSId }, message);
+        if (host == null) {
+            return;
         }
+        final SiteConnectionBinding binding = liveSiteBinding(destinationHSId);
+        if (binding != null) {
+            binding.send(message);
+            return;
+        }
+        host.send(new long [] { destinationHSId }, message);
     }
 
     public void send(long[] destinationHSIds, final VoltMessage message)
@@ -1577,21 +1772,40 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         assert(destinationHSIds != null);
         final HashMap<ForeignHost, ArrayList<Long>> foreignHosts =
             new HashMap<ForeignHost, ArrayList<Long>>(32);
-        for (long hsId : destinationHSIds) {
-            ForeignHost host = presend(hsId, message);
-            if (host == null) continue;
-            ArrayList<Long> bundle = foreignHosts.get(host);
-            if (bundle == null) {
-                bundle = new ArrayList<Long>();
-                foreignHosts.put(host, bundle);
+        // Bound sites stay on their connections until the message is queued
+        ArrayList<SiteConnectionBinding> entered = null;
+        try {
+            for (long hsId : destinationHSIds) {
+                ForeignHost host = presend(hsId, message);
+                if (host == null) continue;
+                final SiteConnectionBinding binding = liveSiteBinding(hsId);
+                if (binding != null) {
+                    host = binding.enterOrHold(message);
+                    if (host == null) continue;
+                    if (entered == null) {
+                        entered = new ArrayList<SiteConnectionBinding>();
+                    }
+                    entered.add(binding);
+                }
+                ArrayList<Long> bundle = foreignHosts.get(host);
+                if (bundle == null) {
+                    bundle = new ArrayList<Long>();
+                    foreignHosts.put(host, bundle);
+                }
+                bundle.add(hsId);
             }
-            bundle.add(hsId);
-        }
 
-        if (foreignHosts.size() == 0) return;
+            if (foreignHosts.size() == 0) return;
 
-        for (Entry<ForeignHost, ArrayList<Long>> e : foreignHosts.entrySet()) {
-            e.getKey().send(Longs.toArray(e.getValue()), message);
+            for (Entry<ForeignHost, ArrayList<Long>> e : foreignHosts.entrySet()) {
+                e.getKey().send(Longs.toArray(e.getValue()), message);
+            }
+        } finally {
+            if (entered != null) {
+                for (SiteConnectionBinding binding : entered) {
+                    binding.exit();
+                }
+            }
         }
     }
 
@@ -1653,6 +1867,11 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
             }
         }
         m_joiner.shutdown();
+        synchronized (this) {
+            if (m_siteRebalancer != null) {
+                m_siteRebalancer.shutdownNow();
+            }
+        }
         m_network.shutdown();
         VERBOTEN_THREADS.clear();
     }
@@ -1805,6 +2024,23 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         return m_network.getIOStats(interval, picoNetworks);
     }
 
+    /**
+     * Messaging counters for each connection to another host, keyed by connection id: the
+     * remote host id, then the message, frame and coalescing delay counters of
+     * {@link ForeignHost#getMessagingStats(boolean)}.
+     */
+    public Map<Long, Pair<String, long[]>> getForeignHostMessagingStats(final boolean interval) {
+        final Map<Long, Pair<String, long[]>> retval = new HashMap<Long, Pair<String, long[]>>();
+        for (ForeignHost fh : m_foreignHosts.values()) {
+            final long counters[] = fh.getMessagingStats(interval);
+            final long stats[] = new long[counters.length + 1];
+            stats[0] = fh.hostId();
+            System.arraycopy(counters, 0, stats, 1, counters.length);
+            retval.put(fh.m_handler.connectionId(), Pair.of(fh.hostname(), stats));
+        }
+        return retval;
+    }
+
     /**
      * Cut the network connection between two hostids immediately
      * Useful for simulating network partitions
@@ -1924,9 +2160,10 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                 return;
             }
         }
-        // Now it's time to use secondary pico network, see comments in presend() to know why we can't
+        // Now it's time to use secondary pico network, see comments in siteBinding() to know why we can't
         // do this earlier.
         m_hasAllSecondaryConnectionCreated = true;
+        startSiteRebalancer();
     }
 
     public synchronized void addStopNodeNotice(int targetHostId) {
@@ -0,0 +1,240 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltcore.messaging;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.voltcore.utils.CoreUtils;
+
+/**
+ * The connection messages to a site on another host are sent on, and the traffic sent to it.
+ *
+ * Messages to a site must arrive in the order they were sent, so moving the site to another
+ * connection to the same host goes through a barrier. Senders register while they hand a
+ * message to the connection. A rebind stops new senders, holding their messages here, waits
+ * for the registered ones to finish, and sends a REBIND_BARRIER on the old connection. The
+ * remote host answers once it has delivered everything ahead of the barrier, and only then do
+ * the held messages, and everything after them, go out on the new connection.
+ */
+final class SiteConnectionBinding {
+    final long m_hsId;
+    private volatile ForeignHost m_fh;
+
+    // Senders handing a message to m_fh right now
+    private final AtomicInteger m_senders = new AtomicInteger();
+    private volatile boolean m_rebinding = false;
+
+    // Rebind in progress, guarded by this
+    private ForeignHost m_target;
+    private long m_token;
+    private long m_rebindStartMillis;
+    private boolean m_finishing = false;
+    private final ArrayDeque<VoltMessage> m_held = new ArrayDeque<VoltMessage>();
+
+    /*
+     * Messages and bytes sent to the site, counted by the network threads serializing them,
+     * and the load measured by the last sample, which is only taken by the rebalancer.
+     */
+    private final AtomicLong m_messagesSent = new AtomicLong();
+    private final AtomicLong m_bytesSent = new AtomicLong();
+    private long m_sampledMessages = 0;
+    private long m_sampledBytes = 0;
+    private volatile long m_load = 0;
+
+    SiteConnectionBinding(long hsId, ForeignHost fh) {
+        m_hsId = hsId;
+        m_fh = fh;
+    }
+
+    ForeignHost foreignHost() {
+        return m_fh;
+    }
+
+    /**
+     * Register as a sender, returning the connection to send on, or null if the site is being
+     * rebound. A non-null return must be followed by {@link #exit()} once the message is queued.
+     */
+    ForeignHost enter() {
+        m_senders.incrementAndGet();
+        if (m_rebinding) {
+            m_senders.decrementAndGet();
+            return null;
+        }
+        return m_fh;
+    }
+
+    void exit() {
+        m_senders.decrementAndGet();
+    }
+
+    /**
+     * Hold a message until the rebind in progress completes. Returns false if it already has,
+     * in which case the sender should enter again.
+     */
+    synchronized boolean hold(VoltMessage message) {
+        if (!m_rebinding) {
+            return false;
+        }
+        m_held.add(message);
+        return true;
+    }
+
+    /**
+     * Register as a sender of message, returning the connection to send it on, or hold it for
+     * the new connection and return null if the site is being rebound.
+     */
+    ForeignHost enterOrHold(VoltMessage message) {
+        while (true) {
+            final ForeignHost fh = enter();
+            if (fh != null || hold(message)) {
+                return fh;
+            }
+        }
+    }
+
+    /** Send a message to the site, holding it if the site is being rebound */
+    void send(VoltMessage message) {
+        final ForeignHost fh = enterOrHold(message);
+        if (fh != null) {
+            try {
+                fh.send(new long[] { m_hsId }, message);
+            } finally {
+                exit();
+            }
+        }
+    }
+
+    /**
+     * Start moving the site to target. Once the senders registered before the move have queued
+     * their messages, the barrier goes out on the current connection. Returns false if a rebind
+     * is already in progress.
+     */
+    boolean beginRebind(ForeignHost target, long token) {
+        synchronized (this) {
+            if (m_rebinding || target == m_fh) {
+                return false;
+            }
+            m_target = target;
+            m_token = token;
+            m_rebindStartMillis = System.currentTimeMillis();
+            m_rebinding = true;
+        }
+        // Senders only stay registered while queueing a message
+        while (m_senders.get() != 0) {
+            Thread.yield();
+        }
+        m_fh.sendRebindBarrier(m_hsId, token);
+        return true;
+    }
+
+    /**
+     * The remote host has delivered everything sent ahead of the barrier. Switch to the new
+     * connection, sending the held messages ahead of anything else.
+     */
+    void completeRebind(long token) {
+        synchronized (this) {
+            if (!m_rebinding || m_finishing || token != m_token) {
+                // Abandoned, or an acknowledgement for an earlier rebind
+                return;
+            }
+            m_fh = m_target;
+            m_finishing = true;
+        }
+        finishRebind();
+    }
+
+    /**
+     * Give up on a rebind the remote host hasn't acknowledged, staying on the current
+     * connection. That keeps the messages in order whether or not the barrier arrives.
+     */
+    void abortRebind() {
+        synchronized (this) {
+            if (!m_rebinding || m_finishing) {
+                return;
+            }
+            m_finishing = true;
+        }
+        finishRebind();
+    }
+
+    /*
+     * Send the held messages, and any held while sending them, before letting senders through.
+     * Sending can report a failed host, so it isn't done while holding the lock senders hold
+     * messages under.
+     */
+    private void finishRebind() {
+        final ArrayList<VoltMessage> held = new ArrayList<VoltMessage>();
+        while (true) {
+            synchronized (this) {
+                if (m_held.isEmpty()) {
+                    m_target = null;
+                    m_finishing = false;
+                    m_rebinding = false;
+                    return;
+                }
+                held.addAll(m_held);
+                m_held.clear();
+            }
+            for (VoltMessage message : held) {
+                m_fh.send(new long[] { m_hsId }, message);
+            }
+            held.clear();
+        }
+    }
+
+    /** Milliseconds since the rebind in progress started */
+    synchronized long rebindAgeMillis(long nowMillis) {
+        return m_rebinding ? nowMillis - m_rebindStartMillis : 0;
+    }
+
+    boolean isRebinding() {
+        return m_rebinding;
+    }
+
+    /** Count a message serialized for the site. Called by the network threads. */
+    void recordSent(int bytes) {
+        m_messagesSent.incrementAndGet();
+        m_bytesSent.addAndGet(bytes);
+    }
+
+    /**
+     * Measure the load of the traffic sent to the site since the previous sample, with each
+     * message weighed as messageCost bytes on top of its size.
+     */
+    long sampleLoad(long messageCost) {
+        final long messages = m_messagesSent.get();
+        final long bytes = m_bytesSent.get();
+        m_load = (messages - m_sampledMessages) * messageCost + (bytes - m_sampledBytes);
+        m_sampledMessages = messages;
+        m_sampledBytes = bytes;
+        return m_load;
+    }
+
+    /** The load measured by the last sample */
+    long load() {
+        return m_load;
+    }
+
+    @Override
+    public String toString() {
+        return CoreUtils.hsIdToString(m_hsId) + " on " + m_fh.hostnameAndIPAndPort();
+    }
+}
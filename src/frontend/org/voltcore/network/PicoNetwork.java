@@ -117,6 +117,15 @@ public class PicoNetwork implements Runnable, Connection, IOStatsIntf
     private String m_threadName;
     private Set<Long> m_verbotenThreads;
 
+    /*
+     * Time spent on tasks and IO rather than blocked in select, and the mark the
+     * stats interval measures it from. Only touched by the network thread.
+     */
+    private long m_busyNanos = 0;
+    private final long m_startNanos = System.nanoTime();
+    private long m_statsBusyNanos = 0;
+    private long m_statsNanos = m_startNanos;
+
     /**
      * Start this VoltNetwork's thread. populate the verbotenThreads set
      * with the id of the thread that is created
@@ -198,6 +207,7 @@ public class PicoNetwork implements Runnable, Connection, IOStatsIntf
                 } else {
                     m_selector.select();
                 }
+                final long busyStart = System.nanoTime();
 
                 m_hadWork = false;
                 Runnable task = null;
@@ -207,6 +217,10 @@ public class PicoNetwork implements Runnable, Connection, IOStatsIntf
                 }
                 dispatchReadStream();
                 drainWriteStream();
+                // A spin that found nothing to do isn't counted as busy
+                if (m_hadWork) {
+                    m_busyNanos += System.nanoTime() - busyStart;
+                }
             }
         } catch (CancelledKeyException e) {
             networkLog.warn(
@@ -391,6 +405,16 @@ public class PicoNetwork implements Runnable, Connection, IOStatsIntf
             final long read = m_readStream.getBytesRead(interval);
             final long writeInfo[] = m_writeStream.getBytesAndMessagesWritten(interval);
             final long messagesRead = m_messagesRead;
+            final long now = System.nanoTime();
+            final long utilization;
+            if (interval) {
+                utilization = VoltNetwork.utilizationPercent(m_busyNanos - m_statsBusyNanos, now - m_statsNanos);
+                m_statsBusyNanos = m_busyNanos;
+                m_statsNanos = now;
+            } else {
+                utilization = VoltNetwork.utilizationPercent(m_busyNanos, now - m_startNanos);
+            }
+            // Pico network threads serve a single connection and have no network id
             retval.put(
                     m_ih.connectionId(),
                     Pair.of(
@@ -399,7 +423,9 @@ public class PicoNetwork implements Runnable, Connection, IOStatsIntf
                                     read,
                                     messagesRead,
                                     writeInfo[0],
-                                    writeInfo[1]}));
+                                    writeInfo[1],
+                                    -1,
+                                    utilization}));
             retval.put(
                     -1L,
                     Pair.of(
@@ -408,7 +434,9 @@ public class PicoNetwork implements Runnable, Connection, IOStatsIntf
                                     read,
                                     messagesRead,
                                     writeInfo[0],
-                                    writeInfo[1] }));
+                                    writeInfo[1],
+                                    -1,
+                                    utilization }));
             return retval;
     }
 
@@ -203,6 +203,10 @@ public class VoltNIOWriteStream extends NIOWriteStreamBase implements WriteStrea
             @Override
             public void run() {
                 synchronized (VoltNIOWriteStream.this) {
+                    if (m_isShutdown) {
+                        ds.cancel();
+                        return;
+                    }
                     updateLastPendingWriteTimeAndQueueBackpressure();
                     m_queuedWrites.offer(ds);
                     m_connection.enableWriteSelection();
@@ -107,6 +107,19 @@ class VoltNetwork implements Runnable, IOStatsIntf
     final NetworkDBBPool m_pool = new NetworkDBBPool();
     private final String m_coreBindId;
     final String networkThreadName;
+    final int m_networkId;
+
+    /*
+     * Time spent handling selected keys and tasks rather than blocked in select, and the
+     * marks the stats interval and the pool's load samples measure it from. Only touched
+     * by the network thread.
+     */
+    private long m_busyNanos = 0;
+    private final long m_startNanos = System.nanoTime();
+    private long m_statsBusyNanos = 0;
+    private long m_statsNanos = m_startNanos;
+    private long m_sampleBusyNanos = 0;
+    private long m_sampleNanos = m_startNanos;
 
     private final NinjaKeySet m_ninjaSelectedKeys;
 
@@ -125,6 +138,7 @@ class VoltNetwork implements Runnable, IOStatsIntf
     VoltNetwork(int networkId, String coreBindId, String networkName) {
         m_thread = new Thread(this, "Volt " + networkName + " Network - " + networkId);
         networkThreadName = new String("Volt " + networkName + " Network - " + networkId);
+        m_networkId = networkId;
         m_thread.setDaemon(true);
         m_coreBindId = coreBindId;
         try {
@@ -141,6 +155,7 @@ class VoltNetwork implements Runnable, IOStatsIntf
         m_selector = s;
         m_coreBindId = null;
         networkThreadName = new String("Test Selector Thread");
+        m_networkId = 0;
         m_ninjaSelectedKeys = NinjaKeySet.instrumentSelector(m_selector);
     }
 
@@ -314,6 +329,7 @@ class VoltNetwork implements Runnable, IOStatsIntf
                         LatencyWatchdog.pet();
 
                         final int readyKeys = m_selector.select();
+                        final long busyStart = System.nanoTime();
 
                         /*
                          * Run the task queue immediately after selection to catch
@@ -340,6 +356,7 @@ class VoltNetwork implements Runnable, IOStatsIntf
                         while ((task = m_tasks.poll()) != null) {
                             task.run();
                         }
+                        m_busyNanos += System.nanoTime() - busyStart;
                     }
                 } catch (Throwable ex) {
                     ex.printStackTrace();
@@ -382,6 +399,11 @@ class VoltNetwork implements Runnable, IOStatsIntf
     }
 
     void installInterests(VoltPort port) {
+        if (port.m_network != this) {
+            // Queued before the port moved to another network, which now owns its interests
+            port.m_network.addToChangeList(port);
+            return;
+        }
         try {
             if (port.isRunning()) {
                 assert(false) : "Shouldn't be running since it is all single threaded now?";
@@ -415,6 +437,10 @@ class VoltNetwork implements Runnable, IOStatsIntf
     }
 
     private void callPort(final VoltPort port) {
+        if (port.m_network != this) {
+            port.m_network.addToChangeList(port, true);
+            return;
+        }
         try {
             port.lockForHandlingWork();
             port.getKey().interestOps(0);
@@ -453,23 +479,24 @@ class VoltNetwork implements Runnable, IOStatsIntf
         }
         while(itInx < keyCount) {
             final Object obj = it.next().attachment();
+            itInx++;
             if (obj == null) {
+                // Detached from a port that moved to another network
                 continue;
             }
             final VoltPort port = (VoltPort)obj;
             callPort(port);
-            itInx++;
         }
         itInx = 0;
         it = selectedKeys.iterator();
         while(itInx < startInx) {
             final Object obj = it.next().attachment();
+            itInx++;
             if (obj == null) {
                 continue;
             }
             final VoltPort port = (VoltPort)obj;
             callPort(port);
-            itInx++;
         }
         selectedKeys.clear();
     }
@@ -505,6 +532,15 @@ class VoltNetwork implements Runnable, IOStatsIntf
         long totalMessagesRead = 0;
         long totalWritten = 0;
         long totalMessagesWritten = 0;
+        final long now = System.nanoTime();
+        final long utilization;
+        if (interval) {
+            utilization = utilizationPercent(m_busyNanos - m_statsBusyNanos, now - m_statsNanos);
+            m_statsBusyNanos = m_busyNanos;
+            m_statsNanos = now;
+        } else {
+            utilization = utilizationPercent(m_busyNanos, now - m_startNanos);
+        }
         for (VoltPort p : m_ports) {
             final long read = p.readStream().getBytesRead(interval);
             final long writeInfo[] = p.writeStream().getBytesAndMessagesWritten(interval);
@@ -521,7 +557,9 @@ class VoltNetwork implements Runnable, IOStatsIntf
                                     read,
                                     messagesRead,
                                     writeInfo[0],
-                                    writeInfo[1] }));
+                                    writeInfo[1],
+                                    m_networkId,
+                                    utilization }));
         }
         retval.put(
                 -1L,
@@ -531,10 +569,100 @@ class VoltNetwork implements Runnable, IOStatsIntf
                                 totalRead,
                                 totalMessagesRead,
                                 totalWritten,
-                                totalMessagesWritten }));
+                                totalMessagesWritten,
+                                m_networkId,
+                                utilization }));
         return retval;
     }
 
+    static long utilizationPercent(long busyNanos, long elapsedNanos) {
+        return elapsedNanos > 0 ? Math.min(100, busyNanos * 100 / elapsedNanos) : 0;
+    }
+
+    /** Load of this network and of each of its ports since the previous sample */
+    static class LoadSample {
+        final VoltNetwork m_network;
+        final long m_busyNanos;
+        final long m_elapsedNanos;
+        final Map<VoltPort, Long> m_portLoads;
+        final long m_totalLoad;
+
+        LoadSample(VoltNetwork network, long busyNanos, long elapsedNanos, Map<VoltPort, Long> portLoads) {
+            m_network = network;
+            m_busyNanos = busyNanos;
+            m_elapsedNanos = elapsedNanos;
+            m_portLoads = portLoads;
+            long total = 0;
+            for (long load : portLoads.values()) {
+                total += load;
+            }
+            m_totalLoad = total;
+        }
+
+        long utilizationPercent() {
+            return VoltNetwork.utilizationPercent(m_busyNanos, m_elapsedNanos);
+        }
+    }
+
+    Future<LoadSample> sampleLoad() {
+        FutureTask<LoadSample> ft = new FutureTask<LoadSample>(new Callable<LoadSample>() {
+            @Override
+            public LoadSample call() {
+                final long now = System.nanoTime();
+                final HashMap<VoltPort, Long> portLoads = new HashMap<VoltPort, Long>();
+                for (VoltPort port : m_ports) {
+                    portLoads.put(port, port.sampleLoad());
+                }
+                final LoadSample sample =
+                        new LoadSample(VoltNetwork.this, m_busyNanos - m_sampleBusyNanos, now - m_sampleNanos, portLoads);
+                m_sampleBusyNanos = m_busyNanos;
+                m_sampleNanos = now;
+                return sample;
+            }
+        });
+        queueTask(ft);
+        return ft;
+    }
+
+    /**
+     * Move a port from this network to the target network. Runs on this network's thread,
+     * which detaches the port between its callbacks, then the target network's thread
+     * registers it with its own selector. Ports that are busy or shutting down stay put.
+     */
+    void migratePort(final VoltPort port, final VoltNetwork target) {
+        queueTask(new Runnable() {
+            @Override
+            public void run() {
+                if (!m_ports.contains(port) || !port.canMigrate()) {
+                    return;
+                }
+                port.beginMigration(target);
+                m_ports.remove(port);
+                m_numPorts.decrementAndGet();
+                target.queueTask(new Runnable() {
+                    @Override
+                    public void run() {
+                        target.adoptPort(port);
+                    }
+                });
+            }
+        });
+    }
+
+    private void adoptPort(VoltPort port) {
+        try {
+            port.completeMigration(m_selector);
+        } catch (IOException e) {
+            // Closed while in flight between the networks
+            networkLog.debug("Unable to move port " + port + " to " + networkThreadName, e);
+            port.die();
+            port.unregistered();
+            return;
+        }
+        m_ports.add(port);
+        m_numPorts.incrementAndGet();
+    }
+
     @Override
     public Future<Map<Long, Pair<String, long[]>>> getIOStats(final boolean interval) {
         Callable<Map<Long, Pair<String, long[]>>> task = new Callable<Map<Long, Pair<String, long[]>>>() {
@@ -21,6 +21,8 @@ import java.io.IOException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -30,6 +32,7 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
@@ -37,6 +40,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import javax.net.ssl.SSLEngine;
 
 import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.Pair;
 
 public class VoltNetworkPool {
@@ -47,10 +51,25 @@ public class VoltNetworkPool {
 
     private static final VoltLogger m_logger = new VoltLogger(VoltNetworkPool.class.getName());
 
+    /** Number of traffic counters in each IO stats entry, which may be followed by the network id and utilization */
+    public static final int IOSTATS_TRAFFIC_COUNTERS = 4;
+
+    /** Bytes of load a message counts for when balancing, standing in for its decode cost */
+    public static final long MESSAGE_LOAD_BYTES = 512;
+    /** A network is rebalanced only when it is at least this busy, in percent of its thread */
+    static final long REBALANCE_MIN_UTILIZATION = 25;
+    /** ... and its load exceeds the least loaded network's by this factor */
+    static final double REBALANCE_IMBALANCE_FACTOR = 1.5;
+    /** Ports moved per rebalance round, keeping each round cheap */
+    static final int REBALANCE_MAX_MOVES = 8;
+
     private final VoltNetwork m_networks[];
     private final AtomicLong m_nextNetwork = new AtomicLong();
     public final String m_poolName;
 
+    private long m_rebalanceIntervalMs = 0;
+    private ScheduledExecutorService m_rebalancer;
+
     public VoltNetworkPool() {
         this(1, 1, null, "");
     }
@@ -76,18 +95,109 @@ public class VoltNetworkPool {
         }
     }
 
+    /**
+     * Periodically move ports from the busiest network thread to the least loaded one, based
+     * on the bytes and messages each port moved since the previous round. Must be called
+     * before {@link #start()}; has no effect with a single network thread or an interval
+     * that is not positive.
+     */
+    public void enableRebalancing(long intervalMs) {
+        m_rebalanceIntervalMs = intervalMs;
+    }
+
     public void start() {
         for (VoltNetwork vn : m_networks) {
             vn.start();
         }
+        if (m_rebalanceIntervalMs > 0 && m_networks.length > 1) {
+            m_rebalancer = CoreUtils.getScheduledThreadPoolExecutor(
+                    "Volt " + m_poolName + " Network Rebalancer", 1, CoreUtils.SMALL_STACK_SIZE);
+            m_rebalancer.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        rebalance();
+                    } catch (Exception e) {
+                        m_logger.warn("Failed to rebalance network connections", e);
+                    }
+                }
+            }, m_rebalanceIntervalMs, m_rebalanceIntervalMs, TimeUnit.MILLISECONDS);
+        }
     }
 
     public void shutdown() throws InterruptedException {
+        if (m_rebalancer != null) {
+            m_rebalancer.shutdownNow();
+            m_rebalancer.awaitTermination(1, TimeUnit.SECONDS);
+        }
         for (VoltNetwork vn : m_networks) {
             vn.shutdown();
         }
     }
 
+    /**
+     * One rebalance round. Samples every network, and if the busiest one is both busy and
+     * carrying well over the least loaded network's traffic, moves its ports, heaviest that
+     * fit first, until about half the difference has moved. A single port heavier than
+     * that is left alone since moving it would only move the hot spot.
+     */
+    void rebalance() throws InterruptedException, ExecutionException {
+        List<Future<VoltNetwork.LoadSample>> futures = new ArrayList<Future<VoltNetwork.LoadSample>>(m_networks.length);
+        for (VoltNetwork vn : m_networks) {
+            futures.add(vn.sampleLoad());
+        }
+        VoltNetwork.LoadSample hottest = null;
+        VoltNetwork.LoadSample coolest = null;
+        for (Future<VoltNetwork.LoadSample> future : futures) {
+            VoltNetwork.LoadSample sample;
+            try {
+                sample = future.get(500, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // A network thread this busy is the one that most needs relief, but without
+                // its sample there is nothing to base a move on
+                return;
+            }
+            if (hottest == null || sample.m_totalLoad > hottest.m_totalLoad) {
+                hottest = sample;
+            }
+            if (coolest == null || sample.m_totalLoad < coolest.m_totalLoad) {
+                coolest = sample;
+            }
+        }
+        if (hottest == coolest ||
+                hottest.utilizationPercent() < REBALANCE_MIN_UTILIZATION ||
+                hottest.m_totalLoad <= coolest.m_totalLoad * REBALANCE_IMBALANCE_FACTOR) {
+            return;
+        }
+
+        List<Map.Entry<VoltPort, Long>> ports = new ArrayList<Map.Entry<VoltPort, Long>>(hottest.m_portLoads.entrySet());
+        Collections.sort(ports, new Comparator<Map.Entry<VoltPort, Long>>() {
+            @Override
+            public int compare(Map.Entry<VoltPort, Long> o1, Map.Entry<VoltPort, Long> o2) {
+                return Long.compare(o2.getValue(), o1.getValue());
+            }
+        });
+        long toMove = (hottest.m_totalLoad - coolest.m_totalLoad) / 2;
+        int moves = 0;
+        for (Map.Entry<VoltPort, Long> entry : ports) {
+            final long load = entry.getValue();
+            if (moves >= REBALANCE_MAX_MOVES || toMove <= 0 || load == 0) {
+                break;
+            }
+            if (load > toMove) {
+                continue;
+            }
+            hottest.m_network.migratePort(entry.getKey(), coolest.m_network);
+            toMove -= load;
+            moves++;
+        }
+        if (moves > 0 && m_logger.isDebugEnabled()) {
+            m_logger.debug("Moving " + moves + " connections from " + hottest.m_network.networkThreadName +
+                    " (" + hottest.utilizationPercent() + "% busy) to " + coolest.m_network.networkThreadName +
+                    " (" + coolest.utilizationPercent() + "% busy)");
+        }
+    }
+
     public Connection registerChannel(
             final SocketChannel channel,
             final InputHandler handler,
@@ -137,23 +247,29 @@ public class VoltNetworkPool {
             statTasks.add(pn.getIOStats(interval));
         }
 
-        long globalStats[] = null;
+        // Traffic is summed, utilization averaged over the network threads that report it
+        long globalStats[] = new long[IOSTATS_TRAFFIC_COUNTERS + 2];
+        globalStats[IOSTATS_TRAFFIC_COUNTERS] = -1;
+        int utilizationReports = 0;
         for (Future<Map<Long, Pair<String, long[]>>> statsFuture : statTasks) {
             try {
                 Map<Long, Pair<String, long[]>> stats = statsFuture.get(500, TimeUnit.MILLISECONDS);
-                if (globalStats == null) {
-                    globalStats = stats.get(-1L).getSecond();
-                } else {
-                    final long localStats[] = stats.get(-1L).getSecond();
-                    for (int ii = 0; ii < localStats.length; ii++) {
-                        globalStats[ii] += localStats[ii];
-                    }
+                final long localStats[] = stats.get(-1L).getSecond();
+                for (int ii = 0; ii < IOSTATS_TRAFFIC_COUNTERS; ii++) {
+                    globalStats[ii] += localStats[ii];
+                }
+                if (localStats.length > IOSTATS_TRAFFIC_COUNTERS + 1) {
+                    globalStats[IOSTATS_TRAFFIC_COUNTERS + 1] += localStats[IOSTATS_TRAFFIC_COUNTERS + 1];
+                    utilizationReports++;
                 }
                 retval.putAll(stats);
             } catch (TimeoutException e) {
                 m_logger.warn("Timed out retrieving stats from network thread, probably harmless", e);
             }
         }
+        if (utilizationReports > 0) {
+            globalStats[IOSTATS_TRAFFIC_COUNTERS + 1] /= utilizationReports;
+        }
         retval.put(-1L, Pair.of("GLOBAL", globalStats));
 
         return retval;
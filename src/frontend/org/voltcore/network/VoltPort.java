@@ -22,6 +22,7 @@ import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
@@ -31,14 +32,14 @@ import org.voltcore.logging.VoltLogger;
 /** Encapsulates a socket registration for a VoltNetwork */
 public class VoltPort implements Connection
 {
-    /** The network this port participates in */
-    protected final VoltNetwork m_network;
+    /** The network this port participates in, changed when the pool moves the port to another network */
+    protected volatile VoltNetwork m_network;
 
     protected static final VoltLogger networkLog = new VoltLogger("NETWORK");
 
     public static final int MAX_MESSAGE_LENGTH = 52428800;
 
-    protected final NetworkDBBPool m_pool;
+    protected NetworkDBBPool m_pool;
 
     /** The currently selected operations on this port. */
     private int m_readyOps = 0;
@@ -76,6 +77,9 @@ public class VoltPort implements Connection
     protected long m_messagesRead = 0;
     private long m_lastMessagesRead = 0;
 
+    /** Traffic total at the last load sample taken for rebalancing, see {@link #sampleLoad()} */
+    private long m_lastLoadSample = 0;
+
     /*
      * This variable will be changed to the actual hostname some time later. It
      * is not guaranteed on how long it will take to do the reverse DNS lookup.
@@ -409,6 +413,64 @@ public class VoltPort implements Connection
         }
     }
 
+    /**
+     * Bytes and messages moved since the previous sample, weighted so that message count
+     * reflects the per message decode cost. Only called from the owning network thread.
+     */
+    long sampleLoad() {
+        final long written[] = m_writeStream.getBytesAndMessagesWritten(false);
+        final long total = m_readStream.getBytesRead(false) + written[0] +
+                (m_messagesRead + written[1]) * VoltNetworkPool.MESSAGE_LOAD_BYTES;
+        final long load = total - m_lastLoadSample;
+        m_lastLoadSample = total;
+        return load;
+    }
+
+    /**
+     * Whether the pool may move this port to another network, asked on the owning network
+     * thread. Only idle ports of handlers that agree to the move are moved. TLS ports keep
+     * their network because their cipher pipeline holds in-flight work.
+     */
+    boolean canMigrate() {
+        return !m_running && !m_isDead && !m_isShuttingDown && !m_alreadyStopped &&
+                m_selectionKey != null && m_selectionKey.isValid() && !(this instanceof TLSVoltPort) &&
+                m_writeStream.isEmpty() && m_handler instanceof VoltProtocolHandler &&
+                ((VoltProtocolHandler) m_handler).migrating(this);
+    }
+
+    /**
+     * Detach the port from its current network, on that network's thread. Until
+     * {@link #completeMigration(Selector)} the port is marked running so interest changes
+     * are only recorded and not queued to either network.
+     */
+    void beginMigration(VoltNetwork target) {
+        synchronized(m_lock) {
+            m_running = true;
+            m_network = target;
+        }
+        m_selectionKey.attach(null);
+        m_selectionKey.cancel();
+    }
+
+    /**
+     * Register the port with the target network's selector, on the target network's thread.
+     */
+    void completeMigration(Selector selector) throws IOException {
+        try {
+            synchronized(m_lock) {
+                try {
+                    m_pool = m_network.m_pool;
+                    m_selectionKey = m_channel.register(selector, interestOps(), this);
+                } finally {
+                    m_running = false;
+                }
+            }
+        } finally {
+            // The port belongs to this network from here on, even if it was closed in flight
+            ((VoltProtocolHandler) m_handler).migrated(this);
+        }
+    }
+
     long getMessagesRead(boolean interval) {
         if (interval) {
             final long messagesRead = m_messagesRead;
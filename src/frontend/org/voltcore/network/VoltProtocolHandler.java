@@ -127,4 +127,21 @@ public abstract class VoltProtocolHandler implements InputHandler {
         return m_nextLength;
     }
 
+    /**
+     * Invoked on the network thread serving the connection when the network pool wants to move
+     * it to another network thread to even out load. The connection has nothing queued to write.
+     * Return true to allow the move, after detaching any state confined to the current thread.
+     * Handlers keep their network thread by default.
+     */
+    public boolean migrating(Connection c) {
+        return false;
+    }
+
+    /**
+     * Invoked on the network thread that serves the connection after a move allowed by
+     * {@link #migrating(Connection)}, before any of its input is read there.
+     */
+    public void migrated(Connection c) {
+    }
+
 }
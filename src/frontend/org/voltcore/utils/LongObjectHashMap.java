@@ -0,0 +1,216 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltcore.utils;
+
+import java.util.Arrays;
+
+/**
+ * Map from primitive long keys to non-null values, for hot paths keyed by ids
+ * such as txnIds or client handles that would otherwise box a Long and allocate
+ * an entry per mapping.
+ *
+ * Open addressed with linear probing at a load factor of at most one half. Removal
+ * uses backward shift deletion instead of tombstones so probe sequences stay short
+ * no matter how many keys have passed through the map. Not thread safe.
+ */
+public final class LongObjectHashMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    // A null value marks an empty slot, so every key is legal
+    private long[] m_keys;
+    private Object[] m_values;
+    private int m_size = 0;
+
+    public LongObjectHashMap() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * @param expectedSize number of mappings the map should hold without resizing
+     */
+    public LongObjectHashMap(int expectedSize) {
+        final int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, expectedSize) * 2 - 1) << 1);
+        m_keys = new long[capacity];
+        m_values = new Object[capacity];
+    }
+
+    /**
+     * Murmur3 finalizer. Ids are often sequential or share low bits (txnIds carry
+     * the partition id there), so the map takes slots from the high bits of the mix,
+     * leaving the low bits for callers spreading keys over several maps.
+     */
+    public static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static int slot(long key, int mask) {
+        return (int)(mix(key) >>> 32) & mask;
+    }
+
+    public V get(long key) {
+        final long[] keys = m_keys;
+        final Object[] values = m_values;
+        final int mask = keys.length - 1;
+        int idx = slot(key, mask);
+        Object value;
+        while ((value = values[idx]) != null) {
+            if (keys[idx] == key) {
+                @SuppressWarnings("unchecked")
+                final V retval = (V)value;
+                return retval;
+            }
+            idx = (idx + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Associate value with key.
+     * @return the previous value for the key or null if there was none
+     */
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("LongObjectHashMap doesn't hold null values");
+        }
+        final int mask = m_keys.length - 1;
+        int idx = slot(key, mask);
+        while (m_values[idx] != null) {
+            if (m_keys[idx] == key) {
+                @SuppressWarnings("unchecked")
+                final V previous = (V)m_values[idx];
+                m_values[idx] = value;
+                return previous;
+            }
+            idx = (idx + 1) & mask;
+        }
+        m_keys[idx] = key;
+        m_values[idx] = value;
+        if (++m_size * 2 > m_keys.length) {
+            resize(m_keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Remove the mapping for key.
+     * @return the value that was associated with key or null if there was none
+     */
+    public V remove(long key) {
+        final long[] keys = m_keys;
+        final Object[] values = m_values;
+        final int mask = keys.length - 1;
+        int idx = slot(key, mask);
+        while (values[idx] != null) {
+            if (keys[idx] == key) {
+                @SuppressWarnings("unchecked")
+                final V retval = (V)values[idx];
+                m_size--;
+                // Backward shift the rest of the cluster into the hole
+                int hole = idx;
+                int next = (hole + 1) & mask;
+                while (values[next] != null) {
+                    final int home = slot(keys[next], mask);
+                    // Move the entry if the hole lies cyclically between its home slot and its current slot
+                    if (((next - home) & mask) >= ((next - hole) & mask)) {
+                        keys[hole] = keys[next];
+                        values[hole] = values[next];
+                        hole = next;
+                    }
+                    next = (next + 1) & mask;
+                }
+                values[hole] = null;
+                return retval;
+            }
+            idx = (idx + 1) & mask;
+        }
+        return null;
+    }
+
+    public int size() {
+        return m_size;
+    }
+
+    public boolean isEmpty() {
+        return m_size == 0;
+    }
+
+    /** Remove every mapping, keeping the current capacity */
+    public void clear() {
+        Arrays.fill(m_values, null);
+        m_size = 0;
+    }
+
+    /**
+     * @return a copy of the keys in no particular order, which callers may
+     * iterate while removing mappings
+     */
+    public long[] keys() {
+        final long[] retval = new long[m_size];
+        int count = 0;
+        for (int ii = 0; ii < m_keys.length; ii++) {
+            if (m_values[ii] != null) {
+                retval[count++] = m_keys[ii];
+            }
+        }
+        return retval;
+    }
+
+    private void resize(int capacity) {
+        final long[] oldKeys = m_keys;
+        final Object[] oldValues = m_values;
+        final long[] keys = new long[capacity];
+        final Object[] values = new Object[capacity];
+        final int mask = capacity - 1;
+        for (int ii = 0; ii < oldKeys.length; ii++) {
+            if (oldValues[ii] != null) {
+                int idx = slot(oldKeys[ii], mask);
+                while (values[idx] != null) {
+                    idx = (idx + 1) & mask;
+                }
+                keys[idx] = oldKeys[ii];
+                values[idx] = oldValues[ii];
+            }
+        }
+        m_keys = keys;
+        m_values = values;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("{");
+        for (int ii = 0; ii < m_keys.length; ii++) {
+            if (m_values[ii] != null) {
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(m_keys[ii]).append('=').append(m_values[ii]);
+            }
+        }
+        return sb.append('}').toString();
+    }
+}
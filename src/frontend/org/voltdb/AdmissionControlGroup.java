@@ -137,6 +137,27 @@ public class AdmissionControlGroup implements org.voltcore.network.QueueMonitor
         m_connectionStates.remove(member.connectionId());
     }
 
+    /*
+     * Used when a member's connection moves to another network thread. The member leaves this
+     * group and takes its per procedure invocation stats along to the group of the new thread.
+     * The member must have no outstanding transactions or pending response bytes in this group.
+     */
+    public Map<String, InvocationInfo> transferMemberOut(ACGMember member)
+    {
+        assert(m_expectedThreadId == Thread.currentThread().getId());
+        m_members.remove(member);
+        return m_connectionStates.remove(member.connectionId());
+    }
+
+    public void transferMemberIn(ACGMember member, Map<String, InvocationInfo> connectionStates)
+    {
+        assert(m_expectedThreadId == Thread.currentThread().getId());
+        m_members.add(member);
+        if (connectionStates != null) {
+            m_connectionStates.put(member.connectionId(), connectionStates);
+        }
+    }
+
     /*
      * Invoked when accepting a new transaction. Increments pending txn count in addition
      * to tracking the number of request bytes accepted. Can invoke onBackpressure
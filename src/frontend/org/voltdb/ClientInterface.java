@@ -100,6 +100,9 @@ import org.voltdb.messaging.Iv2EndOfLogMessage;
 import org.voltdb.messaging.Iv2InitiateTaskMessage;
 import org.voltdb.messaging.LocalMailbox;
 import org.voltdb.messaging.MigratePartitionLeaderMessage;
+import org.voltdb.metrics.Counter;
+import org.voltdb.metrics.MetricsRegistry;
+import org.voltdb.metrics.Timer;
 import org.voltdb.security.AuthenticationRequest;
 import org.voltdb.utils.MiscUtils;
 import org.voltdb.utils.VoltTrace;
@@ -176,6 +179,14 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
 
     private static final RateLimitedLogger m_rateLimitedLogger =  new RateLimitedLogger(TimeUnit.MINUTES.toMillis(60), authLog, Level.WARN);
 
+    // Native metrics of the responses sent to clients, scraped from /metrics
+    private static final Timer txnLatencyMetric = MetricsRegistry.instance().timer(
+            "voltdb_client_transaction_latency_seconds",
+            "Time from receiving an invocation to sending its response");
+    private static final Counter txnFailureMetric = MetricsRegistry.instance().counter(
+            "voltdb_client_transaction_failures",
+            "Invocations answered with a status other than success");
+
     // Used by NT procedure to generate handle, don't use elsewhere.
     public static final int NTPROC_JUNK_ID = -2;
 
@@ -780,6 +791,8 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
 
         private Connection m_connection;
         private final boolean m_isAdmin;
+        // Invocation stats carried over while the connection moves between network threads
+        private Map<String, InvocationInfo> m_migratingStats;
 
         /**
          * Must use username to do a lookup via the auth system
@@ -837,6 +850,38 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             }
         }
 
+        /*
+         * ACGs are confined to their network thread, so a connection only follows the network
+         * pool to another thread when it has no transactions in flight. Its membership and
+         * invocation stats move to the ACG of the new thread.
+         */
+        @Override
+        public boolean migrating(Connection c) {
+            ClientInterfaceHandleManager cihm = m_cihm.get(connectionId());
+            if (cihm == null || cihm.getOutstandingTxns() != 0) {
+                return false;
+            }
+            m_migratingStats = cihm.m_acg.transferMemberOut(this);
+            return true;
+        }
+
+        @Override
+        public void migrated(Connection c) {
+            ClientInterfaceHandleManager cihm = m_cihm.get(connectionId());
+            if (cihm == null) {
+                return;
+            }
+            AdmissionControlGroup acg = m_acg.get();
+            cihm.rebind(acg);
+            acg.transferMemberIn(this, m_migratingStats);
+            m_migratingStats = null;
+            if (acg.hasBackPressure()) {
+                c.disableReadSelection();
+            } else {
+                c.enableReadSelection();
+            }
+        }
+
         @Override
         public void stopped(Connection c) {
             m_numConnections.decrementAndGet();
@@ -940,12 +985,24 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         @Override
         public void serialize(ByteBuffer buf) throws IOException
         {
-            buf.putInt(buf.capacity() - 4);
-            clientResponse.flattenToBuffer(buf);
+            try {
+                buf.putInt(buf.capacity() - 4);
+                clientResponse.flattenToBuffer(buf);
+            } finally {
+                releaseResultBuffers();
+            }
         }
 
         @Override
         public void cancel() {
+            releaseResultBuffers();
+        }
+
+        // Result tables may be views of a leased EE result buffer
+        private void releaseResultBuffers() {
+            if (clientResponse != null) {
+                clientResponse.releaseResultBuffers();
+            }
         }
 
         public void setRestartMispartitionedTxn(boolean restart) {
@@ -968,6 +1025,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                 clientData = cihm.findHandle(response.getClientInterfaceHandle());
             }
             if (clientData == null) {
+                releaseResultBuffers();
                 return DeferredSerialization.EMPTY_MESSAGE_LENGTH;
             }
 
@@ -975,6 +1033,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             if (response.isMispartitioned() || response.isMisrouted()) {
                 // If the transaction is restarted, don't send a response to the client yet.
                 if (restartTransaction(clientData.m_messageSize, clientData.m_creationTimeNanos)) {
+                    releaseResultBuffers();
                     return DeferredSerialization.EMPTY_MESSAGE_LENGTH;
                 }
             }
@@ -991,6 +1050,10 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                     clientData.m_procName,
                     delta,
                     clientResponse.getStatus());
+            txnLatencyMetric.update(delta);
+            if (clientResponse.getStatus() != ClientResponse.SUCCESS) {
+                txnFailureMetric.inc();
+            }
 
             final VoltTrace.TraceEventBatch traceLog = VoltTrace.log(VoltTrace.Category.CI);
             if (traceLog != null) {
@@ -1212,6 +1275,9 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                         cihm.connection.writeStream().fastEnqueue(new ClientResponseWork(response, cihm, procedure));
                         Iv2Trace.logFinishTransaction(response, m_mailbox.getHSId());
                     }
+                    else if (response.getClientResponseData() != null) {
+                        response.getClientResponseData().releaseResultBuffers();
+                    }
                 }
                 else if (message instanceof BinaryPayloadMessage) {
                     handlePartitionFailOver((BinaryPayloadMessage)message);
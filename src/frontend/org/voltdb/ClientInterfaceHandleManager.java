@@ -59,8 +59,8 @@ public class ClientInterfaceHandleManager
     public final boolean isAdmin;
     public final Connection connection;
     public final ClientInterfaceRepairCallback repairCallback;
-    private final long m_expectedThreadId = Thread.currentThread().getId();
-    final AdmissionControlGroup m_acg;
+    private long m_expectedThreadId = Thread.currentThread().getId();
+    AdmissionControlGroup m_acg;
 
     private volatile boolean m_wantsTopologyUpdates = false;
 
@@ -123,6 +123,17 @@ public class ClientInterfaceHandleManager
         m_acg = acg;
     }
 
+    /**
+     * Hand the connection over to the network thread it was moved to, and to that thread's
+     * admission control group. Only valid with no transactions outstanding.
+     */
+    void rebind(AdmissionControlGroup acg)
+    {
+        assert(m_outstandingTxns == 0);
+        m_acg = acg;
+        m_expectedThreadId = Thread.currentThread().getId();
+    }
+
     /**
      * Factory to make a threadsafe version of CIHM. This is used
      * exclusively by some internal CI adapters that don't have
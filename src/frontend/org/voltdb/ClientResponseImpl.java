@@ -391,4 +391,14 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
     public void dropResultTable() {
         results = new VoltTable[] {};
     }
+
+    /**
+     * Release the leased EE result buffers any of the result tables are views of.
+     * Call once the response has been serialized or is being thrown away.
+     */
+    public void releaseResultBuffers() {
+        for (VoltTable vt : results) {
+            vt.releaseLeasedBuffer();
+        }
+    }
 }
@@ -0,0 +1,123 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.voltdb;
+
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram_voltpatches.Histogram;
+import org.HdrHistogram_voltpatches.Recorder;
+
+/**
+ * Sampled execution times of a procedure or a statement, from which PROCEDUREDETAIL
+ * reports percentiles since the last interval poll and since the server started.
+ *
+ * Threads running the procedure record into an HdrHistogram Recorder, which is wait
+ * free and doesn't take the lock the stats thread holds while polling. Each poll flips
+ * the recorder and adds what was recorded since the previous poll to a cumulative and
+ * an interval histogram, the latter reset by every interval poll.
+ *
+ * Times are kept in microseconds to procedureLatencyHistogramDigits significant digits,
+ * 2 by default and 0 to disable the histograms, with longer times than
+ * procedureLatencyHistogramMaxMillis, 10 seconds by default, counted as that. The four
+ * histograms behind each instance are only allocated once it records a time, which with
+ * the defaults takes about 80KB per procedure and site. Statements only get histograms
+ * when statementLatencyHistograms is set.
+ */
+final class ExecutionTimeHistogram {
+
+    static final int DIGITS = Math.min(3, Integer.getInteger("procedureLatencyHistogramDigits", 2));
+    static final long HIGHEST_MICROS = TimeUnit.MILLISECONDS.toMicros(Long.getLong("procedureLatencyHistogramMaxMillis", 10000));
+    static final boolean PROCEDURES_ENABLED = DIGITS > 0;
+    static final boolean STATEMENTS_ENABLED = PROCEDURES_ENABLED && Boolean.getBoolean("statementLatencyHistograms");
+
+    // Percentiles reported, in the order of the PROCEDUREDETAIL columns
+    static final double[] PERCENTILES = { 50, 95, 99, 99.9 };
+
+    private final int m_digits;
+    private final long m_highestMicros;
+
+    private volatile Recorder m_recorder = null;
+
+    // Only touched by polls, which hold the lock of the stats source
+    private Histogram m_sample = null;
+    private Histogram m_cumulative = null;
+    private Histogram m_interval = null;
+
+    ExecutionTimeHistogram() {
+        this(DIGITS, HIGHEST_MICROS);
+    }
+
+    ExecutionTimeHistogram(int digits, long highestMicros) {
+        m_digits = digits;
+        m_highestMicros = highestMicros;
+    }
+
+    void record(long nanos) {
+        Recorder recorder = m_recorder;
+        if (recorder == null) {
+            recorder = createRecorder();
+        }
+        recorder.recordValue(Math.max(1, Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), m_highestMicros)));
+    }
+
+    // NT procedures can record from more than one thread
+    private synchronized Recorder createRecorder() {
+        if (m_recorder == null) {
+            m_recorder = new Recorder(1, m_highestMicros, m_digits);
+        }
+        return m_recorder;
+    }
+
+    /**
+     * Take what was recorded since the previous poll and return the percentiles, in nanoseconds,
+     * of the times recorded since the last interval poll or since the start.
+     * @return the percentiles, or null if there were no times recorded
+     */
+    long[] poll(boolean interval) {
+        final Recorder recorder = m_recorder;
+        if (recorder == null) {
+            return null;
+        }
+        m_sample = recorder.getIntervalHistogram(m_sample);
+        if (m_cumulative == null) {
+            m_cumulative = new Histogram(1, m_highestMicros, m_digits);
+            m_interval = new Histogram(1, m_highestMicros, m_digits);
+        }
+        m_cumulative.add(m_sample);
+        m_interval.add(m_sample);
+
+        final Histogram histogram = interval ? m_interval : m_cumulative;
+        long[] retval = null;
+        if (histogram.getTotalCount() > 0) {
+            retval = new long[PERCENTILES.length];
+            for (int ii = 0; ii < PERCENTILES.length; ii++) {
+                retval[ii] = TimeUnit.MICROSECONDS.toNanos(histogram.getValueAtPercentile(PERCENTILES[ii]));
+            }
+        }
+        if (interval) {
+            m_interval.reset();
+        }
+        return retval;
+    }
+
+    /** Bytes taken by the histograms once the instance has recorded a time */
+    long getFootprintBytes() {
+        return 4 * new Histogram(1, m_highestMicros, m_digits).getEstimatedFootprintInBytes();
+    }
+}
@@ -39,10 +39,14 @@ public class ExportStatsBase extends StatsSource {
         public final long m_maxLatency;
         public final long m_queueGap;
         public final String m_status;
+        public final long m_throughput;
+        public final long m_batchSize;
+        public final long m_commitLatency;
 
         public ExportStatsRow(int partitionId, int siteId, String sourceName, String exportTarget, boolean isExporting,
                 long tupleCount, long tuplesPending, long lastQueuedTimestamp, long lastAckedTimestamp,
-                long averageLatency, long maxLatency, long queueGap, String status) {
+                long averageLatency, long maxLatency, long queueGap, String status,
+                long throughput, long batchSize, long commitLatency) {
             m_partitionId = partitionId;
             m_siteId = siteId;
             m_sourceName = sourceName;
@@ -56,6 +60,9 @@ public class ExportStatsBase extends StatsSource {
             m_maxLatency = maxLatency;
             m_queueGap = queueGap;
             m_status = status;
+            m_throughput = throughput;
+            m_batchSize = batchSize;
+            m_commitLatency = commitLatency;
         }
     }
 
@@ -79,6 +86,9 @@ public class ExportStatsBase extends StatsSource {
         public static final String MAX_LATENCY = "MAX_LATENCY";
         public static final String QUEUE_GAP = "QUEUE_GAP";
         public static final String STATUS = "STATUS";
+        public static final String THROUGHPUT = "THROUGHPUT";
+        public static final String BATCH_SIZE = "BATCH_SIZE";
+        public static final String COMMIT_LATENCY = "COMMIT_LATENCY";
     }
 
     /* Constructor */
@@ -103,6 +113,9 @@ public class ExportStatsBase extends StatsSource {
         columns.add(new ColumnInfo(Columns.MAX_LATENCY, VoltType.BIGINT));
         columns.add(new ColumnInfo(Columns.QUEUE_GAP, VoltType.BIGINT));
         columns.add(new ColumnInfo(Columns.STATUS, VoltType.STRING));
+        columns.add(new ColumnInfo(Columns.THROUGHPUT, VoltType.BIGINT));
+        columns.add(new ColumnInfo(Columns.BATCH_SIZE, VoltType.BIGINT));
+        columns.add(new ColumnInfo(Columns.COMMIT_LATENCY, VoltType.BIGINT));
     }
 
     @Override
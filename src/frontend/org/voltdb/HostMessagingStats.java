@@ -0,0 +1,92 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.voltcore.utils.Pair;
+import org.voltdb.VoltTable.ColumnInfo;
+
+/**
+ * Messages and frames this host sent to each other host. With message coalescing enabled
+ * a frame carries every message queued for the host by the time it is written, and the
+ * delay columns show how long, in nanoseconds, messages waited for their frame.
+ */
+public class HostMessagingStats extends StatsSource {
+    private Map<Long, Pair<String, long[]>> m_stats = new HashMap<Long, Pair<String, long[]>>();
+
+    public HostMessagingStats() {
+        super(false);
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("CONNECTION_ID", VoltType.BIGINT));
+        columns.add(new ColumnInfo("REMOTE_HOST_ID", VoltType.INTEGER));
+        columns.add(new ColumnInfo("REMOTE_HOSTNAME", VoltType.STRING));
+        columns.add(new ColumnInfo("MESSAGES_SENT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("FRAMES_SENT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("AVG_MESSAGES_PER_FRAME", VoltType.FLOAT));
+        columns.add(new ColumnInfo("AVG_COALESCE_DELAY", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MAX_COALESCE_DELAY", VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        final Pair<String, long[]> info = m_stats.get(rowKey);
+        final long[] counters = info.getSecond();
+        final long messages = counters[1];
+        final long frames = counters[2];
+
+        rowValues[columnNameToIndex.get("CONNECTION_ID")] = rowKey;
+        rowValues[columnNameToIndex.get("REMOTE_HOST_ID")] = (int) counters[0];
+        rowValues[columnNameToIndex.get("REMOTE_HOSTNAME")] = info.getFirst();
+        rowValues[columnNameToIndex.get("MESSAGES_SENT")] = messages;
+        rowValues[columnNameToIndex.get("FRAMES_SENT")] = frames;
+        rowValues[columnNameToIndex.get("AVG_MESSAGES_PER_FRAME")] = frames > 0 ? (double) messages / frames : 0.0;
+        rowValues[columnNameToIndex.get("AVG_COALESCE_DELAY")] = messages > 0 ? counters[3] / messages : 0;
+        rowValues[columnNameToIndex.get("MAX_COALESCE_DELAY")] = counters[4];
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        m_stats = VoltDB.instance().getHostMessenger().getForeignHostMessagingStats(interval);
+        final Iterator<Long> keys = m_stats.keySet().iterator();
+        return new Iterator<Object>() {
+            @Override
+            public boolean hasNext() {
+                return keys.hasNext();
+            }
+
+            @Override
+            public Object next() {
+                return keys.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
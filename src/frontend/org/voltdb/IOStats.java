@@ -23,6 +23,7 @@ import java.util.Iterator;
 import java.util.Map;
 
 import org.voltdb.VoltTable.ColumnInfo;
+import org.voltcore.network.VoltNetworkPool;
 import org.voltcore.utils.Pair;
 
 public class IOStats extends StatsSource {
@@ -69,7 +70,8 @@ public class IOStats extends StatsSource {
         columns.add(new ColumnInfo("MESSAGES_READ", VoltType.BIGINT));
         columns.add(new ColumnInfo("BYTES_WRITTEN", VoltType.BIGINT));
         columns.add(new ColumnInfo("MESSAGES_WRITTEN", VoltType.BIGINT));
-
+        columns.add(new ColumnInfo("NETWORK_THREAD_ID", VoltType.INTEGER));
+        columns.add(new ColumnInfo("NETWORK_THREAD_UTILIZATION", VoltType.INTEGER));
     }
 
     @Override
@@ -83,6 +85,16 @@ public class IOStats extends StatsSource {
         rowValues[columnNameToIndex.get("MESSAGES_READ")] = counters[1];
         rowValues[columnNameToIndex.get("BYTES_WRITTEN")] = counters[2];
         rowValues[columnNameToIndex.get("MESSAGES_WRITTEN")] = counters[3];
+        // Network id and percent busy of the thread serving the connection, when it reports them.
+        // Pico network threads, which serve one connection to another host, have no id.
+        if (counters.length > VoltNetworkPool.IOSTATS_TRAFFIC_COUNTERS + 1) {
+            rowValues[columnNameToIndex.get("NETWORK_THREAD_ID")] =
+                    counters[4] < 0 ? VoltType.NULL_INTEGER : (int) counters[4];
+            rowValues[columnNameToIndex.get("NETWORK_THREAD_UTILIZATION")] = (int) counters[5];
+        } else {
+            rowValues[columnNameToIndex.get("NETWORK_THREAD_ID")] = VoltType.NULL_INTEGER;
+            rowValues[columnNameToIndex.get("NETWORK_THREAD_UTILIZATION")] = VoltType.NULL_INTEGER;
+        }
         super.updateStatsRow(rowKey, rowValues);
     }
 
@@ -0,0 +1,393 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.voltcore.logging.Level;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.catalog.Column;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Table;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureCallback;
+import org.voltdb.importer.AbstractImporter;
+import org.voltdb.importer.ImporterStatsCollector;
+import org.voltdb.utils.CatalogUtil;
+
+/**
+ * Groups the rows importers insert or upsert through the default procedures of partitioned
+ * tables by the partition they go to, and loads each group with a single
+ * @LoadSinglepartitionTable transaction instead of one transaction per row.
+ *
+ * A group is loaded once it holds the batch size of rows, or the linger time after its first
+ * row arrived. Every row keeps the callback its importer gave it, which receives the response
+ * of the transaction that loaded the row, so importers track commits per row as they always
+ * did. A batch failing for any reason a row could, such as a constraint violation, is retried
+ * row by row so only the rows at fault fail. Rows for any other procedure, or that can't be
+ * converted to the columns of the table, take the usual one transaction per row path.
+ * Rows are grouped by the hashinator that was current when they arrived, and the rows
+ * batched under an older one are resent row by row once it changes.
+ */
+public class ImporterBatcher {
+
+    private static final VoltLogger m_logger = new VoltLogger("IMPORT");
+    private static final int LOG_SUPPRESSION_INTERVAL_SECONDS = 60;
+
+    // Rows per transaction, 1 or less disables batching
+    public static final int BATCH_SIZE = Integer.getInteger("IMPORTER_BATCH_SIZE", 1);
+    public static final int LINGER_MILLIS = Integer.getInteger("IMPORTER_BATCH_LINGER_MILLIS", 5);
+
+    /** Where the batcher sends its transactions, the internal connection handler in the server */
+    interface Submitter {
+        boolean loadPartition(AbstractImporter importer, Function<Integer, Boolean> backPressurePredicate,
+                ProcedureCallback callback, byte[] partitionParam, String tableName, byte upsertMode, VoltTable rows);
+
+        boolean callProcedure(AbstractImporter importer, Function<Integer, Boolean> backPressurePredicate,
+                ProcedureCallback callback, String proc, Object... fieldList);
+    }
+
+    /** The table a default insert or upsert procedure loads */
+    static final class Target {
+        final String m_tableName;
+        final byte m_upsertMode;
+        final ColumnInfo[] m_columns;
+        final VoltType[] m_types;
+        final int m_partitionIndex;
+
+        Target(String tableName, boolean upsert, ColumnInfo[] columns, int partitionIndex) {
+            m_tableName = tableName;
+            m_upsertMode = (byte) (upsert ? 1 : 0);
+            m_columns = columns;
+            m_types = new VoltType[columns.length];
+            for (int ii = 0; ii < columns.length; ii++) {
+                m_types[ii] = columns[ii].type;
+            }
+            m_partitionIndex = partitionIndex;
+        }
+    }
+
+    /** Resolves procedures to targets from the catalog, starting over whenever it changes */
+    static final class CatalogResolver implements Function<String, Target> {
+        private static final Target NONE = new Target(null, false, new ColumnInfo[0], -1);
+
+        private static final class Targets {
+            final CatalogContext m_context;
+            final Map<String, Target> m_targets = new ConcurrentHashMap<>();
+
+            Targets(CatalogContext context) {
+                m_context = context;
+            }
+        }
+
+        private volatile Targets m_targets = new Targets(null);
+
+        @Override
+        public Target apply(String proc) {
+            final CatalogContext context = VoltDB.instance().getCatalogContext();
+            Targets targets = m_targets;
+            if (targets.m_context != context) {
+                targets = new Targets(context);
+                m_targets = targets;
+            }
+            Target target = targets.m_targets.get(proc);
+            if (target == null) {
+                target = targets.m_targets.computeIfAbsent(proc, p -> resolve(context, p));
+            }
+            return target == NONE ? null : target;
+        }
+
+        private static Target resolve(CatalogContext context, String proc) {
+            final Procedure catProc = InvocationDispatcher.getProcedureFromName(proc, context);
+            if (catProc == null || !catProc.getDefaultproc() || !catProc.getSinglepartition()) {
+                return NONE;
+            }
+            final String action = catProc.getClassname().substring(catProc.getClassname().lastIndexOf('.') + 1);
+            final Table table = catProc.getPartitiontable();
+            if (!("insert".equals(action) || "upsert".equals(action)) || table == null
+                    || CatalogUtil.isTableExportOnly(context.database, table)) {
+                return NONE;
+            }
+            final List<Column> columns = CatalogUtil.getSortedCatalogItems(table.getColumns(), "index");
+            final ColumnInfo[] infos = new ColumnInfo[columns.size()];
+            for (int ii = 0; ii < infos.length; ii++) {
+                infos[ii] = new ColumnInfo(columns.get(ii).getTypeName(), VoltType.get((byte) columns.get(ii).getType()));
+            }
+            return new Target(table.getTypeName(), "upsert".equals(action), infos, table.getPartitioncolumn().getIndex());
+        }
+    }
+
+    // A row waiting in a batch, with everything needed to insert it on its own
+    private static final class Row {
+        final AbstractImporter m_importer;
+        final Function<Integer, Boolean> m_backPressurePredicate;
+        final ProcedureCallback m_callback;
+        final String m_proc;
+        final Object[] m_params;
+
+        Row(AbstractImporter importer, Function<Integer, Boolean> backPressurePredicate,
+                ProcedureCallback callback, String proc, Object[] params) {
+            m_importer = importer;
+            m_backPressurePredicate = backPressurePredicate;
+            m_callback = callback;
+            m_proc = proc;
+            m_params = params;
+        }
+    }
+
+    // Rows going to one partition of a table, guarded by itself
+    final class PartitionBatch {
+        final Target m_target;
+        private final VoltTable m_table;
+        private ArrayList<Row> m_rows = new ArrayList<>();
+
+        PartitionBatch(Target target) {
+            m_target = target;
+            m_table = new VoltTable(target.m_columns);
+        }
+
+        synchronized void add(Row row, Object[] values) {
+            m_table.addRow(values);
+            m_rows.add(row);
+            if (m_rows.size() >= m_batchSize) {
+                flush();
+            } else if (m_rows.size() == 1) {
+                try {
+                    m_es.schedule(this::lingered, m_lingerMillis, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // Shutting down, which flushes everything
+                }
+            }
+        }
+
+        synchronized void lingered() {
+            flush();
+        }
+
+        // The rows were grouped by a hashinator that has been replaced, send them on their own
+        synchronized void resend() {
+            final List<Row> rows = m_rows;
+            m_rows = new ArrayList<>(m_batchSize);
+            m_table.clearRowData();
+            retry(rows);
+        }
+
+        // Rows of a partition are loaded in the order they arrived, so loads are submitted under the lock
+        private void flush() {
+            if (m_rows.isEmpty()) {
+                return;
+            }
+            final List<Row> rows = m_rows;
+            m_rows = new ArrayList<>(m_batchSize);
+            final Row first = rows.get(0);
+            boolean queued;
+            try {
+                // Every row of the batch hashes to the partition, route it by the first one
+                final VoltTableRow firstValues = m_table.fetchRow(0);
+                final int index = m_target.m_partitionIndex;
+                final Object partitionValue = firstValues.get(index, m_target.m_types[index]);
+                final byte[] partitionParam = VoltType.valueToBytes(firstValues.wasNull() ? null : partitionValue);
+                queued = m_submitter.loadPartition(first.m_importer, first.m_backPressurePredicate,
+                        response -> loaded(rows, response), partitionParam, m_target.m_tableName,
+                        m_target.m_upsertMode, m_table);
+            } catch (Exception e) {
+                m_logger.rateLimitedLog(LOG_SUPPRESSION_INTERVAL_SECONDS, Level.ERROR, e,
+                        "Failed to load a batch of %d rows into %s", rows.size(), m_target.m_tableName);
+                queued = false;
+            } finally {
+                m_table.clearRowData();
+            }
+            if (!queued) {
+                retry(rows);
+            }
+        }
+    }
+
+    private final Submitter m_submitter;
+    private final ImporterStatsCollector m_statsCollector;
+    private final Function<String, Target> m_resolver;
+    private final int m_batchSize;
+    private final int m_lingerMillis;
+    // The batches of each procedure, for the target it had last and the hashinator their rows were grouped by
+    private static final class TargetBatches {
+        final Target m_target;
+        final TheHashinator m_hashinator;
+        final Map<Integer, PartitionBatch> m_batches = new ConcurrentHashMap<>();
+
+        TargetBatches(Target target, TheHashinator hashinator) {
+            m_target = target;
+            m_hashinator = hashinator;
+        }
+    }
+    private final Map<String, TargetBatches> m_batches = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService m_es =
+            CoreUtils.getScheduledThreadPoolExecutor("Importer batcher", 1, CoreUtils.SMALL_STACK_SIZE);
+
+    /**
+     * @param resolver the batch target of a procedure name, null if its rows can't be batched
+     */
+    ImporterBatcher(Submitter submitter, ImporterStatsCollector statsCollector,
+            Function<String, Target> resolver, int batchSize, int lingerMillis) {
+        m_submitter = submitter;
+        m_statsCollector = statsCollector;
+        m_resolver = resolver;
+        m_batchSize = batchSize;
+        m_lingerMillis = lingerMillis;
+    }
+
+    /**
+     * Add a row to the batch of its partition.
+     * @return false if the row can't be batched and should be sent on its own
+     */
+    public boolean offer(AbstractImporter importer, Function<Integer, Boolean> backPressurePredicate,
+            ProcedureCallback callback, String proc, Object... fieldList) {
+        final Target target = m_resolver.apply(proc);
+        if (target == null || fieldList.length != target.m_columns.length) {
+            return false;
+        }
+        final Object[] values = new Object[fieldList.length];
+        try {
+            for (int ii = 0; ii < values.length; ii++) {
+                values[ii] = ParameterConverter.tryToMakeCompatible(target.m_types[ii].classFromType(), fieldList[ii]);
+            }
+        } catch (Exception e) {
+            // Let the single row path report the bad data
+            return false;
+        }
+        // Each version of the hashinator is a new instance
+        final TheHashinator hashinator = TheHashinator.getCurrentHashinator();
+        final VoltType partitionType = target.m_types[target.m_partitionIndex];
+        final int partition = hashinator.getHashedPartitionForParameter(partitionType, values[target.m_partitionIndex]);
+        TargetBatches batches = m_batches.get(proc);
+        if (batches == null || batches.m_target != target || batches.m_hashinator != hashinator) {
+            batches = retarget(proc, target, hashinator);
+        }
+        PartitionBatch batch = batches.m_batches.get(partition);
+        if (batch == null) {
+            batch = batches.m_batches.computeIfAbsent(partition, p -> new PartitionBatch(target));
+        }
+        batch.add(new Row(importer, backPressurePredicate, callback, proc, fieldList), values);
+        return true;
+    }
+
+    /*
+     * The catalog or the hashinator changed. Load what was batched for the old catalog, but
+     * resend the rows grouped by an old hashinator one by one, they may span partitions now.
+     */
+    private TargetBatches retarget(String proc, Target target, TheHashinator hashinator) {
+        final TargetBatches[] replaced = new TargetBatches[1];
+        final TargetBatches batches = m_batches.compute(proc, (p, current) -> {
+            if (current != null && current.m_target == target && current.m_hashinator == hashinator) {
+                return current;
+            }
+            replaced[0] = current;
+            return new TargetBatches(target, hashinator);
+        });
+        if (replaced[0] != null) {
+            for (PartitionBatch batch : replaced[0].m_batches.values()) {
+                if (replaced[0].m_hashinator == hashinator) {
+                    batch.lingered();
+                } else {
+                    batch.resend();
+                }
+            }
+        }
+        return batches;
+    }
+
+    private void loaded(List<Row> rows, ClientResponse response) {
+        switch (response.getStatus()) {
+        case ClientResponse.GRACEFUL_FAILURE:
+        case ClientResponse.USER_ABORT:
+        case ClientResponse.UNEXPECTED_FAILURE:
+        case ClientResponse.TXN_MISPARTITIONED:
+            // Find the rows at fault, or route them on their own if the partitioning moved under the
+            // batch, without holding up the response
+            try {
+                m_es.execute(() -> retry(rows));
+            } catch (RejectedExecutionException e) {
+                retry(rows);
+            }
+            return;
+        default:
+            for (Row row : rows) {
+                m_statsCollector.reportCompletion(row.m_importer.getName(), row.m_proc, response);
+                if (row.m_callback != null) {
+                    try {
+                        row.m_callback.clientCallback(response);
+                    } catch (Exception e) {
+                        m_logger.rateLimitedLog(LOG_SUPPRESSION_INTERVAL_SECONDS, Level.ERROR, e,
+                                "Importer callback for procedure %s failed", row.m_proc);
+                    }
+                }
+            }
+        }
+    }
+
+    // Send the rows of a batch one transaction each, as if they had never been batched
+    private void retry(List<Row> rows) {
+        for (Row row : rows) {
+            boolean queued;
+            try {
+                queued = m_submitter.callProcedure(row.m_importer, row.m_backPressurePredicate,
+                        row.m_callback, row.m_proc, row.m_params);
+            } catch (Exception e) {
+                m_logger.rateLimitedLog(LOG_SUPPRESSION_INTERVAL_SECONDS, Level.ERROR, e,
+                        "%s: Error trying to import", row.m_importer.getName());
+                queued = false;
+            }
+            if (!queued) {
+                m_statsCollector.reportFailure(row.m_importer.getName(), row.m_proc, true);
+                // The importer was told the row is on its way and waits for its callback to commit it
+                if (row.m_callback != null) {
+                    try {
+                        row.m_callback.clientCallback(new ClientResponseImpl(ClientResponse.GRACEFUL_FAILURE,
+                                new VoltTable[0], "Unable to submit the importer row for procedure " + row.m_proc));
+                    } catch (Exception e) {
+                        m_logger.rateLimitedLog(LOG_SUPPRESSION_INTERVAL_SECONDS, Level.ERROR, e,
+                                "Importer callback for procedure %s failed", row.m_proc);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Load the rows still waiting and stop */
+    public void shutdown() {
+        m_es.shutdown();
+        try {
+            m_es.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            m_logger.warn("Interrupted waiting for the importer batcher to stop");
+        }
+        for (TargetBatches batches : m_batches.values()) {
+            for (PartitionBatch batch : batches.m_batches.values()) {
+                batch.lingered();
+            }
+        }
+    }
+}
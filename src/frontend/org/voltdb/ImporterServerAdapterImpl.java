@@ -30,9 +30,31 @@ import java.util.function.Function;
  */
 public class ImporterServerAdapterImpl implements ImporterServerAdapter {
     private ImporterStatsCollector m_statsCollector;
+    // Null unless rows are batched
+    private final ImporterBatcher m_batcher;
 
     public ImporterServerAdapterImpl(ImporterStatsCollector statsCollector) {
         m_statsCollector = statsCollector;
+        if (ImporterBatcher.BATCH_SIZE > 1) {
+            m_batcher = new ImporterBatcher(new ImporterBatcher.Submitter() {
+                @Override
+                public boolean loadPartition(AbstractImporter importer, Function<Integer, Boolean> backPressurePredicate,
+                        ProcedureCallback callback, byte[] partitionParam, String tableName, byte upsertMode, VoltTable rows) {
+                    return getInternalConnectionHandler().callProcedure(importer, backPressurePredicate, null, callback,
+                            "@LoadSinglepartitionTable", partitionParam, tableName, upsertMode, rows);
+                }
+
+                @Override
+                public boolean callProcedure(AbstractImporter importer, Function<Integer, Boolean> backPressurePredicate,
+                        ProcedureCallback callback, String proc, Object... fieldList) {
+                    return getInternalConnectionHandler().callProcedure(importer, backPressurePredicate, m_statsCollector,
+                            callback, proc, fieldList);
+                }
+            }, statsCollector, new ImporterBatcher.CatalogResolver(),
+            ImporterBatcher.BATCH_SIZE, ImporterBatcher.LINGER_MILLIS);
+        } else {
+            m_batcher = null;
+        }
     }
 
     /**
@@ -44,10 +66,20 @@ public class ImporterServerAdapterImpl implements ImporterServerAdapter {
 
     @Override
     public boolean callProcedure(AbstractImporter importer, Function<Integer, Boolean> backPressurePredicate, ProcedureCallback procCallback, String proc, Object... fieldList) {
+        if (m_batcher != null && m_batcher.offer(importer, backPressurePredicate, procCallback, proc, fieldList)) {
+            return true;
+        }
         return getInternalConnectionHandler()
                 .callProcedure(importer, backPressurePredicate, m_statsCollector, procCallback, proc, fieldList);
     }
 
+    /** Load the rows waiting in batches, once the importers have stopped */
+    public void shutdown() {
+        if (m_batcher != null) {
+            m_batcher.shutdown();
+        }
+    }
+
     private InternalConnectionHandler getInternalConnectionHandler() {
         return VoltDB.instance().getClientInterface().getInternalConnectionHandler();
     }
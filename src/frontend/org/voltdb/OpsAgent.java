@@ -90,7 +90,9 @@ public abstract class OpsAgent
         private int expectedOpsResponses = 0;
         protected VoltTable[] aggregateTables = null;
         protected final long startTime;
-        private final JSONObject request;
+        protected final JSONObject request;
+        // Reported to the client instead of the tables when set
+        protected String failure = null;
         public PendingOpsRequest(
                 OpsSelector selector,
                 String subselector,
@@ -365,7 +367,12 @@ public abstract class OpsAgent
         // All of the null/empty table handling/detecting/generation sucks.  Just making it
         // work for now, not making it pretty. --izzy
         VoltTable responseTables[] = request.aggregateTables;
-        if (responseTables == null || responseTables.length == 0) {
+        if (request.failure != null) {
+            responseTables = new VoltTable[0];
+            statusCode = ClientResponse.GRACEFUL_FAILURE;
+            statusString = request.failure;
+        }
+        else if (responseTables == null || responseTables.length == 0) {
             responseTables = new VoltTable[0];
             statusCode = ClientResponse.GRACEFUL_FAILURE;
             statusString =
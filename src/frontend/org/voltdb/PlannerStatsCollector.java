@@ -194,7 +194,7 @@ public class PlannerStatsCollector extends StatsSource {
      * @param cacheUse     where the planned statement came from
      * @param partitionId  partition id
      */
-    public void endStatsCollection(long cache1Size, long cache2Size, CacheUse cacheUse, long partitionId) {
+    public synchronized void endStatsCollection(long cache1Size, long cache2Size, CacheUse cacheUse, long partitionId) {
         if (m_currentStartTime != null) {
             long delta = System.nanoTime() - m_currentStartTime;
             if (delta < 0) {
@@ -235,6 +235,22 @@ public class PlannerStatsCollector extends StatsSource {
         m_partitionId = partitionId;
     }
 
+    /**
+     * Called for a level 1 cache hit that was found without planning.
+     * It can run concurrently with planning, so it is not timed.
+     *
+     * @param cache1Size   number of entries in level 1 cache
+     * @param cache2Size   number of entries in level 2 cache
+     * @param partitionId  partition id
+     */
+    public synchronized void recordCache1Hit(long cache1Size, long cache2Size, long partitionId) {
+        m_cache1Level = cache1Size;
+        m_cache2Level = cache2Size;
+        m_cache1Hits++;
+        m_invocations++;
+        m_partitionId = partitionId;
+    }
+
     /**
      * Update the rowValues array with the latest statistical information.
      * This method is overrides the super class version
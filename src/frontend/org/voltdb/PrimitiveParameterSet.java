@@ -0,0 +1,381 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.nio.ByteBuffer;
+
+import org.voltdb.types.TimestampType;
+
+/**
+ * Allocation free alternative to {@link ParameterSet#fromByteBuffer(ByteBuffer)} for the
+ * parameters of single statement procedures.
+ *
+ * Parameters are read from the serialized invocation into primitive slots: integer, timestamp
+ * and float values into long and double arrays, strings and varbinaries as offsets into the
+ * serialized buffer. They are then written to the EE parameter set format of each statement
+ * directly, producing exactly the bytes the boxed path would have produced with
+ * {@link ParameterConverter#tryToMakeCompatible(Class, Object)} and {@link ParameterSet#flattenToBuffer(ByteBuffer)}.
+ *
+ * Only the common exact type matches are handled. Anything else, including values the boxed
+ * path would convert or reject, makes {@link #read(ByteBuffer)} or {@link #isCompatible(Class[], byte[][])}
+ * return false so the caller falls back to the boxed path and its error reporting.
+ *
+ * An instance is reused for every invocation of one procedure and is not thread safe.
+ */
+final class PrimitiveParameterSet {
+
+    // Sentinel length of a null string or varbinary
+    private static final int NULL_LENGTH = VoltType.NULL_STRING_LENGTH;
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Wire type of each parameter
+    private byte[] m_types = new byte[INITIAL_CAPACITY];
+    // Integer and timestamp values, widened to long
+    private long[] m_longs = new long[INITIAL_CAPACITY];
+    private double[] m_doubles = new double[INITIAL_CAPACITY];
+    // Position and length of string and varbinary values in m_source
+    private int[] m_offsets = new int[INITIAL_CAPACITY];
+    private int[] m_lengths = new int[INITIAL_CAPACITY];
+
+    private ByteBuffer m_source;
+    private int m_count;
+    private int m_serializedSize;
+
+    // Reusable EE parameter buffer of each statement
+    private ByteBuffer[] m_statementBuffers = new ByteBuffer[0];
+
+    /**
+     * Read the parameters of a serialized invocation without changing the position of the buffer.
+     * The buffer is referenced until the next call.
+     *
+     * @return false if any parameter has a type this class does not handle or the buffer is malformed
+     */
+    boolean read(ByteBuffer serialized) {
+        m_source = null;
+        m_count = 0;
+        try {
+            final int start = serialized.position();
+            int pos = start;
+            final short count = serialized.getShort(pos);
+            pos += 2;
+            if (count < 0) {
+                return false;
+            }
+            ensureCapacity(count);
+
+            for (int i = 0; i < count; i++) {
+                final byte type = serialized.get(pos++);
+                m_types[i] = type;
+                if (type == VoltType.NULL.getValue()) {
+                    continue;
+                }
+                else if (type == VoltType.TINYINT.getValue()) {
+                    m_longs[i] = serialized.get(pos);
+                    pos += 1;
+                }
+                else if (type == VoltType.SMALLINT.getValue()) {
+                    m_longs[i] = serialized.getShort(pos);
+                    pos += 2;
+                }
+                else if (type == VoltType.INTEGER.getValue()) {
+                    m_longs[i] = serialized.getInt(pos);
+                    pos += 4;
+                }
+                else if (type == VoltType.BIGINT.getValue() || type == VoltType.TIMESTAMP.getValue()) {
+                    m_longs[i] = serialized.getLong(pos);
+                    pos += 8;
+                }
+                else if (type == VoltType.FLOAT.getValue()) {
+                    m_doubles[i] = serialized.getDouble(pos);
+                    pos += 8;
+                }
+                else if (type == VoltType.STRING.getValue() || type == VoltType.VARBINARY.getValue()) {
+                    final int len = serialized.getInt(pos);
+                    pos += 4;
+                    if (len == NULL_LENGTH) {
+                        m_lengths[i] = NULL_LENGTH;
+                        continue;
+                    }
+                    if (len < 0 || len > serialized.limit() - pos) {
+                        return false;
+                    }
+                    m_offsets[i] = pos;
+                    m_lengths[i] = len;
+                    pos += len;
+                }
+                else {
+                    // Arrays, decimals, geospatial values, tables and booleans take the boxed path
+                    return false;
+                }
+            }
+
+            m_source = serialized;
+            m_count = count;
+            m_serializedSize = pos - start;
+            return true;
+        }
+        catch (IndexOutOfBoundsException e) {
+            // Truncated, let the boxed path report it
+            return false;
+        }
+    }
+
+    int size() {
+        return m_count;
+    }
+
+    /**
+     * @return The number of bytes the parameters took in the serialized invocation
+     */
+    int getSerializedSize() {
+        return m_serializedSize;
+    }
+
+    /**
+     * Check that every parameter converts to the procedure parameter type the same way the
+     * boxed path converts it, and that the statements consume exactly the procedure parameters.
+     *
+     * @param procTypes Java types of the procedure parameters
+     * @param stmtTypes Parameter types of each statement, in the order the statements consume the procedure parameters
+     */
+    boolean isCompatible(Class<?>[] procTypes, byte[][] stmtTypes) {
+        if (m_source == null || m_count != procTypes.length) {
+            return false;
+        }
+        int index = 0;
+        for (byte[] types : stmtTypes) {
+            for (byte stmtType : types) {
+                if (index >= m_count || !isCompatible(index, procTypes[index], stmtType)) {
+                    return false;
+                }
+                index++;
+            }
+        }
+        return index == m_count;
+    }
+
+    private boolean isCompatible(int index, Class<?> procType, byte stmtType) {
+        final byte type = m_types[index];
+        final boolean isNull = type == VoltType.NULL.getValue();
+        if (procType == long.class) {
+            return isNull || type == VoltType.TINYINT.getValue() || type == VoltType.SMALLINT.getValue() ||
+                    type == VoltType.INTEGER.getValue() || type == VoltType.BIGINT.getValue();
+        }
+        if (procType == double.class) {
+            return isNull || type == VoltType.FLOAT.getValue();
+        }
+        if (procType == String.class) {
+            if (!isNull && type != VoltType.STRING.getValue()) {
+                return false;
+            }
+            if (isNullString(index, procType)) {
+                return isNullableAsString(stmtType);
+            }
+            // Anything the decoder would replace would not survive the round trip through a String
+            return isWellFormedUtf8(m_source, m_offsets[index], m_lengths[index]);
+        }
+        if (procType == byte[].class) {
+            if (isNull || (type == VoltType.VARBINARY.getValue() && m_lengths[index] == NULL_LENGTH)) {
+                return isNullableAsString(stmtType);
+            }
+            return type == VoltType.VARBINARY.getValue();
+        }
+        if (procType == TimestampType.class) {
+            if (isNull) {
+                return stmtType == VoltType.TIMESTAMP.getValue();
+            }
+            return type == VoltType.TIMESTAMP.getValue();
+        }
+        return false;
+    }
+
+    private static boolean isNullableAsString(byte stmtType) {
+        return stmtType == VoltType.STRING.getValue() || stmtType == VoltType.VARBINARY.getValue();
+    }
+
+    /**
+     * Write parameters [firstParam, firstParam + stmtTypes.length) in the EE parameter set format.
+     * Requires {@link #isCompatible(Class[], byte[][])} to have passed.
+     *
+     * @return A buffer owned by this instance, positioned at 0 and limited to the parameter set,
+     *         valid until the next call for the same statement
+     */
+    ByteBuffer flattenForStatement(int stmtIndex, int firstParam, Class<?>[] procTypes, byte[] stmtTypes) {
+        final int end = firstParam + stmtTypes.length;
+        int size = 2;
+        for (int i = firstParam; i < end; i++) {
+            size += 1 + serializedValueSize(i, procTypes[i]);
+        }
+
+        final ByteBuffer buf = getStatementBuffer(stmtIndex, size);
+        buf.putShort((short) stmtTypes.length);
+        for (int i = firstParam; i < end; i++) {
+            final Class<?> procType = procTypes[i];
+            final byte type = m_types[i];
+            if (procType == long.class) {
+                buf.put(VoltType.BIGINT.getValue());
+                buf.putLong(isNullValue(type, m_longs[i]) ? VoltType.NULL_BIGINT : m_longs[i]);
+            }
+            else if (procType == double.class) {
+                buf.put(VoltType.FLOAT.getValue());
+                buf.putDouble(type == VoltType.NULL.getValue() ? VoltType.NULL_FLOAT : m_doubles[i]);
+            }
+            else if (procType == TimestampType.class) {
+                buf.put(VoltType.TIMESTAMP.getValue());
+                buf.putLong(type == VoltType.NULL.getValue() ? Long.MIN_VALUE : m_longs[i]);
+            }
+            else if (isNullString(i, procType)) {
+                // VoltType.NULL_STRING_OR_VARBINARY
+                buf.put(VoltType.STRING.getValue());
+                buf.putInt(NULL_LENGTH);
+            }
+            else {
+                assert(procType == String.class || procType == byte[].class);
+                buf.put(procType == String.class ? VoltType.STRING.getValue() : VoltType.VARBINARY.getValue());
+                final int len = m_lengths[i];
+                buf.putInt(len);
+                final ByteBuffer value = m_source.duplicate();
+                value.limit(m_offsets[i] + len).position(m_offsets[i]);
+                buf.put(value);
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private int serializedValueSize(int index, Class<?> procType) {
+        if (procType == String.class || procType == byte[].class) {
+            return isNullString(index, procType) ? 4 : 4 + m_lengths[index];
+        }
+        return 8;
+    }
+
+    /*
+     * Null, a null string or varbinary, or a string that ParameterConverter takes for a CSV null
+     */
+    private boolean isNullString(int index, Class<?> procType) {
+        if (m_types[index] == VoltType.NULL.getValue() || m_lengths[index] == NULL_LENGTH) {
+            return true;
+        }
+        return procType == String.class && m_lengths[index] == 2 &&
+                m_source.get(m_offsets[index]) == '\\' && m_source.get(m_offsets[index] + 1) == 'N';
+    }
+
+    /*
+     * Null or the null sentinel of the narrower integer type it was sent as
+     */
+    private static boolean isNullValue(byte type, long value) {
+        if (type == VoltType.NULL.getValue()) {
+            return true;
+        }
+        if (type == VoltType.TINYINT.getValue()) {
+            return value == VoltType.NULL_TINYINT;
+        }
+        if (type == VoltType.SMALLINT.getValue()) {
+            return value == VoltType.NULL_SMALLINT;
+        }
+        if (type == VoltType.INTEGER.getValue()) {
+            return value == VoltType.NULL_INTEGER;
+        }
+        return value == VoltType.NULL_BIGINT;
+    }
+
+    private ByteBuffer getStatementBuffer(int stmtIndex, int size) {
+        if (stmtIndex >= m_statementBuffers.length) {
+            ByteBuffer[] buffers = new ByteBuffer[stmtIndex + 1];
+            System.arraycopy(m_statementBuffers, 0, buffers, 0, m_statementBuffers.length);
+            m_statementBuffers = buffers;
+        }
+        ByteBuffer buf = m_statementBuffers[stmtIndex];
+        if (buf == null || buf.capacity() < size) {
+            buf = ByteBuffer.allocate(Math.max(size, buf == null ? 256 : buf.capacity() * 2));
+            m_statementBuffers[stmtIndex] = buf;
+        }
+        buf.clear();
+        return buf;
+    }
+
+    private void ensureCapacity(int count) {
+        if (count <= m_types.length) {
+            return;
+        }
+        m_types = new byte[count];
+        m_longs = new long[count];
+        m_doubles = new double[count];
+        m_offsets = new int[count];
+        m_lengths = new int[count];
+    }
+
+    /**
+     * Check that bytes are UTF-8 the JDK decoder accepts as is, which is exactly what
+     * re-encodes to the same bytes: no overlong forms, surrogates or code points above U+10FFFF.
+     */
+    static boolean isWellFormedUtf8(ByteBuffer buf, int offset, int length) {
+        final int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            final int b = buf.get(i) & 0xff;
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+            final int extra;
+            int min = 0x80;
+            int max = 0xbf;
+            if (b >= 0xc2 && b <= 0xdf) {
+                extra = 1;
+            }
+            else if (b >= 0xe0 && b <= 0xef) {
+                extra = 2;
+                if (b == 0xe0) {
+                    min = 0xa0;
+                }
+                else if (b == 0xed) {
+                    max = 0x9f;
+                }
+            }
+            else if (b >= 0xf0 && b <= 0xf4) {
+                extra = 3;
+                if (b == 0xf0) {
+                    min = 0x90;
+                }
+                else if (b == 0xf4) {
+                    max = 0x8f;
+                }
+            }
+            else {
+                return false;
+            }
+            if (i + extra >= end) {
+                return false;
+            }
+            int next = buf.get(i + 1) & 0xff;
+            if (next < min || next > max) {
+                return false;
+            }
+            for (int j = 2; j <= extra; j++) {
+                next = buf.get(i + j) & 0xff;
+                if (next < 0x80 || next > 0xbf) {
+                    return false;
+                }
+            }
+            i += extra + 1;
+        }
+        return true;
+    }
+}
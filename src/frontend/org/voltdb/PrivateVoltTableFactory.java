@@ -19,6 +19,8 @@ package org.voltdb;
 
 import java.nio.ByteBuffer;
 
+import org.voltcore.utils.DBBPool.BBContainer;
+
 /**
  * Deliberately awkward access to package-private constructors of
  * VoltTable. End users shouldn't call the constructors, but VoltDB
@@ -48,6 +50,35 @@ public abstract class PrivateVoltTableFactory {
         return vt;
     }
 
+    /**
+     * End users should not call this method.
+     * Hand the table a reference to the shared result buffer it is a view of,
+     * so the buffer is not reused until the table has been serialized. The
+     * reference is discarded by {@link #releaseLeasedBuffer(VoltTable)} or
+     * when the table is converted to a heap buffer.
+     */
+    public static void attachLeasedBuffer(VoltTable vt, BBContainer leased) {
+        assert(vt.m_leasedBuffer == null);
+        assert(vt.m_buffer.isDirect());
+        vt.m_leasedBuffer = leased;
+    }
+
+    /**
+     * End users should not call this method.
+     * @return true if the table is a view of a leased result buffer
+     */
+    public static boolean hasLeasedBuffer(VoltTable vt) {
+        return vt.m_leasedBuffer != null;
+    }
+
+    /**
+     * End users should not call this method.
+     * Discard the table's reference to a leased result buffer, if any.
+     */
+    public static void releaseLeasedBuffer(VoltTable vt) {
+        vt.releaseLeasedBuffer();
+    }
+
     /**
      * End users should not call this method.
      * Obtain a reference to the table's underlying buffer.
@@ -29,10 +29,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 
 import org.voltcore.logging.VoltLogger;
@@ -64,6 +66,8 @@ import org.voltdb.jni.ExecutionEngine;
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.messaging.FragmentTaskMessage;
 import org.voltdb.messaging.Iv2InitiateTaskMessage;
+import org.voltdb.metrics.Counter;
+import org.voltdb.metrics.MetricsRegistry;
 import org.voltdb.planner.ActivePlanRepository;
 import org.voltdb.sysprocs.AdHocBase;
 import org.voltdb.sysprocs.AdHocNTBase;
@@ -88,14 +92,24 @@ public class ProcedureRunner {
     //
     // This must be less than or equal to MAX_BATCH_COUNT in src/ee/execution/VoltDBEngine.h
     final static int MAX_BATCH_SIZE = 200;
+    // Native metric families, labelled by procedure
+    private static final String INVOCATIONS_METRIC = "voltdb_procedure_invocations";
+    private static final String ABORTS_METRIC = "voltdb_procedure_aborts";
+    private static final String FAILURES_METRIC = "voltdb_procedure_failures";
+
     static class QueuedSQL {
         SQLStmt stmt;
         ParameterSet params;
+        // EE parameter set written straight from primitive parameters, used instead of params
+        ByteBuffer serializedParams;
         Expectation expectation = null;
     }
     protected final ArrayList<QueuedSQL> m_batch = new ArrayList<QueuedSQL>(100);
     // cached fake SQLStmt array for single statement non-java procs
     protected final ArrayList<QueuedSQL> m_sqlStmts = new ArrayList<QueuedSQL>(100);
+    // unboxed parameters of single statement non-java procs, see readPrimitiveParameters()
+    private final PrimitiveParameterSet m_primitiveParams;
+    private byte[][] m_sqlStmtParamTypes = null;
     QueuedSQL m_cachedSingleStmt = new QueuedSQL(); // never null
     boolean m_seenFinalBatch = false;
 
@@ -143,6 +157,10 @@ public class ProcedureRunner {
     protected final boolean m_isReadOnly;
     protected final int m_partitionColumn;
     protected final VoltType m_partitionColumnType;
+    // native metrics shared by the runners of this procedure on every site
+    private final Counter m_invocationsMetric;
+    private final Counter m_abortsMetric;
+    private final Counter m_failuresMetric;
 
     // dependency ids for ad hoc
     protected final static int AGG_DEPID = 1;
@@ -185,6 +203,13 @@ public class ProcedureRunner {
             m_partitionColumnType = null;
         }
         m_site = site;
+        m_primitiveParams = m_hasJava ? null : new PrimitiveParameterSet();
+        m_invocationsMetric = MetricsRegistry.instance().counter(INVOCATIONS_METRIC,
+                "Stored procedure invocations run on this host", "procedure", m_procedureName);
+        m_abortsMetric = MetricsRegistry.instance().counter(ABORTS_METRIC,
+                "Stored procedure invocations that rolled back by user abort", "procedure", m_procedureName);
+        m_failuresMetric = MetricsRegistry.instance().counter(FAILURES_METRIC,
+                "Stored procedure invocations that failed other than by user abort", "procedure", m_procedureName);
 
         m_procedure.init(this);
 
@@ -198,6 +223,31 @@ public class ProcedureRunner {
         }
     }
 
+    /**
+     * Drop the native metrics of the procedures a catalog update removed. Runners name a
+     * Java procedure after its class and any other after the procedure.
+     */
+    static void retainMetrics(CatalogContext context) {
+        final Set<String> names = new HashSet<>();
+        for (Procedure proc : context.procedures) {
+            names.add(proc.getHasjava() ? simpleName(proc.getClassname()) : proc.getTypeName());
+        }
+        for (Procedure proc : context.m_defaultProcs.m_defaultProcMap.values()) {
+            names.add(proc.getTypeName());
+        }
+        for (SystemProcedureCatalog.Config config : SystemProcedureCatalog.listing.values()) {
+            names.add(simpleName(config.getClassname()));
+        }
+        final MetricsRegistry registry = MetricsRegistry.instance();
+        registry.retainSeries(INVOCATIONS_METRIC, "procedure", names);
+        registry.retainSeries(ABORTS_METRIC, "procedure", names);
+        registry.retainSeries(FAILURES_METRIC, "procedure", names);
+    }
+
+    private static String simpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
     public void initSiteAndStats(SiteProcedureConnection site) {
         m_site = site;
         // Normally m_statsCollector is returned as it is and there is no affect to assign it to itself.
@@ -277,16 +327,50 @@ public class ProcedureRunner {
      * Wraps coreCall with statistics code.
      */
     public ClientResponseImpl call(Object... paramListIn) {
+        return call(paramListIn, false);
+    }
+
+    /**
+     * Single partition, single statement procedures can skip boxing their parameters:
+     * read them from the serialized invocation into primitive slots, to be written
+     * straight to the EE parameter buffer by {@link #callWithPrimitiveParameters()}.
+     *
+     * @param serializedParams Serialized parameters of the invocation, may be null
+     * @return false if the procedure or any of the parameters needs the boxed path,
+     *         in which case the parameters must be passed to {@link #call(Object...)}
+     */
+    public boolean readPrimitiveParameters(ByteBuffer serializedParams) {
+        if (m_primitiveParams == null || serializedParams == null || !m_isSinglePartition ||
+                getNonVoltDBBackendIfExists() != null) {
+            return false;
+        }
+        return m_primitiveParams.read(serializedParams) &&
+                m_primitiveParams.isCompatible(m_paramTypes, getSqlStmtParamTypes());
+    }
+
+    /**
+     * Run the procedure with the parameters read by a successful {@link #readPrimitiveParameters(ByteBuffer)}.
+     */
+    public ClientResponseImpl callWithPrimitiveParameters() {
+        return call(null, true);
+    }
+
+    private ClientResponseImpl call(Object[] paramListIn, boolean primitiveParams) {
         m_perCallStats = m_statsCollector.beginProcedure();
 
         // if we're keeping track, calculate parameter size
         if (m_perCallStats != null) {
-            StoredProcedureInvocation invoc = (m_txnState != null ? m_txnState.getInvocation() : null);
-            ParameterSet params = (invoc != null ? invoc.getParams() : ParameterSet.fromArrayNoCopy(paramListIn));
-            m_perCallStats.setParameterSize(params.getSerializedSize());
+            if (primitiveParams) {
+                m_perCallStats.setParameterSize(m_primitiveParams.getSerializedSize());
+            }
+            else {
+                StoredProcedureInvocation invoc = (m_txnState != null ? m_txnState.getInvocation() : null);
+                ParameterSet params = (invoc != null ? invoc.getParams() : ParameterSet.fromArrayNoCopy(paramListIn));
+                m_perCallStats.setParameterSize(params.getSerializedSize());
+            }
         }
 
-        ClientResponseImpl result = coreCall(paramListIn);
+        ClientResponseImpl result = coreCall(primitiveParams, paramListIn);
 
         // if we're keeping track, calculate result size
         if (m_perCallStats != null) {
@@ -297,6 +381,12 @@ public class ProcedureRunner {
                                       (result.getStatus() != ClientResponse.USER_ABORT) &&
                                       (result.getStatus() != ClientResponse.SUCCESS),
                                       m_perCallStats);
+        m_invocationsMetric.inc();
+        if (result.getStatus() == ClientResponse.USER_ABORT) {
+            m_abortsMetric.inc();
+        } else if (result.getStatus() != ClientResponse.SUCCESS) {
+            m_failuresMetric.inc();
+        }
         // allow the GC to collect per-call stats if this proc isn't called for a while
         m_perCallStats = null;
 
@@ -312,8 +402,19 @@ public class ProcedureRunner {
                 m_txnState.getInvocation().getBatchTimeout();
     }
 
+    private byte[][] getSqlStmtParamTypes() {
+        if (m_sqlStmtParamTypes == null) {
+            byte[][] types = new byte[m_sqlStmts.size()][];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = m_sqlStmts.get(i).stmt.statementParamTypes;
+            }
+            m_sqlStmtParamTypes = types;
+        }
+        return m_sqlStmtParamTypes;
+    }
+
     @SuppressWarnings("finally")
-    private ClientResponseImpl coreCall(Object... paramListIn) {
+    private ClientResponseImpl coreCall(boolean primitiveParams, Object... paramListIn) {
         // verify per-txn state has been reset
         assert(m_statusCode == ClientResponse.SUCCESS);
         assert(m_statusString == null);
@@ -354,24 +455,27 @@ public class ProcedureRunner {
                 paramList = combinedParams;
             }
 
-            if (paramList.length != m_paramTypes.length) {
-                String msg = "PROCEDURE " + m_procedureName + " EXPECTS " + String.valueOf(m_paramTypes.length) +
-                    " PARAMS, BUT RECEIVED " + String.valueOf(paramList.length);
-                m_statusCode = ClientResponse.GRACEFUL_FAILURE;
-                return getErrorResponse(m_statusCode, m_appStatusCode, m_appStatusString, msg, null);
-            }
-
-            for (int i = 0; i < m_paramTypes.length; i++) {
-                try {
-                    paramList[i] = ParameterConverter.tryToMakeCompatible(m_paramTypes[i], paramList[i]);
-                    // check the result type in an assert
-                    assert(ParameterConverter.verifyParameterConversion(paramList[i], m_paramTypes[i]));
-                } catch (Exception e) {
-                    String msg = "PROCEDURE " + m_procedureName + " TYPE ERROR FOR PARAMETER " + i +
-                            ": " + e.toString();
+            // primitive parameters were checked against the parameter types when they were read
+            if (!primitiveParams) {
+                if (paramList.length != m_paramTypes.length) {
+                    String msg = "PROCEDURE " + m_procedureName + " EXPECTS " + String.valueOf(m_paramTypes.length) +
+                        " PARAMS, BUT RECEIVED " + String.valueOf(paramList.length);
                     m_statusCode = ClientResponse.GRACEFUL_FAILURE;
                     return getErrorResponse(m_statusCode, m_appStatusCode, m_appStatusString, msg, null);
                 }
+
+                for (int i = 0; i < m_paramTypes.length; i++) {
+                    try {
+                        paramList[i] = ParameterConverter.tryToMakeCompatible(m_paramTypes[i], paramList[i]);
+                        // check the result type in an assert
+                        assert(ParameterConverter.verifyParameterConversion(paramList[i], m_paramTypes[i]));
+                    } catch (Exception e) {
+                        String msg = "PROCEDURE " + m_procedureName + " TYPE ERROR FOR PARAMETER " + i +
+                                ": " + e.toString();
+                        m_statusCode = ClientResponse.GRACEFUL_FAILURE;
+                        return getErrorResponse(m_statusCode, m_appStatusCode, m_appStatusString, msg, null);
+                    }
+                }
             }
 
             // run a regular java class
@@ -428,6 +532,12 @@ public class ProcedureRunner {
                     for (int i = 0; i < m_catProc.getStatements().size(); i++) {
                         QueuedSQL curStmt = m_sqlStmts.get(i);
                         int numStmtParams = curStmt.stmt.statementParamTypes.length;
+                        if (primitiveParams) {
+                            curStmt.serializedParams = m_primitiveParams.flattenForStatement(i, curParamOffset,
+                                    m_paramTypes, curStmt.stmt.statementParamTypes);
+                            curParamOffset += numStmtParams;
+                            continue;
+                        }
                         Object[] stmtParamList = Arrays.copyOfRange(paramList, curParamOffset,
                                 curParamOffset + numStmtParams);
                         curStmt.params = getCleanParams(curStmt.stmt, false, stmtParamList);
@@ -444,7 +554,9 @@ public class ProcedureRunner {
                     if (getNonVoltDBBackendIfExists() == null) {
                         m_batch.addAll(m_sqlStmts);
                         results = voltExecuteSQL(true);
-                        results = convertTablesToHeapBuffers(results);
+                        if (!leaseResultBuffer(results)) {
+                            results = convertTablesToHeapBuffers(results);
+                        }
                     }
                 } catch (SerializableException ex) {
                     retval = getErrorResponse(m_procedureName,
@@ -490,6 +602,7 @@ public class ProcedureRunner {
             m_batch.clear();
             for ( QueuedSQL stmt: m_sqlStmts ) {
                 stmt.params = null;
+                stmt.serializedParams = null;
                 stmt.expectation = null;
             }
 
@@ -1332,6 +1445,21 @@ public class ProcedureRunner {
        return response;
     }
 
+    /**
+     * Single partition reads answering a client connected to this host can skip
+     * the heap copy: the EE result buffer is leased to the result tables, which
+     * the client interface serializes straight to the network and then releases.
+     * Writes and responses headed to another host keep the copy.
+     */
+    private boolean leaseResultBuffer(VoltTable[] results) {
+        if (!m_isSinglePartition || !m_isReadOnly || m_txnState == null ||
+                CoreUtils.getHostIdFromHSId(m_txnState.initiatorHSId) != m_site.getCorrespondingHostId()) {
+            return false;
+        }
+        ExecutionEngine ee = getExecutionEngine();
+        return ee != null && ee.leaseResultBuffer(results);
+    }
+
     final private VoltTable[] convertTablesToHeapBuffers(VoltTable[] results) {
         for (VoltTable table : results) {
             // Make sure this table does not use an ee cache buffer
@@ -1596,7 +1724,7 @@ public class ProcedureRunner {
             assert (qs.stmt.collector == null);
             fragmentIds[i] = qs.stmt.aggregator.id;
             // use the pre-serialized params if it exists
-            params[i] = qs.params;
+            params[i] = qs.serializedParams != null ? qs.serializedParams : qs.params;
             sqlTexts[i] = qs.stmt.getText();
             isWriteFrag[i] = !qs.stmt.isReadOnly;
             sqlCRCs[i] = SQLStmtAdHocHelper.getHash(qs.stmt);
@@ -1657,7 +1785,9 @@ public class ProcedureRunner {
                 boolean failed = i == succeededFragmentsCount;
 
                 m_perCallStats.recordStatementStats(qs.stmt.getStmtName(), isCoordinatorTask, failed,
-                        executionTimes == null ? 0 : executionTimes[i], results == null ? null : results[i], qs.params);
+                        executionTimes == null ? 0 : executionTimes[i], results == null ? null : results[i],
+                        qs.serializedParams != null ? qs.serializedParams.limit() :
+                            (qs.params == null ? 0 : qs.params.getSerializedSize()));
 
                 // If this fragment failed, no subsequent fragments will be
                 // executed.
@@ -37,6 +37,10 @@ public class ProcedureStatsCollector extends SiteStatsSource {
 
     private static final VoltLogger log = new VoltLogger("HOST");
 
+    // Execution time percentiles, null when the histograms aren't kept, see ExecutionTimeHistogram
+    static final String[] PERCENTILE_COLUMNS = {
+        "P50_EXECUTION_TIME", "P95_EXECUTION_TIME", "P99_EXECUTION_TIME", "P999_EXECUTION_TIME" };
+
     /**
      * Record statistics of procedure execution every N procedure invocations.
      */
@@ -91,7 +95,7 @@ public class ProcedureStatsCollector extends SiteStatsSource {
         // Use one StatementStats instance to hold the procedure-wide statistics.
         // The statement name for this StatementStats is "<ALL>".
         // It does not have coordinator task to track.
-        StatementStats procedureWideStats = new StatementStats("<ALL>", false);
+        StatementStats procedureWideStats = new StatementStats("<ALL>", false, ExecutionTimeHistogram.PROCEDURES_ENABLED);
         m_procStatsData = procedureWideStats.m_workerTask;
         // The NULL key entry is reserved for the procedure-wide statistics.
         m_stmtStatsMap.put(null, procedureWideStats);
@@ -100,7 +104,8 @@ public class ProcedureStatsCollector extends SiteStatsSource {
             for (String stmtName : stmtNames) {
                 // If the procedure is a multi-partition one, its statements will have coordinator tasks.
                 boolean hasCoordinatorTask = ! singlePartition;
-                m_stmtStatsMap.put(stmtName, new StatementStats(stmtName, hasCoordinatorTask));
+                m_stmtStatsMap.put(stmtName, new StatementStats(stmtName, hasCoordinatorTask,
+                                                                ExecutionTimeHistogram.STATEMENTS_ENABLED));
             }
         }
         m_isTransactional = isTransactional;
@@ -132,10 +137,48 @@ public class ProcedureStatsCollector extends SiteStatsSource {
      * Called after a procedure is finished executing. Compares the start and end time and calculates
      * the statistics.
      *
-     * Synchronized because it modifies internal state and (for NT procs) can be called from multiple
-     * threads. For transactional procs the lock should be uncontended.,
+     * The execution time is recorded in its histogram without a lock. The rest of the statistics
+     * are updated under the lock of this stats source because that modifies internal state and
+     * (for NT procs) can be called from multiple threads. For transactional procs the lock should
+     * be uncontended.
      */
-    public final synchronized void endProcedure(boolean aborted, boolean failed, SingleCallStatsToken statsToken) {
+    public final void endProcedure(boolean aborted, boolean failed, SingleCallStatsToken statsToken) {
+        long duration = -1;
+        if (statsToken.samplingProcedure()) {
+            duration = System.nanoTime() - statsToken.startTimeNanos;
+            if (duration >= 0 && m_procStatsData.m_executionTimes != null) {
+                m_procStatsData.m_executionTimes.record(duration);
+            }
+        }
+        updateProcedureStats(aborted, failed, statsToken, duration);
+
+        // stop here if no statements
+        if (!statsToken.samplingProcedure() || duration < 0 || statsToken.stmtStats == null) {
+            return;
+        }
+
+        for (SingleCallStatsToken.PerStmtStats pss : statsToken.stmtStats) {
+            long stmtDuration = 0;
+            int stmtResultSize = 0;
+            int stmtParameterSetSize = 0;
+            if (pss.measurements != null) {
+                stmtDuration = pss.measurements.stmtDuration;
+                stmtResultSize = pss.measurements.stmtResultSize;
+                stmtParameterSetSize = pss.measurements.stmtParameterSetSize;
+            }
+
+            endFragment(pss.stmtName,
+                        pss.isCoordinatorTask,
+                        pss.stmtFailed,
+                        pss.measurements != null,
+                        stmtDuration,
+                        stmtResultSize,
+                        stmtParameterSetSize);
+        }
+    }
+
+    private synchronized void updateProcedureStats(boolean aborted, boolean failed,
+                                                   SingleCallStatsToken statsToken, long duration) {
         if (aborted) {
             m_procStatsData.m_abortCount++;
         }
@@ -151,8 +194,6 @@ public class ProcedureStatsCollector extends SiteStatsSource {
 
         // This is a sampled invocation.
         // Update timings and size statistics.
-        final long endTime = System.nanoTime();
-        final long duration = endTime - statsToken.startTimeNanos;
         if (duration < 0) {
             if (Math.abs(duration) > 1000000000) {
                 log.info("Procedure: " + m_procName +
@@ -180,52 +221,43 @@ public class ProcedureStatsCollector extends SiteStatsSource {
         m_procStatsData.m_maxParameterSetSize = Math.max(statsToken.parameterSetSize, m_procStatsData.m_maxParameterSetSize);
         m_procStatsData.m_incrMinParameterSetSize = Math.min(statsToken.parameterSetSize, m_procStatsData.m_incrMinParameterSetSize);
         m_procStatsData.m_incrMaxParameterSetSize = Math.max(statsToken.parameterSetSize, m_procStatsData.m_incrMaxParameterSetSize);
-
-        // stop here if no statements
-        if (statsToken.stmtStats == null) {
-            return;
-        }
-
-        for (SingleCallStatsToken.PerStmtStats pss : statsToken.stmtStats) {
-            long stmtDuration = 0;
-            int stmtResultSize = 0;
-            int stmtParameterSetSize = 0;
-            if (pss.measurements != null) {
-                stmtDuration = pss.measurements.stmtDuration;
-                stmtResultSize = pss.measurements.stmtResultSize;
-                stmtParameterSetSize = pss.measurements.stmtParameterSetSize;
-            }
-
-            endFragment(pss.stmtName,
-                        pss.isCoordinatorTask,
-                        pss.stmtFailed,
-                        pss.measurements != null,
-                        stmtDuration,
-                        stmtResultSize,
-                        stmtParameterSetSize);
-        }
     }
 
     /**
      * This function will be called after a statement finish running.
      * It updates the data structures to maintain the statistics.
      */
-    public final synchronized void endFragment(String stmtName,
-                                               boolean isCoordinatorTask,
-                                               boolean failed,
-                                               boolean sampledStmt,
-                                               long duration,
-                                               int resultSize,
-                                               int parameterSetSize)
+    public final void endFragment(String stmtName,
+                                  boolean isCoordinatorTask,
+                                  boolean failed,
+                                  boolean sampledStmt,
+                                  long duration,
+                                  int resultSize,
+                                  int parameterSetSize)
     {
         if (stmtName == null) {
             return;
         }
+        // The map isn't modified after construction
         StatementStats stmtStats = m_stmtStatsMap.get(stmtName);
         if (stmtStats == null) {
             return;
         }
         StatsData dataToUpdate = isCoordinatorTask ? stmtStats.m_coordinatorTask : stmtStats.m_workerTask;
+        if (sampledStmt && duration >= 0 && dataToUpdate.m_executionTimes != null) {
+            dataToUpdate.m_executionTimes.record(duration);
+        }
+        updateStatementStats(stmtStats, dataToUpdate, failed, sampledStmt, duration, resultSize, parameterSetSize);
+    }
+
+    private synchronized void updateStatementStats(StatementStats stmtStats,
+                                                   StatsData dataToUpdate,
+                                                   boolean failed,
+                                                   boolean sampledStmt,
+                                                   long duration,
+                                                   int resultSize,
+                                                   int parameterSetSize)
+    {
         // m_failureCount and m_invocations need to be updated even if the current invocation is not sampled.
         if (failed) {
             dataToUpdate.m_failureCount++;
@@ -300,6 +332,8 @@ public class ProcedureStatsCollector extends SiteStatsSource {
         int minParameterSetSize = currRow.getMinParameterSetSize();
         int maxParameterSetSize = currRow.getMaxParameterSetSize();
         long totalParameterSetSize = currRow.getTotalParameterSetSize();
+        // Before the invocation counts of an interval are reset
+        long[] percentiles = currRow.pollExecutionTimePercentiles(m_incremental);
 
         if (m_incremental) {
             abortCount -= currRow.getLastAbortCountAndReset();
@@ -342,6 +376,9 @@ public class ProcedureStatsCollector extends SiteStatsSource {
         rowValues[columnNameToIndex.get("MIN_PARAMETER_SET_SIZE")] = minParameterSetSize;
         rowValues[columnNameToIndex.get("MAX_PARAMETER_SET_SIZE")] = maxParameterSetSize;
         rowValues[columnNameToIndex.get("TRANSACTIONAL")] = (byte) (m_isTransactional ? 1 : 0);
+        for (int ii = 0; ii < PERCENTILE_COLUMNS.length; ii++) {
+            rowValues[columnNameToIndex.get(PERCENTILE_COLUMNS[ii])] = percentiles == null ? null : percentiles[ii];
+        }
     }
 
     /**
@@ -368,6 +405,9 @@ public class ProcedureStatsCollector extends SiteStatsSource {
         columns.add(new VoltTable.ColumnInfo("ABORTS", VoltType.BIGINT));
         columns.add(new VoltTable.ColumnInfo("FAILURES", VoltType.BIGINT));
         columns.add(new VoltTable.ColumnInfo("TRANSACTIONAL", VoltType.TINYINT));
+        for (String column : PERCENTILE_COLUMNS) {
+            columns.add(new VoltTable.ColumnInfo(column, VoltType.BIGINT));
+        }
     }
 
     @Override
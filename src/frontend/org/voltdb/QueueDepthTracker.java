@@ -19,12 +19,12 @@ package org.voltdb;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.LinkedTransferQueue;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltdb.VoltTable.ColumnInfo;
 import org.voltdb.iv2.SiteTasker;
+import org.voltdb.iv2.SiteTaskerQueue;
 
 /**
  * A class to track and generate statistics regarding queue depth.
@@ -36,10 +36,16 @@ public class QueueDepthTracker extends SiteStatsSource {
 
     private static final VoltLogger s_logger = new VoltLogger("HOST");
 
-    private final AtomicInteger m_depth;
+    /*
+     * The depth is the tasks offered less the tasks polled. Offers come from any thread and
+     * are counted without contending with each other or with the site thread, which is the
+     * only one counting polls.
+     */
+    private final LongAdder m_offered = new LongAdder();
+    private volatile long m_polled = 0;
     private long m_lastWaitTime;
     private final ArrayBlockingQueue<QueueStatus> m_historicalData;
-    private LinkedTransferQueue<SiteTasker> m_tasks;
+    private SiteTaskerQueue m_tasks;
     private long m_maxWaitTimeWindowSize = 5_000_000_000L; // window size set to 5 seconds
     private long m_maxWaitLastLogTime;
     private volatile long m_recentMaxWaitTime;
@@ -61,10 +67,10 @@ public class QueueDepthTracker extends SiteStatsSource {
         }
     }
 
-    public QueueDepthTracker(long siteId, LinkedTransferQueue<SiteTasker> tasks) {
+    public QueueDepthTracker(long siteId, SiteTaskerQueue tasks) {
         super(siteId, false);
         m_historicalData = new ArrayBlockingQueue<>(10);
-        m_depth = new AtomicInteger(tasks.size());
+        m_offered.add(tasks.size());
         m_lastWaitTime = 0;
         m_maxWaitLastLogTime = System.nanoTime();
         m_recentMaxWaitTime = 0;
@@ -74,11 +80,11 @@ public class QueueDepthTracker extends SiteStatsSource {
     }
 
     public void offerUpdate() {
-        m_depth.incrementAndGet();
+        m_offered.increment();
     }
 
     public void pollUpdate(long offerTime) {
-        m_depth.decrementAndGet();
+        m_polled++;
         long currentTime = System.nanoTime();
         m_lastWaitTime = currentTime - offerTime;
         // if max wait time was last logged less than m_recentWindowSize ago
@@ -144,7 +150,10 @@ public class QueueDepthTracker extends SiteStatsSource {
                 }
             }
         }
-        rowValues[columnNameToIndex.get("CURRENT_DEPTH")] = m_depth;
+        // Read the polls first. The offer of every task polled so far is then counted in the
+        // sum, so the depth can't come out negative.
+        final long polled = m_polled;
+        rowValues[columnNameToIndex.get("CURRENT_DEPTH")] = (int) (m_offered.sum() - polled);
         rowValues[columnNameToIndex.get("POLL_COUNT")] = totalPollCountInWindow;
         // wait times are in microseconds
         rowValues[columnNameToIndex.get("AVG_WAIT")] = (totalWaitTimeInWindow / Math.max(1, totalPollCountInWindow)) / 1000;
@@ -118,6 +118,7 @@ import org.voltdb.catalog.Table;
 import org.voltdb.common.Constants;
 import org.voltdb.common.NodeState;
 import org.voltdb.compiler.AdHocCompilerCache;
+import org.voltdb.compiler.AdHocCompilerCacheStats;
 import org.voltdb.compiler.VoltCompiler;
 import org.voltdb.compiler.deploymentfile.ClusterType;
 import org.voltdb.compiler.deploymentfile.DeploymentType;
@@ -134,6 +135,7 @@ import org.voltdb.dtxn.LatencyHistogramStats;
 import org.voltdb.dtxn.LatencyStats;
 import org.voltdb.dtxn.LatencyUncompressedHistogramStats;
 import org.voltdb.dtxn.SiteTracker;
+import org.voltdb.export.ExportDataSource;
 import org.voltdb.export.ExportManager;
 import org.voltdb.importer.ImportManager;
 import org.voltdb.iv2.BaseInitiator;
@@ -178,6 +180,8 @@ import org.voltdb.sysprocs.saverestore.SnapshotUtil.Snapshot;
 import org.voltdb.utils.CLibrary;
 import org.voltdb.utils.CatalogUtil;
 import org.voltdb.utils.CatalogUtil.CatalogAndDeployment;
+import org.voltdb.utils.CompressionCodec;
+import org.voltdb.utils.CompressionService;
 import org.voltdb.utils.FailedLoginCounter;
 import org.voltdb.utils.HTTPAdminListener;
 import org.voltdb.utils.InMemoryJarfile;
@@ -1292,10 +1296,18 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
 
             collectLocalNetworkMetadata();
 
+            // Save ad hoc plans in voltdbroot so restarts don't have to plan the workload again
+            if (Boolean.valueOf(System.getProperty("ADHOC_COMPILER_CACHE_PERSIST", "true"))) {
+                AdHocCompilerCache.setPlanCacheDirectory(new File(getVoltDBRootPath(), "plancache"),
+                        getVersionString() + " " + getBuildString());
+            }
+
             // Initialize stats
             m_ioStats = new IOStats();
             getStatsAgent().registerStatsSource(StatsSelector.IOSTATS,
                     0, m_ioStats);
+            getStatsAgent().registerStatsSource(StatsSelector.HOSTMESSAGING,
+                    0, new HostMessagingStats());
             m_memoryStats = new MemoryStats();
             getStatsAgent().registerStatsSource(StatsSelector.MEMORY,
                     0, m_memoryStats);
@@ -1327,6 +1339,8 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
             m_gcStats = new GcStats();
             getStatsAgent().registerStatsSource(StatsSelector.GC,
                     0, m_gcStats);
+            getStatsAgent().registerStatsSource(StatsSelector.PLANCACHE,
+                    0, new AdHocCompilerCacheStats());
             // ENG-6321
             m_commandLogStats = new CommandLogStats(m_commandLog);
             getStatsAgent().registerStatsSource(StatsSelector.COMMANDLOG, 0, m_commandLogStats);
@@ -2591,6 +2605,14 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
                 if (sysType.getSnapshot() != null) {
                     hostLog.info("Snapshot priority set to " + sysType.getSnapshot().getPriority() + " [0 - 10]");
                 }
+                if (sysType.getCompression() != null) {
+                    CompressionService.setSnapshotCodec(
+                            CompressionCodec.fromName(sysType.getCompression().getSnapshot().value()));
+                    CompressionService.setExportOverflowCodec(
+                            CompressionCodec.fromName(sysType.getCompression().getExportoverflow().value()));
+                    hostLog.info("Snapshot compression set to " + CompressionService.getSnapshotCodec() +
+                            ", export overflow compression set to " + CompressionService.getExportOverflowCodec());
+                }
                 if (sysType.getQuery() != null) {
                     if (sysType.getQuery().getTimeout() > 0) {
                         hostLog.info("Query timeout set to " + sysType.getQuery().getTimeout() + " milliseconds");
@@ -3789,6 +3811,14 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
                 // The stats agent will hold all other stats in memory.
                 getStatsAgent().notifyOfCatalogUpdate();
 
+                // 4.1 Drop the /metrics series of the procedures and streams the update removed
+                ProcedureRunner.retainMetrics(m_catalogContext);
+                List<String> tableNames = new ArrayList<>();
+                for (Table table : m_catalogContext.tables) {
+                    tableNames.add(table.getTypeName());
+                }
+                ExportDataSource.retainMetrics(tableNames);
+
                 // 4.5. (added)
                 // Update the NT procedure service AFTER stats are cleared in the previous step
                 m_clientInterface.getDispatcher().notifyNTProcedureServiceOfCatalogUpdate();
@@ -32,11 +32,11 @@ public final class StatementStats {
     StatsData m_coordinatorTask = null;
     StatsData m_workerTask;
 
-    public StatementStats(String stmtName, boolean hasCoordinatorTask) {
+    public StatementStats(String stmtName, boolean hasCoordinatorTask, boolean keepHistograms) {
         m_stmtName = stmtName;
-        m_workerTask = new StatsData();
+        m_workerTask = new StatsData(keepHistograms);
         if (hasCoordinatorTask) {
-            m_coordinatorTask = new StatsData();
+            m_coordinatorTask = new StatsData(keepHistograms);
         }
     }
 
@@ -144,6 +144,28 @@ public final class StatementStats {
         return retval;
     }
 
+    /**
+     * Poll the execution time histograms, see {@link ExecutionTimeHistogram#poll(boolean)}.
+     * Like the min and max, the percentiles of the coordinator task are added to those of
+     * the worker task, which is an approximation.
+     * @return the percentiles in nanoseconds, or null if there aren't any
+     */
+    public long[] pollExecutionTimePercentiles(boolean incremental) {
+        if (m_workerTask.m_executionTimes == null) {
+            return null;
+        }
+        long[] retval = m_workerTask.m_executionTimes.poll(incremental);
+        if (m_coordinatorTask != null) {
+            final long[] coordinator = m_coordinatorTask.m_executionTimes.poll(incremental);
+            if (retval != null && coordinator != null && isCoordinatorStatsUsable(incremental)) {
+                for (int ii = 0; ii < retval.length; ii++) {
+                    retval[ii] += coordinator[ii];
+                }
+            }
+        }
+        return retval;
+    }
+
     public long getAbortCount() {
         return m_workerTask.m_abortCount;
     }
@@ -337,7 +359,7 @@ public final class StatementStats {
                                          boolean failed,
                                          long duration,
                                          VoltTable result,
-                                         ParameterSet parameterSet)
+                                         int stmtParamSize)
         {
             if (stmtStats == null) {
                 stmtStats = new ArrayList<>();
@@ -349,10 +371,6 @@ public final class StatementStats {
                 if (result != null) {
                     stmtResultSize = result.getSerializedSize();
                 }
-                int stmtParamSize = 0;
-                if (parameterSet != null) {
-                    stmtParamSize += parameterSet.getSerializedSize();
-                }
                 measuredStmtStats = new MeasuredStmtStats(duration, stmtResultSize, stmtParamSize);
             }
 
@@ -364,6 +382,15 @@ public final class StatementStats {
     }
 
     static final class StatsData {
+        StatsData(boolean keepHistograms) {
+            m_executionTimes = keepHistograms ? new ExecutionTimeHistogram() : null;
+        }
+
+        /**
+         * Sampled execution times, or null if histograms aren't kept
+         */
+        final ExecutionTimeHistogram m_executionTimes;
+
         /**
          * Number of times this procedure has been invoked.
          */
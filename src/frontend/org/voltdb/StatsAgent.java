@@ -23,6 +23,7 @@ import java.util.NoSuchElementException;
 
 import org.cliffc_voltpatches.high_scale_lib.NonBlockingHashMap;
 import org.cliffc_voltpatches.high_scale_lib.NonBlockingHashSet;
+import org.json_voltpatches.JSONException;
 import org.json_voltpatches.JSONObject;
 import org.voltcore.network.Connection;
 import org.voltdb.ExportStatsBase.ExportStatsRow;
@@ -42,6 +43,9 @@ import com.google_voltpatches.common.collect.ImmutableMap;
  */
 public class StatsAgent extends OpsAgent
 {
+    // What delta callers of @Statistics coordinated here were last sent, only used by the agent's thread
+    private final StatsDeltaTracker m_deltas = new StatsDeltaTracker();
+
     private final NonBlockingHashMap<StatsSelector, NonBlockingHashMap<Long, NonBlockingHashSet<StatsSource>>> m_registeredStatsSources =
             new NonBlockingHashMap<StatsSelector, NonBlockingHashMap<Long, NonBlockingHashSet<StatsSource>>>();
 
@@ -87,6 +91,20 @@ public class StatsAgent extends OpsAgent
             break;
         default:
         }
+
+        try {
+            StatsQuery query = StatsQuery.fromRequest(subselector, request.request);
+            if (query != null && request.aggregateTables != null && request.aggregateTables.length == 1) {
+                request.aggregateTables[0] = query.applyFinal(request.aggregateTables[0], m_deltas,
+                        System.currentTimeMillis());
+            }
+        }
+        catch (IllegalArgumentException e) {
+            request.failure = e.getMessage();
+        }
+        catch (JSONException e) {
+            request.failure = "Invalid @Statistics options: " + e.getMessage();
+        }
     }
 
     private VoltTable[] sortProcedureDetailStats(VoltTable[] baseStats) {
@@ -379,8 +397,8 @@ public class StatsAgent extends OpsAgent
     // return null.  Yes, ugly.  Bang it out, then refactor later.
     private String parseParamsForStatistics(ParameterSet params, JSONObject obj) throws Exception
     {
-        if ((params.toArray().length < 1) || (params.toArray().length > 2)) {
-            return "Incorrect number of arguments to @Statistics (expects 2, received " +
+        if ((params.toArray().length < 1) || (params.toArray().length > 3)) {
+            return "Incorrect number of arguments to @Statistics (expects 2 or 3, received " +
                     params.toArray().length + ")";
         }
         Object first = params.toArray()[0];
@@ -399,12 +417,16 @@ public class StatsAgent extends OpsAgent
         }
 
         boolean interval = false;
-        if (params.toArray().length == 2) {
+        if (params.toArray().length >= 2) {
             interval = ((Number)(params.toArray()[1])).longValue() == 1L;
         }
         obj.put("subselector", subselector);
         obj.put("interval", interval);
 
+        // Filtering, top-N, paging and delta options
+        if (params.toArray().length == 3) {
+            return StatsQuery.parse(StatsSelector.valueOf(subselector), params.toArray()[2], obj);
+        }
         return null;
     }
 
@@ -416,6 +438,10 @@ public class StatsAgent extends OpsAgent
             OpsSelector selector = OpsSelector.valueOf(obj.getString("selector").toUpperCase());
             if (selector == OpsSelector.STATISTICS) {
                 results = collectDistributedStats(obj);
+                StatsQuery query = StatsQuery.fromRequest(StatsSelector.valueOf(obj.getString("subselector")), obj);
+                if (query != null && results != null && results.length == 1) {
+                    results[0] = query.applyOnHost(results[0]);
+                }
             }
             else {
                 hostLog.warn("StatsAgent received a non-STATISTICS OPS selector: " + selector);
@@ -519,6 +545,9 @@ public class StatsAgent extends OpsAgent
         case PROCEDUREINPUT:
         case PROCEDUREOUTPUT:
         case PROCEDUREPROFILE:
+            // The roll ups only look at the per procedure rows, don't ship the per statement ones
+            stats = procedureRows(collectStats(StatsSelector.PROCEDURE, interval));
+            break;
         case PROCEDUREDETAIL:
             stats = collectStats(StatsSelector.PROCEDURE, interval);
             break;
@@ -531,6 +560,9 @@ public class StatsAgent extends OpsAgent
         case PLANNER:
             stats = collectStats(StatsSelector.PLANNER, interval);
             break;
+        case PLANCACHE:
+            stats = collectStats(StatsSelector.PLANCACHE, interval);
+            break;
         case LIVECLIENTS:
             stats = collectStats(StatsSelector.LIVECLIENTS, interval);
             break;
@@ -580,6 +612,12 @@ public class StatsAgent extends OpsAgent
         case EXPORT:
             stats = collectStats(StatsSelector.EXPORT, interval);
             break;
+        case HOSTMESSAGING:
+            stats = collectStats(StatsSelector.HOSTMESSAGING, interval);
+            break;
+        case MPREADPOOL:
+            stats = collectStats(StatsSelector.MPREADPOOL, interval);
+            break;
         default:
             // Should have been successfully groomed in collectStatsImpl().  Log something
             // for our information but let the null check below return harmlessly
@@ -591,6 +629,20 @@ public class StatsAgent extends OpsAgent
         return stats;
     }
 
+    private static VoltTable[] procedureRows(VoltTable[] stats)
+    {
+        if (stats == null || stats.length != 1) {
+            return stats;
+        }
+        VoltTable result = stats[0].clone(0);
+        while (stats[0].advanceRow()) {
+            if (stats[0].getString("STATEMENT").equalsIgnoreCase("<ALL>")) {
+                result.add(stats[0]);
+            }
+        }
+        return new VoltTable[] { result };
+    }
+
     private VoltTable[] collectDRProducerStats()
     {
         VoltTable[] stats = null;
@@ -0,0 +1,192 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.voltdb;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers what each delta caller of @Statistics was last sent by the host coordinating
+ * its requests, so rows that haven't changed since can be left out of its next response.
+ *
+ * A row is identified by its host, site and partition ids and its string columns, and
+ * only a 64 bit hash of the rest of it, leaving out the timestamp, is kept. Callers that
+ * stop asking are forgotten after a while. Only used by the StatsAgent thread.
+ */
+final class StatsDeltaTracker {
+
+    static final long EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    static final int MAX_CALLERS = 64;
+
+    private static final long NULL_HASH = 0x5bd1e9955bd1e995L;
+
+    private static final class Previous {
+        long m_lastUsed;
+        Map<Long, Long> m_rows;
+    }
+
+    private final Map<String, Previous> m_callers = new HashMap<>();
+
+    /**
+     * @return the rows of table that are new or have changed since the last call for
+     * caller, and remember the rows of table for the next one
+     */
+    VoltTable changedRows(String caller, VoltTable table, long now)
+    {
+        expire(now);
+        Previous previous = m_callers.get(caller);
+        if (previous == null) {
+            if (m_callers.size() >= MAX_CALLERS) {
+                evictLeastRecentlyUsed();
+            }
+            previous = new Previous();
+            m_callers.put(caller, previous);
+        }
+        previous.m_lastUsed = now;
+
+        final int[] identity = identityColumns(table);
+        final int[] values = valueColumns(table, identity);
+        final Map<Long, Long> rows = new HashMap<>(table.getRowCount() * 2);
+        final VoltTable result = table.clone(0);
+        table.resetRowPosition();
+        while (table.advanceRow()) {
+            final long key = hash(table, identity);
+            final long value = hash(table, values);
+            rows.put(key, value);
+            final Long before = previous.m_rows == null ? null : previous.m_rows.get(key);
+            if (before == null || before != value) {
+                result.add(table);
+            }
+        }
+        table.resetRowPosition();
+        previous.m_rows = rows;
+        return result;
+    }
+
+    int callers()
+    {
+        return m_callers.size();
+    }
+
+    private void expire(long now)
+    {
+        Iterator<Previous> it = m_callers.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().m_lastUsed > EXPIRY_MILLIS) {
+                it.remove();
+            }
+        }
+    }
+
+    private void evictLeastRecentlyUsed()
+    {
+        String oldest = null;
+        long oldestUse = Long.MAX_VALUE;
+        for (Map.Entry<String, Previous> e : m_callers.entrySet()) {
+            if (e.getValue().m_lastUsed < oldestUse) {
+                oldest = e.getKey();
+                oldestUse = e.getValue().m_lastUsed;
+            }
+        }
+        m_callers.remove(oldest);
+    }
+
+    /** Columns identifying a row of a statistics table: host, site and partition ids and strings */
+    static int[] identityColumns(VoltTable table)
+    {
+        int[] columns = new int[table.getColumnCount()];
+        int count = 0;
+        for (int ii = 0; ii < table.getColumnCount(); ii++) {
+            final String name = table.getColumnName(ii);
+            if (table.getColumnType(ii) == VoltType.STRING ||
+                    name.equals(VoltSystemProcedure.CNAME_HOST_ID) ||
+                    name.equals(VoltSystemProcedure.CNAME_SITE_ID) ||
+                    name.equals(VoltSystemProcedure.CNAME_PARTITION_ID)) {
+                columns[count++] = ii;
+            }
+        }
+        return Arrays.copyOf(columns, count);
+    }
+
+    private static int[] valueColumns(VoltTable table, int[] identity)
+    {
+        int[] columns = new int[table.getColumnCount()];
+        int count = 0;
+        for (int ii = 0; ii < table.getColumnCount(); ii++) {
+            if (Arrays.binarySearch(identity, ii) < 0 && !table.getColumnName(ii).equals("TIMESTAMP")) {
+                columns[count++] = ii;
+            }
+        }
+        return Arrays.copyOf(columns, count);
+    }
+
+    private static long hash(VoltTableRow row, int[] columns)
+    {
+        long hash = columns.length;
+        for (int column : columns) {
+            final Object value = StatsQuery.value(row, column);
+            final long h;
+            if (value == null) {
+                h = NULL_HASH;
+            }
+            else if (value instanceof String) {
+                h = fnv((String) value);
+            }
+            else if (value instanceof Double || value instanceof Float) {
+                h = Double.doubleToLongBits(((Number) value).doubleValue());
+            }
+            else if (value instanceof Number && !(value instanceof BigDecimal)) {
+                h = ((Number) value).longValue();
+            }
+            else if (value instanceof byte[]) {
+                h = Arrays.hashCode((byte[]) value);
+            }
+            else {
+                h = value.hashCode();
+            }
+            hash = mix(hash * 31 + h);
+        }
+        return hash;
+    }
+
+    private static long fnv(String value)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int ii = 0; ii < value.length(); ii++) {
+            hash ^= value.charAt(ii);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // Murmur3 finalizer
+    private static long mix(long h)
+    {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
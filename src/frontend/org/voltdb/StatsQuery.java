@@ -0,0 +1,346 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.voltdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONObject;
+
+/**
+ * Options narrowing down what @Statistics returns, passed as a JSON object in an optional
+ * third parameter, e.g. <code>{"filter":"ORDER*,CUSTOMER", "orderBy":"TUPLE_COUNT", "top":20}</code>.
+ * <ul>
+ * <li><b>filter</b> keeps the rows of the tables, indexes, procedures or export sources whose
+ * names match one of a comma separated list of case insensitive patterns, where * matches
+ * any run of characters.</li>
+ * <li><b>orderBy</b> sorts the rows on a column, largest first.</li>
+ * <li><b>top</b> keeps that many rows, which takes an orderBy.</li>
+ * <li><b>offset</b> and <b>limit</b> return a page of the rows, in orderBy order or else in
+ * the order of the columns identifying a row. A page shorter than limit is the last one.</li>
+ * <li><b>delta</b> names the caller. Rows that haven't changed since the caller's previous
+ * delta request for the selector are left out, so the first request returns every row.</li>
+ * </ul>
+ * Every host applies the filter and keeps no more than the rows that can make the requested
+ * top or page before it ships its table, so what goes over the wire is bounded by what the
+ * caller asked for. The host coordinating the request orders and cuts the merged table again
+ * once it has been aggregated, and only then drops the rows the caller has already seen, so
+ * the delta is taken over the totals the caller is sent.
+ */
+final class StatsQuery {
+
+    // Key of the options in the JSON of the distributed request
+    static final String OPTIONS = "options";
+
+    static final String FILTER = "filter";
+    static final String ORDER_BY = "orderBy";
+    static final String TOP = "top";
+    static final String OFFSET = "offset";
+    static final String LIMIT = "limit";
+    static final String DELTA = "delta";
+
+    // Selectors answering with several tables, or without going to every host
+    private static final EnumSet<StatsSelector> UNSUPPORTED = EnumSet.of(StatsSelector.MANAGEMENT,
+            StatsSelector.DR, StatsSelector.DRPRODUCER, StatsSelector.DRCONSUMER,
+            StatsSelector.TOPO, StatsSelector.PARTITIONCOUNT);
+
+    // Rolled up across partitions once every host has answered, so hosts can't cut rows
+    private static final EnumSet<StatsSelector> ROLLED_UP = EnumSet.of(StatsSelector.PROCEDUREPROFILE,
+            StatsSelector.PROCEDUREINPUT, StatsSelector.PROCEDUREOUTPUT);
+
+    // Columns holding the names a filter matches
+    private static final Map<StatsSelector, String[]> NAME_COLUMNS = new EnumMap<>(StatsSelector.class);
+    static {
+        final String[] procedure = { "PROCEDURE" };
+        NAME_COLUMNS.put(StatsSelector.TABLE, new String[] { "TABLE_NAME" });
+        NAME_COLUMNS.put(StatsSelector.INDEX, new String[] { "TABLE_NAME", "INDEX_NAME" });
+        NAME_COLUMNS.put(StatsSelector.TTL, new String[] { "TABLE_NAME" });
+        NAME_COLUMNS.put(StatsSelector.EXPORT, new String[] { ExportStatsBase.Columns.SOURCE_NAME });
+        NAME_COLUMNS.put(StatsSelector.PROCEDURE, procedure);
+        NAME_COLUMNS.put(StatsSelector.PROCEDUREDETAIL, procedure);
+        NAME_COLUMNS.put(StatsSelector.PROCEDUREPROFILE, procedure);
+        NAME_COLUMNS.put(StatsSelector.PROCEDUREINPUT, procedure);
+        NAME_COLUMNS.put(StatsSelector.PROCEDUREOUTPUT, procedure);
+    }
+
+    final StatsSelector m_selector;
+    private final Pattern m_filter;
+    private final String m_orderBy;
+    private final int m_top;
+    private final int m_offset;
+    private final int m_limit;
+    private final String m_delta;
+
+    private StatsQuery(StatsSelector selector, JSONObject options) throws JSONException
+    {
+        m_selector = selector;
+        m_filter = options.has(FILTER) ? compileFilter(options.getString(FILTER)) : null;
+        m_orderBy = options.has(ORDER_BY) ? options.getString(ORDER_BY).toUpperCase() : null;
+        m_top = options.optInt(TOP, 0);
+        m_offset = options.optInt(OFFSET, 0);
+        m_limit = options.optInt(LIMIT, 0);
+        m_delta = options.has(DELTA) ? options.getString(DELTA) : null;
+    }
+
+    /**
+     * Validate the options a client passed for selector and put them in the request.
+     * @return an error message for the client, or null if the options are valid
+     */
+    static String parse(StatsSelector selector, Object param, JSONObject obj) throws JSONException
+    {
+        if (!(param instanceof String)) {
+            return "Third argument to @Statistics must be a STRING holding a JSON object of options, instead was " +
+                    param;
+        }
+        final JSONObject options;
+        try {
+            options = new JSONObject((String) param);
+        }
+        catch (JSONException e) {
+            return "Third argument to @Statistics must be a JSON object of options: " + e.getMessage();
+        }
+        if (options.length() == 0) {
+            return null;
+        }
+        if (UNSUPPORTED.contains(selector)) {
+            return "@Statistics " + selector.name() + " does not take options";
+        }
+        Iterator<String> keys = options.keys();
+        while (keys.hasNext()) {
+            final String key = keys.next();
+            if (!key.equals(FILTER) && !key.equals(ORDER_BY) && !key.equals(TOP) &&
+                    !key.equals(OFFSET) && !key.equals(LIMIT) && !key.equals(DELTA)) {
+                return "Unknown @Statistics option " + key;
+            }
+        }
+        if (options.has(FILTER) && !NAME_COLUMNS.containsKey(selector)) {
+            return "@Statistics " + selector.name() + " can't be filtered by name";
+        }
+        for (String key : new String[] { TOP, OFFSET, LIMIT }) {
+            if (options.has(key) && (!(options.get(key) instanceof Number) || options.getInt(key) < 0)) {
+                return "@Statistics option " + key + " must be a non-negative number";
+            }
+        }
+        if (options.has(TOP) && !options.has(ORDER_BY)) {
+            return "@Statistics option top requires orderBy";
+        }
+        if (options.has(DELTA) && options.optInt(OFFSET, 0) > 0) {
+            return "@Statistics option delta can't be combined with offset";
+        }
+        obj.put(OPTIONS, options);
+        return null;
+    }
+
+    /**
+     * @return the options of a distributed request for selector, or null if it has none
+     */
+    static StatsQuery fromRequest(StatsSelector selector, JSONObject obj) throws JSONException
+    {
+        JSONObject options = obj.optJSONObject(OPTIONS);
+        return options == null ? null : new StatsQuery(selector, options);
+    }
+
+    private static Pattern compileFilter(String filter)
+    {
+        StringBuilder regex = new StringBuilder();
+        for (String name : filter.split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (regex.length() > 0) {
+                regex.append('|');
+            }
+            for (String part : name.split("\\*", -1)) {
+                regex.append(Pattern.quote(part)).append(".*");
+            }
+            // Every part but the last is followed by a star
+            regex.setLength(regex.length() - 2);
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+    }
+
+    /**
+     * Narrow down the table this host collected before it is shipped to the coordinator.
+     */
+    VoltTable applyOnHost(VoltTable table)
+    {
+        if (m_filter != null) {
+            table = filter(table);
+        }
+        if (!ROLLED_UP.contains(m_selector)) {
+            final int rows = rowsNeeded();
+            final int orderColumn = m_orderBy == null ? -1 : columnIndex(table, m_orderBy);
+            // An unknown column is reported by the coordinator
+            if (rows > 0 && rows < table.getRowCount() && (m_orderBy == null || orderColumn >= 0)) {
+                table = sortAndSlice(table, orderColumn, 0, rows);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Order and cut the table aggregated from every host, and leave out the rows a delta
+     * caller was already sent.
+     * @param deltas the previous requests of delta callers
+     * @throws IllegalArgumentException if the table has no orderBy column
+     */
+    VoltTable applyFinal(VoltTable table, StatsDeltaTracker deltas, long now)
+    {
+        int orderColumn = -1;
+        if (m_orderBy != null) {
+            orderColumn = columnIndex(table, m_orderBy);
+            if (orderColumn < 0) {
+                throw new IllegalArgumentException("@Statistics " + m_selector.name() +
+                        " has no column " + m_orderBy + " to order by");
+            }
+        }
+        if (orderColumn >= 0 || m_offset > 0 || m_limit > 0) {
+            long end = m_top > 0 ? m_top : Integer.MAX_VALUE;
+            if (m_limit > 0) {
+                end = Math.min(end, (long) m_offset + m_limit);
+            }
+            table = sortAndSlice(table, orderColumn, m_offset, (int) (end - m_offset));
+        }
+        // Only what would be sent is remembered, so rows cut from this response count as new later
+        if (m_delta != null) {
+            table = deltas.changedRows(m_delta + ":" + m_selector.name(), table, now);
+        }
+        return table;
+    }
+
+    // Rows a host must ship for the coordinator to have every row of the top or page
+    private int rowsNeeded()
+    {
+        int rows = m_top;
+        if (m_limit > 0) {
+            final int pageEnd = (int) Math.min(Integer.MAX_VALUE, (long) m_offset + m_limit);
+            rows = rows > 0 ? Math.min(rows, pageEnd) : pageEnd;
+        }
+        return rows;
+    }
+
+    private VoltTable filter(VoltTable table)
+    {
+        final String[] names = NAME_COLUMNS.get(m_selector);
+        final List<Integer> columns = new ArrayList<>();
+        for (String name : names) {
+            final int index = columnIndex(table, name);
+            if (index >= 0) {
+                columns.add(index);
+            }
+        }
+        final VoltTable result = table.clone(0);
+        table.resetRowPosition();
+        while (table.advanceRow()) {
+            for (int column : columns) {
+                final String name = table.getString(column);
+                if (name != null && matches(name)) {
+                    result.add(table);
+                    break;
+                }
+            }
+        }
+        table.resetRowPosition();
+        return result;
+    }
+
+    // Procedures match with or without their package
+    private boolean matches(String name)
+    {
+        return m_filter.matcher(name).matches() ||
+                m_filter.matcher(name.substring(name.lastIndexOf('.') + 1)).matches();
+    }
+
+    private static int columnIndex(VoltTable table, String name)
+    {
+        for (int ii = 0; ii < table.getColumnCount(); ii++) {
+            if (table.getColumnName(ii).equals(name)) {
+                return ii;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the rows of table from offset on, at most count of them, ordered on orderColumn,
+     * largest first, if it isn't negative, and then on the columns identifying a row
+     */
+    static VoltTable sortAndSlice(VoltTable table, final int orderColumn, int offset, int count)
+    {
+        final int[] identity = StatsDeltaTracker.identityColumns(table);
+        final List<VoltTableRow> rows = new ArrayList<>(table.getRowCount());
+        table.resetRowPosition();
+        while (table.advanceRow()) {
+            rows.add(table.cloneRow());
+        }
+        table.resetRowPosition();
+        Collections.sort(rows, new Comparator<VoltTableRow>() {
+            @Override
+            public int compare(VoltTableRow o1, VoltTableRow o2) {
+                if (orderColumn >= 0) {
+                    final int cmp = compareValues(value(o2, orderColumn), value(o1, orderColumn));
+                    if (cmp != 0) {
+                        return cmp;
+                    }
+                }
+                for (int column : identity) {
+                    final int cmp = compareValues(value(o1, column), value(o2, column));
+                    if (cmp != 0) {
+                        return cmp;
+                    }
+                }
+                return 0;
+            }
+        });
+        final VoltTable result = table.clone(0);
+        final int end = (int) Math.min(rows.size(), (long) offset + Math.max(0, count));
+        for (int ii = offset; ii < end; ii++) {
+            result.add(rows.get(ii));
+        }
+        return result;
+    }
+
+    static Object value(VoltTableRow row, int column)
+    {
+        final Object value = row.get(column, row.getColumnType(column));
+        return row.wasNull() ? null : value;
+    }
+
+    // Nulls first
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static int compareValues(Object v1, Object v2)
+    {
+        if (v1 == null || v2 == null) {
+            return v1 == null ? (v2 == null ? 0 : -1) : 1;
+        }
+        if (v1 instanceof Comparable) {
+            return ((Comparable) v1).compareTo(v2);
+        }
+        return 0;
+    }
+}
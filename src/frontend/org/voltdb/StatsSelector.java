@@ -31,6 +31,7 @@ public enum StatsSelector {
     MEMORY,           // info about node's memory usage
     LIVECLIENTS,      // info about the currently connected clients
     PLANNER,          // info about planner and EE performance and cache usage
+    PLANCACHE,        // ad hoc plan cache contents and the plans saved in voltdbroot
     MANAGEMENT,       // Returns pretty much everything
     PROCEDUREPROFILE, // performs an aggregation of the procedure statistics
     SNAPSHOTSTATUS,
@@ -63,5 +64,7 @@ public enum StatsSelector {
     COMMANDLOG,     // return number of outstanding bytes and txns on this node
     IMPORTER,       // synonym as IMPORT for backward compatibility
     IMPORT,
-    EXPORT
+    EXPORT,
+    HOSTMESSAGING,  // messages and frames sent to each other host, and coalescing cost
+    MPREADPOOL      // size, wait time and utilization of the MP read-only site pool
 }
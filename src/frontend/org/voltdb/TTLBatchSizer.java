@@ -0,0 +1,84 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import org.voltdb.utils.LatencyBatchSizer;
+
+/**
+ * Sizes the nibble deletes of a TTL table.
+ *
+ * Batches start at the BATCH_SIZE of the DDL and are sized by the slowest delete transaction
+ * of each round through a {@link LatencyBatchSizer}, growing only while rows eligible for
+ * delete are left behind. It never exceeds a multiple of the DDL size, nor the rows that fit
+ * a DR buffer for a DRed table.
+ *
+ * A delete that overflowed the DR buffer lowers that ceiling to half the batch that failed,
+ * so TTL only has to be given up once a single row doesn't fit.
+ */
+final class TTLBatchSizer {
+
+    // Slowest delete transaction a round should have
+    static final long TARGET_NANOS = Long.getLong("TIME_TO_LIVE_TARGET_MILLIS", 10) * 1_000_000L;
+    // Times the DDL BATCH_SIZE a batch may grow to
+    static final int MAX_GROWTH = Integer.getInteger("TIME_TO_LIVE_MAX_BATCH_GROWTH", 16);
+
+    private final LatencyBatchSizer m_sizer;
+
+    /**
+     * @param configured BATCH_SIZE of the DDL
+     * @param rowCeiling rows a single delete may never exceed, such as what fits a DR buffer
+     * @param targetNanos slowest delete transaction a round should have
+     */
+    TTLBatchSizer(int configured, int rowCeiling, long targetNanos) {
+        m_sizer = new LatencyBatchSizer(1, 1, targetNanos);
+        configure(configured, rowCeiling);
+    }
+
+    /** The DDL changed, start over from its BATCH_SIZE */
+    synchronized void configure(int configured, int rowCeiling) {
+        configured = Math.max(1, configured);
+        m_sizer.reset(configured, (int)Math.min((long)configured * MAX_GROWTH, rowCeiling));
+    }
+
+    int getBatchSize() {
+        return m_sizer.getBatchSize();
+    }
+
+    /**
+     * A round of deletes completed.
+     * @param maxDeleteNanos the slowest delete transaction of the round
+     * @param backlog whether rows eligible for delete were left
+     * @return the batch size for the next round
+     */
+    synchronized int roundCompleted(long maxDeleteNanos, boolean backlog) {
+        return m_sizer.batchCompleted(m_sizer.getBatchSize(), maxDeleteNanos, backlog);
+    }
+
+    /**
+     * A delete of the current batch size overflowed the DR buffer.
+     * @return false if the batch can't get any smaller
+     */
+    synchronized boolean drLimitExceeded() {
+        final int batchSize = m_sizer.getBatchSize();
+        if (batchSize <= 1) {
+            return false;
+        }
+        m_sizer.reset(batchSize / 2, batchSize / 2);
+        return true;
+    }
+}
@@ -24,11 +24,11 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.hsqldb_voltpatches.TimeToLiveVoltDB;
@@ -36,11 +36,13 @@ import org.voltcore.logging.Level;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.CoreUtils;
 import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.catalog.Column;
 import org.voltdb.catalog.Table;
 import org.voltdb.catalog.TimeToLive;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ProcedureCallback;
 import org.voltdb.iv2.MpTransactionState;
+import org.voltdb.utils.CatalogSizing;
 import org.voltdb.utils.CatalogUtil;
 
 //schedule and process time-to-live feature via @LowImpactDeleteNT. The host with smallest host id
@@ -55,6 +57,8 @@ public class TTLManager extends StatsSource{
     static final int CHUNK_SIZE = Integer.getInteger("TIME_TO_LIVE_CHUNK_SIZE", 1000);
     static final int TIMEOUT = Integer.getInteger("TIME_TO_LIVE_TIMEOUT", 2000);
     static final int LOG_SUPPRESSION_INTERVAL_SECONDS = 60;
+    //a round that hasn't answered by then is given up on, as @LowImpactDeleteNT times out
+    static final long ROUND_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
     public static class TTLStats {
         final String tableName;
         long rowsLeft = 0L;
@@ -64,19 +68,27 @@ public class TTLManager extends StatsSource{
         //TTL control
         long rowsDeleted = 0L;
         long rowsLastDeleted = 0L;
+        //rows deleted per second between the last two rounds
+        long deleteRate = 0L;
+        int batchSize = 0;
         Timestamp ts;
         public TTLStats(String tableName) {
             this.tableName = tableName;
         }
-        public void update(long rowDeleted, long rowsLeft, long lastExecutionTimestamp) {
+        public void update(long rowDeleted, long rowsLeft, long lastExecutionTimestamp, int batchSize) {
+            if (ts != null && lastExecutionTimestamp > ts.getTime()) {
+                deleteRate = rowDeleted * 1000 / (lastExecutionTimestamp - ts.getTime());
+            }
             this.rowsLastDeleted = rowDeleted;
             this.rowsLeft = rowsLeft;
             this.rowsDeleted += rowDeleted;
+            this.batchSize = batchSize;
             ts = new Timestamp(lastExecutionTimestamp);
         }
         @Override
         public String toString() {
-            return String.format("TTL stats on table %s: tuples deleted %d, tuples remaining %d", tableName, rowsDeleted, rowsLeft);
+            return String.format("TTL stats on table %s: tuples deleted %d, tuples remaining %d, %d tuples/s in batches of %d",
+                    tableName, rowsDeleted, rowsLeft, deleteRate, batchSize);
         }
     }
 
@@ -86,10 +98,15 @@ public class TTLManager extends StatsSource{
         final TTLStats stats;
         AtomicReference<TimeToLive> ttlRef;
         AtomicBoolean canceled = new AtomicBoolean(false);
-        public TTLTask(String table, TimeToLive timeToLive, TTLStats ttlStats) {
+        final TTLBatchSizer sizer;
+        //when the round of deletes in progress started, 0 if there is none
+        final AtomicLong roundStart = new AtomicLong(0);
+        public TTLTask(String table, TimeToLive timeToLive, TTLStats ttlStats, int rowCeiling) {
             tableName = table;
             ttlRef = new AtomicReference<>(timeToLive);
             stats = ttlStats;
+            sizer = new TTLBatchSizer(timeToLive.getBatchsize(), rowCeiling, TTLBatchSizer.TARGET_NANOS);
+            stats.batchSize = sizer.getBatchSize();
         }
 
         @Override
@@ -101,11 +118,25 @@ public class TTLManager extends StatsSource{
                 return;
             }
             ClientInterface cl = voltdb.getClientInterface();
-            if (!canceled.get() && cl != null && cl.isAcceptingConnections()) {
+            if (!canceled.get() && cl != null && cl.isAcceptingConnections() && startRound()) {
                 performDelete(cl, this);
             }
         }
 
+        //a round still deleting skips this tick, unless it has been lost
+        boolean startRound() {
+            final long now = System.currentTimeMillis();
+            final long start = roundStart.get();
+            if (start != 0 && now - start < ROUND_TIMEOUT_MILLIS) {
+                return false;
+            }
+            return roundStart.compareAndSet(start, now);
+        }
+
+        void endRound() {
+            roundStart.set(0);
+        }
+
         public void cancel() {
             canceled.set(true);
             ScheduledFuture<?> fut = m_futures.get(tableName);
@@ -115,8 +146,9 @@ public class TTLManager extends StatsSource{
             }
         }
 
-        public void updateTask(TimeToLive updatedTTL) {
+        public void updateTask(TimeToLive updatedTTL, int rowCeiling) {
             ttlRef.compareAndSet(ttlRef.get(), updatedTTL);
+            sizer.configure(updatedTTL.getBatchsize(), rowCeiling);
         }
 
         long getValue() {
@@ -147,7 +179,7 @@ public class TTLManager extends StatsSource{
             return ttlRef.get().getMaxfrequency();
         }
         int getBatchSize() {
-            return ttlRef.get().getBatchsize();
+            return sizer.getBatchSize();
         }
         String getColumnName() {
             return ttlRef.get().getTtlcolumn().getName();
@@ -251,7 +283,7 @@ public class TTLManager extends StatsSource{
                     stats = new TTLStats(t.getTypeName());
                     m_stats.put(t.getTypeName(), stats);
                 }
-                task = new TTLTask(t.getTypeName(), ttl, stats);
+                task = new TTLTask(t.getTypeName(), ttl, stats, getRowCeiling(t));
                 m_tasks.put(t.getTypeName(), task);
                 m_futures.put(t.getTypeName(),
                               m_timeToLiveExecutor.scheduleAtFixedRate(task,
@@ -259,12 +291,32 @@ public class TTLManager extends StatsSource{
                                       INTERVAL, TimeUnit.MILLISECONDS));
                 hostLog.info(String.format(info + " has been scheduled.", t.getTypeName()));
             } else {
-                task.updateTask(ttl);
+                task.updateTask(ttl, getRowCeiling(t));
                 hostLog.info(String.format(info + " has been updated.", t.getTypeName()));
             }
         }
     }
 
+    /**
+     * Rows a single delete may remove. The deleted rows of a DRed table must fit a DR buffer,
+     * estimated from the widest row the table can have.
+     */
+    static int getRowCeiling(Table table) {
+        if (!table.getIsdred()) {
+            return Integer.MAX_VALUE;
+        }
+        long rowBytes = 0;
+        for (Column c : table.getColumns()) {
+            VoltType type = VoltType.get((byte)c.getType());
+            if (type == VoltType.STRING && !c.getInbytes()) {
+                rowBytes += 4 + c.getSize() * CatalogSizing.MAX_BYTES_PER_UTF8_CHARACTER;
+            } else {
+                rowBytes += type.isVariableLength() ? 4 + c.getSize() : type.getLengthInBytesForFixedTypes();
+            }
+        }
+        return (int)Math.max(1, MpTransactionState.DR_MAX_AGGREGATE_BUFFERSIZE / Math.max(1, rowBytes));
+    }
+
     public void shutDown() {
         for (Map.Entry<String, ScheduledFuture<?>> fut: m_futures.entrySet()) {
             fut.getValue().cancel(true);
@@ -290,6 +342,8 @@ public class TTLManager extends StatsSource{
         columns.add(new ColumnInfo("ROWS_DELETED_LAST_ROUND", VoltType.BIGINT));
         columns.add(new ColumnInfo("ROWS_REMAINING", VoltType.BIGINT));
         columns.add(new ColumnInfo("LAST_DELETE_TIMESTAMP", VoltType.TIMESTAMP));
+        columns.add(new ColumnInfo("DELETE_RATE", VoltType.BIGINT));
+        columns.add(new ColumnInfo("BATCH_SIZE", VoltType.INTEGER));
     }
 
     @Override
@@ -309,54 +363,63 @@ public class TTLManager extends StatsSource{
             rowValues[columnNameToIndex.get("ROWS_DELETED_LAST_ROUND")] = stats.rowsLastDeleted;
             rowValues[columnNameToIndex.get("ROWS_REMAINING")] = stats.rowsLeft;
             rowValues[columnNameToIndex.get("LAST_DELETE_TIMESTAMP")] = stats.ts;
+            rowValues[columnNameToIndex.get("DELETE_RATE")] = stats.deleteRate;
+            rowValues[columnNameToIndex.get("BATCH_SIZE")] = stats.batchSize;
         }
     }
 
     protected void performDelete(ClientInterface cl, TTLTask task) {
-        CountDownLatch latch = new CountDownLatch(1);
+        final int batchSize = task.getBatchSize();
         final ProcedureCallback cb = new ProcedureCallback() {
             @Override
             public void clientCallback(ClientResponse resp) throws Exception {
-                if (resp.getStatus() != ClientResponse.SUCCESS) {
-                    hostLog.warn(String.format("Fail to execute TTL on table: %s, column: %s, status: %s",
-                            task.tableName, task.getColumnName(), resp.getStatusString()));
-                }
-                if (resp.getResults() != null && resp.getResults().length > 0) {
-                    VoltTable t = resp.getResults()[0];
-                    t.advanceRow();
-                    String error = t.getString("MESSAGE");
-                    if (!error.isEmpty()) {
-                        String drLimitError = "";
-                        if (error.indexOf(TTLManager.DR_LIMIT_MSG) > -1) {
-                            // The buffer limit for a DR transaction is 50M. If over the limit,
-                            // the transaction will be aborted. The same is true for nibble delete transaction.
-                            // If hit this error, no more data can be deleted in this TTL table.
-                            drLimitError = "The transaction exceeds DR Buffer Limit of "
-                                        + MpTransactionState.DR_MAX_AGGREGATE_BUFFERSIZE
-                                        + " TTL is disabled for the table. Please change BATCH_SIZE to a smaller value.";
-                            task.cancel();
-                            ScheduledFuture<?> fut = m_futures.get(task.tableName);
-                            if (fut != null) {
-                                fut.cancel(false);
-                                m_futures.remove(task.tableName);
-                            }
-                        }
-                        hostLog.rateLimitedLog(LOG_SUPPRESSION_INTERVAL_SECONDS, Level.WARN, null,
-                                "Errors occured on TTL table %s: %s %s", task.tableName, error, drLimitError);
-                    } else {
-                        task.stats.update(t.getLong("ROWS_DELETED"), t.getLong("ROWS_LEFT"), t.getLong("LAST_DELETE_TIMESTAMP"));
-                    }
+                try {
+                    roundCompleted(task, batchSize, resp);
+                } finally {
+                    task.endRound();
                 }
-                latch.countDown();
             }
         };
         cl.getDispatcher().getInternelAdapterNT().callProcedure(cl.getInternalUser(), true, 1000 * 120, cb,
-                "@LowImpactDeleteNT", new Object[] {task.tableName, task.getColumnName(), task.getValue(), "<=", task.getBatchSize(),
+                "@LowImpactDeleteNT", new Object[] {task.tableName, task.getColumnName(), task.getValue(), "<=", batchSize,
                         TIMEOUT, task.getMaxFrequency(), INTERVAL});
-        try {
-            latch.await(1, TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            hostLog.warn("TTL waiting interrupted" + e.getMessage());
+    }
+
+    private void roundCompleted(TTLTask task, int batchSize, ClientResponse resp) {
+        if (resp.getStatus() != ClientResponse.SUCCESS) {
+            hostLog.warn(String.format("Fail to execute TTL on table: %s, column: %s, status: %s",
+                    task.tableName, task.getColumnName(), resp.getStatusString()));
+        }
+        if (resp.getResults() == null || resp.getResults().length == 0) {
+            return;
+        }
+        VoltTable t = resp.getResults()[0];
+        t.advanceRow();
+        String error = t.getString("MESSAGE");
+        if (error.isEmpty()) {
+            task.sizer.roundCompleted(t.getLong("MAX_DELETE_TIME"), t.getLong("ROWS_LEFT") > 0);
+            task.stats.update(t.getLong("ROWS_DELETED"), t.getLong("ROWS_LEFT"), t.getLong("LAST_DELETE_TIMESTAMP"),
+                    task.getBatchSize());
+            return;
+        }
+        String drLimitError = "";
+        if (error.indexOf(TTLManager.DR_LIMIT_MSG) > -1) {
+            // The buffer limit for a DR transaction is 50M. If over the limit,
+            // the transaction will be aborted. The same is true for nibble delete transaction.
+            // Retry with smaller batches, until not even a single row fits.
+            if (batchSize != task.getBatchSize() || task.sizer.drLimitExceeded()) {
+                drLimitError = "The transaction exceeds DR Buffer Limit of "
+                        + MpTransactionState.DR_MAX_AGGREGATE_BUFFERSIZE
+                        + " BATCH_SIZE is reduced to " + task.getBatchSize() + " for the table.";
+                task.stats.batchSize = task.getBatchSize();
+            } else {
+                drLimitError = "The transaction exceeds DR Buffer Limit of "
+                        + MpTransactionState.DR_MAX_AGGREGATE_BUFFERSIZE
+                        + " TTL is disabled for the table.";
+                task.cancel();
+            }
         }
+        hostLog.rateLimitedLog(LOG_SUPPRESSION_INTERVAL_SECONDS, Level.WARN, null,
+                "Errors occured on TTL table %s: %s %s", task.tableName, error, drLimitError);
     }
 }
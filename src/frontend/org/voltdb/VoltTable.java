@@ -31,6 +31,7 @@ import org.json_voltpatches.JSONException;
 import org.json_voltpatches.JSONObject;
 import org.json_voltpatches.JSONString;
 import org.json_voltpatches.JSONStringer;
+import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.client.ClientUtils;
 import org.voltdb.common.Constants;
 import org.voltdb.types.GeographyPointValue;
@@ -136,6 +137,11 @@ public final class VoltTable extends VoltTableRow implements JSONString {
     int m_rowCount = -1;
     int m_colCount = -1;
 
+    // Reference to the shared result buffer this table is a view of, when the EE
+    // result buffer was leased to this table instead of being copied to the heap.
+    // Null when the table owns its buffer.
+    BBContainer m_leasedBuffer = null;
+
     // non-positive value that probably shouldn't be -1 to avoid off-by-one errors
     private static final int NO_MEMOIZED_ROW_OFFSET = Integer.MIN_VALUE;
 
@@ -1978,6 +1984,20 @@ public final class VoltTable extends VoltTableRow implements JSONString {
             m_buffer.position(0);
             heapBuffer.put(m_buffer);
             m_buffer = heapBuffer;
+            releaseLeasedBuffer();
+        }
+    }
+
+    /**
+     * Drop this table's reference to a leased result buffer, if it has one.
+     * The table must not be read after this unless it was first converted
+     * to a heap buffer, since the memory goes back to the EE.
+     */
+    final void releaseLeasedBuffer() {
+        if (m_leasedBuffer != null) {
+            BBContainer leased = m_leasedBuffer;
+            m_leasedBuffer = null;
+            leased.discard();
         }
     }
 
@@ -0,0 +1,122 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.client;
+
+import java.util.Arrays;
+
+import org.voltcore.utils.LongObjectHashMap;
+
+/**
+ * Table of outstanding callbacks keyed by client handle.
+ *
+ * The table is split into a fixed number of stripes, each a {@link LongObjectHashMap}
+ * guarded by its own monitor, so there is no boxing or per entry node allocation on
+ * the insert/remove path. A handle is routed to a stripe by the low bits of its mixed
+ * hash, which the maps don't use for slots, so the sequential handles handed out by
+ * ClientImpl spread evenly and concurrent callers almost never touch the same stripe.
+ */
+final class CallbackTable<V> {
+
+    private static final int STRIPE_COUNT = 16;
+    private static final int STRIPE_MASK = STRIPE_COUNT - 1;
+
+    private final LongObjectHashMap<V>[] m_stripes;
+
+    CallbackTable() {
+        @SuppressWarnings("unchecked")
+        final LongObjectHashMap<V>[] stripes = (LongObjectHashMap<V>[]) new LongObjectHashMap<?>[STRIPE_COUNT];
+        for (int ii = 0; ii < STRIPE_COUNT; ii++) {
+            stripes[ii] = new LongObjectHashMap<>();
+        }
+        m_stripes = stripes;
+    }
+
+    private LongObjectHashMap<V> stripe(long handle) {
+        return m_stripes[(int)LongObjectHashMap.mix(handle) & STRIPE_MASK];
+    }
+
+    /**
+     * Associate value with handle.
+     * @return the previous value for the handle or null if there was none
+     */
+    V put(long handle, V value) {
+        assert(value != null);
+        final LongObjectHashMap<V> s = stripe(handle);
+        synchronized (s) {
+            return s.put(handle, value);
+        }
+    }
+
+    V get(long handle) {
+        final LongObjectHashMap<V> s = stripe(handle);
+        synchronized (s) {
+            return s.get(handle);
+        }
+    }
+
+    boolean containsKey(long handle) {
+        return get(handle) != null;
+    }
+
+    /**
+     * Remove the value associated with handle. Exactly one of any number of
+     * racing callers will get a non-null return value which is what lets the
+     * response, timeout and connection loss paths agree on who invokes a callback.
+     */
+    V remove(long handle) {
+        final LongObjectHashMap<V> s = stripe(handle);
+        synchronized (s) {
+            return s.remove(handle);
+        }
+    }
+
+    /**
+     * @return a point in time copy of the handles in the table. Handles
+     * may be removed concurrently so callers must still go through remove()
+     */
+    long[] handles() {
+        long[] retval = new long[0];
+        int count = 0;
+        for (LongObjectHashMap<V> s : m_stripes) {
+            final long[] keys;
+            synchronized (s) {
+                keys = s.keys();
+            }
+            if (retval.length - count < keys.length) {
+                retval = Arrays.copyOf(retval, count + keys.length + (count >> 1));
+            }
+            System.arraycopy(keys, 0, retval, count, keys.length);
+            count += keys.length;
+        }
+        return count == retval.length ? retval : Arrays.copyOf(retval, count);
+    }
+
+    int size() {
+        int size = 0;
+        for (LongObjectHashMap<V> s : m_stripes) {
+            synchronized (s) {
+                size += s.size();
+            }
+        }
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+}
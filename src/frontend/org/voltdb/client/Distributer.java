@@ -26,7 +26,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -73,6 +72,7 @@ import org.voltdb.common.Constants;
 
 import com.google_voltpatches.common.base.Throwables;
 import com.google_voltpatches.common.collect.ImmutableList;
+import com.google_voltpatches.common.collect.ImmutableMap;
 import com.google_voltpatches.common.collect.ImmutableSet;
 import com.google_voltpatches.common.collect.ImmutableSortedMap;
 import com.google_voltpatches.common.collect.Maps;
@@ -102,7 +102,7 @@ class Distributer {
     private final CopyOnWriteArrayList<NodeConnection> m_connections =
             new CopyOnWriteArrayList<>();
 
-    private final ArrayList<ClientStatusListenerExt> m_listeners = new ArrayList<>();
+    private final CopyOnWriteArrayList<ClientStatusListenerExt> m_listeners = new CopyOnWriteArrayList<>();
 
     //Selector and connection handling, does all work in blocking selection thread
     private final VoltNetworkPool m_network;
@@ -110,7 +110,7 @@ class Distributer {
     private final SSLContext m_sslContext;
 
     // Temporary until a distribution/affinity algorithm is written
-    private int m_nextConnection = 0;
+    private final AtomicInteger m_nextConnection = new AtomicInteger(0);
 
     private final boolean m_useMultipleThreads;
     private final boolean m_useClientAffinity;
@@ -133,23 +133,45 @@ class Distributer {
         }
     }
 
-    private final Map<Integer, NodeConnection> m_partitionMasters = new HashMap<>();
-    private final Map<Integer, NodeConnection[]> m_partitionReplicas = new HashMap<>();
-    private final Map<Integer, NodeConnection> m_hostIdToConnection = new HashMap<>();
+    /**
+     * Immutable snapshot of the client affinity routing state. queue() reads the
+     * current snapshot without locking, topology changes build a replacement while
+     * holding the Distributer monitor and publish it with a single volatile write.
+     */
+    private static final class AffinityTopology {
+        //This is the instance of the Hashinator we picked from TOPO used only for client affinity.
+        private final HashinatorLite m_hashinator;
+        private final ImmutableMap<Integer, NodeConnection> m_partitionMasters;
+        private final ImmutableMap<Integer, NodeConnection[]> m_partitionReplicas;
+
+        private AffinityTopology(HashinatorLite hashinator,
+                Map<Integer, NodeConnection> partitionMasters,
+                Map<Integer, NodeConnection[]> partitionReplicas) {
+            m_hashinator = hashinator;
+            m_partitionMasters = ImmutableMap.copyOf(partitionMasters);
+            m_partitionReplicas = ImmutableMap.copyOf(partitionReplicas);
+        }
+
+        private static final AffinityTopology EMPTY =
+                new AffinityTopology(null, ImmutableMap.<Integer, NodeConnection>of(),
+                        ImmutableMap.<Integer, NodeConnection[]>of());
+    }
+
+    private volatile AffinityTopology m_affinityTopology = AffinityTopology.EMPTY;
+    // Copy on write, modified while holding the Distributer monitor
+    private volatile ImmutableMap<Integer, NodeConnection> m_hostIdToConnection = ImmutableMap.of();
     private final AtomicReference<ImmutableSortedMap<String, Procedure>> m_procedureInfo =
                                 new AtomicReference<ImmutableSortedMap<String, Procedure>>();
     private final AtomicReference<ImmutableSet<Integer>> m_partitionKeys = new AtomicReference<ImmutableSet<Integer>>();
     private final AtomicLong m_lastPartitionKeyFetched = new AtomicLong(0);
     private final AtomicReference<ClientResponse> m_partitionUpdateStatus = new AtomicReference<ClientResponse>();
 
-    //This is the instance of the Hashinator we picked from TOPO used only for client affinity.
-    private HashinatorLite m_hashinator = null;
     //This is a global timeout that will be used if a per-procedure timeout is not provided with the procedure call.
     private final long m_procedureCallTimeoutNanos;
     private static final long MINIMUM_LONG_RUNNING_SYSTEM_CALL_TIMEOUT_MS = 30 * 60 * 1000; // 30 minutes
     private final long m_connectionResponseTimeoutNanos;
-    private final Map<Integer, ClientAffinityStats> m_clientAffinityStats =
-        new HashMap<>();
+    private final ConcurrentMap<Integer, ClientAffinityStats> m_clientAffinityStats =
+        new ConcurrentHashMap<>();
 
     public final RateLimiter m_rateLimiter = new RateLimiter();
 
@@ -319,16 +341,10 @@ class Distributer {
         @Override
         public void run() {
             try {
-                // make a threadsafe copy of all connections
-                ArrayList<NodeConnection> connections = new ArrayList<>();
-                synchronized (Distributer.this) {
-                    connections.addAll(m_connections);
-                }
-
                 final long nowNanos = System.nanoTime();
 
-                // for each connection
-                for (final NodeConnection c : connections) {
+                // for each connection, m_connections is copy on write so this iterates a snapshot
+                for (final NodeConnection c : m_connections) {
                     // check for connection age
                     final long sinceLastResponse = Math.max(1, nowNanos - c.m_lastResponseTimeNanos);
 
@@ -346,9 +362,12 @@ class Distributer {
                     }
 
                     // for each outstanding procedure
-                    for (final Map.Entry<Long, CallbackBookeeping> e : c.m_callbacks.entrySet()) {
-                        final long handle = e.getKey();
-                        final CallbackBookeeping cb = e.getValue();
+                    for (final long handle : c.m_callbacks.handles()) {
+                        final CallbackBookeeping cb = c.m_callbacks.get(handle);
+                        // already handled by a response or a discrete timeout
+                        if (cb == null) {
+                            continue;
+                        }
 
                         // if the timeout is expired, call the callback and remove the
                         // bookeeping data
@@ -407,7 +426,7 @@ class Distributer {
 
     class NodeConnection extends VoltProtocolHandler implements org.voltcore.network.QueueMonitor {
         private final AtomicInteger m_callbacksToInvoke = new AtomicInteger(0);
-        private final ConcurrentMap<Long, CallbackBookeeping> m_callbacks = new ConcurrentHashMap<>();
+        private final CallbackTable<CallbackBookeeping> m_callbacks = new CallbackTable<>();
         private final NonBlockingHashMap<String, ClientStats> m_stats = new NonBlockingHashMap<>();
         private Connection m_connection;
         private volatile boolean m_isConnected = true;
@@ -507,13 +526,13 @@ class Distributer {
         /*
          * For high precision timeouts, submit a discrete task to a scheduled
          * executor service to time out the transaction. The timeout task
-         * when run checks if the task is still present in the concurrent map
-         * of tasks and removes it. If it wins the race to remove the map
+         * when run checks if the task is still present in the callback table
+         * and removes it. If it wins the race to remove it from the table
          * then the transaction will be timed out even if a response is received
          * at the same time.
          *
          * This will race with the periodic task that checks lower resolution timeouts
-         * and it is fine, the concurrent map makes sure each callback is handled exactly once
+         * and it is fine, the callback table makes sure each callback is handled exactly once
          */
         void submitDiscreteTimeoutTask(final long handle, long timeoutNanos) {
             m_ex.schedule(new Runnable() {
@@ -677,7 +696,7 @@ class Distributer {
 
             //Race with expiration thread to be the first to remove the callback
             //from the map and process it
-            final CallbackBookeeping stuff = m_callbacks.remove(response.getClientHandle());
+            final CallbackBookeeping stuff = m_callbacks.remove(handle);
 
             // presumably (hopefully) this is a response for a timed-out message
             if (stuff == null) {
@@ -751,47 +770,7 @@ class Distributer {
                 /*
                  * Repair all cluster topology data with the node connection removed
                  */
-                Iterator<Map.Entry<Integer, NodeConnection>> i = m_partitionMasters.entrySet().iterator();
-                while (i.hasNext()) {
-                    Map.Entry<Integer, NodeConnection> entry = i.next();
-                    if (entry.getValue() == this) {
-                        i.remove();
-                    }
-                }
-
-                i = m_hostIdToConnection.entrySet().iterator();
-                while (i.hasNext()) {
-                    Map.Entry<Integer, NodeConnection> entry = i.next();
-                    if (entry.getValue() == this) {
-                        i.remove();
-                    }
-                }
-
-                Iterator<Map.Entry<Integer, NodeConnection[]>> i2 = m_partitionReplicas.entrySet().iterator();
-                List<Pair<Integer, NodeConnection[]>> entriesToRewrite = new ArrayList<>();
-                while (i2.hasNext()) {
-                    Map.Entry<Integer, NodeConnection[]> entry = i2.next();
-                    for (NodeConnection nc : entry.getValue()) {
-                        if (nc == this) {
-                            entriesToRewrite.add(Pair.of(entry.getKey(), entry.getValue()));
-                        }
-                    }
-                }
-
-                for (Pair<Integer, NodeConnection[]> entry : entriesToRewrite) {
-                    m_partitionReplicas.remove(entry.getFirst());
-                    NodeConnection survivors[] = new NodeConnection[entry.getSecond().length - 1];
-                    if (survivors.length == 0) {
-                        break;
-                    }
-                    int zz = 0;
-                    for (int ii = 0; ii < entry.getSecond().length; ii++) {
-                        if (entry.getSecond()[ii] != this) {
-                            survivors[zz++] = entry.getSecond()[ii];
-                        }
-                    }
-                    m_partitionReplicas.put(entry.getFirst(), survivors);
-                }
+                removeFromAffinityTopology(this);
 
                 m_connections.remove(this);
                 //Notify listeners that a connection has been lost
@@ -836,12 +815,12 @@ class Distributer {
                         ClientResponse.CONNECTION_LOST, new VoltTable[0],
                         "Connection to database host (" + m_connection.getHostnameAndIPAndPort() +
                 ") was lost before a response was received");
-            for (Map.Entry<Long, CallbackBookeeping> e : m_callbacks.entrySet()) {
+            for (long handle : m_callbacks.handles()) {
                 //Check for race with other threads
-                if (m_callbacks.remove(e.getKey()) == null) {
+                final CallbackBookeeping callBk = m_callbacks.remove(handle);
+                if (callBk == null) {
                     continue;
                 }
-                final CallbackBookeeping callBk = e.getValue();
                 try {
                     callBk.callback.clientCallback(r);
                 }
@@ -1049,7 +1028,9 @@ class Distributer {
 
         if (m_useClientAffinity) {
             synchronized (this) {
-                m_hostIdToConnection.put(hostId, cxn);
+                Map<Integer, NodeConnection> hostIdToConnection = new HashMap<>(m_hostIdToConnection);
+                hostIdToConnection.put(hostId, cxn);
+                m_hostIdToConnection = ImmutableMap.copyOf(hostIdToConnection);
             }
 
             if (m_subscribedConnection == null) {
@@ -1145,122 +1126,140 @@ class Distributer {
         boolean backpressure = true;
 
         /*
-         * Synchronization is necessary to ensure that m_connections is not modified
-         * as well as to ensure that backpressure is reported correctly
+         * No lock is taken on the common path. m_connections is copy on write and the
+         * affinity topology is an immutable snapshot, so the connection picked here may
+         * be stale by the time work is created on it. That is handled the same way as a
+         * connection dropping after the work is queued, NodeConnection.createWork checks
+         * m_isConnected after registering the callback.
          */
-        synchronized (this) {
-            final int totalConnections = m_connections.size();
+        final int totalConnections = m_connections.size();
 
-            if (totalConnections == 0) {
-                throw new NoConnectionsException("No connections.");
-            }
+        if (totalConnections == 0) {
+            throw new NoConnectionsException("No connections.");
+        }
 
-            /*
-             * Check if the master for the partition is known. No back pressure check to ensure correct
-             * routing, but backpressure will be managed anyways. This is where we guess partition based on client
-             * affinity and known topology (hashinator initialized).
-             */
-            if (m_useClientAffinity && (m_hashinator != null)) {
-                final ImmutableSortedMap<String, Procedure> procedures = m_procedureInfo.get();
-                Procedure procedureInfo = null;
-                if (procedures != null) {
-                    procedureInfo = procedures.get(invocation.getProcName());
+        /*
+         * Check if the master for the partition is known. No back pressure check to ensure correct
+         * routing, but backpressure will be managed anyways. This is where we guess partition based on client
+         * affinity and known topology (hashinator initialized).
+         */
+        final AffinityTopology topology = m_affinityTopology;
+        if (m_useClientAffinity && (topology.m_hashinator != null)) {
+            final ImmutableSortedMap<String, Procedure> procedures = m_procedureInfo.get();
+            Procedure procedureInfo = null;
+            if (procedures != null) {
+                procedureInfo = procedures.get(invocation.getProcName());
+            }
+            Integer hashedPartition = -1;
+
+            if (procedureInfo != null) {
+                hashedPartition = Constants.MP_INIT_PID;
+                if (( ! procedureInfo.multiPart) &&
+                    // User may have passed too few parameters to allow dispatching.
+                    // Avoid an indexing error here to fall through to the proper ProcCallException.
+                        (procedureInfo.partitionParameter < invocation.getPassedParamCount())) {
+                    hashedPartition = topology.m_hashinator.getHashedPartitionForParameter(
+                            procedureInfo.partitionParameterType,
+                            invocation.getPartitionParamValue(procedureInfo.partitionParameter));
                 }
-                Integer hashedPartition = -1;
-
-                if (procedureInfo != null) {
-                    hashedPartition = Constants.MP_INIT_PID;
-                    if (( ! procedureInfo.multiPart) &&
-                        // User may have passed too few parameters to allow dispatching.
-                        // Avoid an indexing error here to fall through to the proper ProcCallException.
-                            (procedureInfo.partitionParameter < invocation.getPassedParamCount())) {
-                        hashedPartition = m_hashinator.getHashedPartitionForParameter(
-                                procedureInfo.partitionParameterType,
-                                invocation.getPartitionParamValue(procedureInfo.partitionParameter));
-                    }
-                    /*
-                     * If the procedure is read only and single part and the user wants it, load balance across replicas
-                     * This is probably slower for SAFE consistency.
-                     */
-                    if (!procedureInfo.multiPart && procedureInfo.readOnly && m_sendReadsToReplicasBytDefaultIfCAEnabled) {
-                        NodeConnection partitionReplicas[] = m_partitionReplicas.get(hashedPartition);
-                        if (partitionReplicas != null && partitionReplicas.length > 0) {
-                            cxn = partitionReplicas[ThreadLocalRandom.current().nextInt(partitionReplicas.length)];
-                            if (cxn.hadBackPressure()) {
-                                //See if there is one without backpressure, make sure it's still connected
-                                for (NodeConnection nc : partitionReplicas) {
-                                    if (!nc.hadBackPressure() && nc.m_isConnected) {
-                                        cxn = nc;
-                                        break;
-                                    }
+                /*
+                 * If the procedure is read only and single part and the user wants it, load balance across replicas
+                 * This is probably slower for SAFE consistency.
+                 */
+                if (!procedureInfo.multiPart && procedureInfo.readOnly && m_sendReadsToReplicasBytDefaultIfCAEnabled) {
+                    NodeConnection partitionReplicas[] = topology.m_partitionReplicas.get(hashedPartition);
+                    if (partitionReplicas != null && partitionReplicas.length > 0) {
+                        cxn = partitionReplicas[ThreadLocalRandom.current().nextInt(partitionReplicas.length)];
+                        if (cxn.hadBackPressure()) {
+                            //See if there is one without backpressure, make sure it's still connected
+                            for (NodeConnection nc : partitionReplicas) {
+                                if (!nc.hadBackPressure() && nc.m_isConnected) {
+                                    cxn = nc;
+                                    break;
                                 }
                             }
-                            if (!cxn.hadBackPressure() || ignoreBackpressure) {
-                                backpressure = false;
-                            }
                         }
-                    } else {
-                        /*
-                         * For writes or SAFE reads, this is the best way to go
-                         */
-                        cxn = m_partitionMasters.get(hashedPartition);
-                        if (cxn != null && !cxn.hadBackPressure() || ignoreBackpressure) {
+                        if (!cxn.hadBackPressure() || ignoreBackpressure) {
                             backpressure = false;
                         }
                     }
+                } else {
+                    /*
+                     * For writes or SAFE reads, this is the best way to go
+                     */
+                    cxn = topology.m_partitionMasters.get(hashedPartition);
+                    if (cxn != null && !cxn.hadBackPressure() || ignoreBackpressure) {
+                        backpressure = false;
+                    }
                 }
-                if (cxn != null && !cxn.m_isConnected) {
-                    // Would be nice to log something here
-                    // Client affinity picked a connection that was actually disconnected.  Reset to null
-                    // and let the round-robin choice pick a connection
-                    cxn = null;
-                }
-                ClientAffinityStats stats = m_clientAffinityStats.get(hashedPartition);
-                if (stats == null) {
-                    stats = new ClientAffinityStats(hashedPartition, 0, 0, 0, 0);
-                    m_clientAffinityStats.put(hashedPartition, stats);
+            }
+            if (cxn != null && !cxn.m_isConnected) {
+                // Would be nice to log something here
+                // Client affinity picked a connection that was actually disconnected.  Reset to null
+                // and let the round-robin choice pick a connection
+                cxn = null;
+            }
+            ClientAffinityStats stats = m_clientAffinityStats.get(hashedPartition);
+            if (stats == null) {
+                stats = new ClientAffinityStats(hashedPartition, 0, 0, 0, 0);
+                ClientAffinityStats existing = m_clientAffinityStats.putIfAbsent(hashedPartition, stats);
+                if (existing != null) {
+                    stats = existing;
                 }
-                if (cxn != null) {
-                    if (procedureInfo != null && procedureInfo.readOnly) {
-                        stats.addAffinityRead();
-                    }
-                    else {
-                        stats.addAffinityWrite();
-                    }
+            }
+            if (cxn != null) {
+                if (procedureInfo != null && procedureInfo.readOnly) {
+                    stats.addAffinityRead();
                 }
-                // account these here because we lose the partition ID and procedure info once we
-                // bust out of this scope.
                 else {
-                    if (procedureInfo != null && procedureInfo.readOnly) {
-                        stats.addRrRead();
-                    }
-                    else {
-                        stats.addRrWrite();
-                    }
+                    stats.addAffinityWrite();
                 }
             }
-            if (cxn == null) {
-                for (int i=0; i < totalConnections; ++i) {
-                    cxn = m_connections.get(Math.abs(++m_nextConnection % totalConnections));
-                    if (!cxn.hadBackPressure() || ignoreBackpressure) {
-                        // serialize and queue the invocation
-                        backpressure = false;
-                        break;
-                    }
+            // account these here because we lose the partition ID and procedure info once we
+            // bust out of this scope.
+            else {
+                if (procedureInfo != null && procedureInfo.readOnly) {
+                    stats.addRrRead();
                 }
+                else {
+                    stats.addRrWrite();
+                }
+            }
+        }
+        if (cxn == null) {
+            cxn = nextRoundRobinConnection(ignoreBackpressure);
+            if (cxn != null) {
+                backpressure = false;
             }
+        }
 
-            if (backpressure) {
-                cxn = null;
-                for (ClientStatusListenerExt s : m_listeners) {
-                    s.backpressure(true);
+        if (backpressure) {
+            /*
+             * Synchronization on Distributer.this is critical to ensure that queue
+             * does not report backpressure AFTER the write stream reports that backpressure
+             * has ended thus resulting in a lost wakeup. Look for a connection again
+             * while holding the monitor, if offBackPressure() already ran it will be found.
+             */
+            synchronized (this) {
+                if (cxn == null) {
+                    cxn = nextRoundRobinConnection(ignoreBackpressure);
+                    backpressure = cxn == null;
+                } else {
+                    // Client affinity picked this connection, it is not traded for a round-robin one
+                    backpressure = cxn.hadBackPressure();
+                }
+                if (backpressure) {
+                    cxn = null;
+                    for (ClientStatusListenerExt s : m_listeners) {
+                        s.backpressure(true);
+                    }
                 }
             }
         }
 
         /*
-         * Do the heavy weight serialization outside the synchronized block.
-         * createWork synchronizes on an individual connection which allows for more concurrency
+         * Do the heavy weight serialization after picking the connection.
+         * createWork only touches state owned by an individual connection which allows for more concurrency
          */
         if (cxn != null) {
             ByteBuffer buf = null;
@@ -1277,6 +1276,24 @@ class Distributer {
         return !backpressure;
     }
 
+    /**
+     * Round-robin across all connections starting after the last one picked
+     * @return the first connection without backpressure or null if every connection
+     * has backpressure
+     */
+    private NodeConnection nextRoundRobinConnection(boolean ignoreBackpressure) {
+        // Iterate a snapshot so the size can't change underneath the modulo
+        final Object connections[] = m_connections.toArray();
+        for (int i = 0; i < connections.length; ++i) {
+            final NodeConnection cxn =
+                    (NodeConnection)connections[Math.abs(m_nextConnection.incrementAndGet() % connections.length)];
+            if (!cxn.hadBackPressure() || ignoreBackpressure) {
+                return cxn;
+            }
+        }
+        return null;
+    }
+
     /**
      * Shutdown the VoltNetwork allowing the Ports to close and free resources
      * like memory pools
@@ -1317,13 +1334,11 @@ class Distributer {
         }
     }
 
-    synchronized void addClientStatusListener(ClientStatusListenerExt listener) {
-        if (!m_listeners.contains(listener)) {
-            m_listeners.add(listener);
-        }
+    void addClientStatusListener(ClientStatusListenerExt listener) {
+        m_listeners.addIfAbsent(listener);
     }
 
-    synchronized boolean removeClientStatusListener(ClientStatusListenerExt listener) {
+    boolean removeClientStatusListener(ClientStatusListenerExt listener) {
         return m_listeners.remove(listener);
     }
 
@@ -1377,11 +1392,9 @@ class Distributer {
     Map<Integer, ClientAffinityStats> getAffinityStatsSnapshot()
     {
         Map<Integer, ClientAffinityStats> retval = new HashMap<>();
-        // these get modified under this lock in queue()
-        synchronized(this) {
-            for (Entry<Integer, ClientAffinityStats> e : m_clientAffinityStats.entrySet()) {
-                retval.put(e.getKey(), (ClientAffinityStats)e.getValue().clone());
-            }
+        // these get modified concurrently by queue(), the counters are atomic
+        for (Entry<Integer, ClientAffinityStats> e : m_clientAffinityStats.entrySet()) {
+            retval.put(e.getKey(), (ClientAffinityStats)e.getValue().clone());
         }
         return retval;
     }
@@ -1421,17 +1434,21 @@ class Distributer {
         return Collections.unmodifiableMap(connectedHostIPAndPortMap);
     }
 
+    /*
+     * Must be called while holding the Distributer monitor
+     */
     private void updateAffinityTopology(VoltTable tables[]) {
         //First table contains the description of partition ids master/slave relationships
         VoltTable vt = tables[0];
 
         //In future let TOPO return cooked bytes when cooked and we use correct recipe
         boolean cooked = false;
+        final HashinatorLite hashinator;
         if (tables.length == 1) {
             //Just in case the new client connects to the old version of Volt that only returns 1 topology table
             // We're going to get the MPI back in this table, so subtract it out from the number of partitions.
             int numPartitions = vt.getRowCount() - 1;
-            m_hashinator = new HashinatorLite(numPartitions); // legacy only
+            hashinator = new HashinatorLite(numPartitions); // legacy only
         } else {
             //Second table contains the hash function
             boolean advanced = tables[1].advanceRow();
@@ -1440,12 +1457,13 @@ class Distributer {
                                    "performance will be lower because transactions can't be routed at this client");
                 return;
             }
-            m_hashinator = new HashinatorLite(
+            hashinator = new HashinatorLite(
                     tables[1].getVarbinary("HASHCONFIG"),
                     cooked);
         }
-        m_partitionMasters.clear();
-        m_partitionReplicas.clear();
+        final Map<Integer, NodeConnection> hostIdToConnection = m_hostIdToConnection;
+        final Map<Integer, NodeConnection> partitionMasters = new HashMap<>();
+        final Map<Integer, NodeConnection[]> partitionReplicas = new HashMap<>();
         // The MPI's partition ID is 16383 (MpInitiator.MP_INIT_PID), so we shouldn't inadvertently
         // hash to it.  Go ahead and include it in the maps, we can use it at some point to
         // route MP transactions directly to the MPI node.
@@ -1457,25 +1475,63 @@ class Distributer {
             for (String site : vt.getString("Sites").split(",")) {
                 site = site.trim();
                 Integer hostId = Integer.valueOf(site.split(":")[0]);
-                if (m_hostIdToConnection.containsKey(hostId)) {
-                    connections.add(m_hostIdToConnection.get(hostId));
+                if (hostIdToConnection.containsKey(hostId)) {
+                    connections.add(hostIdToConnection.get(hostId));
                 } else {
                     unconnected.add(hostId);
                }
             }
-            m_partitionReplicas.put(partition, connections.toArray(new NodeConnection[0]));
+            partitionReplicas.put(partition, connections.toArray(new NodeConnection[0]));
 
             Integer leaderHostId = Integer.valueOf(vt.getString("Leader").split(":")[0]);
-            if (m_hostIdToConnection.containsKey(leaderHostId)) {
-                m_partitionMasters.put(partition, m_hostIdToConnection.get(leaderHostId));
+            if (hostIdToConnection.containsKey(leaderHostId)) {
+                partitionMasters.put(partition, hostIdToConnection.get(leaderHostId));
             }
         }
+        m_affinityTopology = new AffinityTopology(hashinator, partitionMasters, partitionReplicas);
         if (m_topologyChangeAware) {
             m_unconnectedHosts.set(ImmutableSet.copyOf(unconnected));
         }
         refreshPartitionKeys(true);
     }
 
+    /*
+     * Publish a copy of the routing state with every reference to a lost connection removed.
+     * Must be called while holding the Distributer monitor
+     */
+    private void removeFromAffinityTopology(NodeConnection lost) {
+        final AffinityTopology topology = m_affinityTopology;
+
+        final Map<Integer, NodeConnection> partitionMasters = new HashMap<>();
+        for (Map.Entry<Integer, NodeConnection> entry : topology.m_partitionMasters.entrySet()) {
+            if (entry.getValue() != lost) {
+                partitionMasters.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        final Map<Integer, NodeConnection[]> partitionReplicas = new HashMap<>();
+        for (Map.Entry<Integer, NodeConnection[]> entry : topology.m_partitionReplicas.entrySet()) {
+            List<NodeConnection> survivors = new ArrayList<>(entry.getValue().length);
+            for (NodeConnection nc : entry.getValue()) {
+                if (nc != lost) {
+                    survivors.add(nc);
+                }
+            }
+            if (!survivors.isEmpty()) {
+                partitionReplicas.put(entry.getKey(), survivors.toArray(new NodeConnection[0]));
+            }
+        }
+        m_affinityTopology = new AffinityTopology(topology.m_hashinator, partitionMasters, partitionReplicas);
+
+        final Map<Integer, NodeConnection> hostIdToConnection = new HashMap<>();
+        for (Map.Entry<Integer, NodeConnection> entry : m_hostIdToConnection.entrySet()) {
+            if (entry.getValue() != lost) {
+                hostIdToConnection.put(entry.getKey(), entry.getValue());
+            }
+        }
+        m_hostIdToConnection = ImmutableMap.copyOf(hostIdToConnection);
+    }
+
     private void updateProcedurePartitioning(VoltTable vt) {
         Map<String, Procedure> procs = Maps.newHashMap();
         while (vt.advanceRow()) {
@@ -1524,7 +1580,7 @@ class Distributer {
      * @return
      */
     public boolean isHashinatorInitialized() {
-        return (m_hashinator != null);
+        return (m_affinityTopology.m_hashinator != null);
     }
 
     /**
@@ -1535,10 +1591,11 @@ class Distributer {
      * @return
      */
     public long getPartitionForParameter(byte typeValue, Object value) {
-        if (m_hashinator == null) {
+        final HashinatorLite hashinator = m_affinityTopology.m_hashinator;
+        if (hashinator == null) {
             return -1;
         }
-        return m_hashinator.getHashedPartitionForParameter(typeValue, value);
+        return hashinator.getHashedPartitionForParameter(typeValue, value);
     }
 
     private ByteBuffer serializeSPI(ProcedureInvocation pi) throws IOException {
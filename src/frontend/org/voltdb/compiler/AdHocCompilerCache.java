@@ -17,17 +17,21 @@
 
 package org.voltdb.compiler;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 
+import org.voltcore.utils.Pair;
 import org.voltdb.common.Constants;
 import org.voltdb.planner.BoundPlan;
 import org.voltdb.utils.Encoder;
+import org.voltdb.utils.SegmentedLruCache;
 
 import com.google_voltpatches.common.cache.Cache;
 import com.google_voltpatches.common.cache.CacheBuilder;
@@ -43,6 +47,15 @@ import com.google_voltpatches.common.cache.CacheBuilder;
  * statement mapped to core parameterized plans. These parameterized
  * plans need parameter values and sql literals in order to be
  * actually used.
+ *
+ * Both levels are thread safe without a cache wide lock, they are
+ * {@link SegmentedLruCache}s so planner threads only contend when they
+ * look up statements that hash to the same segment.
+ *
+ * When a plan cache directory has been set, the second level is also saved
+ * there per catalog hash by a {@link PersistentPlanCache} and loaded again
+ * the next time a cache is created for the same catalog hash, e.g. after a
+ * restart or when a catalog update is rolled back.
  */
 public class AdHocCompilerCache implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -55,10 +68,29 @@ public class AdHocCompilerCache implements Serializable {
     private static Cache<String, AdHocCompilerCache> m_catalogHashMatch =
             CacheBuilder.newBuilder().weakValues().build();
 
+    // where parameterized plans are saved, null if they are not
+    private static File m_planCacheDir = null;
+    private static String m_planCacheBuildString = null;
+
     public static void clearHashCache() {
+        for (AdHocCompilerCache cache : m_catalogHashMatch.asMap().values()) {
+            if (cache.m_persistentCache != null) {
+                cache.m_persistentCache.close();
+            }
+        }
         m_catalogHashMatch.invalidateAll();
     }
 
+    /**
+     * Save parameterized plans in dir from now on and warm the caches created
+     * from now on with the plans saved there. Plans are tied to the build that
+     * made them as well as the catalog, buildString identifies the build.
+     */
+    public synchronized static void setPlanCacheDirectory(File dir, String buildString) {
+        m_planCacheDir = dir;
+        m_planCacheBuildString = buildString;
+    }
+
     /**
      * Get the global cache for a given hash of the catalog. Note that there can be only
      * one cache per catalogHash at a time.
@@ -67,12 +99,19 @@ public class AdHocCompilerCache implements Serializable {
         String hashString = Encoder.hexEncode(catalogHash);
         AdHocCompilerCache cache = m_catalogHashMatch.getIfPresent(hashString);
         if (cache == null) {
-            cache = new AdHocCompilerCache();
+            cache = new AdHocCompilerCache(catalogHash);
             m_catalogHashMatch.put(hashString, cache);
         }
         return cache;
     }
 
+    /**
+     * @return the caches of all the catalog hashes still in use, for statistics
+     */
+    static Map<String, AdHocCompilerCache> getCachesByCatalogHash() {
+        return m_catalogHashMatch.asMap();
+    }
+
     //////////////////////////////////////////////////////////////////////////
     // PER-INSTANCE AWESOMEC CACHING CODE
     //////////////////////////////////////////////////////////////////////////
@@ -82,23 +121,37 @@ public class AdHocCompilerCache implements Serializable {
     // max cache size for parameterized plans
     final long MAX_LITERAL_MEM  = Long.getLong("ADHOC_COMPILER_CACHE_MAX_LITERAL_MEM_BYTES", 32*1024*1024);
     final int MAX_CORE_ENTRIES;
+    // each cache is split into this many independently locked LRU segments
+    static final int SEGMENTS = Integer.getInteger("ADHOC_COMPILER_CACHE_SEGMENTS", 16);
 
-    /** cache of literals to full plans */
-    final Map<String, AdHocPlannedStatement> m_literalCache;
+    private static final SegmentedLruCache.Weigher<AdHocPlannedStatement> SERIALIZED_SIZE =
+            new SegmentedLruCache.Weigher<AdHocPlannedStatement>() {
+        @Override
+        public long weigh(AdHocPlannedStatement value) {
+            return value.getSerializedSize();
+        }
+    };
+
+    /** cache of literals to full plans, bounded by entries and by MAX_LITERAL_MEM */
+    final SegmentedLruCache<String, AdHocPlannedStatement> m_literalCache;
     /** cache of parameterized plan descriptions to one or more core parameterized plans,
      *  each plan optionally has its own requirements for which parameters need to be bound
-     *  to what values to enable its specialized (expression-indexed) plan. */
-    final Map<String, List<BoundPlan> > m_coreCache;
-
-    // placeholder stats used during development that may/may not survive
-    long m_literalHits = 0;
-    long m_literalQueries = 0;
-    long m_literalInsertions = 0;
-    long m_literalEvictions = 0;
-    long m_planHits = 0;
-    long m_planQueries = 0;
-    long m_planInsertions = 0;
-    long m_planEvictions = 0;
+     *  to what values to enable its specialized (expression-indexed) plan.
+     *  The lists are copy on write so they can be read without a lock. */
+    final SegmentedLruCache<String, CopyOnWriteArrayList<BoundPlan>> m_coreCache;
+
+    /** saved copy of m_coreCache, null if plans are not saved */
+    final transient PersistentPlanCache m_persistentCache;
+
+    // counters reported through @Statistics PLANCACHE
+    final LongAdder m_literalHits = new LongAdder();
+    final LongAdder m_literalQueries = new LongAdder();
+    final LongAdder m_literalInsertions = new LongAdder();
+    final LongAdder m_planHits = new LongAdder();
+    final LongAdder m_planQueries = new LongAdder();
+    final LongAdder m_planInsertions = new LongAdder();
+    // evictions while warming the cache are not counted
+    final long m_warmingEvictions;
 
     /** {@see this#startPeriodicStatsPrinting() } */
     Timer m_statsTimer = null;
@@ -106,8 +159,8 @@ public class AdHocCompilerCache implements Serializable {
     /**
      * Constructor with default cache sizes.
      */
-    private AdHocCompilerCache() {
-        this(1000, 1000);
+    private AdHocCompilerCache(byte[] catalogHash) {
+        this(1000, 1000, SEGMENTS, m_planCacheDir, catalogHash, m_planCacheBuildString);
     }
 
     /**
@@ -117,138 +170,104 @@ public class AdHocCompilerCache implements Serializable {
      * @param maxLiteralMem cache memory for literals
      */
     AdHocCompilerCache(int maxLiteralEntries, int maxCoreEntries) {
+        this(maxLiteralEntries, maxCoreEntries, SEGMENTS, null, null, null);
+    }
+
+    /**
+     * Constructor that warms the parameterized plan cache with the plans saved in
+     * planCacheDir for catalogHash and saves the plans it is given there.
+     * Called directly for testing and benchmarks.
+     */
+    AdHocCompilerCache(int maxLiteralEntries, int maxCoreEntries, int segments,
+                       File planCacheDir, byte[] catalogHash, String buildString) {
         MAX_LITERAL_ENTRIES = maxLiteralEntries;
         MAX_CORE_ENTRIES = maxCoreEntries;
 
-        // an LRU cache map
-        m_literalCache = new AdHocStatementCache(MAX_LITERAL_ENTRIES, MAX_LITERAL_MEM);
+        // LRU caches, approximate across segments
+        m_literalCache = new SegmentedLruCache<String, AdHocPlannedStatement>(
+                segments, MAX_LITERAL_ENTRIES, MAX_LITERAL_MEM, SERIALIZED_SIZE);
+        m_coreCache = new SegmentedLruCache<String, CopyOnWriteArrayList<BoundPlan>>(segments, MAX_CORE_ENTRIES);
 
-        // an LRU cache map
-        m_coreCache = new LinkedHashMap<String, List<BoundPlan> >(MAX_CORE_ENTRIES * 2, .75f, true) {
-            private static final long serialVersionUID = 1L;
-
-            // This method is called just after a new entry has been added
-            @Override
-            public boolean removeEldestEntry(Map.Entry<String, List<BoundPlan> > eldest) {
-                if (size() > MAX_CORE_ENTRIES) {
-                    ++m_planEvictions;
-                    return true;
-                }
-                return false;
+        if (planCacheDir != null && catalogHash != null) {
+            m_persistentCache = new PersistentPlanCache(this, planCacheDir, catalogHash, buildString, MAX_CORE_ENTRIES);
+            for (Pair<String, BoundPlan> saved : m_persistentCache.load()) {
+                getOrAddBoundVariants(saved.getFirst()).addIfAbsent(saved.getSecond());
             }
-
-        };
-    }
-
-    // define a LinkedHashMap based LRU cache bounds by both entry number and entry value on-heap size
-    // without changing Map.Entry, only works for value of type AdHocPlannedStatement
-    // only extend put, remove,clear and removeEldestEntry methods to account weight
-    public class AdHocStatementCache extends LinkedHashMap<String, AdHocPlannedStatement>{
-       private static final long serialVersionUID = 2988383448026641836L;
-        private final int maxEntries;
-        private final long maxMemory; // in bytes
-        private long currentMemory;   // in bytes
-
-        public AdHocStatementCache() {
-            // default max entry of 1000
-            // default max value size of 32MB
-            this(1000, 32 * 1024 * 1024);
         }
-
-        public AdHocStatementCache(final int maxEntries) {
-            this(maxEntries, 32 * 1024 * 1024);
-        }
-
-        public AdHocStatementCache(final int maxEntries, final long maxMemory) {
-            // set accessOrder to true for LRU
-            super(maxEntries * 2, .75f, true);
-            this.maxEntries = maxEntries;
-            this.maxMemory = maxMemory;
-            this.currentMemory = 0;
-        }
-
-        // This method is called just after a new entry has been added
-        @Override
-        public boolean removeEldestEntry(final Map.Entry<String, AdHocPlannedStatement> eldest) {
-            if ((size() > maxEntries) || (this.currentMemory > this.maxMemory))  {
-                ++m_literalEvictions;
-                this.currentMemory -= eldest.getValue().getSerializedSize();
-                return true;
-            }
-            return false;
-        }
-
-        @Override
-        public AdHocPlannedStatement put(String key, AdHocPlannedStatement value) {
-            this.currentMemory += value.getSerializedSize();
-            return super.put(key,value);
-        }
-
-        @Override
-        public AdHocPlannedStatement remove(Object key) {
-            AdHocPlannedStatement value = super.remove(key);
-            if (value != null) {
-                this.currentMemory -= value.getSerializedSize();
-            }
-            return value;
+        else {
+            m_persistentCache = null;
         }
+        m_warmingEvictions = m_coreCache.evictions();
+    }
 
-        @Override
-        public void clear() {
-            super.clear();
-            this.currentMemory = 0;
+    private CopyOnWriteArrayList<BoundPlan> getOrAddBoundVariants(String parsedToken) {
+        CopyOnWriteArrayList<BoundPlan> boundVariants = new CopyOnWriteArrayList<BoundPlan>();
+        CopyOnWriteArrayList<BoundPlan> existing = m_coreCache.putIfAbsent(parsedToken, boundVariants);
+        if (existing != null) {
+            return existing;
         }
+        // Note that there is an edge case in which more than one plan is getting counted as one
+        // "plan insertion". This only happens when two different plans arose from the same parameterized
+        // query (token) because one invocation used the correct constants to trigger an expression index and
+        // another invocation did not.  These are not counted separately (which would have to happen below
+        // after each call to boundVariants.add) because they are not evicted separately.
+        // It seems saner to use consistent units when counting insertions vs. evictions.
+        m_planInsertions.increment();
+        return boundVariants;
     }
 
     /**
      * Stats printing method used during development.
      * Probably shouldn't live past real stats integration.
      */
-    synchronized void printStats() {
+    void printStats() {
+        long literalHits = m_literalHits.sum();
+        long literalQueries = m_literalQueries.sum();
+        long planHits = m_planHits.sum();
+        long planQueries = m_planQueries.sum();
         String line1 = String.format("CACHE STATS - Literals: Hits %d/%d (%.1f%%), Inserts %d Evictions %d\n",
-                m_literalHits, m_literalQueries, (m_literalHits * 100.0) / m_literalQueries,
-                m_literalInsertions, m_literalEvictions);
+                literalHits, literalQueries, (literalHits * 100.0) / literalQueries,
+                m_literalInsertions.sum(), getLiteralEvictions());
         String line2 = String.format("CACHE STATS - Plans:    Hits %d/%d (%.1f%%), Inserts %d Evictions %d\n",
-                m_planHits, m_planQueries, (m_planHits * 100.0) /m_planQueries,
-                m_planInsertions, m_planEvictions);
+                planHits, planQueries, (planHits * 100.0) / planQueries,
+                m_planInsertions.sum(), getPlanEvictions());
 
         System.out.print(line1 + line2);
         System.out.flush();
-
-        // reset these
-        m_literalHits = 0;
-        m_literalQueries = 0;
-        m_literalInsertions = 0;
-        m_literalEvictions = 0;
-        m_planHits = 0;
-        m_planQueries = 0;
-        m_planInsertions = 0;
-        m_planEvictions = 0;
     }
 
     /**
      * @param sql SQL literal
      * @return full, ready-to-go plan
      */
-    public synchronized AdHocPlannedStatement getWithSQL(String sql) {
-        ++m_literalQueries;
+    public AdHocPlannedStatement getWithSQL(String sql) {
+        m_literalQueries.increment();
         AdHocPlannedStatement retval = m_literalCache.get(sql);
         if (retval != null) {
-            ++m_literalHits;
+            m_literalHits.increment();
         }
         return retval;
     }
 
+    /**
+     * Look up a SQL literal without counting it in the cache statistics.
+     * @param sql SQL literal
+     * @return full, ready-to-go plan
+     */
+    AdHocPlannedStatement peekWithSQL(String sql) {
+        return m_literalCache.get(sql);
+    }
+
     /**
      * @param parsedToken String representing a parameterized and parsed
      * SQL statement
      * @return A CorePlan that needs parameter values to run.
      */
-    public synchronized List<BoundPlan> getWithParsedToken(String parsedToken) {
-        ++m_planQueries;
+    public List<BoundPlan> getWithParsedToken(String parsedToken) {
+        m_planQueries.increment();
         List<BoundPlan> retval = m_coreCache.get(parsedToken);
         if (retval != null) {
-            ++m_planHits;
+            m_planHits.increment();
         }
         return retval;
     }
@@ -271,12 +290,12 @@ public class AdHocCompilerCache implements Serializable {
      * @param hasUserQuestionMarkParameters is user provided parameterized query
      * @param hasAutoParameterizedException is the auto parameterized query has parameter exception
      */
-    public synchronized void put(String sql,
-                                 String parsedToken,
-                                 AdHocPlannedStatement planIn,
-                                 String[] extractedLiterals,
-                                 boolean hasUserQuestionMarkParameters,
-                                 boolean hasAutoParameterizedException)
+    public void put(String sql,
+                    String parsedToken,
+                    AdHocPlannedStatement planIn,
+                    String[] extractedLiterals,
+                    boolean hasUserQuestionMarkParameters,
+                    boolean hasAutoParameterizedException)
     {
         assert(sql != null);
         assert(parsedToken != null);
@@ -293,50 +312,39 @@ public class AdHocCompilerCache implements Serializable {
 
         // deal with L2 cache
         if (! hasAutoParameterizedException) {
-            BoundPlan matched = null;
             BoundPlan unmatched = new BoundPlan(planIn.core, planIn.parameterBindings(extractedLiterals));
             // deal with the parameterized plan cache first
-            List<BoundPlan> boundVariants = m_coreCache.get(parsedToken);
-            if (boundVariants == null) {
-                boundVariants = new ArrayList<BoundPlan>();
-                m_coreCache.put(parsedToken, boundVariants);
-                // Note that there is an edge case in which more than one plan is getting counted as one
-                // "plan insertion". This only happens when two different plans arose from the same parameterized
-                // query (token) because one invocation used the correct constants to trigger an expression index and
-                // another invocation did not.  These are not counted separately (which would have to happen below
-                // after each call to boundVariants.add) because they are not evicted separately.
-                // It seems saner to use consistent units when counting insertions vs. evictions.
-                ++m_planInsertions;
-            } else {
+            CopyOnWriteArrayList<BoundPlan> boundVariants = getOrAddBoundVariants(parsedToken);
+            // Don't count insertions (of possibly repeated tokens) here
+            //  -- see getOrAddBoundVariants where only UNIQUE token insertions are being counted, instead.
+            if (boundVariants.addIfAbsent(unmatched)) {
+                if (m_persistentCache != null) {
+                    m_persistentCache.append(parsedToken, unmatched);
+                }
+            }
+            else {
+                BoundPlan matched = null;
                 for (BoundPlan boundPlan : boundVariants) {
                     if (boundPlan.equals(unmatched)) {
                         matched = boundPlan;
                         break;
                     }
                 }
-                if (matched != null) {
-                    // if a different core is found, reuse it
-                    // this is useful when updating the literal cache
-                    if (unmatched.m_core != matched.m_core) {
-                        plan = new AdHocPlannedStatement(planIn, matched.m_core);
-                        plan.setBoundConstants(matched.m_constants);
-                    }
+                // if a different core is found, reuse it
+                // this is useful when updating the literal cache
+                if (matched != null && unmatched.m_core != matched.m_core) {
+                    plan = new AdHocPlannedStatement(planIn, matched.m_core);
+                    plan.setBoundConstants(matched.m_constants);
                 }
             }
-            if (matched == null) {
-                // Don't count insertions (of possibly repeated tokens) here
-                //  -- see the comment above where only UNIQUE token insertions are being counted, instead.
-                boundVariants.add(unmatched);
-            }
         }
 
         // then deal with the L1 cache
         if (! hasUserQuestionMarkParameters) {
-            AdHocPlannedStatement cachedPlan = m_literalCache.get(sql);
+            AdHocPlannedStatement cachedPlan = m_literalCache.putIfAbsent(sql, plan);
             if (cachedPlan == null) {
                 //* enable to debug */ System.out.println("DEBUG: Caching literal '" + sql + "'");
-                m_literalCache.put(sql, plan);
-                ++m_literalInsertions;
+                m_literalInsertions.increment();
             }
             else {
                 assert(cachedPlan.equals(plan));
@@ -368,6 +376,14 @@ public class AdHocCompilerCache implements Serializable {
         return m_literalCache.size();
     }
 
+    /**
+     * Return the serialized size of the plans in the literal cache.
+     * @return  literal cache size in bytes
+     */
+    public long getLiteralCacheBytes() {
+        return m_literalCache.weight();
+    }
+
     /**
      * Return the number of items in the core (parameterized) cache.
      * @return  core cache size as a count
@@ -375,4 +391,26 @@ public class AdHocCompilerCache implements Serializable {
     public int getCoreCacheSize() {
         return m_coreCache.size();
     }
+
+    long getLiteralEvictions() {
+        return m_literalCache.evictions();
+    }
+
+    long getPlanEvictions() {
+        return m_coreCache.evictions() - m_warmingEvictions;
+    }
+
+    /**
+     * Snapshot of the parameterized plan cache, least recently used first within each
+     * segment, one pair per bound plan, used to rewrite the saved plans.
+     */
+    List<Pair<String, BoundPlan>> getCorePlans() {
+        List<Pair<String, BoundPlan>> plans = new ArrayList<Pair<String, BoundPlan>>();
+        for (Map.Entry<String, CopyOnWriteArrayList<BoundPlan>> e : m_coreCache.entries()) {
+            for (BoundPlan plan : e.getValue()) {
+                plans.add(new Pair<String, BoundPlan>(e.getKey(), plan, false));
+            }
+        }
+        return plans;
+    }
 }
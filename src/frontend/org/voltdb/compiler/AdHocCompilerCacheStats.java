@@ -0,0 +1,88 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.compiler;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.voltdb.StatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * Statistics for @Statistics PLANCACHE, one row per ad hoc plan cache still in use,
+ * which is one per catalog hash. Counters are since the cache was created. WARMED_PLANS
+ * is the number of plans loaded from the saved plans when the cache was created, SAVED_PLANS
+ * and SAVED_BYTES describe the file they are saved in.
+ */
+public class AdHocCompilerCacheStats extends StatsSource {
+
+    public AdHocCompilerCacheStats() {
+        super(false);
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("CATALOG_HASH", VoltType.STRING));
+        columns.add(new ColumnInfo("LITERAL_ENTRIES", VoltType.INTEGER));
+        columns.add(new ColumnInfo("LITERAL_BYTES", VoltType.BIGINT));
+        columns.add(new ColumnInfo("LITERAL_HITS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("LITERAL_MISSES", VoltType.BIGINT));
+        columns.add(new ColumnInfo("LITERAL_EVICTIONS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("PLAN_ENTRIES", VoltType.INTEGER));
+        columns.add(new ColumnInfo("PLAN_HITS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("PLAN_MISSES", VoltType.BIGINT));
+        columns.add(new ColumnInfo("PLAN_EVICTIONS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("WARMED_PLANS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("SAVED_PLANS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("SAVED_BYTES", VoltType.BIGINT));
+        columns.add(new ColumnInfo("SAVE_FAILURES", VoltType.BIGINT));
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        return new ArrayList<Object>(AdHocCompilerCache.getCachesByCatalogHash().entrySet()).iterator();
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        @SuppressWarnings("unchecked")
+        Map.Entry<String, AdHocCompilerCache> entry = (Map.Entry<String, AdHocCompilerCache>) rowKey;
+        AdHocCompilerCache cache = entry.getValue();
+        rowValues[columnNameToIndex.get("CATALOG_HASH")] = entry.getKey();
+        long literalHits = cache.m_literalHits.sum();
+        long planHits = cache.m_planHits.sum();
+        rowValues[columnNameToIndex.get("LITERAL_ENTRIES")] = cache.getLiteralCacheSize();
+        rowValues[columnNameToIndex.get("LITERAL_BYTES")] = cache.getLiteralCacheBytes();
+        rowValues[columnNameToIndex.get("LITERAL_HITS")] = literalHits;
+        rowValues[columnNameToIndex.get("LITERAL_MISSES")] = cache.m_literalQueries.sum() - literalHits;
+        rowValues[columnNameToIndex.get("LITERAL_EVICTIONS")] = cache.getLiteralEvictions();
+        rowValues[columnNameToIndex.get("PLAN_ENTRIES")] = cache.getCoreCacheSize();
+        rowValues[columnNameToIndex.get("PLAN_HITS")] = planHits;
+        rowValues[columnNameToIndex.get("PLAN_MISSES")] = cache.m_planQueries.sum() - planHits;
+        rowValues[columnNameToIndex.get("PLAN_EVICTIONS")] = cache.getPlanEvictions();
+        PersistentPlanCache saved = cache.m_persistentCache;
+        rowValues[columnNameToIndex.get("WARMED_PLANS")] = saved == null ? 0L : saved.getLoadedPlans();
+        rowValues[columnNameToIndex.get("SAVED_PLANS")] = saved == null ? 0L : saved.getRecords();
+        rowValues[columnNameToIndex.get("SAVED_BYTES")] = saved == null ? 0L : saved.getFileBytes();
+        rowValues[columnNameToIndex.get("SAVE_FAILURES")] = saved == null ? 0L : saved.getWriteFailures();
+        super.updateStatsRow(rowKey, rowValues);
+    }
+}
@@ -0,0 +1,486 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.compiler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.Pair;
+import org.voltdb.ParameterSet;
+import org.voltdb.common.Constants;
+import org.voltdb.planner.BoundPlan;
+import org.voltdb.planner.CorePlan;
+import org.voltdb.utils.Encoder;
+
+/**
+ * On disk copy of the parameterized plan cache (the L2 cache of {@link AdHocCompilerCache})
+ * for one catalog hash, so a node that restarts or switches back to a catalog it has seen
+ * before does not have to plan its ad hoc workload from scratch.
+ *
+ * The file is named after the catalog hash and starts with a header holding the catalog hash
+ * and the build it was written by. A file written against another catalog or another build is
+ * never loaded, plans depend on both. The header is followed by CRC protected records of a
+ * parsed token and one bound plan. Records are appended by a background thread as plans are
+ * inserted and nothing is forced, a torn tail is ignored on load and cut off by the next write.
+ * The file is only held open while records are queued, so a cache that is dropped without being
+ * closed does not keep a file descriptor.
+ * Once the file holds more records than the cache can hold it is rewritten from the cache
+ * contents, which also drops the plans the cache has evicted. Files for other catalog hashes
+ * are kept for rollbacks and catalog switches, up to {@link #MAX_CATALOG_FILES} files in all:
+ * the first time a cache writes to the directory it deletes the least recently used ones.
+ */
+public class PersistentPlanCache {
+    private static final VoltLogger compileLog = new VoltLogger("COMPILE");
+
+    static final String FILE_EXTENSION = ".plans";
+    private static final int MAGIC = 0x504c414e; // "PLAN"
+    private static final int FORMAT_VERSION = 1;
+    // Catalog hashes are SHA-1
+    private static final int CATALOG_HASH_BYTES = 20;
+    // Rewrite the file once it holds this many times the records the cache can hold
+    private static final int COMPACTION_FACTOR = 2;
+    // Catalog hashes whose plans are kept, including the current one
+    static final int MAX_CATALOG_FILES = Math.max(Integer.getInteger("ADHOC_COMPILER_CACHE_PERSIST_CATALOGS", 4), 1);
+
+    private final AdHocCompilerCache m_owner;
+    private final File m_dir;
+    private final File m_file;
+    private final byte[] m_catalogHash;
+    private final byte[] m_buildString;
+    private final int m_maxRecords;
+    private final ExecutorService m_writer;
+    // Records queued to the writer and not yet written
+    private final AtomicInteger m_queued = new AtomicInteger();
+
+    // Only touched by the writer thread, after load()
+    private FileChannel m_channel;
+    // Set once the files of other catalogs have been pruned
+    private boolean m_pruned;
+    // Length of the usable part of the file found by load() or written before it was
+    // last closed, -1 to start a new file
+    private long m_validBytes = -1;
+    // Set when a write failed and the state of the file is unknown
+    private boolean m_needsRewrite;
+
+    // Written by the loading or writer thread, read by statistics
+    private volatile long m_loadedPlans;
+    private volatile long m_records;
+    private volatile long m_fileBytes;
+    private volatile long m_writeFailures;
+
+    PersistentPlanCache(AdHocCompilerCache owner, File dir, byte[] catalogHash, String buildString, int maxPlans) {
+        m_owner = owner;
+        m_dir = dir;
+        m_file = new File(dir, Encoder.hexEncode(catalogHash) + FILE_EXTENSION);
+        m_catalogHash = catalogHash;
+        m_buildString = buildString.getBytes(Constants.UTF8ENCODING);
+        m_maxRecords = Math.max(maxPlans, 1) * COMPACTION_FACTOR;
+        m_writer = CoreUtils.getCachedSingleThreadExecutor(
+                "Plan cache writer " + Encoder.hexEncode(catalogHash), TimeUnit.SECONDS.toMillis(1));
+    }
+
+    File getFile() {
+        return m_file;
+    }
+
+    /**
+     * Read the plans saved for this catalog hash, oldest first. The first write
+     * after loading cuts off anything that could not be read, or starts a new file
+     * if none of it could.
+     */
+    List<Pair<String, BoundPlan>> load() {
+        final List<Pair<String, BoundPlan>> plans = new ArrayList<>();
+        if (!m_file.exists()) {
+            return plans;
+        }
+        // Used again, keep it over the files of catalogs used less recently
+        m_file.setLastModified(System.currentTimeMillis());
+
+        final ByteBuffer buf;
+        try {
+            buf = ByteBuffer.wrap(Files.readAllBytes(m_file.toPath()));
+        } catch (IOException e) {
+            compileLog.warn("Unable to read the saved ad hoc plans in " + m_file + ", they will be replanned", e);
+            return plans;
+        }
+
+        if (!readHeader(buf)) {
+            compileLog.info("Ignoring the saved ad hoc plans in " + m_file + ", they were written by another build");
+            return plans;
+        }
+
+        final CRC32 crc = new CRC32();
+        m_validBytes = buf.position();
+        while (buf.hasRemaining()) {
+            final Pair<String, BoundPlan> plan = readRecord(buf, crc);
+            if (plan == null) {
+                compileLog.warn("Ignoring the end of the saved ad hoc plans in " + m_file +
+                        " after " + plans.size() + " plans, it is incomplete or damaged");
+                break;
+            }
+            m_validBytes = buf.position();
+            m_records++;
+            // Belt and braces, the header already matched the catalog hash
+            if (plan.getSecond().m_core.wasPlannedAgainstHash(m_catalogHash)) {
+                plans.add(plan);
+            }
+        }
+        m_fileBytes = m_validBytes;
+        m_loadedPlans = plans.size();
+        return plans;
+    }
+
+    /**
+     * Queue a plan that was just added to the cache to be saved.
+     */
+    void append(final String parsedToken, final BoundPlan plan) {
+        m_queued.incrementAndGet();
+        try {
+            m_writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    write(parsedToken, plan);
+                    if (m_queued.decrementAndGet() == 0 && m_channel != null) {
+                        // Reopened where it left off by the next write
+                        m_validBytes = m_fileBytes;
+                        closeChannel();
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            // Closed, the plan is not saved
+            m_queued.decrementAndGet();
+        }
+    }
+
+    /**
+     * Write the plans queued so far, then close the file and stop the writer thread.
+     * Plans added to the cache afterwards are not saved.
+     */
+    void close() {
+        try {
+            m_writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    closeChannel();
+                }
+            });
+        }
+        catch (RejectedExecutionException alreadyClosed) {}
+        m_writer.shutdown();
+    }
+
+    /**
+     * Wait for the plans queued so far to be written, for testing.
+     */
+    void sync() throws InterruptedException, ExecutionException {
+        m_writer.submit(new Runnable() {
+            @Override
+            public void run() {}
+        }).get();
+    }
+
+    private void write(String parsedToken, BoundPlan plan) {
+        try {
+            if (m_channel == null && !m_needsRewrite) {
+                open();
+            }
+            if (m_needsRewrite || m_records >= m_maxRecords) {
+                // The plan being written is in the cache, so it is in the rewritten file too.
+                // Plans queued behind it may be written twice, loading ignores duplicates.
+                rewrite();
+            }
+            else {
+                final ByteBuffer record = serializeRecord(parsedToken, plan);
+                if (record != null) {
+                    while (record.hasRemaining()) {
+                        m_channel.write(record);
+                    }
+                    m_records++;
+                    m_fileBytes = m_channel.position();
+                }
+            }
+        }
+        catch (IOException e) {
+            m_writeFailures++;
+            compileLog.warn("Unable to save an ad hoc plan to " + m_file, e);
+            closeChannel();
+            m_needsRewrite = true;
+        }
+    }
+
+    private void open() throws IOException {
+        if (!m_dir.exists() && !m_dir.mkdirs()) {
+            throw new IOException("Unable to create the plan cache directory " + m_dir);
+        }
+        if (!m_pruned) {
+            deleteLeastRecentlyUsed();
+            m_pruned = true;
+        }
+        if (m_validBytes < 0) {
+            openAt(0);
+            final ByteBuffer header = serializeHeader();
+            while (header.hasRemaining()) {
+                m_channel.write(header);
+            }
+            m_records = 0;
+        }
+        else {
+            openAt(m_validBytes);
+        }
+        m_fileBytes = m_channel.position();
+    }
+
+    /*
+     * Keep the files of the most recently used catalogs other than this one,
+     * the modification time of a file is when its plans were last loaded or written.
+     */
+    private void deleteLeastRecentlyUsed() {
+        final File[] files = m_dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        final List<File> others = new ArrayList<>();
+        for (File f : files) {
+            if (f.getName().endsWith(FILE_EXTENSION) && !f.equals(m_file)) {
+                others.add(f);
+            }
+        }
+        others.sort((a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+        for (File f : others.subList(Math.min(others.size(), MAX_CATALOG_FILES - 1), others.size())) {
+            if (f.delete()) {
+                compileLog.debug("Deleted the saved ad hoc plans of a catalog not used recently " + f);
+            }
+        }
+    }
+
+    @SuppressWarnings("resource")
+    private void openAt(long length) throws IOException {
+        m_channel = new RandomAccessFile(m_file, "rw").getChannel();
+        m_channel.truncate(length);
+        m_channel.position(length);
+    }
+
+    private void rewrite() throws IOException {
+        closeChannel();
+        final List<Pair<String, BoundPlan>> plans = m_owner.getCorePlans();
+        final File tmp = new File(m_dir, m_file.getName() + ".tmp");
+        long records = 0;
+        try (FileChannel fc = new FileOutputStream(tmp).getChannel()) {
+            final ByteBuffer header = serializeHeader();
+            while (header.hasRemaining()) {
+                fc.write(header);
+            }
+            for (Pair<String, BoundPlan> plan : plans) {
+                final ByteBuffer record = serializeRecord(plan.getFirst(), plan.getSecond());
+                if (record != null) {
+                    while (record.hasRemaining()) {
+                        fc.write(record);
+                    }
+                    records++;
+                }
+            }
+        }
+        Files.move(tmp.toPath(), m_file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        m_needsRewrite = false;
+        m_records = records;
+        openAt(m_file.length());
+        m_fileBytes = m_channel.position();
+    }
+
+    private void closeChannel() {
+        if (m_channel != null) {
+            try {
+                m_channel.close();
+            } catch (IOException ignore) {}
+            m_channel = null;
+        }
+    }
+
+    private ByteBuffer serializeHeader() {
+        final ByteBuffer buf = ByteBuffer.allocate(4 + 4 + 4 + m_buildString.length + CATALOG_HASH_BYTES);
+        buf.putInt(MAGIC);
+        buf.putInt(FORMAT_VERSION);
+        buf.putInt(m_buildString.length);
+        buf.put(m_buildString);
+        buf.put(m_catalogHash);
+        buf.flip();
+        return buf;
+    }
+
+    private boolean readHeader(ByteBuffer buf) {
+        try {
+            if (buf.getInt() != MAGIC || buf.getInt() != FORMAT_VERSION) {
+                return false;
+            }
+            final byte[] buildString = new byte[buf.getInt()];
+            buf.get(buildString);
+            final byte[] catalogHash = new byte[CATALOG_HASH_BYTES];
+            buf.get(catalogHash);
+            return Arrays.equals(buildString, m_buildString) &&
+                    Arrays.equals(catalogHash, m_catalogHash);
+        }
+        catch (BufferUnderflowException | NegativeArraySizeException e) {
+            return false;
+        }
+    }
+
+    /*
+     * A record is the length and CRC of its payload followed by the payload: the parsed token,
+     * the bound constants, the partitioning parameter index and value and the core plan.
+     * The partitioning index and value are not part of the flattened CorePlan.
+     * Returns null if the plan can't be saved.
+     */
+    private static ByteBuffer serializeRecord(String parsedToken, BoundPlan plan) {
+        final CorePlan core = plan.m_core;
+        try {
+            final byte[] token = parsedToken.getBytes(Constants.UTF8ENCODING);
+            final byte[][] constants = plan.m_constants == null ? null : new byte[plan.m_constants.length][];
+            int size = 4 + token.length + 4;
+            if (constants != null) {
+                for (int ii = 0; ii < constants.length; ii++) {
+                    size += 4;
+                    if (plan.m_constants[ii] != null) {
+                        constants[ii] = plan.m_constants[ii].getBytes(Constants.UTF8ENCODING);
+                        size += constants[ii].length;
+                    }
+                }
+            }
+            final ParameterSet partitioningValue = core.getPartitioningParamValue() == null ?
+                    ParameterSet.emptyParameterSet() :
+                    ParameterSet.fromArrayNoCopy(core.getPartitioningParamValue());
+            size += 4 + partitioningValue.getSerializedSize() + core.getSerializedSize();
+
+            final ByteBuffer buf = ByteBuffer.allocate(4 + 8 + size);
+            buf.position(4 + 8);
+            buf.putInt(token.length);
+            buf.put(token);
+            if (constants == null) {
+                buf.putInt(-1);
+            }
+            else {
+                buf.putInt(constants.length);
+                for (byte[] constant : constants) {
+                    if (constant == null) {
+                        buf.putInt(-1);
+                    }
+                    else {
+                        buf.putInt(constant.length);
+                        buf.put(constant);
+                    }
+                }
+            }
+            buf.putInt(core.getPartitioningParamIndex());
+            partitioningValue.flattenToBuffer(buf);
+            core.flattenToBuffer(buf);
+
+            final CRC32 crc = new CRC32();
+            crc.update(buf.array(), 4 + 8, size);
+            buf.putInt(0, size);
+            buf.putLong(4, crc.getValue());
+            buf.flip();
+            return buf;
+        }
+        catch (IOException | RuntimeException e) {
+            compileLog.debug("Not saving the ad hoc plan for " + parsedToken, e);
+            return null;
+        }
+    }
+
+    private static Pair<String, BoundPlan> readRecord(ByteBuffer buf, CRC32 crc) {
+        try {
+            final int size = buf.getInt();
+            final long expectedCrc = buf.getLong();
+            if (size < 0 || size > buf.remaining()) {
+                return null;
+            }
+            crc.reset();
+            crc.update(buf.array(), buf.arrayOffset() + buf.position(), size);
+            if (crc.getValue() != expectedCrc) {
+                return null;
+            }
+
+            final ByteBuffer payload = buf.slice();
+            payload.limit(size);
+            buf.position(buf.position() + size);
+
+            final byte[] token = new byte[payload.getInt()];
+            payload.get(token);
+            String[] constants = null;
+            final int constantCount = payload.getInt();
+            if (constantCount >= 0) {
+                constants = new String[constantCount];
+                for (int ii = 0; ii < constantCount; ii++) {
+                    final int length = payload.getInt();
+                    if (length >= 0) {
+                        final byte[] constant = new byte[length];
+                        payload.get(constant);
+                        constants[ii] = new String(constant, Constants.UTF8ENCODING);
+                    }
+                }
+            }
+            final int partitioningIndex = payload.getInt();
+            final ParameterSet partitioningValue = ParameterSet.fromByteBuffer(payload);
+            final CorePlan core = CorePlan.fromBuffer(payload);
+            core.setPartitioningParamIndex(partitioningIndex);
+            if (partitioningValue.size() > 0) {
+                core.setPartitioningParamValue(partitioningValue.getParam(0));
+            }
+            return new Pair<String, BoundPlan>(new String(token, Constants.UTF8ENCODING),
+                    new BoundPlan(core, constants), false);
+        }
+        catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    long getLoadedPlans() {
+        return m_loadedPlans;
+    }
+
+    long getRecords() {
+        return m_records;
+    }
+
+    long getFileBytes() {
+        return m_fileBytes;
+    }
+
+    long getWriteFailures() {
+        return m_writeFailures;
+    }
+}
@@ -54,7 +54,7 @@ public class PlannerTool {
 
     private Database m_database;
     private byte[] m_catalogHash;
-    private AdHocCompilerCache m_cache;
+    private volatile AdHocCompilerCache m_cache;
     private long m_adHocLargeFallbackCount = 0;
     private long m_adHocLargeModeCount = 0;
 
@@ -184,8 +184,32 @@ public class PlannerTool {
         return plan;
     }
 
-    public synchronized AdHocPlannedStatement planSql(String sql, StatementPartitioning partitioning,
+    public AdHocPlannedStatement planSql(String sql, StatementPartitioning partitioning,
             boolean isExplainMode, final Object[] userParams, boolean isSwapTables, boolean isLargeQuery) {
+        // A literal cache hit doesn't need the planner, so look for one before taking the
+        // planner lock. The cache is concurrent and lookups of different statements
+        // don't block each other or planning. See planSqlLocked below for the conditions.
+        final boolean literalLookedUp = sql != null && m_largeModeRatio <= 0 && !isLargeQuery && partitioning.isInferred();
+        if (literalLookedUp) {
+            final AdHocCompilerCache cache = m_cache;
+            AdHocPlannedStatement cachedPlan = cache.getWithSQL(sql.trim());
+            if (cachedPlan != null) {
+                if (m_plannerStats != null) {
+                    m_plannerStats.recordCache1Hit(cache.getLiteralCacheSize(), cache.getCoreCacheSize(), -1);
+                }
+                return cachedPlan;
+            }
+        }
+        return planSqlLocked(sql, partitioning, isExplainMode, userParams, isSwapTables, isLargeQuery, literalLookedUp);
+    }
+
+    /**
+     * @param literalLookedUp whether planSql already looked the statement up in the literal
+     * cache, and counted the lookup in the cache statistics
+     */
+    private synchronized AdHocPlannedStatement planSqlLocked(String sql, StatementPartitioning partitioning,
+            boolean isExplainMode, final Object[] userParams, boolean isSwapTables, boolean isLargeQuery,
+            boolean literalLookedUp) {
         // large_mode_ratio will force execution of SQL queries to use the "large" path (for read-only queries)
         // a certain percentage of the time
         if (m_largeModeRatio > 0 && !isLargeQuery) {
@@ -217,8 +241,10 @@ public class PlannerTool {
             // with the same SQL text, and in general we expect them to be slow.  If at some
             // point it seems worthwhile to cache such plans, we can explore it.
             if (partitioning.isInferred() && !isLargeQuery) {
-                // Check the literal cache for a match.
-                AdHocPlannedStatement cachedPlan = m_cache.getWithSQL(sql);
+                // Check the literal cache for a match again, another thread may have planned
+                // the same statement while this one waited for the lock. Don't count the
+                // statement twice if planSql already missed on it.
+                AdHocPlannedStatement cachedPlan = literalLookedUp ? m_cache.peekWithSQL(sql) : m_cache.getWithSQL(sql);
                 if (cachedPlan != null) {
                     cacheUse = CacheUse.HIT1;
                     return cachedPlan;
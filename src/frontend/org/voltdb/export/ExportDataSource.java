@@ -26,6 +26,7 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -62,7 +63,10 @@ import org.voltdb.catalog.CatalogMap;
 import org.voltdb.catalog.Column;
 import org.voltdb.export.AdvertisedDataSource.ExportFormat;
 import org.voltdb.exportclient.ExportClientBase;
+import org.voltdb.exportclient.ExportTargetStats;
 import org.voltdb.iv2.MpInitiator;
+import org.voltdb.metrics.Counter;
+import org.voltdb.metrics.MetricsRegistry;
 import org.voltdb.sysprocs.ExportControl.OperationMode;
 import org.voltdb.utils.CatalogUtil;
 import org.voltdb.utils.VoltFile;
@@ -108,6 +112,11 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
     private long m_overallMaxLatency = 0;
     private long m_queueGap = 0;
     private StreamStatus m_status = StreamStatus.ACTIVE;
+    // Shared by the sources of the stream on every partition, scraped from /metrics
+    private static final String ROWS_QUEUED_METRIC = "voltdb_export_rows_queued";
+    private static final String BYTES_QUEUED_METRIC = "voltdb_export_bytes_queued";
+    private final Counter m_rowsQueuedMetric;
+    private final Counter m_bytesQueuedMetric;
 
     private final ExportFormat m_format;
 
@@ -147,6 +156,7 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
     private final Generation m_generation;
     private final File m_adFile;
     private ExportClientBase m_client;
+    private volatile ExportTargetStats m_targetStats;
     private boolean m_readyForPolling;
     // This flag is specifically added for XDCR conflicts stream, which export conflict logs
     // on every host. Every data source with this flag set to true is an export master.
@@ -208,6 +218,8 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
         m_format = ExportFormat.SEVENDOTX;
         m_database = db;
         m_tableName = tableName;
+        m_rowsQueuedMetric = rowsQueuedMetric(m_tableName);
+        m_bytesQueuedMetric = bytesQueuedMetric(m_tableName);
         m_signature = signature;
         m_signatureBytes = m_signature.getBytes(StandardCharsets.UTF_8);
 
@@ -325,6 +337,8 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
             m_signature = jsObj.getString("signature");
             m_signatureBytes = m_signature.getBytes(StandardCharsets.UTF_8);
             m_tableName = jsObj.getString("tableName");
+            m_rowsQueuedMetric = rowsQueuedMetric(m_tableName);
+            m_bytesQueuedMetric = bytesQueuedMetric(m_tableName);
             JSONArray columns = jsObj.getJSONArray("columns");
             for (int ii = 0; ii < columns.length(); ii++) {
                 JSONObject column = columns.getJSONObject(ii);
@@ -366,6 +380,22 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
                 m_tableName + " partition " + m_partitionId, 1);
     }
 
+    private static Counter rowsQueuedMetric(String stream) {
+        return MetricsRegistry.instance().counter(ROWS_QUEUED_METRIC,
+                "Rows queued for export by this host", "stream", stream);
+    }
+
+    private static Counter bytesQueuedMetric(String stream) {
+        return MetricsRegistry.instance().counter(BYTES_QUEUED_METRIC,
+                "Bytes of rows queued for export by this host", "stream", stream);
+    }
+
+    /** Drop the native metrics of the streams a catalog update removed */
+    public static void retainMetrics(Collection<String> streams) {
+        MetricsRegistry.instance().retainSeries(ROWS_QUEUED_METRIC, "stream", streams);
+        MetricsRegistry.instance().retainSeries(BYTES_QUEUED_METRIC, "stream", streams);
+    }
+
     public void setReadyForPolling(boolean readyForPolling) {
         m_readyForPolling = readyForPolling;
     }
@@ -392,6 +422,13 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
         return m_client;
     }
 
+    /**
+     * Set the delivery statistics of the decoder exporting this source, or null if it has none.
+     */
+    public void setTargetStats(ExportTargetStats targetStats) {
+        m_targetStats = targetStats;
+    }
+
     private synchronized void releaseExportBytes(long releaseSeqNo, int tuplesSent) throws IOException {
         // Released offset is in an already-released past
         if (!m_committedBuffers.isEmpty() && releaseSeqNo < m_committedBuffers.peek().startSequenceNumber()) {
@@ -592,10 +629,20 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
                     }
                     maxLatency = m_overallMaxLatency;
                 }
+                final ExportTargetStats targetStats = m_targetStats;
+                long throughput = 0;
+                long batchSize = 0;
+                long commitLatency = 0;
+                if (targetStats != null) {
+                    throughput = targetStats.getRowsPerSecond();
+                    batchSize = targetStats.getBatchSize();
+                    commitLatency = targetStats.getCommitLatencyMillis();
+                }
                 return new ExportStatsRow(m_partitionId, m_siteId, m_tableName, m_exportTargetName,
                         m_mastershipAccepted.get(), m_tupleCount, m_tuplesPending.get(),
                         m_lastQueuedTimestamp, m_lastAckedTimestamp,
-                        avgLatency, maxLatency, m_queueGap, m_status.toString());
+                        avgLatency, maxLatency, m_queueGap, m_status.toString(),
+                        throughput, batchSize, commitLatency);
             }
         });
     }
@@ -668,6 +715,8 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
                 m_lastPushedSeqNo = lastSequenceNumber;
                 m_tupleCount += tupleCount;
                 m_tuplesPending.addAndGet(tupleCount);
+                m_rowsQueuedMetric.add(tupleCount);
+                m_bytesQueuedMetric.add(buffer.capacity() - StreamBlock.HEADER_SIZE);
                 m_committedBuffers.offer(sb);
             } catch (IOException e) {
                 VoltDB.crashLocalVoltDB("Unable to write to export overflow.", true, e);
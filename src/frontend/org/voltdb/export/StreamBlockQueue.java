@@ -29,6 +29,7 @@ import org.voltdb.utils.BinaryDeque.BinaryDequeReader;
 import org.voltdb.utils.BinaryDeque.BinaryDequeScanner;
 import org.voltdb.utils.BinaryDeque.BinaryDequeTruncator;
 import org.voltdb.utils.BinaryDeque.TruncatorResponse;
+import org.voltdb.utils.CompressionService;
 import org.voltdb.utils.PersistentBinaryDeque;
 import org.voltdb.utils.PersistentBinaryDeque.ByteBufferTruncatorResponse;
 import org.voltdb.utils.VoltFile;
@@ -81,7 +82,7 @@ public class StreamBlockQueue {
     private BinaryDequeReader m_reader;
 
     public StreamBlockQueue(String path, String nonce) throws java.io.IOException {
-        m_persistentDeque = new PersistentBinaryDeque( nonce, new VoltFile(path), exportLog);
+        m_persistentDeque = openPersistentDeque(path, nonce);
         m_path = path;
         m_nonce = nonce;
         m_reader = m_persistentDeque.openForRead(m_nonce);
@@ -90,6 +91,12 @@ public class StreamBlockQueue {
         }
     }
 
+    private static BinaryDeque openPersistentDeque(String path, String nonce) throws IOException {
+        PersistentBinaryDeque pbd = new PersistentBinaryDeque(nonce, new VoltFile(path), exportLog);
+        pbd.setCompressionCodec(CompressionService.getExportOverflowCodec());
+        return pbd;
+    }
+
     public boolean isEmpty() throws IOException {
         if (m_memoryDeque.isEmpty() && m_reader.isEmpty()) {
             return true;
@@ -332,7 +339,7 @@ public class StreamBlockQueue {
 
         // close reopen reader
         m_persistentDeque.close();
-        m_persistentDeque = new PersistentBinaryDeque(m_nonce, new VoltFile(m_path), exportLog);
+        m_persistentDeque = openPersistentDeque(m_path, m_nonce);
         m_reader = m_persistentDeque.openForRead(m_nonce);
         // temporary debug stmt
         exportLog.info("After truncate, PBD size is " + (m_reader.sizeInBytes() - (8 * m_reader.getNumObjects())));
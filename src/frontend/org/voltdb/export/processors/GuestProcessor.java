@@ -46,6 +46,7 @@ import org.voltdb.exportclient.ExportClientBase;
 import org.voltdb.exportclient.ExportDecoderBase;
 import org.voltdb.exportclient.ExportDecoderBase.RestartBlockException;
 import org.voltdb.exportclient.ExportRow;
+import org.voltdb.exportclient.ExportRowCursor;
 
 import com.google_voltpatches.common.base.Preconditions;
 import com.google_voltpatches.common.util.concurrent.ListenableFuture;
@@ -64,7 +65,6 @@ public class GuestProcessor implements ExportDataProcessor {
 
     private final List<Pair<ExportDecoderBase, AdvertisedDataSource>> m_decoders = new ArrayList<Pair<ExportDecoderBase, AdvertisedDataSource>>();
 
-    private final long m_startTS = System.currentTimeMillis();
     private volatile boolean m_startPolling = false;
 
     // Instantiated at ExportManager
@@ -219,6 +219,7 @@ public class GuestProcessor implements ExportDataProcessor {
             if (m_shutdown) return;
             final ExportDecoderBase edb = m_client.constructExportDecoder(ads);
             detectDecoder(m_client, edb);
+            m_source.setTargetStats(edb.getTargetStats());
             Pair<ExportDecoderBase, AdvertisedDataSource> pair = Pair.of(edb, ads);
             m_decoders.add(pair);
             final ListenableFuture<AckingContainer> fut = m_source.poll();
@@ -358,40 +359,28 @@ public class GuestProcessor implements ExportDataProcessor {
                                     // Skip past the schema header because it has not changed.
                                     buf.position(buf.position() + schemaSize);
                                 }
-                                ExportRow row = null;
-                                boolean firstRowOfBlock = true;
-                                while (buf.hasRemaining() && !m_shutdown) {
-                                    int length = buf.getInt();
-                                    byte[] rowdata = new byte[length];
-                                    buf.get(rowdata, 0, length);
-                                    if (edb.isLegacy()) {
+                                if (edb.isLegacy()) {
+                                    while (buf.hasRemaining() && !m_shutdown) {
+                                        int length = buf.getInt();
+                                        byte[] rowdata = new byte[length];
+                                        buf.get(rowdata, 0, length);
                                         cont.updateStartTime(System.currentTimeMillis());
                                         edb.onBlockStart();
                                         edb.processRow(length, rowdata);
-                                    } else {
-                                        //New style connector.
-                                        try {
-                                            cont.updateStartTime(System.currentTimeMillis());
-                                            row = ExportRow.decodeRow(edb.getPreviousRow(), source.getPartitionId(), m_startTS, rowdata);
-                                            edb.setPreviousRow(row);
-                                        } catch (IOException ioe) {
-                                            m_logger.warn("Failed decoding row for partition" + source.getPartitionId() + ". " + ioe.getMessage());
-                                            cont.discard();
-                                            cont = null;
-                                            break;
-                                        }
-                                        if (firstRowOfBlock) {
-                                            edb.onBlockStart(row);
-                                            firstRowOfBlock = false;
-                                        }
-                                        edb.processRow(row);
                                     }
-                                }
-                                if (edb.isLegacy()) {
                                     edb.onBlockCompletion();
-                                }
-                                if (row != null) {
-                                    edb.onBlockCompletion(row);
+                                } else {
+                                    //New style connector, reads the rows in place.
+                                    ExportRowCursor rows = edb.getRowCursor();
+                                    rows.reset(edb.getPreviousRow(), source.getPartitionId(), buf, () -> m_shutdown);
+                                    cont.updateStartTime(System.currentTimeMillis());
+                                    try {
+                                        edb.processRows(rows);
+                                    } catch (IOException ioe) {
+                                        m_logger.warn("Failed decoding row for partition" + source.getPartitionId() + ". " + ioe.getMessage());
+                                        cont.discard();
+                                        cont = null;
+                                    }
                                 }
                                 // Make sure to discard after onBlockCompletion so that if completion
                                 // wants to retry we don't lose block.
@@ -83,6 +83,8 @@ public abstract class ExportDecoderBase {
 
     //Used by new style connector to pickup schema information from previous record.
     ExportRow m_previousRow;
+    //Used by new style connector to read the rows of a block.
+    private final ExportRowCursor m_rowCursor = new ExportRowCursor();
     public ExportDecoderBase(AdvertisedDataSource ads) {
         m_source = ads;
         m_startTS = System.currentTimeMillis();
@@ -223,6 +225,47 @@ public abstract class ExportDecoderBase {
         throw new UnsupportedOperationException("processRow must be implemented.");
     }
 
+    /**
+     * Process all the rows of a block from the Export stream. The cursor is positioned before
+     * the first row and reads the rows in place, so decoders that override this to work with
+     * typed column values can skip building an {@link ExportRow} per row.
+     *
+     * The default implementation adapts the block to the per row API: it decodes each row into
+     * an {@link ExportRow} and passes it through {@link #onBlockStart(ExportRow)},
+     * {@link #processRow(ExportRow)} and {@link #onBlockCompletion(ExportRow)}.
+     *
+     * @param rows cursor over the rows of the block
+     * @throws org.voltdb.exportclient.ExportDecoderBase.RestartBlockException
+     * @throws IOException if a row could not be decoded, the rest of the block is dropped
+     */
+    public void processRows(ExportRowCursor rows) throws RestartBlockException, IOException {
+        ExportRow row = null;
+        try {
+            while (rows.advance()) {
+                row = rows.toExportRow();
+                setPreviousRow(row);
+                if (rows.getRowCount() == 1) {
+                    onBlockStart(row);
+                }
+                processRow(row);
+            }
+        } catch (IOException e) {
+            // Complete the rows decoded so far before the block is dropped, the decode error is what's reported
+            if (row != null) {
+                try {
+                    onBlockCompletion(row);
+                } catch (RestartBlockException | RuntimeException completion) {
+                    m_logger.warn("Failed to complete the rows of " + m_source.tableName +
+                            " decoded ahead of a row that could not be", completion);
+                }
+            }
+            throw e;
+        }
+        if (row != null) {
+            onBlockCompletion(row);
+        }
+    }
+
     abstract public void sourceNoLongerAdvertised(AdvertisedDataSource source);
 
     /**
@@ -263,6 +306,14 @@ public abstract class ExportDecoderBase {
         return CoreUtils.LISTENINGSAMETHREADEXECUTOR;
     }
 
+    /**
+     * Delivery statistics reported for this decoder in the EXPORT statistics,
+     * or null if the decoder does not track them.
+     */
+    public ExportTargetStats getTargetStats() {
+        return null;
+    }
+
     public int getPartition() {
         return m_partition;
     }
@@ -280,6 +331,10 @@ public abstract class ExportDecoderBase {
         m_previousRow = row;
     }
 
+    public ExportRowCursor getRowCursor() {
+        return m_rowCursor;
+    }
+
     public ExportRow getPreviousRow() {
         //We do keep the values of previous row but they should not be relied upon only schema information is used.
         return m_previousRow;
@@ -81,7 +81,7 @@ public class ExportEncoder {
         schemaSize.finishWrite();
     }
 
-    static byte[] encodeRow(VoltTable table, String tableName, int partitionColumnIndex, long generation)
+    public static byte[] encodeRow(VoltTable table, String tableName, int partitionColumnIndex, long generation)
     throws IOException {
 
         FastSerializer fs = new FastSerializer(false, true);
@@ -0,0 +1,401 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.exportclient;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+
+import org.voltdb.VoltType;
+import org.voltdb.types.GeographyPointValue;
+import org.voltdb.types.GeographyValue;
+import org.voltdb.types.TimestampType;
+
+/**
+ * Reusable cursor over the rows of an export block. Rows are read in place from the block
+ * buffer: {@link #advance()} only locates the columns of the next row, and the typed getters
+ * decode a column when asked for it. Numeric and timestamp columns are read as primitives and
+ * string and varbinary columns can be copied out as bytes, so a decoder working through the
+ * cursor does not have to box a row into an {@link ExportRow} first.
+ *
+ * Values are only valid until the next call to {@link #advance()}, and only while the block
+ * is being processed. A cursor is owned by one {@link ExportDecoderBase} and is not thread safe.
+ */
+public final class ExportRowCursor {
+
+    private ExportRow m_schema;
+    private int m_partition;
+    private ByteBuffer m_buf;
+    private BooleanSupplier m_stopped;
+
+    private int m_columnCount;
+    private VoltType[] m_types = new VoltType[0];
+    private boolean[] m_nulls = new boolean[0];
+    // position of each column's value, after the length prefix of variable length values
+    private int[] m_offsets = new int[0];
+    private int[] m_lengths = new int[0];
+    private int m_partitionColIndex;
+    private int m_rowCount;
+    private int m_rowOffset;
+    private int m_rowLength;
+
+    /**
+     * Point the cursor at the rows of a block.
+     *
+     * @param schema row carrying the schema of the block, as decoded by
+     *        {@link ExportRow#decodeBufferSchema(ByteBuffer, int, int, long)}
+     * @param partition partition the block comes from
+     * @param rows little endian block buffer positioned at the length of the first row;
+     *        the rows run up to its limit
+     */
+    public void reset(ExportRow schema, int partition, ByteBuffer rows) {
+        reset(schema, partition, rows, null);
+    }
+
+    /**
+     * Same as {@link #reset(ExportRow, int, ByteBuffer)}, with a condition that ends the
+     * block early, e.g. when the export processor shuts down.
+     */
+    public void reset(ExportRow schema, int partition, ByteBuffer rows, BooleanSupplier stopped) {
+        assert(rows.order() == ByteOrder.LITTLE_ENDIAN);
+        m_schema = schema;
+        m_partition = partition;
+        m_buf = rows;
+        m_stopped = stopped;
+        m_rowCount = 0;
+        m_columnCount = schema.names.size();
+        if (m_types.length < m_columnCount) {
+            m_types = new VoltType[m_columnCount];
+            m_nulls = new boolean[m_columnCount];
+            m_offsets = new int[m_columnCount];
+            m_lengths = new int[m_columnCount];
+        }
+        for (int i = 0; i < m_columnCount; i++) {
+            m_types[i] = schema.types.get(i);
+        }
+    }
+
+    /**
+     * Move to the next row of the block.
+     *
+     * @return false once all the rows have been read or the block was stopped
+     * @throws IOException if the row does not match the schema of the block
+     */
+    public boolean advance() throws IOException {
+        if (!m_buf.hasRemaining() || (m_stopped != null && m_stopped.getAsBoolean())) {
+            return false;
+        }
+        final ByteBuffer bb = m_buf;
+        final int length = bb.getInt();
+        final int rowEnd = bb.position() + length;
+        if (length < 8 || rowEnd > bb.limit()) {
+            throw new IOException("Export row of " + length + " bytes overruns its block");
+        }
+        m_rowOffset = bb.position();
+        m_rowLength = length;
+        m_partitionColIndex = bb.getInt();
+        final int columnCount = bb.getInt();
+        if (columnCount < m_columnCount) {
+            throw new IOException("Export row has " + columnCount + " columns, its schema " + m_columnCount);
+        }
+
+        // Null flags are one bit per column, 0x80 >> (column index % 8) of byte column index / 8
+        int pos = bb.position();
+        for (int i = 0; i < m_columnCount; i++) {
+            m_nulls[i] = (bb.get(pos + (i >> 3)) & (0x80 >>> (i & 7))) != 0;
+        }
+        pos += (columnCount + 7) >> 3;
+
+        for (int i = 0; i < m_columnCount; i++) {
+            if (m_nulls[i]) {
+                continue;
+            }
+            int size;
+            switch (m_types[i]) {
+            case TINYINT:
+                size = 1;
+                break;
+            case SMALLINT:
+                size = 2;
+                break;
+            case INTEGER:
+                size = 4;
+                break;
+            case BIGINT:
+            case FLOAT:
+            case TIMESTAMP:
+                size = 8;
+                break;
+            case GEOGRAPHY_POINT:
+                size = GeographyPointValue.getLengthInBytes();
+                break;
+            case DECIMAL:
+                // scale, precision bytes, unscaled value
+                size = 2 + bb.get(pos + 1);
+                break;
+            case STRING:
+            case VARBINARY:
+            case GEOGRAPHY:
+                size = bb.getInt(pos);
+                pos += 4;
+                break;
+            default:
+                throw new IOException("Invalid column type: " + m_types[i]);
+            }
+            m_offsets[i] = pos;
+            m_lengths[i] = size;
+            pos += size;
+        }
+        if (pos > rowEnd) {
+            throw new IOException("Export row of " + length + " bytes overruns its length");
+        }
+        bb.position(rowEnd);
+        m_rowCount++;
+        return true;
+    }
+
+    /**
+     * @return number of rows of the block the cursor has advanced over
+     */
+    public int getRowCount() {
+        return m_rowCount;
+    }
+
+    /**
+     * @return the schema row the cursor was reset with
+     */
+    public ExportRow getSchema() {
+        return m_schema;
+    }
+
+    public String getTableName() {
+        return m_schema.tableName;
+    }
+
+    public long getGeneration() {
+        return m_schema.generation;
+    }
+
+    public int getPartitionId() {
+        return m_partition;
+    }
+
+    public int getPartitionColumnIndex() {
+        return m_partitionColIndex;
+    }
+
+    /**
+     * @return number of columns, including the {@link ExportRow#INTERNAL_FIELD_COUNT} metadata columns
+     */
+    public int getColumnCount() {
+        return m_columnCount;
+    }
+
+    public String getColumnName(int column) {
+        return m_schema.names.get(column);
+    }
+
+    public VoltType getColumnType(int column) {
+        return m_types[column];
+    }
+
+    public boolean isNull(int column) {
+        return m_nulls[column];
+    }
+
+    /**
+     * @return value of an integer column, or the microseconds of a timestamp column
+     */
+    public long getLong(int column) {
+        final int offset = m_offsets[column];
+        switch (m_types[column]) {
+        case TINYINT:
+            return m_buf.get(offset);
+        case SMALLINT:
+            return m_buf.getShort(offset);
+        case INTEGER:
+            return m_buf.getInt(offset);
+        case BIGINT:
+        case TIMESTAMP:
+            return m_buf.getLong(offset);
+        default:
+            throw new IllegalArgumentException("Column " + column + " of type " + m_types[column] + " is not an integer");
+        }
+    }
+
+    public double getDouble(int column) {
+        if (m_types[column] == VoltType.FLOAT) {
+            return m_buf.getDouble(m_offsets[column]);
+        }
+        return getLong(column);
+    }
+
+    /**
+     * @return the block buffer, for reading variable length values in place with
+     * {@link #getOffset(int)} and {@link #getLength(int)}
+     */
+    public ByteBuffer getBuffer() {
+        return m_buf;
+    }
+
+    /**
+     * @return position of the column's value in {@link #getBuffer()}, after the length prefix
+     * of a variable length value
+     */
+    public int getOffset(int column) {
+        return m_offsets[column];
+    }
+
+    /**
+     * @return serialized size of the column's value; the UTF-8 length of a string
+     */
+    public int getLength(int column) {
+        return m_lengths[column];
+    }
+
+    /**
+     * Copy the serialized value of a column, the UTF-8 encoding for a string, into {@code dst}.
+     */
+    public void getBytes(int column, byte[] dst, int dstOffset) {
+        final int offset = m_offsets[column];
+        final int length = m_lengths[column];
+        if (m_buf.hasArray()) {
+            System.arraycopy(m_buf.array(), m_buf.arrayOffset() + offset, dst, dstOffset, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                dst[dstOffset + i] = m_buf.get(offset + i);
+            }
+        }
+    }
+
+    public byte[] getBytes(int column) {
+        byte[] bytes = new byte[m_lengths[column]];
+        getBytes(column, bytes, 0);
+        return bytes;
+    }
+
+    /**
+     * @return serialized size of the whole row, without its length prefix
+     */
+    public int getRowLength() {
+        return m_rowLength;
+    }
+
+    /**
+     * Copy the whole serialized row, the bytes {@link ExportRow#decodeRow(ExportRow, int, long, byte[])}
+     * decodes, into {@code dst}.
+     */
+    public void getRowBytes(byte[] dst, int dstOffset) {
+        if (m_buf.hasArray()) {
+            System.arraycopy(m_buf.array(), m_buf.arrayOffset() + m_rowOffset, dst, dstOffset, m_rowLength);
+        } else {
+            final ByteBuffer row = m_buf.duplicate();
+            row.position(m_rowOffset);
+            row.get(dst, dstOffset, m_rowLength);
+        }
+    }
+
+    public byte[] getRowBytes() {
+        byte[] bytes = new byte[m_rowLength];
+        getRowBytes(bytes, 0);
+        return bytes;
+    }
+
+    public String getString(int column) {
+        if (m_buf.hasArray()) {
+            return new String(m_buf.array(), m_buf.arrayOffset() + m_offsets[column], m_lengths[column],
+                    StandardCharsets.UTF_8);
+        }
+        return new String(getBytes(column), StandardCharsets.UTF_8);
+    }
+
+    public BigDecimal getDecimal(int column) {
+        final int offset = m_offsets[column];
+        final byte[] unscaled = new byte[m_lengths[column] - 2];
+        for (int i = 0; i < unscaled.length; i++) {
+            unscaled[i] = m_buf.get(offset + 2 + i);
+        }
+        return new BigDecimal(new BigInteger(unscaled), m_buf.get(offset));
+    }
+
+    /**
+     * @return the column decoded to the object {@link ExportRow#values} holds for it
+     */
+    public Object getObject(int column) {
+        if (m_nulls[column]) {
+            return null;
+        }
+        switch (m_types[column]) {
+        case TINYINT:
+            return m_buf.get(m_offsets[column]);
+        case SMALLINT:
+            return m_buf.getShort(m_offsets[column]);
+        case INTEGER:
+            return m_buf.getInt(m_offsets[column]);
+        case BIGINT:
+            return m_buf.getLong(m_offsets[column]);
+        case FLOAT:
+            return m_buf.getDouble(m_offsets[column]);
+        case TIMESTAMP:
+            return new TimestampType(m_buf.getLong(m_offsets[column]));
+        case STRING:
+            return getString(column);
+        case VARBINARY:
+            return getBytes(column);
+        case DECIMAL:
+            return getDecimal(column);
+        case GEOGRAPHY_POINT:
+            return GeographyPointValue.unflattenFromBuffer(m_buf, m_offsets[column]);
+        case GEOGRAPHY:
+            return GeographyValue.unflattenFromBuffer(m_buf, m_offsets[column]);
+        default:
+            throw new IllegalStateException("Invalid column type: " + m_types[column]);
+        }
+    }
+
+    /**
+     * @return value of the partition column, or the partition id if there is none or it is null
+     */
+    public Object getPartitionValue() {
+        Object pval = null;
+        if (m_partitionColIndex >= 0 && m_partitionColIndex < m_columnCount) {
+            pval = getObject(m_partitionColIndex);
+        }
+        return pval == null ? m_partition : pval;
+    }
+
+    /**
+     * Decode the current row into an {@link ExportRow}, as {@link ExportRow#decodeRow} would.
+     */
+    public ExportRow toExportRow() {
+        Object[] values = new Object[m_columnCount];
+        for (int i = 0; i < m_columnCount; i++) {
+            values[i] = getObject(i);
+        }
+        Object pval = null;
+        if (m_partitionColIndex >= 0 && m_partitionColIndex < m_columnCount) {
+            pval = values[m_partitionColIndex];
+        }
+        return new ExportRow(m_schema.tableName, m_schema.names, m_schema.types, m_schema.lengths,
+                values, pval == null ? m_partition : pval, m_partitionColIndex, m_partition, m_schema.generation);
+    }
+}
@@ -0,0 +1,111 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.voltdb.exportclient;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivery statistics of one export decoder, reported in the THROUGHPUT, BATCH_SIZE and
+ * COMMIT_LATENCY columns of the EXPORT statistics. A decoder records every batch it has
+ * committed (or had acknowledged) by its target, and the rates are computed over windows
+ * of about a second so they follow the current load rather than the lifetime of the source.
+ *
+ * Updated by the decoder threads and read by the statistics agent, so the methods are synchronized.
+ */
+public class ExportTargetStats {
+
+    static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private long m_windowStart = Long.MIN_VALUE;
+    private long m_windowRows;
+    private long m_windowBatches;
+    private long m_windowLatencyNanos;
+
+    private boolean m_hasWindow;
+    private long m_lastWindowEnd;
+    private long m_rowsPerSecond;
+    private long m_commitLatencyNanos;
+    private int m_batchSize;
+
+    /**
+     * Record a batch of rows committed by the target.
+     * @param rows number of rows in the batch
+     * @param latencyNanos time from submitting the batch until the target committed it
+     */
+    public void batchCommitted(int rows, long latencyNanos) {
+        batchCommitted(rows, latencyNanos, System.nanoTime());
+    }
+
+    synchronized void batchCommitted(int rows, long latencyNanos, long now) {
+        if (m_windowStart == Long.MIN_VALUE) {
+            m_windowStart = now - latencyNanos;
+        }
+        m_windowRows += rows;
+        m_windowBatches++;
+        m_windowLatencyNanos += latencyNanos;
+        long elapsed = now - m_windowStart;
+        if (elapsed >= WINDOW_NANOS) {
+            m_rowsPerSecond = m_windowRows * TimeUnit.SECONDS.toNanos(1) / elapsed;
+            m_commitLatencyNanos = m_windowLatencyNanos / m_windowBatches;
+            m_hasWindow = true;
+            m_lastWindowEnd = now;
+            m_windowStart = now;
+            m_windowRows = 0;
+            m_windowBatches = 0;
+            m_windowLatencyNanos = 0;
+        }
+    }
+
+    /**
+     * Set the number of rows the decoder currently groups into one batch.
+     */
+    public synchronized void setBatchSize(int batchSize) {
+        m_batchSize = batchSize;
+    }
+
+    public synchronized int getBatchSize() {
+        return m_batchSize;
+    }
+
+    /**
+     * @return rows committed per second over the last complete window, 0 once the target has been idle
+     * for more than a window
+     */
+    public long getRowsPerSecond() {
+        return getRowsPerSecond(System.nanoTime());
+    }
+
+    synchronized long getRowsPerSecond(long now) {
+        if (!m_hasWindow || now - m_lastWindowEnd > 2 * WINDOW_NANOS) {
+            return 0;
+        }
+        return m_rowsPerSecond;
+    }
+
+    /**
+     * @return average commit latency in milliseconds over the last complete window
+     */
+    public synchronized long getCommitLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(m_commitLatencyNanos);
+    }
+
+    synchronized long getCommitLatencyNanos() {
+        return m_commitLatencyNanos;
+    }
+}
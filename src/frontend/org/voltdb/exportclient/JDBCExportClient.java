@@ -17,6 +17,7 @@
 
 package org.voltdb.exportclient;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.net.URI;
 import java.sql.BatchUpdateException;
@@ -27,10 +28,13 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -47,12 +51,16 @@ import org.voltdb.types.GeographyPointValue;
 import org.voltdb.types.GeographyValue;
 import org.voltdb.types.TimestampType;
 import org.voltdb.types.VoltDecimalHelper;
+import org.voltdb.utils.LatencyBatchSizer;
 
 import com.google_voltpatches.common.base.Predicates;
+import com.google_voltpatches.common.base.Splitter;
 import com.google_voltpatches.common.base.Throwables;
+import com.google_voltpatches.common.collect.ImmutableList;
 import com.google_voltpatches.common.collect.ImmutableMap;
 import com.google_voltpatches.common.collect.ImmutableSet;
 import com.google_voltpatches.common.collect.Maps;
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
 import com.google_voltpatches.common.util.concurrent.ListeningExecutorService;
 import static org.voltdb.exportclient.ExportClientBase.rateLimitedLogError;
 
@@ -65,6 +73,10 @@ public class JDBCExportClient extends ExportClientBase {
     boolean m_createTable = true;
     private int firstField = 0;
     private boolean m_lowercaseNames = false;
+    int m_parallelConnections = 1;
+    List<String> m_parallelKeyColumns = ImmutableList.of();
+    long m_commitTargetMillis = 100;
+    int m_maxBatchSize = 10000;
     PoolProperties m_poolProperties = new PoolProperties();
     URI m_urlId;
     static AtomicReference<Map<URI,RefCountedDS>> m_cpds =
@@ -144,6 +156,9 @@ public class JDBCExportClient extends ExportClientBase {
         }
     }
 
+    // Batch size a decoder exporting over parallel connections starts from
+    static final int INITIAL_BATCH_SIZE = 100;
+
     class JDBCDecoder extends ExportDecoderBase {
 
         //If the column value is longer than the limit, truncate the value to avoid flushing too much data to log.
@@ -157,19 +172,27 @@ public class JDBCExportClient extends ExportClientBase {
 
         private final RefCountedDS m_ds;
 
-        private final List<BatchRow> m_dataRows =  new ArrayList<>();
-        private class BatchRow {
-            private final ExportRow m_row;
-            public BatchRow(ExportRow r) {
-                m_row = r;
-            }
-        }
+        private final List<Object[]> m_dataRows =  new ArrayList<>();
+        private List<VoltType> m_dataTypes;
+        private int m_blockRows;
+
+        private final ExportTargetStats m_targetStats = new ExportTargetStats();
+        // Connections rows are spread over when exporting in parallel, null otherwise
+        private final Lane[] m_lanes;
+        private final LatencyBatchSizer m_batchSizer;
+        private ExportRow m_keySchema;
+        private int[] m_keyColumns;
 
         @Override
         public ListeningExecutorService getExecutor() {
             return m_es;
         }
 
+        @Override
+        public ExportTargetStats getTargetStats() {
+            return m_targetStats;
+        }
+
         public JDBCDecoder(AdvertisedDataSource source, RefCountedDS ds) {
             super(source);
 
@@ -177,7 +200,121 @@ public class JDBCExportClient extends ExportClientBase {
             m_es =
                     CoreUtils.getListeningSingleThreadExecutor(
                             "JDBC Export decoder for partition " + source.partitionId, CoreUtils.MEDIUM_STACK_SIZE);
+            if (m_parallelConnections > 1) {
+                m_lanes = new Lane[m_parallelConnections];
+                for (int i = 0; i < m_lanes.length; i++) {
+                    m_lanes[i] = new Lane(source.partitionId, i);
+                }
+                m_batchSizer = new LatencyBatchSizer(INITIAL_BATCH_SIZE, m_maxBatchSize,
+                        TimeUnit.MILLISECONDS.toNanos(m_commitTargetMillis));
+                m_targetStats.setBatchSize(m_batchSizer.getBatchSize());
+            } else {
+                m_lanes = null;
+                m_batchSizer = null;
+            }
+        }
+
+        /**
+         * One of the connections of a decoder exporting in parallel. A lane executes and commits
+         * the batches of the keys hashed to it, in order, on its own thread and connection.
+         */
+        private final class Lane {
+            private final ListeningExecutorService m_laneEs;
+            private Connection m_laneConn;
+            private PreparedStatement m_lanePstmt;
+            private List<Object[]> m_rows = new ArrayList<>();
+            // Set once a batch of the current block failed so the following ones are skipped
+            private boolean m_failed;
+
+            Lane(int partitionId, int index) {
+                m_laneEs = CoreUtils.getListeningSingleThreadExecutor(
+                        "JDBC Export connection " + index + " for partition " + partitionId, CoreUtils.MEDIUM_STACK_SIZE);
+            }
+
+            ListenableFuture<?> startBlock() {
+                return m_laneEs.submit(() -> {
+                    m_failed = false;
+                });
+            }
+
+            ListenableFuture<?> submitBatch(List<VoltType> columnTypes) {
+                final List<Object[]> batch = m_rows;
+                m_rows = new ArrayList<>();
+                return m_laneEs.submit(() -> {
+                    if (!m_failed) {
+                        executeBatch(batch, columnTypes);
+                    }
+                    return null;
+                });
+            }
+
+            private void executeBatch(List<Object[]> batch, List<VoltType> columnTypes) throws Exception {
+                try {
+                    if (m_laneConn == null) {
+                        m_laneConn = m_ds.getDataSource().getConnection();
+                        m_laneConn.setAutoCommit(false);
+                        m_lanePstmt = m_laneConn.prepareStatement(pstmtString);
+                    }
+                    final long start = System.nanoTime();
+                    for (Object[] row : batch) {
+                        bindRow(m_lanePstmt, row, columnTypes);
+                        if (supportsBatchUpdates) {
+                            m_lanePstmt.addBatch();
+                        } else {
+                            m_lanePstmt.executeUpdate();
+                        }
+                    }
+                    if (supportsBatchUpdates) {
+                        m_lanePstmt.executeBatch();
+                    }
+                    m_laneConn.commit();
+                    final long commitNanos = System.nanoTime() - start;
+                    m_targetStats.batchCommitted(batch.size(), commitNanos);
+                    // Only a full batch tells whether a bigger one would still be fast
+                    final boolean full = batch.size() >= m_batchSizer.getBatchSize();
+                    m_targetStats.setBatchSize(m_batchSizer.batchCompleted(batch.size(), commitNanos, full));
+                } catch (BatchUpdateException e) {
+                    m_failed = true;
+                    logBatchErrors(e, batch, columnTypes);
+                    close();
+                    throw e;
+                } catch (Exception e) {
+                    m_failed = true;
+                    rateLimitedLogError(m_logger, "Exception while executing and committing batch %s", Throwables.getStackTraceAsString(e));
+                    close();
+                    throw e;
+                }
+            }
+
+            void close() {
+                try {
+                    if (m_lanePstmt != null) {
+                        m_lanePstmt.close();
+                    }
+                } catch (Exception e) {
+                    m_logger.warn("Exception closing pstmt for reset for table ", e);
+                }
+                try {
+                    if (m_laneConn != null) {
+                        m_laneConn.close();
+                    }
+                } catch (Exception e) {
+                    m_logger.warn("Exception closing conn for reset for table ", e);
+                } finally {
+                    m_laneConn = null;
+                    m_lanePstmt = null;
+                }
+            }
 
+            void shutdown() {
+                m_laneEs.execute(this::close);
+                m_laneEs.shutdown();
+                try {
+                    m_laneEs.awaitTermination(356, TimeUnit.DAYS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
         }
 
         private void initialize(long generation, String stableName, List<String> columnNames, List<VoltType> columnTypes, List<Integer> columnLengths) throws SQLException {
@@ -489,6 +626,7 @@ public class JDBCExportClient extends ExportClientBase {
         @Override
         public void onBlockStart(ExportRow row) throws RestartBlockException {
             m_dataRows.clear();
+            m_blockRows = 0;
             if (conn == null) {
                 if (pstmt != null) {
                     try {
@@ -512,12 +650,15 @@ public class JDBCExportClient extends ExportClientBase {
         @Override
         public void onBlockCompletion(ExportRow row) throws RestartBlockException {
             try {
+                final long start = System.nanoTime();
                 if (supportsBatchUpdates) {
                     pstmt.executeBatch();
                 }
                 conn.commit();
+                m_targetStats.batchCommitted(m_blockRows, System.nanoTime() - start);
+                m_targetStats.setBatchSize(m_blockRows);
             } catch(BatchUpdateException e){
-                logBatchErrors(e);
+                logBatchErrors(e, m_dataRows, m_dataTypes);
                 throw new RestartBlockException(true);
             } catch (SQLException e) {
                 rateLimitedLogError(m_logger, "commit() failed for row %s", Throwables.getStackTraceAsString(e));
@@ -531,17 +672,16 @@ public class JDBCExportClient extends ExportClientBase {
             }
         }
 
-        private void logBatchErrors(BatchUpdateException e){
+        private void logBatchErrors(BatchUpdateException e, List<Object[]> rows, List<VoltType> columnTypes){
 
            int [] results = e.getUpdateCounts();
            StringBuilder builder = new StringBuilder();
            for(int i = 0; i < results.length; i++){
                 if(results[i] == Statement.EXECUTE_FAILED){
-                    ExportRow rowi = m_dataRows.get(i).m_row;
-                    Object row[] = rowi.values;
-                    for (int j = firstField; j < rowi.types.size(); j++) {
+                    Object row[] = rows.get(i);
+                    for (int j = firstField; j < columnTypes.size(); j++) {
                         builder.append((j == firstField) ? "":", ");
-                        formatValue(row[j], rowi.types.get(j), builder);
+                        formatValue(row[j], columnTypes.get(j), builder);
                     }
                     builder.append("\n");
                 }
@@ -608,46 +748,17 @@ public class JDBCExportClient extends ExportClientBase {
             List<VoltType> columnTypes = rowinst.types;
             boolean restartBlock = false;
             try {
-                for (int i = firstField; i < columnTypes.size(); i++) {
-                    final int pstmtIndex = i + 1 - firstField;
-                    if (row[i] == null) {
-                        pstmt.setNull(pstmtIndex, Types.NULL);
-                    } else if (columnTypes.get(i) == VoltType.DECIMAL) {
-                        pstmt.setBigDecimal(pstmtIndex, (BigDecimal)row[i]);
-                    } else if (columnTypes.get(i) == VoltType.TINYINT) {
-                        pstmt.setByte(pstmtIndex, (Byte)row[i]);
-                    } else if (columnTypes.get(i) == VoltType.SMALLINT) {
-                        pstmt.setShort(pstmtIndex, (Short)row[i]);
-                    } else if (columnTypes.get(i) == VoltType.INTEGER) {
-                        pstmt.setInt(pstmtIndex, (Integer)row[i]);
-                    } else if (columnTypes.get(i) == VoltType.BIGINT) {
-                        pstmt.setLong(pstmtIndex, (Long)row[i]);
-                    } else if (columnTypes.get(i) == VoltType.FLOAT) {
-                        pstmt.setDouble(pstmtIndex, (Double)row[i]);
-                    } else if (columnTypes.get(i) == VoltType.STRING) {
-                        pstmt.setString(pstmtIndex, (String)row[i]);
-                    } else if (columnTypes.get(i) == VoltType.TIMESTAMP) {
-                        TimestampType timestamp = (TimestampType)row[i];
-                        pstmt.setTimestamp(pstmtIndex, timestamp.asJavaTimestamp());
-                    } else if (columnTypes.get(i) == VoltType.GEOGRAPHY_POINT) {
-                        GeographyPointValue gpv = (GeographyPointValue)row[i];
-                        pstmt.setString(pstmtIndex, gpv.toWKT());
-                    } else if (columnTypes.get(i) == VoltType.GEOGRAPHY) {
-                        GeographyValue gv = (GeographyValue)row[i];
-                        pstmt.setString(pstmtIndex, gv.toWKT());
-                    } else if (columnTypes.get(i) == VoltType.VARBINARY) {
-                        byte[] bytes = (byte[])row[i];
-                        pstmt.setBytes(pstmtIndex, bytes);
-                    }
-                }
+                bindRow(pstmt, row, columnTypes);
 
                 try {
                     if (supportsBatchUpdates) {
                         pstmt.addBatch();
-                        m_dataRows.add(new BatchRow(rowinst));
+                        m_dataRows.add(row);
+                        m_dataTypes = columnTypes;
                     } else {
                         pstmt.executeUpdate();
                     }
+                    m_blockRows++;
                 } catch (SQLException e) {
                     rateLimitedLogError(m_logger, "executeUpdate() failed in processRow() for table %s %s", (rowinst == null ? "Unknown" : rowinst.tableName), Throwables.getStackTraceAsString(e));
                     restartBlock = true;
@@ -665,6 +776,176 @@ public class JDBCExportClient extends ExportClientBase {
             return true;
         }
 
+        /*
+         * Without parallel connections the rows go through processRow() on the decoder's
+         * connection, one batch per block. With them each row is hashed on its key to a lane,
+         * the lanes commit batches sized by m_batchSizer concurrently, and the block completes
+         * once all of them did. Rows of the same key always go to the same lane, so they
+         * reach the target in order.
+         *
+         * A failed batch restarts the whole block. Batches other lanes already committed are
+         * exported again, which is within the at least once guarantee of export.
+         */
+        @Override
+        public void processRows(ExportRowCursor rows) throws RestartBlockException, IOException {
+            if (m_lanes == null) {
+                super.processRows(rows);
+                return;
+            }
+            final ExportRow schema = rows.getSchema();
+            if (pstmtString == null) {
+                try {
+                    conn = m_ds.getDataSource().getConnection();
+                    conn.setAutoCommit(false);
+                    initialize(schema.generation, schema.tableName, schema.names, schema.types, schema.lengths);
+                } catch (Exception e) {
+                    m_logger.warn("JDBC export unable to initialize jdbc target database", e);
+                } finally {
+                    closeConnection();
+                }
+            }
+            if (pstmtString == null) {
+                throw new RestartBlockException(true);
+            }
+            if (schema != m_keySchema) {
+                resolveKeyColumns(schema);
+            }
+
+            final List<VoltType> columnTypes = schema.types;
+            final List<ListenableFuture<?>> pending = new ArrayList<>();
+            for (Lane lane : m_lanes) {
+                pending.add(lane.startBlock());
+            }
+            IOException decodeFailure = null;
+            boolean decoded = false;
+            try {
+                while (rows.advance()) {
+                    final Object[] row = new Object[rows.getColumnCount()];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = rows.getObject(i);
+                    }
+                    final Lane lane = m_lanes[laneOf(rows, row)];
+                    lane.m_rows.add(row);
+                    if (lane.m_rows.size() >= m_batchSizer.getBatchSize()) {
+                        pending.add(lane.submitBatch(columnTypes));
+                    }
+                }
+                decoded = true;
+            } catch (IOException e) {
+                decodeFailure = e;
+            } finally {
+                // Export the rows decoded so far even if the rest of the block can't be
+                for (Lane lane : m_lanes) {
+                    if (!lane.m_rows.isEmpty()) {
+                        pending.add(lane.submitBatch(columnTypes));
+                    }
+                }
+                boolean failed = false;
+                for (ListenableFuture<?> fut : pending) {
+                    try {
+                        fut.get();
+                    } catch (InterruptedException | ExecutionException e) {
+                        failed = true;
+                    }
+                }
+                if (failed) {
+                    // A decode or other error ending the block early is what's reported
+                    if (decoded) {
+                        throw new RestartBlockException(true);
+                    }
+                    m_logger.warn("JDBC export failed to insert the rows of " + schema.tableName +
+                            " decoded ahead of a row that could not be");
+                }
+            }
+            if (decodeFailure != null) {
+                throw decodeFailure;
+            }
+        }
+
+        private void resolveKeyColumns(ExportRow schema) {
+            m_keySchema = schema;
+            m_keyColumns = null;
+            if (m_parallelKeyColumns.isEmpty()) {
+                return;
+            }
+            final int[] keyColumns = new int[m_parallelKeyColumns.size()];
+            for (int i = 0; i < keyColumns.length; i++) {
+                final String keyColumn = m_parallelKeyColumns.get(i);
+                keyColumns[i] = -1;
+                for (int j = 0; j < schema.names.size(); j++) {
+                    if (schema.names.get(j).equalsIgnoreCase(keyColumn)) {
+                        keyColumns[i] = j;
+                        break;
+                    }
+                }
+                if (keyColumns[i] == -1) {
+                    m_logger.error("Export configuration error: specified " + schema.tableName + "." + keyColumn
+                            + " does not exist. The partition column will be used to order rows.");
+                    return;
+                }
+            }
+            m_keyColumns = keyColumns;
+        }
+
+        private int laneOf(ExportRowCursor rows, Object[] row) {
+            int hash;
+            if (m_keyColumns == null) {
+                hash = keyHash(rows.getPartitionValue());
+            } else {
+                hash = 1;
+                for (int column : m_keyColumns) {
+                    hash = 31 * hash + keyHash(row[column]);
+                }
+            }
+            return Math.floorMod(hash ^ (hash >>> 16), m_lanes.length);
+        }
+
+        private int keyHash(Object value) {
+            if (value instanceof byte[]) {
+                return Arrays.hashCode((byte[])value);
+            } else if (value instanceof GeographyPointValue) {
+                return ((GeographyPointValue)value).toWKT().hashCode();
+            } else if (value instanceof GeographyValue) {
+                return ((GeographyValue)value).toWKT().hashCode();
+            }
+            return Objects.hashCode(value);
+        }
+
+        private void bindRow(PreparedStatement statement, Object[] row, List<VoltType> columnTypes) throws SQLException {
+            for (int i = firstField; i < columnTypes.size(); i++) {
+                final int pstmtIndex = i + 1 - firstField;
+                if (row[i] == null) {
+                    statement.setNull(pstmtIndex, Types.NULL);
+                } else if (columnTypes.get(i) == VoltType.DECIMAL) {
+                    statement.setBigDecimal(pstmtIndex, (BigDecimal)row[i]);
+                } else if (columnTypes.get(i) == VoltType.TINYINT) {
+                    statement.setByte(pstmtIndex, (Byte)row[i]);
+                } else if (columnTypes.get(i) == VoltType.SMALLINT) {
+                    statement.setShort(pstmtIndex, (Short)row[i]);
+                } else if (columnTypes.get(i) == VoltType.INTEGER) {
+                    statement.setInt(pstmtIndex, (Integer)row[i]);
+                } else if (columnTypes.get(i) == VoltType.BIGINT) {
+                    statement.setLong(pstmtIndex, (Long)row[i]);
+                } else if (columnTypes.get(i) == VoltType.FLOAT) {
+                    statement.setDouble(pstmtIndex, (Double)row[i]);
+                } else if (columnTypes.get(i) == VoltType.STRING) {
+                    statement.setString(pstmtIndex, (String)row[i]);
+                } else if (columnTypes.get(i) == VoltType.TIMESTAMP) {
+                    TimestampType timestamp = (TimestampType)row[i];
+                    statement.setTimestamp(pstmtIndex, timestamp.asJavaTimestamp());
+                } else if (columnTypes.get(i) == VoltType.GEOGRAPHY_POINT) {
+                    GeographyPointValue gpv = (GeographyPointValue)row[i];
+                    statement.setString(pstmtIndex, gpv.toWKT());
+                } else if (columnTypes.get(i) == VoltType.GEOGRAPHY) {
+                    GeographyValue gv = (GeographyValue)row[i];
+                    statement.setString(pstmtIndex, gv.toWKT());
+                } else if (columnTypes.get(i) == VoltType.VARBINARY) {
+                    byte[] bytes = (byte[])row[i];
+                    statement.setBytes(pstmtIndex, bytes);
+                }
+            }
+        }
+
         /*
          * If there is any kind of exception from the DB call this to get a clean slate
          * and retry will recreate the connection and prepared statement.
@@ -700,6 +981,11 @@ public class JDBCExportClient extends ExportClientBase {
                 Throwables.propagate(e);
             }
             closeConnection();
+            if (m_lanes != null) {
+                for (Lane lane : m_lanes) {
+                    lane.shutdown();
+                }
+            }
         }
     }
 
@@ -737,6 +1023,45 @@ public class JDBCExportClient extends ExportClientBase {
         if(!m_createTable){
             ignoreGenerations = true;
         }
+        String parallelConnections = config.getProperty("parallelconnections", "").trim();
+        if (!parallelConnections.isEmpty()) {
+            try {
+                m_parallelConnections = Integer.parseInt(parallelConnections);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("\"parallelconnections\" must be integer");
+            }
+            if (m_parallelConnections < 1) {
+                throw new IllegalArgumentException("\"parallelconnections\" must be at least 1");
+            }
+        }
+        String parallelKeyColumns = config.getProperty("parallelkeycolumns", "").trim();
+        if (!parallelKeyColumns.isEmpty()) {
+            m_parallelKeyColumns = ImmutableList.copyOf(
+                    Splitter.on(',').trimResults().omitEmptyStrings().split(parallelKeyColumns));
+        }
+        String commitTargetMillis = config.getProperty("committargetmillis", "").trim();
+        if (!commitTargetMillis.isEmpty()) {
+            try {
+                m_commitTargetMillis = Long.parseLong(commitTargetMillis);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("\"committargetmillis\" must be integer");
+            }
+            if (m_commitTargetMillis < 1) {
+                throw new IllegalArgumentException("\"committargetmillis\" must be at least 1");
+            }
+        }
+        String maxBatchSize = config.getProperty("maxbatchsize", "").trim();
+        if (!maxBatchSize.isEmpty()) {
+            try {
+                m_maxBatchSize = Integer.parseInt(maxBatchSize);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("\"maxbatchsize\" must be integer");
+            }
+            if (m_maxBatchSize < 1) {
+                throw new IllegalArgumentException("\"maxbatchsize\" must be at least 1");
+            }
+        }
+
         String minPoolSize = config.getProperty("minpoolsize", "").trim();
         if (!minPoolSize.isEmpty()) {
             try {
@@ -17,24 +17,30 @@
 
 package org.voltdb.exportclient.kafka;
 
-import java.util.ArrayList;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TimeZone;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
 import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.KafkaException;
 import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.voltcore.utils.CoreUtils;
 import org.voltdb.VoltDB;
@@ -46,10 +52,12 @@ import org.voltdb.exportclient.ExportClientLogger;
 import org.voltdb.exportclient.ExportDecoderBase;
 import org.voltdb.exportclient.ExportDecoderBase.BinaryEncoding;
 import org.voltdb.exportclient.ExportRow;
+import org.voltdb.exportclient.ExportRowCursor;
+import org.voltdb.exportclient.ExportTargetStats;
+import org.voltdb.exportclient.decode.AvroDecoder;
 import org.voltdb.exportclient.decode.CSVStringDecoder;
 
 import com.google_voltpatches.common.base.Splitter;
-import com.google_voltpatches.common.collect.ImmutableList;
 import com.google_voltpatches.common.collect.ImmutableMap;
 import com.google_voltpatches.common.util.concurrent.ListeningExecutorService;
 
@@ -67,6 +75,15 @@ public class KafkaExportClient extends ExportClientBase {
     private final static String OLD_PARTITIONER = "partitioner.class";
     private final static String ACKS_TIMEOUT = "acks.retry.timeout";
     private final static String LEGACY_ACKS = "request.required.acks";
+    private final static String VALUE_FORMAT_PN = "value.format";
+
+    /**
+     * How the value of a record is written. CSV text by default, or binary: an avro record, or
+     * the row as serialized in the export stream.
+     */
+    static enum ValueFormat {
+        CSV, AVRO, RAW
+    }
 
     private final static Splitter COMMA_SPLITTER = Splitter.on(",").omitEmptyStrings().trimResults();
     private final static Splitter PERIOD_SPLITTER = Splitter.on(".").omitEmptyStrings().trimResults();
@@ -84,6 +101,7 @@ public class KafkaExportClient extends ExportClientBase {
     Map<String, String> m_tablePartitionColumns;
     boolean m_pollFutures = false;
     int m_acksTimeout = 5_000;
+    ValueFormat m_valueFormat = ValueFormat.CSV;
 
     @Override
     public void configure(Properties config) throws Exception {
@@ -240,7 +258,33 @@ public class KafkaExportClient extends ExportClientBase {
         }
         m_producerConfig.remove(ACKS_TIMEOUT);
 
-        String kSerializer = config.getProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, "").trim();
+        String formatVal = config.getProperty(VALUE_FORMAT_PN, "").trim().toUpperCase();
+        if (!formatVal.isEmpty()) {
+            try {
+                m_valueFormat = ValueFormat.valueOf(formatVal);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(
+                        "\"" + VALUE_FORMAT_PN + "\" must be one of csv, avro or raw", e
+                        );
+            }
+        }
+        m_producerConfig.remove(VALUE_FORMAT_PN);
+        if (m_valueFormat != ValueFormat.CSV) {
+            // Binary values are sent as is, keys as the UTF-8 bytes StringSerializer would have produced
+            for (String serializer : new String[] {
+                    ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG }) {
+                final String configured = m_producerConfig.getProperty(serializer, "").trim();
+                if (!configured.isEmpty() && !configured.equals(ByteArraySerializer.class.getName())) {
+                    throw new IllegalArgumentException("\"" + serializer + "\" can't be set with \"" +
+                            VALUE_FORMAT_PN + "\" " + m_valueFormat.name().toLowerCase() +
+                            ", which serializes keys and values itself");
+                }
+            }
+            m_producerConfig.setProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+            m_producerConfig.setProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+        }
+
+        String kSerializer = m_producerConfig.getProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, "").trim();
         if (kSerializer.isEmpty()) {
             m_producerConfig.setProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
         } else try {
@@ -249,7 +293,7 @@ public class KafkaExportClient extends ExportClientBase {
             throw new IllegalArgumentException("Unable to load serializer class " + kSerializer , e);
         }
 
-        String vSerializer = config.getProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, "").trim();
+        String vSerializer = m_producerConfig.getProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, "").trim();
         if (vSerializer.isEmpty()) {
             m_producerConfig.setProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
         } else try {
@@ -282,15 +326,170 @@ public class KafkaExportClient extends ExportClientBase {
         return new KafkaExportDecoder(source);
     }
 
+    /**
+     * Create the producer of a decoder exporting binary values.
+     */
+    Producer<byte[], byte[]> createBinaryProducer() {
+        return new KafkaProducer<>(m_producerConfig);
+    }
+
+    /**
+     * Acknowledgement of the records sent for one block. It is the callback of all of them:
+     * it counts the records still in flight and keeps the first failure, so a block waits
+     * once for its records instead of polling a future per row.
+     */
+    final class BlockAck implements Callback {
+        private final long m_startNanos = System.nanoTime();
+        private int m_sent;
+        private int m_inFlight;
+        private Exception m_failure;
+
+        synchronized void sending() {
+            m_sent++;
+            m_inFlight++;
+        }
+
+        /**
+         * The record counted by {@link #sending()} could not be sent.
+         */
+        synchronized void notSent() {
+            m_sent--;
+            if (--m_inFlight == 0) {
+                notifyAll();
+            }
+        }
+
+        @Override
+        public synchronized void onCompletion(RecordMetadata metadata, Exception e) {
+            if (e != null && m_failure == null) {
+                LOG.warn("Failed to send data. Verify if the kafka server matches bootstrap.servers %s", e,
+                        m_producerConfig.getProperty(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG));
+                m_failure = e;
+            }
+            if (--m_inFlight == 0) {
+                notifyAll();
+            }
+        }
+
+        /**
+         * Wait for all the records sent to be acknowledged.
+         * @return false if some were still in flight after timeoutMillis
+         */
+        synchronized boolean await(long timeoutMillis) throws InterruptedException {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (m_inFlight > 0) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+
+        synchronized Exception getFailure() {
+            return m_failure;
+        }
+
+        synchronized int getSent() {
+            return m_sent;
+        }
+
+        long getStartNanos() {
+            return m_startNanos;
+        }
+    }
+
+    /**
+     * Writes the records of an {@link AvroDecoder} schema, where each field is the union of a
+     * primitive type and null. Their binary encoding is the one of {@link GenericDatumWriter},
+     * without resolving the union of every field of every record from the class of its value.
+     * Any other schema is written by a {@link GenericDatumWriter}.
+     */
+    static final class AvroRecordWriter {
+        private final Schema.Type[] m_types;
+        private final int[] m_valueIndexes;
+        private final int[] m_nullIndexes;
+        private final GenericDatumWriter<GenericRecord> m_fallback;
+
+        AvroRecordWriter(Schema schema) {
+            final List<Schema.Field> fields = schema.getFields();
+            final Schema.Type[] types = new Schema.Type[fields.size()];
+            m_valueIndexes = new int[fields.size()];
+            m_nullIndexes = new int[fields.size()];
+            boolean nullableFields = true;
+            for (int i = 0; i < fields.size() && nullableFields; i++) {
+                final Schema field = fields.get(i).schema();
+                nullableFields = field.getType() == Schema.Type.UNION && field.getTypes().size() == 2;
+                for (int b = 0; nullableFields && b < 2; b++) {
+                    switch (field.getTypes().get(b).getType()) {
+                    case NULL:
+                        m_nullIndexes[i] = b;
+                        break;
+                    case INT: case LONG: case DOUBLE: case STRING: case BYTES:
+                        m_valueIndexes[i] = b;
+                        types[i] = field.getTypes().get(b).getType();
+                        break;
+                    default:
+                        nullableFields = false;
+                    }
+                }
+                nullableFields = nullableFields && types[i] != null && m_nullIndexes[i] != m_valueIndexes[i];
+            }
+            m_types = nullableFields ? types : null;
+            m_fallback = nullableFields ? null : new GenericDatumWriter<GenericRecord>(schema);
+        }
+
+        void write(GenericRecord record, BinaryEncoder encoder) throws IOException {
+            if (m_types == null) {
+                m_fallback.write(record, encoder);
+                return;
+            }
+            for (int i = 0; i < m_types.length; i++) {
+                final Object value = record.get(i);
+                if (value == null) {
+                    encoder.writeIndex(m_nullIndexes[i]);
+                    continue;
+                }
+                encoder.writeIndex(m_valueIndexes[i]);
+                switch (m_types[i]) {
+                case INT:
+                    encoder.writeInt((Integer) value);
+                    break;
+                case LONG:
+                    encoder.writeLong((Long) value);
+                    break;
+                case DOUBLE:
+                    encoder.writeDouble((Double) value);
+                    break;
+                case STRING:
+                    encoder.writeString(value.toString());
+                    break;
+                default:
+                    encoder.writeBytes((ByteBuffer) value);
+                }
+            }
+        }
+    }
+
     class KafkaExportDecoder extends ExportDecoderBase {
 
         String m_topic = null;
         boolean m_primed = false;
         KafkaProducer<String, String> m_producer;
+        Producer<byte[], byte[]> m_binaryProducer;
         final CSVStringDecoder m_decoder;
-        final List<Future<RecordMetadata>> m_futures = new ArrayList<>();
-        private final AtomicBoolean m_failure = new AtomicBoolean(false);
         final ListeningExecutorService m_es;
+        private BlockAck m_blockAck;
+        private final ExportTargetStats m_targetStats = new ExportTargetStats();
+
+        // Avro records of the AVRO value format
+        private AvroDecoder m_avroDecoder;
+        private Object[] m_fields = new Object[0];
+        private Schema m_avroSchema;
+        private AvroRecordWriter m_avroWriter;
+        private BinaryEncoder m_avroEncoder;
+        private final ByteArrayOutputStream m_avroOut = new ByteArrayOutputStream();
 
         public KafkaExportDecoder(AdvertisedDataSource source) {
             super(source);
@@ -307,11 +506,21 @@ public class KafkaExportClient extends ExportClientBase {
                             source.tableName + " - " + source.partitionId, CoreUtils.MEDIUM_STACK_SIZE);
 
             m_decoder = builder.build();
+            if (m_valueFormat == ValueFormat.AVRO) {
+                AvroDecoder.Builder avroBuilder = new AvroDecoder.Builder();
+                avroBuilder.timeZone(m_timeZone);
+                avroBuilder.skipInternalFields(m_skipInternals);
+                m_avroDecoder = avroBuilder.build();
+            }
         }
 
         final void checkOnFirstRow() throws RestartBlockException {
             if (!m_primed) try {
-                m_producer = new KafkaProducer<>(m_producerConfig);
+                if (m_valueFormat == ValueFormat.CSV) {
+                    m_producer = new KafkaProducer<>(m_producerConfig);
+                } else {
+                    m_binaryProducer = createBinaryProducer();
+                }
             }
             catch (ConfigException e) {
                 LOG.error("Unable to instantiate a Kafka producer", e);
@@ -334,69 +543,143 @@ public class KafkaExportClient extends ExportClientBase {
         }
 
         @Override
-        public void onBlockCompletion(ExportRow row) throws RestartBlockException {
+        public ExportTargetStats getTargetStats() {
+            return m_targetStats;
+        }
+
+        /*
+         * Wait once for the records of the block, when acks are requested or a send already failed.
+         * Without acks nothing is known to be committed, so only the batch size is recorded.
+         */
+        private void completeBlock() throws RestartBlockException {
+            final BlockAck ack = m_blockAck;
+            m_blockAck = null;
+            if (ack == null) {
+                return;
+            }
             try {
-                if (m_pollFutures || m_failure.get()) {
-                    ImmutableList<Future<RecordMetadata>> pollFutures = ImmutableList.copyOf(m_futures);
-                    for (Future<RecordMetadata> fut: pollFutures) {
-                        fut.get(m_acksTimeout, TimeUnit.MILLISECONDS);
+                if (m_pollFutures || ack.getFailure() != null) {
+                    if (!ack.await(m_acksTimeout)) {
+                        throw new RestartBlockException("Send operation timed out", true);
+                    }
+                    if (ack.getFailure() != null) {
+                        LOG.warn("Send operation failed to complete", ack.getFailure());
+                        throw new RestartBlockException("Send operation failed to complete", ack.getFailure(), true);
                     }
+                    m_targetStats.batchCommitted(ack.getSent(), System.nanoTime() - ack.getStartNanos());
                 }
-            } catch (TimeoutException e) {
-                throw new RestartBlockException("Send operation timed out", e, true);
-            } catch (ExecutionException e) {
-                LOG.warn("Send operation failed to complete", e.getCause());
-                throw new RestartBlockException("Send operation failed to complete", e.getCause(), true);
             } catch (InterruptedException e) {
                 LOG.warn("Iterrupted send operation", e);
                 throw new RestartBlockException("Iterrupted send operation", e, true);
-            } finally {
-                m_futures.clear();
-                m_failure.set(false);
             }
+            m_targetStats.setBatchSize(ack.getSent());
+        }
+
+        private <K, V> void send(Producer<K, V> producer, ProducerRecord<K, V> krec) throws RestartBlockException {
+            m_blockAck.sending();
+            try {
+                producer.send(krec, m_blockAck);
+            } catch (KafkaException e) {
+                m_blockAck.notSent();
+                LOG.warn("Unable to send %s", e, krec);
+                throw new RestartBlockException("Unable to send message", e, true);
+            } catch (IllegalStateException e) {
+                m_blockAck.notSent();
+                LOG.warn("Unable to send %s", e, krec);
+                if (producer != null) try { producer.close(); } catch (Exception ignoreIt) {}
+                m_primed = false;
+                throw new RestartBlockException("Unable to send message", e, true);
+            }
+        }
+
+        @Override
+        public void onBlockCompletion(ExportRow row) throws RestartBlockException {
+            completeBlock();
         }
 
         @Override
         public void onBlockStart(ExportRow row) throws RestartBlockException {
             if (!m_primed) checkOnFirstRow();
             if (m_topic == null) populateTopic(row.tableName);
+            m_blockAck = new BlockAck();
         }
 
         @Override
         public boolean processRow(ExportRow rd) throws RestartBlockException {
             if (!m_primed) checkOnFirstRow();
+            if (m_blockAck == null) {
+                m_blockAck = new BlockAck();
+            }
 
             String decoded = m_decoder.decode(rd.generation, rd.tableName, rd.types, rd.names, null, rd.values);
             //Use partition value by default if its null use partition id.
             //partition value will be null only if partition column is overridden table.column and is nullable
             String pval = (rd.partitionValue == null) ? String.valueOf(rd.partitionId) : rd.partitionValue.toString();
-            ProducerRecord<String, String> krec = new ProducerRecord<String, String>(m_topic, pval, decoded);
+            send(m_producer, new ProducerRecord<String, String>(m_topic, pval, decoded));
+            return true;
+        }
+
+        /*
+         * Binary values are encoded from the rows in place. All the records of the block are
+         * handed to the producer, which sends them while the following ones are encoded, and
+         * the block then waits once for their acknowledgement.
+         */
+        @Override
+        public void processRows(ExportRowCursor rows) throws RestartBlockException, IOException {
+            if (m_valueFormat == ValueFormat.CSV) {
+                super.processRows(rows);
+                return;
+            }
+            if (!m_primed) checkOnFirstRow();
+            if (m_topic == null) populateTopic(rows.getTableName());
+            m_blockAck = new BlockAck();
             try {
-                m_futures.add(m_producer.send(krec, new Callback() {
-                    @Override
-                    public void onCompletion(RecordMetadata metadata, Exception e) {
-                        if (e != null){
-                            LOG.warn("Failed to send data. Verify if the kafka server matches bootstrap.servers %s", e,
-                                    m_producerConfig.getProperty(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG));
-                            m_failure.compareAndSet(false, true);
-                        }
-                    }
-                }));
-            } catch (KafkaException e) {
-                LOG.warn("Unable to send %s", e, krec);
-                throw new RestartBlockException("Unable to send message", e, true);
-            } catch (IllegalStateException e) {
-                LOG.warn("Unable to send %s", e, krec);
-                if (m_producer != null) try { m_producer.close(); } catch (Exception ignoreIt) {}
-                m_primed = false;
-                throw new RestartBlockException("Unable to send message", e, true);
+                while (rows.advance()) {
+                    byte[] key = String.valueOf(rows.getPartitionValue()).getBytes(StandardCharsets.UTF_8);
+                    byte[] value = m_valueFormat == ValueFormat.AVRO ? encodeAvro(rows) : rows.getRowBytes();
+                    send(m_binaryProducer, new ProducerRecord<byte[], byte[]>(m_topic, key, value));
+                }
+            } catch (IOException e) {
+                // Complete the rows sent so far before the block is dropped, the decode error is what's reported
+                try {
+                    completeBlock();
+                } catch (RestartBlockException completion) {
+                    LOG.warn("Failed to complete the rows of %s sent ahead of a row that could not be decoded",
+                            completion, rows.getTableName());
+                }
+                throw e;
             }
-            return true;
+            completeBlock();
+        }
+
+        private byte[] encodeAvro(ExportRowCursor rows) throws IOException {
+            final int columnCount = rows.getColumnCount();
+            if (m_fields.length != columnCount) {
+                m_fields = new Object[columnCount];
+            }
+            for (int i = 0; i < columnCount; i++) {
+                m_fields[i] = rows.getObject(i);
+            }
+            final ExportRow schema = rows.getSchema();
+            final GenericRecord record = m_avroDecoder.decode(
+                    rows.getGeneration(), rows.getTableName(), schema.types, schema.names, null, m_fields);
+            if (record.getSchema() != m_avroSchema) {
+                m_avroSchema = record.getSchema();
+                m_avroWriter = new AvroRecordWriter(m_avroSchema);
+                LOG.info("Exporting %s to topic %s as avro records of schema %s",
+                        rows.getTableName(), m_topic, m_avroSchema);
+            }
+            m_avroOut.reset();
+            m_avroEncoder = EncoderFactory.get().binaryEncoder(m_avroOut, m_avroEncoder);
+            m_avroWriter.write(record, m_avroEncoder);
+            m_avroEncoder.flush();
+            return m_avroOut.toByteArray();
         }
 
         @Override
         public void sourceNoLongerAdvertised(AdvertisedDataSource source) {
             if (m_producer != null) try { m_producer.close(); } catch (Exception ignoreIt) {}
+            if (m_binaryProducer != null) try { m_binaryProducer.close(); } catch (Exception ignoreIt) {}
             m_es.shutdown();
             try {
                 m_es.awaitTermination(365, TimeUnit.DAYS);
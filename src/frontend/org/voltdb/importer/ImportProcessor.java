@@ -39,7 +39,7 @@ public class ImportProcessor implements ImportDataProcessor {
     private final Map<String, ImporterWrapper> m_importers = new HashMap<String, ImporterWrapper>();
     private final ChannelDistributer m_distributer;
     private final ExecutorService m_es = CoreUtils.getSingleThreadExecutor("ImportProcessor");
-    private final ImporterServerAdapter m_importServerAdapter;
+    private final ImporterServerAdapterImpl m_importServerAdapter;
     private final String m_clusterTag;
 
 
@@ -147,6 +147,7 @@ public class ImportProcessor implements ImportDataProcessor {
         } catch (InterruptedException | ExecutionException ex) {
             m_logger.error("Failed to stop import processor.", ex);
         }
+        m_importServerAdapter.shutdown();
         try {
             m_es.shutdown();
             m_es.awaitTermination(365, TimeUnit.DAYS);
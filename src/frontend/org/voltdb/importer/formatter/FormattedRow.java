@@ -0,0 +1,269 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.importer.formatter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.voltdb.VoltType;
+
+/**
+ * Reusable, typed row buffer that a {@link RowFormatter} writes parsed fields into.
+ * Integer and floating point fields are kept as primitives and string fields as
+ * UTF-8 byte slices of one shared buffer, so that once the buffer has grown to the
+ * widest record seen, formatting a record does not allocate.
+ *
+ * The row serializes itself in the {@link org.voltdb.ParameterSet} wire format, which
+ * lets the fields go straight into a procedure invocation without materializing
+ * boxed values or {@link String}s. A row is not thread safe and is meant to be owned
+ * by the single thread that drives its formatter.
+ */
+public final class FormattedRow {
+
+    private static final int INITIAL_FIELD_COUNT = 16;
+    private static final int INITIAL_DATA_SIZE = 256;
+
+    private static final byte NULL = VoltType.NULL.getValue();
+    private static final byte BIGINT = VoltType.BIGINT.getValue();
+    private static final byte FLOAT = VoltType.FLOAT.getValue();
+    private static final byte STRING = VoltType.STRING.getValue();
+
+    private byte[] m_types = new byte[INITIAL_FIELD_COUNT];
+    // BIGINT values, FLOAT raw long bits, or the data offset of a STRING
+    private long[] m_values = new long[INITIAL_FIELD_COUNT];
+    private int[] m_lengths = new int[INITIAL_FIELD_COUNT];
+    private byte[] m_data = new byte[INITIAL_DATA_SIZE];
+    private int m_dataLength;
+    private int m_fieldCount;
+
+    /**
+     * Discard all fields, keeping the buffers for the next record.
+     */
+    public void clear() {
+        m_fieldCount = 0;
+        m_dataLength = 0;
+    }
+
+    /**
+     * @return number of fields in the row
+     */
+    public int size() {
+        return m_fieldCount;
+    }
+
+    public void addNull() {
+        add(NULL, 0L, 0);
+    }
+
+    public void addLong(long value) {
+        add(BIGINT, value, 0);
+    }
+
+    public void addDouble(double value) {
+        add(FLOAT, Double.doubleToRawLongBits(value), 0);
+    }
+
+    /**
+     * Append a string field by copying its UTF-8 encoding out of {@code utf8}.
+     */
+    public void addString(byte[] utf8, int offset, int length) {
+        if (m_dataLength + length > m_data.length) {
+            m_data = Arrays.copyOf(m_data, Math.max(m_data.length * 2, m_dataLength + length));
+        }
+        System.arraycopy(utf8, offset, m_data, m_dataLength, length);
+        add(STRING, m_dataLength, length);
+        m_dataLength += length;
+    }
+
+    public void addString(String value) {
+        if (value == null) {
+            addNull();
+        } else {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            addString(utf8, 0, utf8.length);
+        }
+    }
+
+    private void add(byte type, long value, int length) {
+        if (m_fieldCount == m_types.length) {
+            int capacity = m_fieldCount * 2;
+            m_types = Arrays.copyOf(m_types, capacity);
+            m_values = Arrays.copyOf(m_values, capacity);
+            m_lengths = Arrays.copyOf(m_lengths, capacity);
+        }
+        m_types[m_fieldCount] = type;
+        m_values[m_fieldCount] = value;
+        m_lengths[m_fieldCount] = length;
+        m_fieldCount++;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= m_fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + index + " of a row with " + m_fieldCount + " fields");
+        }
+    }
+
+    /**
+     * @return {@link VoltType#NULL}, {@link VoltType#BIGINT}, {@link VoltType#FLOAT} or
+     * {@link VoltType#STRING}
+     */
+    public VoltType getType(int index) {
+        checkIndex(index);
+        return VoltType.get(m_types[index]);
+    }
+
+    public boolean isNull(int index) {
+        checkIndex(index);
+        return m_types[index] == NULL;
+    }
+
+    /**
+     * Value of a numeric field, or of a string field holding a decimal integer as accepted
+     * by {@link Long#parseLong(String)}. String fields are parsed in place.
+     *
+     * @throws NumberFormatException if the field is null or not an integer
+     */
+    public long getLong(int index) {
+        checkIndex(index);
+        byte type = m_types[index];
+        if (type == BIGINT) {
+            return m_values[index];
+        }
+        if (type == FLOAT) {
+            return (long) Double.longBitsToDouble(m_values[index]);
+        }
+        if (type == NULL) {
+            throw new NumberFormatException("Field " + index + " is null");
+        }
+        int pos = (int) m_values[index];
+        int end = pos + m_lengths[index];
+        boolean negative = false;
+        if (pos < end && (m_data[pos] == '-' || m_data[pos] == '+')) {
+            negative = m_data[pos] == '-';
+            pos++;
+        }
+        if (pos == end) {
+            throw new NumberFormatException("For input string: \"" + getString(index) + "\"");
+        }
+        // accumulate negatively so that Long.MIN_VALUE does not overflow
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long result = 0;
+        for (; pos < end; pos++) {
+            int digit = m_data[pos] - '0';
+            if (digit < 0 || digit > 9 || result < limit / 10 || result * 10 < limit + digit) {
+                throw new NumberFormatException("For input string: \"" + getString(index) + "\"");
+            }
+            result = result * 10 - digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Value of a numeric field, or of a string field as parsed by {@link Double#parseDouble(String)}.
+     * Unlike {@link #getLong(int)} this decodes string fields first.
+     *
+     * @throws NumberFormatException if the field is null or not a number
+     */
+    public double getDouble(int index) {
+        checkIndex(index);
+        byte type = m_types[index];
+        if (type == FLOAT) {
+            return Double.longBitsToDouble(m_values[index]);
+        }
+        if (type == BIGINT) {
+            return m_values[index];
+        }
+        if (type == NULL) {
+            throw new NumberFormatException("Field " + index + " is null");
+        }
+        return Double.parseDouble(getString(index));
+    }
+
+    /**
+     * @return the field as a newly decoded string, or {@code null} for a null field
+     */
+    public String getString(int index) {
+        checkIndex(index);
+        switch (VoltType.get(m_types[index])) {
+        case NULL:
+            return null;
+        case BIGINT:
+            return Long.toString(m_values[index]);
+        case FLOAT:
+            return Double.toString(Double.longBitsToDouble(m_values[index]));
+        default:
+            return new String(m_data, (int) m_values[index], m_lengths[index], StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @return the fields boxed the way {@link Formatter#transform(ByteBuffer)} returns them
+     */
+    public Object[] toArray() {
+        Object[] values = new Object[m_fieldCount];
+        for (int i = 0; i < m_fieldCount; i++) {
+            byte type = m_types[i];
+            if (type == BIGINT) {
+                values[i] = m_values[i];
+            } else if (type == FLOAT) {
+                values[i] = Double.longBitsToDouble(m_values[i]);
+            } else {
+                values[i] = getString(i);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return number of bytes {@link #flattenToBuffer(ByteBuffer)} will write
+     */
+    public int getSerializedSize() {
+        int size = 2;
+        for (int i = 0; i < m_fieldCount; i++) {
+            byte type = m_types[i];
+            size += 1;
+            if (type == BIGINT || type == FLOAT) {
+                size += 8;
+            } else if (type == STRING) {
+                size += 4 + m_lengths[i];
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Serialize the row the same way {@link org.voltdb.ParameterSet#flattenToBuffer(ByteBuffer)}
+     * serializes a parameter set of the equivalent {@link #toArray()} values.
+     */
+    public void flattenToBuffer(ByteBuffer buf) {
+        buf.putShort((short) m_fieldCount);
+        for (int i = 0; i < m_fieldCount; i++) {
+            byte type = m_types[i];
+            buf.put(type);
+            if (type == BIGINT) {
+                buf.putLong(m_values[i]);
+            } else if (type == FLOAT) {
+                buf.putDouble(Double.longBitsToDouble(m_values[i]));
+            } else if (type == STRING) {
+                buf.putInt(m_lengths[i]);
+                buf.put(m_data, (int) m_values[i], m_lengths[i]);
+            }
+        }
+    }
+}
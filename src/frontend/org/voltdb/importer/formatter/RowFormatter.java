@@ -0,0 +1,37 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.importer.formatter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Formatter that can also write the fields it parses into a caller owned {@link FormattedRow}
+ * instead of returning a new array per record. Importers that check for this interface can
+ * reuse one row for every record they read and avoid the per-field allocations of
+ * {@link Formatter#transform(ByteBuffer)}.
+ */
+public interface RowFormatter extends Formatter {
+    /**
+     * Transforms data from one format to another, replacing the contents of {@code row}.
+     * @param sourceData - raw data from source
+     * @param row - row to write the converted fields into; it is cleared first
+     * @return false if there was no data to convert, leaving {@code row} empty
+     * @throws FormatException
+     */
+    public boolean transform(ByteBuffer sourceData, FormattedRow row) throws FormatException;
+}
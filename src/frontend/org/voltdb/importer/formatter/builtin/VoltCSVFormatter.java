@@ -18,19 +18,40 @@
 package org.voltdb.importer.formatter.builtin;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Properties;
 
 import org.voltdb.common.Constants;
 import org.voltdb.importer.formatter.FormatException;
-import org.voltdb.importer.formatter.Formatter;
+import org.voltdb.importer.formatter.FormattedRow;
+import org.voltdb.importer.formatter.RowFormatter;
 
 import au.com.bytecode.opencsv_voltpatches.CSVParser;
-import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
 
-public class VoltCSVFormatter implements Formatter {
+public class VoltCSVFormatter implements RowFormatter {
+    private static final byte[] NULL_TOKEN = "NULL".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CSV_NULL_TOKEN = Constants.CSV_NULL.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] QUOTED_CSV_NULL_TOKEN = Constants.QUOTED_CSV_NULL.getBytes(StandardCharsets.UTF_8);
+
     final CSVParser m_parser;
 
+    private final byte m_separator;
+    private final byte m_quotechar;
+    private final byte m_escape;
+    private final boolean m_strictQuotes;
+    private final boolean m_ignoreLeadingWhiteSpace;
+    // Control characters are compared against the UTF-8 bytes of a record, which only works
+    // for single byte characters. Anything else is left to m_parser.
+    private final boolean m_parseBytes;
+
+    // Same as CSVParser.inField, which also carries over from one record to the next. It is
+    // kept apart from m_parser's, so callers should stick to one of the two transform methods.
+    private boolean m_inField = false;
+    private byte[] m_field = new byte[CSVParser.INITIAL_READ_SIZE];
+    private int m_fieldLength;
+
     public VoltCSVFormatter (String formatName, Properties prop) {
 
         if (!("csv".equalsIgnoreCase(formatName) || "tsv".equalsIgnoreCase(formatName))) {
@@ -68,6 +89,13 @@ public class VoltCSVFormatter implements Formatter {
         }
 
         m_parser = new CSVParser(separator, quotechar, escape, strictQuotes, ignoreLeadingWhiteSpace);
+
+        m_separator = (byte) separator;
+        m_quotechar = (byte) quotechar;
+        m_escape = (byte) escape;
+        m_strictQuotes = strictQuotes;
+        m_ignoreLeadingWhiteSpace = ignoreLeadingWhiteSpace;
+        m_parseBytes = separator < 0x80 && quotechar < 0x80 && escape < 0x80;
     }
 
     @Override
@@ -93,4 +121,232 @@ public class VoltCSVFormatter implements Formatter {
             throw new FormatException("failed to format " + line, e);
         }
     }
+
+    @Override
+    public boolean transform(ByteBuffer payload, FormattedRow row) throws FormatException {
+        row.clear();
+        if (payload == null) {
+            return false;
+        }
+        byte[] line = payload.array();
+        int start = payload.arrayOffset();
+        int end = start + payload.limit();
+        if (!m_parseBytes) {
+            parseString(new String(line, start, payload.limit(), StandardCharsets.UTF_8), row);
+        } else if (!parseLine(line, start, end, row)) {
+            String str = new String(line, start, payload.limit(), StandardCharsets.UTF_8);
+            throw new FormatException("failed to format " + str,
+                    new IOException("Un-terminated quoted field at end of CSV line"));
+        }
+        return true;
+    }
+
+    private void parseString(String line, FormattedRow row) throws FormatException {
+        try {
+            for (String value : m_parser.parseLine(line)) {
+                if ("NULL".equals(value)
+                        || Constants.CSV_NULL.equals(value)
+                        || Constants.QUOTED_CSV_NULL.equals(value)) {
+                    row.addNull();
+                } else {
+                    row.addString(value);
+                }
+            }
+        } catch (IOException e) {
+            throw new FormatException("failed to format " + line, e);
+        }
+    }
+
+    /**
+     * Byte for byte port of {@link CSVParser#parseLine(String)} working on the UTF-8 encoded
+     * record. Every control character is ASCII, so it can never match part of a multi-byte
+     * character and each field comes out as the encoding of the string CSVParser would produce.
+     *
+     * @return false if the record ends inside a quoted field
+     */
+    private boolean parseLine(byte[] line, int start, int end, FormattedRow row) {
+        m_fieldLength = 0;
+        boolean inQuotes = false;
+        // index of line[i] in the decoded string, for the check that mirrors CSVParser's "i > 2"
+        int charIndex = 0;
+        for (int i = start; i < end; charIndex += charCount(line[i]), i++) {
+            byte c = line[i];
+            if (c == m_escape) {
+                if (isNullcaseForEscape(line, end, inQuotes, i)) {
+                    append(c);
+                    m_inField = true;
+                } else if (isNextCharacterEscapable(line, end, inQuotes || m_inField, i)) {
+                    append(line[i + 1]);
+                    charIndex++;
+                    i++;
+                }
+            } else if (c == m_quotechar) {
+                if (isNextCharacterEscapedQuote(line, end, inQuotes || m_inField, i)) {
+                    append(line[i + 1]);
+                    charIndex++;
+                    i++;
+                } else {
+                    // the tricky case of an embedded quote in the middle: a,bc"d"ef,g
+                    if (!m_strictQuotes) {
+                        if (charIndex > 2
+                                && line[i - 1] != m_separator
+                                && end > i + 1
+                                && line[i + 1] != m_separator) {
+                            if (m_ignoreLeadingWhiteSpace && m_fieldLength > 0
+                                    && isAllWhiteSpace(m_field, 0, m_fieldLength)) {
+                                m_fieldLength = 0;
+                            } else {
+                                append(c);
+                            }
+                        }
+                    }
+                    inQuotes = !inQuotes;
+                }
+                m_inField = !m_inField;
+            } else if (c == m_separator && !inQuotes) {
+                addField(row);
+                m_fieldLength = 0;
+                m_inField = false;
+            } else {
+                if (!m_strictQuotes || inQuotes) {
+                    append(c);
+                    m_inField = true;
+                }
+            }
+        }
+        if (inQuotes) {
+            return false;
+        }
+        addField(row);
+        return true;
+    }
+
+    private void append(byte b) {
+        if (m_fieldLength == m_field.length) {
+            m_field = Arrays.copyOf(m_field, m_fieldLength * 2);
+        }
+        m_field[m_fieldLength++] = b;
+    }
+
+    private void addField(FormattedRow row) {
+        if (fieldEquals(NULL_TOKEN) || fieldEquals(CSV_NULL_TOKEN) || fieldEquals(QUOTED_CSV_NULL_TOKEN)) {
+            row.addNull();
+        } else {
+            row.addString(m_field, 0, m_fieldLength);
+        }
+    }
+
+    private boolean fieldEquals(byte[] token) {
+        if (m_fieldLength != token.length) {
+            return false;
+        }
+        for (int i = 0; i < m_fieldLength; i++) {
+            if (m_field[i] != token[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isNextCharacterEscapedQuote(byte[] line, int end, boolean inQuotes, int i) {
+        return inQuotes && end > i + 1 && line[i + 1] == m_quotechar;
+    }
+
+    private boolean isNextCharacterEscapable(byte[] line, int end, boolean inQuotes, int i) {
+        return inQuotes && end > i + 1 && (line[i + 1] == m_quotechar || line[i + 1] == m_escape);
+    }
+
+    private boolean isNullcaseForEscape(byte[] line, int end, boolean inQuotes, int i) {
+        boolean hasmet = false;
+        for (int k = 0; k < m_fieldLength;) {
+            int whitespace = whitespaceLength(m_field, k, m_fieldLength);
+            if (whitespace > 0) {
+                k += whitespace;
+            } else if (m_field[k] == m_quotechar) {
+                if (!inQuotes || hasmet) {
+                    return false;
+                }
+                hasmet = true;
+                k++;
+            } else {
+                return false;
+            }
+        }
+        hasmet = false;
+        if (end > i + 1 && line[i + 1] == 'N') {
+            for (int j = i + 2; j < end;) {
+                int whitespace = whitespaceLength(line, j, end);
+                if (whitespace > 0) {
+                    j += whitespace;
+                } else if (line[j] == m_quotechar) {
+                    if (!inQuotes || hasmet) {
+                        return false;
+                    }
+                    hasmet = true;
+                    j++;
+                } else if (line[j] == m_separator) {
+                    break;
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isAllWhiteSpace(byte[] buf, int start, int end) {
+        for (int i = start; i < end;) {
+            int whitespace = whitespaceLength(buf, i, end);
+            if (whitespace == 0) {
+                return false;
+            }
+            i += whitespace;
+        }
+        return true;
+    }
+
+    /**
+     * @return the encoded length of the character starting at {@code buf[i]} if it is
+     * {@link Character#isWhitespace(int) whitespace}, or 0 if it is not
+     */
+    private static int whitespaceLength(byte[] buf, int i, int end) {
+        int b = buf[i];
+        if (b >= 0) {
+            return Character.isWhitespace(b) ? 1 : 0;
+        }
+        int length;
+        int codePoint;
+        if ((b & 0xE0) == 0xC0) {
+            length = 2;
+            codePoint = b & 0x1F;
+        } else if ((b & 0xF0) == 0xE0) {
+            length = 3;
+            codePoint = b & 0x0F;
+        } else {
+            // four byte characters are all outside the BMP, none of which are whitespace
+            return 0;
+        }
+        if (i + length > end) {
+            return 0;
+        }
+        for (int k = i + 1; k < i + length; k++) {
+            if ((buf[k] & 0xC0) != 0x80) {
+                return 0;
+            }
+            codePoint = (codePoint << 6) | (buf[k] & 0x3F);
+        }
+        return Character.isWhitespace(codePoint) ? length : 0;
+    }
+
+    /**
+     * @return number of UTF-16 chars the character starting with byte {@code b} decodes to,
+     * or 0 for a continuation byte
+     */
+    private static int charCount(byte b) {
+        if ((b & 0xC0) == 0x80) {
+            return 0;
+        }
+        return (b & 0xF8) == 0xF0 ? 2 : 1;
+    }
 }
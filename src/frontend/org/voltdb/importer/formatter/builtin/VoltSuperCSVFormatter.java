@@ -30,9 +30,10 @@ import org.supercsv.io.CsvListReader;
 import org.supercsv.prefs.CsvPreference;
 import org.supercsv_voltpatches.tokenizer.Tokenizer;
 import org.voltdb.importer.formatter.FormatException;
-import org.voltdb.importer.formatter.Formatter;
+import org.voltdb.importer.formatter.FormattedRow;
+import org.voltdb.importer.formatter.RowFormatter;
 
-public class VoltSuperCSVFormatter implements Formatter {
+public class VoltSuperCSVFormatter implements RowFormatter {
 
     /** String that can be used to indicate NULL value in CSV files */
     public static final String CSV_NULL = "\\N";
@@ -127,6 +128,22 @@ public class VoltSuperCSVFormatter implements Formatter {
         return data;
     }
 
+    /**
+     * SuperCSV tokenizes into strings, so this only saves the caller from holding on to them.
+     */
+    @Override
+    public boolean transform(ByteBuffer payload, FormattedRow row) throws FormatException {
+        row.clear();
+        Object[] data = transform(payload);
+        if (data == null) {
+            return false;
+        }
+        for (Object value : data) {
+            row.addString((String) value);
+        }
+        return true;
+    }
+
     private void normalize(String[] lineValues) throws FormatException {
 
         for (int i = 0; i < lineValues.length; i++) {
@@ -0,0 +1,223 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.iv2;
+
+/**
+ * The duplicate counters of an SpScheduler, ordered by txnId and then spHandle.
+ *
+ * The leader creates counters in spHandle order and, replicas answering in the order
+ * they were sent work, mostly retires the oldest one, so the counters are kept sorted
+ * in a ring of parallel arrays. Adding past the newest counter and removing the
+ * oldest one touch a single slot and allocate nothing. MP txnIds interleave with SP
+ * ones, so a counter that sorts before the newest one is placed by binary search and
+ * shifts the shorter side of the ring.
+ *
+ * Entries are addressed by rank, their position in key order, which stays valid until
+ * the map is next modified. Not thread safe, the scheduler owns it.
+ */
+final class DuplicateCounterMap {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] m_txnIds = new long[INITIAL_CAPACITY];
+    private long[] m_spHandles = new long[INITIAL_CAPACITY];
+    private DuplicateCounter[] m_counters = new DuplicateCounter[INITIAL_CAPACITY];
+    private int m_mask = INITIAL_CAPACITY - 1;
+    // Slot of the entry with rank 0
+    private int m_head = 0;
+    private int m_size = 0;
+
+    int size() {
+        return m_size;
+    }
+
+    boolean isEmpty() {
+        return m_size == 0;
+    }
+
+    long txnIdAt(int rank) {
+        return m_txnIds[slot(rank)];
+    }
+
+    long spHandleAt(int rank) {
+        return m_spHandles[slot(rank)];
+    }
+
+    DuplicateCounter counterAt(int rank) {
+        return m_counters[slot(rank)];
+    }
+
+    DuplicateCounter get(long txnId, long spHandle) {
+        final int rank = find(txnId, spHandle);
+        return rank < 0 ? null : m_counters[slot(rank)];
+    }
+
+    /**
+     * Add counter under txnId and spHandle unless there already is one.
+     * @return the counter already in the map, in which case counter was not added, or null
+     */
+    DuplicateCounter putIfAbsent(long txnId, long spHandle, DuplicateCounter counter) {
+        assert(counter != null);
+        final int rank;
+        if (m_size == 0 || compare(txnId, spHandle, m_size - 1) > 0) {
+            rank = m_size;
+        } else {
+            rank = lowerBound(txnId, spHandle);
+            if (rank < m_size && compare(txnId, spHandle, rank) == 0) {
+                return m_counters[slot(rank)];
+            }
+        }
+        insertAt(rank, txnId, spHandle, counter);
+        return null;
+    }
+
+    DuplicateCounter remove(long txnId, long spHandle) {
+        final int rank = find(txnId, spHandle);
+        return rank < 0 ? null : removeAt(rank);
+    }
+
+    /** Remove the entry with the given rank, shifting the ranks of the entries after it down by one */
+    DuplicateCounter removeAt(int rank) {
+        assert(rank >= 0 && rank < m_size);
+        final int removed = slot(rank);
+        final DuplicateCounter retval = m_counters[removed];
+        if (rank < m_size / 2) {
+            // Close the gap from the head side
+            for (int ii = rank; ii > 0; ii--) {
+                move(slot(ii - 1), slot(ii));
+            }
+            m_counters[m_head] = null;
+            m_head = (m_head + 1) & m_mask;
+        } else {
+            for (int ii = rank; ii < m_size - 1; ii++) {
+                move(slot(ii + 1), slot(ii));
+            }
+            m_counters[slot(m_size - 1)] = null;
+        }
+        m_size--;
+        return retval;
+    }
+
+    /** Remove every counter of the transaction */
+    void removeTransaction(long txnId) {
+        final int rank = lowerBound(txnId, Long.MIN_VALUE);
+        while (rank < m_size && m_txnIds[slot(rank)] == txnId) {
+            removeAt(rank);
+        }
+    }
+
+    /** @return the rank of the greatest key less than or equal to the given one, or -1 if there is none */
+    int floor(long txnId, long spHandle) {
+        final int rank = lowerBound(txnId, spHandle);
+        if (rank < m_size && compare(txnId, spHandle, rank) == 0) {
+            return rank;
+        }
+        return rank - 1;
+    }
+
+    /** @return the rank of the least key greater than or equal to the given one, or -1 if there is none */
+    int ceiling(long txnId, long spHandle) {
+        final int rank = lowerBound(txnId, spHandle);
+        return rank < m_size ? rank : -1;
+    }
+
+    private int slot(int rank) {
+        return (m_head + rank) & m_mask;
+    }
+
+    /** Compare the given key to the key of the entry with the given rank */
+    private int compare(long txnId, long spHandle, int rank) {
+        final int slot = slot(rank);
+        final int cmp = Long.compare(txnId, m_txnIds[slot]);
+        return cmp != 0 ? cmp : Long.compare(spHandle, m_spHandles[slot]);
+    }
+
+    private int find(long txnId, long spHandle) {
+        // Counters mostly complete oldest first
+        if (m_size == 0) {
+            return -1;
+        }
+        if (compare(txnId, spHandle, 0) == 0) {
+            return 0;
+        }
+        final int rank = lowerBound(txnId, spHandle);
+        return rank < m_size && compare(txnId, spHandle, rank) == 0 ? rank : -1;
+    }
+
+    /** @return the rank of the first entry whose key is not less than the given one */
+    private int lowerBound(long txnId, long spHandle) {
+        int low = 0;
+        int high = m_size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (compare(txnId, spHandle, mid) > 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void insertAt(int rank, long txnId, long spHandle, DuplicateCounter counter) {
+        if (m_size == m_counters.length) {
+            grow();
+        }
+        if (rank < m_size / 2) {
+            // Open the gap from the head side
+            m_head = (m_head - 1) & m_mask;
+            for (int ii = 0; ii < rank; ii++) {
+                move(slot(ii + 1), slot(ii));
+            }
+        } else {
+            for (int ii = m_size; ii > rank; ii--) {
+                move(slot(ii - 1), slot(ii));
+            }
+        }
+        final int slot = slot(rank);
+        m_txnIds[slot] = txnId;
+        m_spHandles[slot] = spHandle;
+        m_counters[slot] = counter;
+        m_size++;
+    }
+
+    private void move(int from, int to) {
+        m_txnIds[to] = m_txnIds[from];
+        m_spHandles[to] = m_spHandles[from];
+        m_counters[to] = m_counters[from];
+    }
+
+    // Unroll the ring into arrays twice the size, rank 0 first
+    private void grow() {
+        final int capacity = m_counters.length * 2;
+        final long[] txnIds = new long[capacity];
+        final long[] spHandles = new long[capacity];
+        final DuplicateCounter[] counters = new DuplicateCounter[capacity];
+        for (int ii = 0; ii < m_size; ii++) {
+            final int slot = slot(ii);
+            txnIds[ii] = m_txnIds[slot];
+            spHandles[ii] = m_spHandles[slot];
+            counters[ii] = m_counters[slot];
+        }
+        m_txnIds = txnIds;
+        m_spHandles = spHandles;
+        m_counters = counters;
+        m_mask = capacity - 1;
+        m_head = 0;
+    }
+}
@@ -17,6 +17,8 @@
 
 package org.voltdb.iv2;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -26,6 +28,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.CoreUtils;
 import org.voltdb.BackendTarget;
@@ -37,12 +41,23 @@ import org.voltdb.StarvationTracker;
  * Provide a pool of MP Read-only sites to do MP RO work.
  * This should be owned by the MpTransactionTaskQueue and expects all operations
  * to be done while holding its lock.
+ *
+ * The pool starts with mpiReadPoolMinSize sites and creates more on demand up to
+ * mpiReadPoolSize. Beyond that, up to mpiReadPoolMaxSize, the MpRoSitePoolSizer
+ * lets it grow while reads wait for a site and there is CPU to spare, and shrinks
+ * it again once the load passes. Setting only mpiReadPoolSize keeps the pool at
+ * that fixed maximum.
  */
 class MpRoSitePool {
     final static VoltLogger tmLog = new VoltLogger("TM");
 
-    static int DEFAULT_MAX_POOL_SIZE = 20;
-    static int INITIAL_POOL_SIZE = 1;
+    static int DEFAULT_MIN_POOL_SIZE = 2;
+    static int DEFAULT_POOL_SIZE = 20;
+    static int DEFAULT_MAX_POOL_SIZE = 64;
+    // Average wait for a site past which the pool may grow
+    static long DEFAULT_WAIT_THRESHOLD_MICROS = 1000;
+    // System CPU load, in percent, at which the pool stops growing
+    static int DEFAULT_CPU_CEILING_PERCENT = 85;
 
     class MpRoSiteContext {
         final private SiteTaskerQueue m_queue;
@@ -110,7 +125,8 @@ class MpRoSitePool {
     private final InitiatorMailbox m_initiatorMailbox;
     private CatalogContext m_catalogContext;
     private ThreadFactory m_poolThreadFactory;
-    private final int m_poolSize;
+    private final MpRoSitePoolSizer m_sizer;
+    private final OperatingSystemMXBean m_osBean = ManagementFactory.getOperatingSystemMXBean();
     private volatile boolean m_shuttingDown = false;
 
     MpRoSitePool(
@@ -130,14 +146,24 @@ class MpRoSitePool {
                     CoreUtils.MEDIUM_STACK_SIZE);
 
         Integer poolSize = Integer.getInteger("mpiReadPoolSize");
+        // A pool size configured on its own is the fixed maximum it always was
+        int maxPoolSize = Integer.getInteger("mpiReadPoolMaxSize",
+                poolSize == null ? DEFAULT_MAX_POOL_SIZE : poolSize);
         if (poolSize == null) {
-            poolSize = DEFAULT_MAX_POOL_SIZE;
+            poolSize = DEFAULT_POOL_SIZE;
         }
-        m_poolSize = poolSize;
-        tmLog.info("Setting maximum size of MPI read pool to: " + m_poolSize);
+        int minPoolSize = Math.max(1, Integer.getInteger("mpiReadPoolMinSize", DEFAULT_MIN_POOL_SIZE));
+        m_sizer = new MpRoSitePoolSizer(minPoolSize, poolSize, maxPoolSize,
+                TimeUnit.MICROSECONDS.toNanos(Long.getLong("mpiReadPoolWaitMicros", DEFAULT_WAIT_THRESHOLD_MICROS)),
+                Integer.getInteger("mpiReadPoolCpuPercent", DEFAULT_CPU_CEILING_PERCENT) / 100.0,
+                MpRoSitePoolSizer.DEFAULT_INTERVAL_NANOS,
+                System.nanoTime());
+        tmLog.info("Setting size of MPI read pool to: " + m_sizer.m_baseSize +
+                ", growing on demand to at most " + m_sizer.m_maxSize +
+                ", starting with " + m_sizer.m_minSize + " sites");
 
-        // Construct the initial pool
-        for (int i = 0; i < INITIAL_POOL_SIZE; i++) {
+        // Pre-warm the pool
+        for (int i = 0; i < m_sizer.m_minSize; i++) {
             MpRoSiteContext site = new MpRoSiteContext(m_siteId,
                     m_backend,
                     m_catalogContext,
@@ -147,6 +173,12 @@ class MpRoSitePool {
             m_idleSites.push(site);
             m_allSites.add(site);
         }
+        m_sizer.sitesChanged(m_allSites.size());
+    }
+
+    MpRoSitePoolSizer getSizer()
+    {
+        return m_sizer;
     }
 
     /**
@@ -168,10 +200,11 @@ class MpRoSitePool {
             if (site.getCatalogCRC() != m_catalogContext.getCatalogCRC()
                     || site.getCatalogVersion() != m_catalogContext.catalogVersion) {
                 site.shutdown();
-                m_idleSites.remove(site);
+                siterator.remove();
                 m_allSites.remove(site);
             }
         }
+        m_sizer.sitesChanged(m_allSites.size());
     }
 
     /**
@@ -208,7 +241,11 @@ class MpRoSitePool {
         if (m_shuttingDown) {
             return false;
         }
-        return (!m_idleSites.isEmpty() || m_busySites.size() < m_poolSize);
+        if (m_sizer.allows(m_busySites.size())) {
+            return true;
+        }
+        m_sizer.rejected();
+        return false;
     }
 
     /**
@@ -217,30 +254,39 @@ class MpRoSitePool {
      */
     boolean doWork(long txnId, TransactionTask task)
     {
-        boolean retval = canAcceptWork();
-        if (!retval) {
+        if (m_shuttingDown) {
             return false;
         }
-        MpRoSiteContext site;
-        // Repair case
-        if (m_busySites.containsKey(txnId)) {
-            site = m_busySites.get(txnId);
+        MpRoSiteContext site = m_busySites.get(txnId);
+        // Repair case, the site running the transaction takes it whatever the limit
+        if (site != null) {
+            site.offer(task);
+            return true;
         }
-        else {
-            if (m_idleSites.isEmpty()) {
-                MpRoSiteContext newSite = new MpRoSiteContext(m_siteId,
-                        m_backend,
-                        m_catalogContext,
-                        m_partitionId,
-                        m_initiatorMailbox,
-                        m_poolThreadFactory);
-                m_idleSites.push(newSite);
-                m_allSites.add(newSite);
-            }
-            site = m_idleSites.pop();
-            m_busySites.put(txnId, site);
+        if (!canAcceptWork()) {
+            return false;
+        }
+        final long now = System.nanoTime();
+        // The task queue stamped the task when it entered the backlog, and the site's queue restamps it
+        if (task.getQueueOfferTime() != -1L) {
+            m_sizer.dispatched(now - task.getQueueOfferTime());
+        }
+        if (m_idleSites.isEmpty()) {
+            MpRoSiteContext newSite = new MpRoSiteContext(m_siteId,
+                    m_backend,
+                    m_catalogContext,
+                    m_partitionId,
+                    m_initiatorMailbox,
+                    m_poolThreadFactory);
+            m_idleSites.push(newSite);
+            m_allSites.add(newSite);
+            m_sizer.sitesChanged(m_allSites.size());
         }
+        site = m_idleSites.pop();
+        m_busySites.put(txnId, site);
+        m_sizer.busyChanged(now, m_busySites.size());
         site.offer(task);
+        maybeResize(now);
         return true;
     }
 
@@ -257,6 +303,8 @@ class MpRoSitePool {
         if (site == null) {
             throw new RuntimeException("No busy site for txnID: " + txnId + " found, shouldn't happen.");
         }
+        final long now = System.nanoTime();
+        m_sizer.busyChanged(now, m_busySites.size());
         // check the catalog versions, only push back onto idle if the catalog hasn't changed
         // otherwise, just let it get garbage collected and let doWork() construct new ones for the
         // pool with the updated catalog.
@@ -267,7 +315,42 @@ class MpRoSitePool {
         else {
             site.shutdown();
             m_allSites.remove(site);
+            m_sizer.sitesChanged(m_allSites.size());
+        }
+        maybeResize(now);
+    }
+
+    /**
+     * Once an interval, let the sizer re-evaluate the limit and retire the least
+     * recently used idle site if the pool holds more than the last interval needed.
+     */
+    private void maybeResize(long now)
+    {
+        if (!m_sizer.intervalElapsed(now)) {
+            return;
+        }
+        final int oldLimit = m_sizer.getLimit();
+        final int limit = m_sizer.adjust(now, cpuLoad());
+        if (limit != oldLimit && tmLog.isDebugEnabled()) {
+            tmLog.debug("MPI read pool limit changed from " + oldLimit + " to " + limit +
+                    " sites, average wait " + TimeUnit.NANOSECONDS.toMicros(m_sizer.getAvgWaitNanos()) +
+                    " us, utilization " + m_sizer.getUtilization() + "%");
+        }
+        if (!m_idleSites.isEmpty() && m_sizer.shouldRetire(m_allSites.size())) {
+            MpRoSiteContext site = m_idleSites.pollLast();
+            site.shutdown();
+            m_allSites.remove(site);
+            m_sizer.sitesChanged(m_allSites.size());
+        }
+    }
+
+    /** Recent CPU load of the whole machine between 0 and 1, or negative if unknown */
+    private double cpuLoad()
+    {
+        if (m_osBean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) m_osBean).getSystemCpuLoad();
         }
+        return -1;
     }
 
     void shutdown()
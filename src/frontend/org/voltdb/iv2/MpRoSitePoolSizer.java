@@ -0,0 +1,226 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.voltdb.iv2;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how many MP read-only sites the MpRoSitePool may run at once.
+ *
+ * Up to the base size sites are created as soon as there is work for them, as the pool
+ * always did. Past it the limit follows demand: it is re-evaluated once an interval, and
+ * grows by a quarter when reads were turned away for want of a site, waited longer than
+ * the threshold to get one, and the machine had CPU to spare for more. It falls back a
+ * quarter at a time toward the base size once the allowed sites sit mostly idle. Idle
+ * sites beyond the most that were busy at once during the last interval are retired, one
+ * per interval, down to the minimum the pool pre-warms.
+ *
+ * Not thread safe, driven under the lock of the MpTransactionTaskQueue owning the pool.
+ * The measurements of the last interval are published for the statistics.
+ */
+final class MpRoSitePoolSizer {
+
+    static final long DEFAULT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // Utilization of the limit, in percent, below which it shrinks
+    static final int SHRINK_UTILIZATION = 25;
+
+    final int m_minSize;
+    final int m_baseSize;
+    final int m_maxSize;
+    private final long m_waitThresholdNanos;
+    private final double m_cpuCeiling;
+    private final long m_intervalNanos;
+
+    private int m_limit;
+    private int m_busy = 0;
+
+    // The interval being measured
+    private long m_intervalStart;
+    private long m_lastBusyChange;
+    private long m_busyNanos = 0;
+    private int m_peakBusy = 0;
+    private long m_dispatched = 0;
+    private long m_totalWaitNanos = 0;
+    private long m_maxWaitNanos = 0;
+    private boolean m_saturated = false;
+    private int m_retireTarget;
+
+    // Published for the statistics
+    private volatile int m_publishedLimit;
+    private volatile int m_publishedSites = 0;
+    private volatile int m_publishedBusy = 0;
+    private volatile long m_avgWaitNanos = 0;
+    private volatile long m_publishedMaxWaitNanos = 0;
+    private volatile int m_utilization = 0;
+    private volatile long m_grows = 0;
+    private volatile long m_shrinks = 0;
+
+    /**
+     * @param minSize sites kept even when idle
+     * @param baseSize sites allowed whatever the load
+     * @param maxSize sites never exceeded
+     * @param waitThresholdNanos average wait for a site past which the limit may grow
+     * @param cpuCeiling CPU load, between 0 and 1, at or above which the limit doesn't grow
+     * @param intervalNanos how often the limit is re-evaluated
+     * @param now the current System.nanoTime()
+     */
+    MpRoSitePoolSizer(int minSize, int baseSize, int maxSize, long waitThresholdNanos,
+            double cpuCeiling, long intervalNanos, long now)
+    {
+        m_maxSize = Math.max(1, maxSize);
+        m_baseSize = Math.max(1, Math.min(baseSize, m_maxSize));
+        m_minSize = Math.max(0, Math.min(minSize, m_maxSize));
+        m_waitThresholdNanos = waitThresholdNanos;
+        m_cpuCeiling = cpuCeiling;
+        m_intervalNanos = intervalNanos;
+        m_limit = m_baseSize;
+        m_publishedLimit = m_limit;
+        m_retireTarget = m_maxSize;
+        m_intervalStart = now;
+        m_lastBusyChange = now;
+    }
+
+    /** Can another site be put to work with busy sites already working? */
+    boolean allows(int busy)
+    {
+        return busy < m_limit;
+    }
+
+    /** A read was held back because the limit was reached */
+    void rejected()
+    {
+        m_saturated = true;
+    }
+
+    /** A read got a site after waiting waitNanos for it */
+    void dispatched(long waitNanos)
+    {
+        m_dispatched++;
+        m_totalWaitNanos += waitNanos;
+        m_maxWaitNanos = Math.max(m_maxWaitNanos, waitNanos);
+    }
+
+    /** The number of sites working on a transaction changed */
+    void busyChanged(long now, int busy)
+    {
+        m_busyNanos += m_busy * (now - m_lastBusyChange);
+        m_lastBusyChange = now;
+        m_busy = busy;
+        m_peakBusy = Math.max(m_peakBusy, busy);
+        m_publishedBusy = busy;
+    }
+
+    /** The number of sites in the pool, busy or idle, changed */
+    void sitesChanged(int sites)
+    {
+        m_publishedSites = sites;
+    }
+
+    boolean intervalElapsed(long now)
+    {
+        return now - m_intervalStart >= m_intervalNanos;
+    }
+
+    /**
+     * Close the interval being measured and re-evaluate the limit.
+     * @param cpuLoad recent CPU load of the machine between 0 and 1, negative if unknown
+     * @return the new limit
+     */
+    int adjust(long now, double cpuLoad)
+    {
+        busyChanged(now, m_busy);
+        final long elapsed = Math.max(1, now - m_intervalStart);
+        final int utilization = (int) Math.min(100, m_busyNanos * 100 / (elapsed * m_limit));
+        // Reads turned away without any getting a site waited the whole interval
+        final long avgWait = m_dispatched > 0 ? m_totalWaitNanos / m_dispatched : (m_saturated ? elapsed : 0);
+
+        if (m_saturated && avgWait > m_waitThresholdNanos && m_limit < m_maxSize
+                && (cpuLoad < 0 || cpuLoad < m_cpuCeiling)) {
+            m_limit = Math.min(m_maxSize, m_limit + Math.max(1, m_limit / 4));
+            m_grows++;
+        }
+        else if (!m_saturated && utilization < SHRINK_UTILIZATION && m_limit > m_baseSize) {
+            m_limit = Math.max(m_baseSize, m_limit - Math.max(1, m_limit / 4));
+            m_shrinks++;
+        }
+        m_retireTarget = Math.max(m_minSize, m_peakBusy);
+
+        m_publishedLimit = m_limit;
+        m_avgWaitNanos = avgWait;
+        m_publishedMaxWaitNanos = m_dispatched > 0 ? m_maxWaitNanos : avgWait;
+        m_utilization = utilization;
+
+        m_intervalStart = now;
+        m_busyNanos = 0;
+        m_peakBusy = m_busy;
+        m_dispatched = 0;
+        m_totalWaitNanos = 0;
+        m_maxWaitNanos = 0;
+        m_saturated = false;
+        return m_limit;
+    }
+
+    /** Should an idle site be retired, given the sites in the pool? */
+    boolean shouldRetire(int sites)
+    {
+        return sites > m_retireTarget;
+    }
+
+    int getLimit()
+    {
+        return m_publishedLimit;
+    }
+
+    int getSites()
+    {
+        return m_publishedSites;
+    }
+
+    int getBusy()
+    {
+        return m_publishedBusy;
+    }
+
+    /** Average wait for a site over the last interval */
+    long getAvgWaitNanos()
+    {
+        return m_avgWaitNanos;
+    }
+
+    long getMaxWaitNanos()
+    {
+        return m_publishedMaxWaitNanos;
+    }
+
+    /** Percentage of the limit busy over the last interval */
+    int getUtilization()
+    {
+        return m_utilization;
+    }
+
+    long getGrows()
+    {
+        return m_grows;
+    }
+
+    long getShrinks()
+    {
+        return m_shrinks;
+    }
+}
@@ -0,0 +1,98 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.voltdb.iv2;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.voltdb.SiteStatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * Size, wait time for a site and utilization of the MP read-only site pool, as measured
+ * by its sizer over the last interval. Wait times are in microseconds and utilization is
+ * the percentage of the allowed sites that were busy.
+ */
+class MpRoSitePoolStats extends SiteStatsSource {
+
+    private final MpRoSitePoolSizer m_sizer;
+
+    MpRoSitePoolStats(long siteId, MpRoSitePoolSizer sizer) {
+        super(siteId, false);
+        m_sizer = sizer;
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("POOL_SIZE", VoltType.INTEGER));
+        columns.add(new ColumnInfo("BUSY", VoltType.INTEGER));
+        columns.add(new ColumnInfo("LIMIT", VoltType.INTEGER));
+        columns.add(new ColumnInfo("MIN_SIZE", VoltType.INTEGER));
+        columns.add(new ColumnInfo("MAX_SIZE", VoltType.INTEGER));
+        columns.add(new ColumnInfo("AVG_WAIT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MAX_WAIT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("UTILIZATION", VoltType.INTEGER));
+        columns.add(new ColumnInfo("GROWS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("SHRINKS", VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        rowValues[columnNameToIndex.get("POOL_SIZE")] = m_sizer.getSites();
+        rowValues[columnNameToIndex.get("BUSY")] = m_sizer.getBusy();
+        rowValues[columnNameToIndex.get("LIMIT")] = m_sizer.getLimit();
+        rowValues[columnNameToIndex.get("MIN_SIZE")] = m_sizer.m_minSize;
+        rowValues[columnNameToIndex.get("MAX_SIZE")] = m_sizer.m_maxSize;
+        rowValues[columnNameToIndex.get("AVG_WAIT")] = TimeUnit.NANOSECONDS.toMicros(m_sizer.getAvgWaitNanos());
+        rowValues[columnNameToIndex.get("MAX_WAIT")] = TimeUnit.NANOSECONDS.toMicros(m_sizer.getMaxWaitNanos());
+        rowValues[columnNameToIndex.get("UTILIZATION")] = m_sizer.getUtilization();
+        rowValues[columnNameToIndex.get("GROWS")] = m_sizer.getGrows();
+        rowValues[columnNameToIndex.get("SHRINKS")] = m_sizer.getShrinks();
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        return new Iterator<Object>() {
+            boolean returnRow = true;
+            @Override
+            public boolean hasNext() {
+                return returnRow;
+            }
+
+            @Override
+            public Object next() {
+                if (returnRow) {
+                    returnRow = false;
+                    return new Object();
+                } else {
+                    return null;
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
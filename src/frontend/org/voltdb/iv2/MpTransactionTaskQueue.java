@@ -89,6 +89,8 @@ public class MpTransactionTaskQueue extends TransactionTaskQueue
     synchronized void offer(TransactionTask task)
     {
         Iv2Trace.logTransactionTaskQueueOffer(task);
+        // Lets the read pool measure how long reads wait for a site
+        task.setQueueOfferTime();
         m_backlog.addLast(task);
         taskQueueOffer();
     }
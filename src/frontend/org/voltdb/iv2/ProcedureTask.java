@@ -65,12 +65,19 @@ abstract public class ProcedureTask extends TransactionTask
 
         try {
             Object[] callerParams = null;
+            ProcedureRunner runner = siteConnection.getProcedureRunner(m_procName);
+            // Single statement procedures can take simple parameters straight from the
+            // serialized invocation, without boxing them first
+            final boolean primitiveParams =
+                    runner != null && runner.readPrimitiveParameters(task.getSerializedParams());
             /*
              * Parameters are lazily deserialized. We may not find out until now
              * that the parameter set is corrupt
              */
             try {
-                callerParams = task.getParameters();
+                if (!primitiveParams) {
+                    callerParams = task.getParameters();
+                }
             } catch (RuntimeException e) {
                 Writer result = new StringWriter();
                 PrintWriter pw = new PrintWriter(result);
@@ -82,12 +89,11 @@ abstract public class ProcedureTask extends TransactionTask
                                 + m_procName + "\n"
                                 + result.toString()));
             }
-            if (callerParams == null) {
+            if (callerParams == null && !primitiveParams) {
                 return response;
             }
 
             ClientResponseImpl cr = null;
-            ProcedureRunner runner = siteConnection.getProcedureRunner(m_procName);
             if (runner == null) {
                 String error =
                         "Procedure " + m_procName + " is not present in the catalog. "  +
@@ -112,7 +118,7 @@ abstract public class ProcedureTask extends TransactionTask
                 runner.setupTransaction(m_txnState);
 
                 // execute the procedure
-                cr = runner.call(callerParams);
+                cr = primitiveParams ? runner.callWithPrimitiveParameters() : runner.call(callerParams);
 
                 // pass in the first value in the hashes array if it's not null
                 Integer hash = null;
@@ -17,22 +17,69 @@
 
 package org.voltdb.iv2;
 
-import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import org.voltcore.utils.CoreUtils;
 import org.voltdb.QueueDepthTracker;
 import org.voltdb.StarvationTracker;
 
-/** SiteTaskerScheduler orders SiteTaskers for execution. */
+/**
+ * SiteTaskerScheduler orders SiteTaskers for execution.
+ *
+ * Any thread may offer, but only the site thread consumes, so the queue is a lock free
+ * multi-producer single-consumer linked list. An offer is one atomic swap of the tail
+ * and a link from the previous node, and only wakes the site thread when it is parked.
+ * When the queue runs dry, take() polls for a while before parking the site thread,
+ * first spinning, then yielding between polls. How long each phase lasts is set with the
+ * QUEUE_SPIN_MICROS and QUEUE_YIELD_MICROS properties, trading a core for the latency of
+ * tasks that arrive shortly after the site went idle.
+ */
 public class SiteTaskerQueue
 {
-    private final LinkedTransferQueue<SiteTasker> m_tasks = new LinkedTransferQueue<SiteTasker>();
+    static final long YIELD_NANOS =
+            TimeUnit.MICROSECONDS.toNanos(Integer.getInteger("QUEUE_YIELD_MICROS", 0));
+    // Polls before parking no matter the settings, about as many as LinkedTransferQueue spins
+    // for, and like it none on a single processor where spinning only delays the producers
+    private static final int MIN_SPINS = CoreUtils.availableProcessors() > 1 ? 128 : 0;
+
+    private static final class Node {
+        volatile Node m_next;
+        // Published by the write of m_next that links the node, cleared once it is consumed
+        SiteTasker m_task;
+
+        Node(SiteTasker task) {
+            m_task = task;
+        }
+    }
+
+    // The node before the first task. Only the site thread moves it.
+    private volatile Node m_head;
+    private final AtomicReference<Node> m_tail;
+    // The site thread while it is parked or about to park
+    private volatile Thread m_waiter;
+    private final long m_spinNanos;
+    private final long m_yieldNanos;
+
     private StarvationTracker m_starvationTracker;
     private QueueDepthTracker m_queueDepthTracker;
     private int m_partitionId;
 
     public SiteTaskerQueue(int partitionId) {
+        this(partitionId, CoreUtils.QUEUE_SPIN_MICROSECONDS, YIELD_NANOS);
+    }
+
+    /**
+     * @param spinNanos how long take() spins polling an empty queue
+     * @param yieldNanos how long take() then polls, yielding between polls, before parking
+     */
+    public SiteTaskerQueue(int partitionId, long spinNanos, long yieldNanos) {
         m_partitionId = partitionId;
+        m_spinNanos = spinNanos;
+        m_yieldNanos = yieldNanos;
+        m_head = new Node(null);
+        m_tail = new AtomicReference<Node>(m_head);
     }
 
     public int getPartitionId() {
@@ -47,48 +94,115 @@ public class SiteTaskerQueue
         // the queue depth before it is incremented
         // i.e. avoid queueDepth < 0
         m_queueDepthTracker.offerUpdate();
-        return m_tasks.offer(task);
+        final Node node = new Node(task);
+        m_tail.getAndSet(node).m_next = node;
+        // Pairs with the site thread publishing itself before its last poll
+        final Thread waiter = m_waiter;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+        return true;
     }
 
     // Block on the site tasker queue.
     public SiteTasker take() throws InterruptedException
     {
-        SiteTasker task = m_tasks.poll();
-
-        if (task == null) {
-            m_starvationTracker.beginStarvation();
-        } else {
-            m_queueDepthTracker.pollUpdate(task.getQueueOfferTime());
+        SiteTasker task = poll();
+        if (task != null) {
             return task;
         }
+        m_starvationTracker.beginStarvation();
         try {
-            task = CoreUtils.queueSpinTake(m_tasks);
-            // task is never null
-            m_queueDepthTracker.pollUpdate(task.getQueueOfferTime());
-            return task;
+            return awaitTask();
         } finally {
             m_starvationTracker.endStarvation();
         }
     }
 
-    // Non-blocking poll on the site tasker queue.
+    private SiteTasker awaitTask() throws InterruptedException
+    {
+        SiteTasker task;
+        final long start = System.nanoTime();
+        long waited = 0;
+        int spins = 0;
+        while (spins++ < MIN_SPINS || waited < m_spinNanos) {
+            if ((task = poll()) != null) {
+                return task;
+            }
+            waited = System.nanoTime() - start;
+        }
+        while (waited < m_spinNanos + m_yieldNanos) {
+            Thread.yield();
+            if ((task = poll()) != null) {
+                return task;
+            }
+            waited = System.nanoTime() - start;
+        }
+        final Thread current = Thread.currentThread();
+        m_waiter = current;
+        try {
+            while ((task = poll()) == null) {
+                if (m_tail.get() == m_head) {
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                } else {
+                    // A producer swapped the tail but hasn't linked its node yet
+                    Thread.yield();
+                }
+            }
+            return task;
+        } finally {
+            m_waiter = null;
+        }
+    }
+
+    // Non-blocking poll on the site tasker queue. Only the site thread may poll.
     public SiteTasker poll()
     {
-        SiteTasker task = m_tasks.poll();
-        if (task != null) {
-            m_queueDepthTracker.pollUpdate(task.getQueueOfferTime());
+        final Node next = m_head.m_next;
+        if (next == null) {
+            return null;
         }
+        final SiteTasker task = next.m_task;
+        next.m_task = null;
+        m_head = next;
+        m_queueDepthTracker.pollUpdate(task.getQueueOfferTime());
         return task;
     }
 
-    // Non-blocking peek on the site tasker queue.
+    /**
+     * Move the tasks already queued into batch, up to its length, in order. Only the site
+     * thread may drain, and the tasks count as polled now, so the queue wait recorded for
+     * each doesn't include the time spent behind the ones before it in the batch.
+     * @return the number of tasks placed at the front of batch
+     */
+    public int drainTo(SiteTasker[] batch)
+    {
+        int count = 0;
+        while (count < batch.length) {
+            final SiteTasker task = poll();
+            if (task == null) {
+                break;
+            }
+            batch[count++] = task;
+        }
+        return count;
+    }
+
+    /**
+     * Non-blocking peek on the site tasker queue. Threads other than the site thread may
+     * peek, and see either the next task or, if the site thread just took it, none.
+     */
     public SiteTasker peek()
     {
-        return m_tasks.peek();
+        final Node next = m_head.m_next;
+        return next == null ? null : next.m_task;
     }
 
     public boolean isEmpty() {
-        return m_tasks.isEmpty();
+        return m_head.m_next == null;
     }
 
     public void setStarvationTracker(StarvationTracker tracker) {
@@ -96,11 +210,16 @@ public class SiteTaskerQueue
     }
 
     public QueueDepthTracker setupQueueDepthTracker(long siteId) {
-        m_queueDepthTracker = new QueueDepthTracker(siteId, m_tasks);
+        m_queueDepthTracker = new QueueDepthTracker(siteId, this);
         return m_queueDepthTracker;
     }
 
+    // Walks the queue, so only an estimate while tasks are being offered or taken
     public int size() {
-        return m_tasks.size();
+        int size = 0;
+        for (Node node = m_head.m_next; node != null; node = node.m_next) {
+            size++;
+        }
+        return size;
     }
 }
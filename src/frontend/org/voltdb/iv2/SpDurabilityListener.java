@@ -23,6 +23,8 @@ import org.voltcore.logging.VoltLogger;
 import org.voltdb.CommandLog;
 import org.voltdb.CommandLog.DurabilityListener;
 import org.voltdb.iv2.SpScheduler.DurableUniqueIdListener;
+import org.voltdb.metrics.Counter;
+import org.voltdb.metrics.MetricsRegistry;
 import org.voltdb.utils.MiscUtils;
 import org.voltdb.utils.VoltTrace;
 
@@ -78,6 +80,7 @@ public class SpDurabilityListener implements DurabilityListener {
         @Override
         public void addTask(TransactionTask task) {
             if (!task.m_txnState.isReadOnly()) {
+                m_loggedMetric.inc();
                 setLastDurableUniqueId(task.m_txnState.uniqueId);
             }
         }
@@ -108,6 +111,7 @@ public class SpDurabilityListener implements DurabilityListener {
         @Override
         public void processChecks() {
             if (m_changed) {
+                m_durableMetric.inc();
                 if (log.isTraceEnabled()) {
                     log.trace("Notifying of last made durable: SP " + UniqueIdGenerator.toShortString(m_lastSpUniqueId) +
                               ", MP " + UniqueIdGenerator.toShortString(m_lastMpUniqueId));
@@ -182,9 +186,18 @@ public class SpDurabilityListener implements DurabilityListener {
 
     private final ArrayList<DurableUniqueIdListener> m_uniqueIdListeners = new ArrayList<DurableUniqueIdListener>(2);
 
+    // Command log activity of the partition, scraped from /metrics
+    private final Counter m_loggedMetric;
+    private final Counter m_durableMetric;
+
     public SpDurabilityListener(SpScheduler spScheduler, TransactionTaskQueue pendingTasks) {
         m_spScheduler = spScheduler;
         m_pendingTasks = pendingTasks;
+        final String partition = Integer.toString(spScheduler.m_partitionId);
+        m_loggedMetric = MetricsRegistry.instance().counter("voltdb_command_log_transactions",
+                "Write transactions handed to the command log", "partition", partition);
+        m_durableMetric = MetricsRegistry.instance().counter("voltdb_command_log_durability_notifications",
+                "Command log writes that made new transactions durable", "partition", partition);
     }
 
     @Override
@@ -20,20 +20,15 @@ package org.voltdb.iv2;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
-import java.util.stream.Collectors;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.messaging.HostMessenger;
@@ -41,6 +36,7 @@ import org.voltcore.messaging.Mailbox;
 import org.voltcore.messaging.TransactionInfoBaseMessage;
 import org.voltcore.messaging.VoltMessage;
 import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.LongObjectHashMap;
 import org.voltdb.ClientResponseImpl;
 import org.voltdb.CommandLog;
 import org.voltdb.CommandLog.DurabilityListener;
@@ -71,6 +67,8 @@ import org.voltdb.messaging.Iv2LogFaultMessage;
 import org.voltdb.messaging.MPBacklogFlushMessage;
 import org.voltdb.messaging.MultiPartitionParticipantMessage;
 import org.voltdb.messaging.RepairLogTruncationMessage;
+import org.voltdb.metrics.Counter;
+import org.voltdb.metrics.MetricsRegistry;
 import org.voltdb.utils.MiscUtils;
 import org.voltdb.utils.VoltTrace;
 
@@ -85,7 +83,8 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
     static final VoltLogger tmLog = new VoltLogger("TM");
     static final VoltLogger hostLog = new VoltLogger("HOST");
 
-    static class DuplicateCounterKey implements Comparable<DuplicateCounterKey> {
+    // Key of a duplicate counter for logging, and for collecting counters while the map is being walked
+    static class DuplicateCounterKey {
         private final long m_txnId;
         private final long m_spHandle;
         DuplicateCounterKey(long txnId, long spHandle) {
@@ -104,26 +103,6 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
             }
         }
 
-        // Only care about comparing TXN ID part for sorting in updateReplicas
-        @Override
-        public int compareTo(DuplicateCounterKey o) {
-            if (m_txnId < o.m_txnId) {
-                return -1;
-            } else if (m_txnId > o.m_txnId) {
-                return 1;
-            } else {
-                if (m_spHandle < o.m_spHandle) {
-                    return -1;
-                }
-                else if (m_spHandle > o.m_spHandle) {
-                    return 1;
-                }
-                else {
-                    return 0;
-                }
-            }
-        }
-
         @Override
         public int hashCode() {
             assert(false) : "Hashing this is unsafe as it can't promise no collisions.";
@@ -151,10 +130,9 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
     private List<Long> m_replicaHSIds = new ArrayList<>();
     long m_sendToHSIds[] = new long[0];
     private final TransactionTaskQueue m_pendingTasks;
-    private final Map<Long, TransactionState> m_outstandingTxns =
-        new HashMap<Long, TransactionState>();
-    private final TreeMap<DuplicateCounterKey, DuplicateCounter> m_duplicateCounters =
-        new TreeMap<DuplicateCounterKey, DuplicateCounter>();
+    private final LongObjectHashMap<TransactionState> m_outstandingTxns =
+        new LongObjectHashMap<TransactionState>();
+    private final DuplicateCounterMap m_duplicateCounters = new DuplicateCounterMap();
     // MP fragment tasks or completion tasks pending durability
     private final Map<Long, Queue<TransactionTask>> m_mpsPendingDurability =
         new HashMap<Long, Queue<TransactionTask>>();
@@ -187,6 +165,10 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
 
     private final boolean IS_KSAFE_CLUSTER;
 
+    // SP transactions this site sequenced as leader or ran as a local read, scraped from /metrics
+    private final Counter m_spWritesMetric;
+    private final Counter m_spReadsMetric;
+
     SpScheduler(int partitionId, SiteTaskerQueue taskQueue, SnapshotCompletionMonitor snapMonitor, boolean scoreboardEnabled)
     {
         super(partitionId, taskQueue);
@@ -199,6 +181,11 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         // initialized as current txn id in order to release the initial reads into the system
         m_maxScheduledTxnSpHandle = getCurrentTxnId();
         IS_KSAFE_CLUSTER = VoltDB.instance().getKFactor() > 0;
+        final String partition = Integer.toString(partitionId);
+        m_spWritesMetric = MetricsRegistry.instance().counter("voltdb_sp_transactions",
+                "Single partition transactions initiated on this host", "partition", partition, "kind", "write");
+        m_spReadsMetric = MetricsRegistry.instance().counter("voltdb_sp_transactions",
+                "Single partition transactions initiated on this host", "partition", partition, "kind", "read");
     }
 
     public void initializeScoreboard(int siteId, Mailbox mailBox) {
@@ -277,21 +264,22 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         if (m_isLeader && snapshotSaveTxnId != -1) {
             // HACKY HACKY HACKY, we know at this time there will be only one fragment with this txnId, so it's safe to use
             // Long.MAX_VALUE to match the duplicate counter key with the given txn id (there is only one!)
-            Entry<DuplicateCounterKey, DuplicateCounter> snapshotFragment =
-                    m_duplicateCounters.floorEntry(new DuplicateCounterKey(snapshotSaveTxnId, Long.MAX_VALUE));
-            assert(snapshotFragment != null);
-            snapshotFragment.getValue().addReplicas(replicasAdded);
+            final int snapshotFragment = m_duplicateCounters.floor(snapshotSaveTxnId, Long.MAX_VALUE);
+            assert(snapshotFragment != -1);
+            final DuplicateCounter snapshotCounter = m_duplicateCounters.counterAt(snapshotFragment);
+            snapshotCounter.addReplicas(replicasAdded);
             // Forward fragment message to new replica
-            m_mailbox.send(replicasAdded, snapshotFragment.getValue().getOpenMessage());
+            m_mailbox.send(replicasAdded, snapshotCounter.getOpenMessage());
         }
         // Cleanup duplicate counters and collect DONE counters
         // in this list for further processing.
         List<DuplicateCounterKey> doneCounters = new LinkedList<DuplicateCounterKey>();
-        for (Entry<DuplicateCounterKey, DuplicateCounter> entry : m_duplicateCounters.entrySet()) {
-            DuplicateCounter counter = entry.getValue();
+        for (int rank = 0; rank < m_duplicateCounters.size(); rank++) {
+            DuplicateCounter counter = m_duplicateCounters.counterAt(rank);
             int result = counter.updateReplicas(m_replicaHSIds);
             if (result == DuplicateCounter.DONE) {
-                doneCounters.add(entry.getKey());
+                doneCounters.add(new DuplicateCounterKey(m_duplicateCounters.txnIdAt(rank),
+                                                         m_duplicateCounters.spHandleAt(rank)));
             }
         }
 
@@ -302,10 +290,10 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
             ((InitiatorMailbox)m_mailbox).notifyNewLeaderOfTxnDoneIfNeeded();
         }
 
-        // Maintain the CI invariant that responses arrive in txnid order.
-        Collections.sort(doneCounters);
+        // Maintain the CI invariant that responses arrive in txnid order,
+        // the counters were collected in key order.
         for (DuplicateCounterKey key : doneCounters) {
-            DuplicateCounter counter = m_duplicateCounters.remove(key);
+            DuplicateCounter counter = m_duplicateCounters.remove(key.m_txnId, key.m_spHandle);
 
             final TransactionState txn = m_outstandingTxns.get(key.m_txnId);
             if (txn == null || txn.isDone()) {
@@ -559,6 +547,11 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
 
             msg.setSpHandle(newSpHandle);
             logRepair(msg);
+            if (msg.isReadOnly()) {
+                m_spReadsMetric.inc();
+            } else {
+                m_spWritesMetric.inc();
+            }
             // Also, if this is a vanilla single-part procedure, make the TXNID
             // be the SpHandle (for now)
             // Only system procedures are every-site, so we'll check through the SystemProcedureCatalog
@@ -609,7 +602,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                         m_replicaHSIds,
                         replmsg);
 
-                safeAddToDuplicateCounterMap(new DuplicateCounterKey(msg.getTxnId(), newSpHandle), counter);
+                safeAddToDuplicateCounterMap(msg.getTxnId(), newSpHandle, counter);
             }
         }
         else {
@@ -713,7 +706,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                 message.getTxnId(),
                 expectedHSIds,
                 message);
-        safeAddToDuplicateCounterMap(new DuplicateCounterKey(message.getTxnId(), message.getSpHandle()), counter);
+        safeAddToDuplicateCounterMap(message.getTxnId(), message.getSpHandle(), counter);
 
         m_uniqueIdGenerator.updateMostRecentlyGeneratedUniqueId(message.getUniqueId());
         // is local repair necessary?
@@ -746,7 +739,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                 message.getTxnId(),
                 expectedHSIds,
                 message);
-        safeAddToDuplicateCounterMap(new DuplicateCounterKey(message.getTxnId(), message.getSpHandle()), counter);
+        safeAddToDuplicateCounterMap(message.getTxnId(), message.getSpHandle(), counter);
 
         // is local repair necessary?
         if (needsRepair.contains(m_mailbox.getHSId())) {
@@ -789,8 +782,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
          * possible to read an unconfirmed transaction's writes that will be lost.
          */
         final long spHandle = message.getSpHandle();
-        final DuplicateCounterKey dcKey = new DuplicateCounterKey(message.getTxnId(), spHandle);
-        DuplicateCounter counter = m_duplicateCounters.get(dcKey);
+        DuplicateCounter counter = m_duplicateCounters.get(message.getTxnId(), spHandle);
         final VoltTrace.TraceEventBatch traceLog = VoltTrace.log(VoltTrace.Category.SPI);
 
         // All reads will have no duplicate counter.
@@ -820,7 +812,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
 
             int result = counter.offer(message);
             if (result == DuplicateCounter.DONE) {
-                m_duplicateCounters.remove(dcKey);
+                m_duplicateCounters.remove(message.getTxnId(), spHandle);
                 setRepairLogTruncationHandle(spHandle, message.isForOldLeader());
                 m_mailbox.send(counter.m_destinationId, counter.getLastResponse());
             }
@@ -1016,7 +1008,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                             m_replicaHSIds,
                             replmsg);
                 }
-                safeAddToDuplicateCounterMap(new DuplicateCounterKey(message.getTxnId(), newSpHandle), counter);
+                safeAddToDuplicateCounterMap(message.getTxnId(), newSpHandle, counter);
             }
         } else {
             // message processed on replica
@@ -1192,8 +1184,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         final VoltTrace.TraceEventBatch traceLog = VoltTrace.log(VoltTrace.Category.SPI);
 
         // Send the message to the duplicate counter, if any
-        DuplicateCounter counter =
-            m_duplicateCounters.get(new DuplicateCounterKey(message.getTxnId(), message.getSpHandle()));
+        DuplicateCounter counter = m_duplicateCounters.get(message.getTxnId(), message.getSpHandle());
         final TransactionState txn = m_outstandingTxns.get(message.getTxnId());
         if (counter != null) {
             String traceName = "recvfragment";
@@ -1212,7 +1203,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                     setRepairLogTruncationHandle(txn.m_spHandle, message.isForOldLeader());
                 }
 
-                m_duplicateCounters.remove(new DuplicateCounterKey(message.getTxnId(), message.getSpHandle()));
+                m_duplicateCounters.remove(message.getTxnId(), message.getSpHandle());
                 FragmentResponseMessage resp = (FragmentResponseMessage)counter.getLastResponse();
                 // MPI is tracking deps per partition HSID.  We need to make
                 // sure we write ours into the message getting sent to the MPI
@@ -1299,7 +1290,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                                                msg.getTxnId(),
                                                m_replicaHSIds,
                                                msg);
-                safeAddToDuplicateCounterMap(new DuplicateCounterKey(msg.getTxnId(), msg.getSpHandle()), counter);
+                safeAddToDuplicateCounterMap(msg.getTxnId(), msg.getSpHandle(), counter);
             }
 
             Iv2Trace.logCompleteTransactionMessage(msg, m_mailbox.getHSId());
@@ -1324,8 +1315,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
 
     private void handleCompleteTransactionResponseMessage(CompleteTransactionResponseMessage msg)
     {
-        final DuplicateCounterKey duplicateCounterKey = new DuplicateCounterKey(msg.getTxnId(), msg.getSpHandle());
-        DuplicateCounter counter = m_duplicateCounters.get(duplicateCounterKey);
+        DuplicateCounter counter = m_duplicateCounters.get(msg.getTxnId(), msg.getSpHandle());
         boolean txnDone = true;
 
         if (msg.isRestart()) {
@@ -1335,12 +1325,12 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         if (msg.isAborted() && counter != null) {
             // The last completion was an abort due to a repair/abort or restart/abort so we need to remove duplicate counters
             // for stale versions of the restarted Txn that never made it past the scoreboard
-            final DuplicateCounterKey lowestPossible = new DuplicateCounterKey(msg.getTxnId(), 0);
-            DuplicateCounterKey staleMatch = m_duplicateCounters.ceilingKey(lowestPossible);
-            while (staleMatch != null && staleMatch.compareTo(duplicateCounterKey) == -1) {
-                m_duplicateCounters.remove(staleMatch);
-                staleMatch = m_duplicateCounters.ceilingKey(lowestPossible);
-            };
+            final int staleMatch = m_duplicateCounters.ceiling(msg.getTxnId(), 0);
+            while (staleMatch != -1 && staleMatch < m_duplicateCounters.size() &&
+                    m_duplicateCounters.txnIdAt(staleMatch) == msg.getTxnId() &&
+                    m_duplicateCounters.spHandleAt(staleMatch) < msg.getSpHandle()) {
+                m_duplicateCounters.removeAt(staleMatch);
+            }
         }
 
         if (counter != null) {
@@ -1350,7 +1340,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         if (txnDone) {
             assert !msg.isRestart();
             final TransactionState txn = m_outstandingTxns.remove(msg.getTxnId());
-            m_duplicateCounters.remove(duplicateCounterKey);
+            m_duplicateCounters.remove(msg.getTxnId(), msg.getSpHandle());
 
             if (txn != null) {
                 // Set the truncation handle here instead of when processing
@@ -1425,13 +1415,15 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
             }
         }
         builder.append("\n  most recent SP handle: ").append(TxnEgo.txnIdToString(getCurrentTxnId()));
-        builder.append("\n  outstanding txns: ").append(TxnEgo.txnIdCollectionToString(m_outstandingTxns.keySet()));
+        builder.append("\n  outstanding txns: ").append(TxnEgo.txnIdCollectionToString(Longs.asList(m_outstandingTxns.keys())));
         builder.append("\n  ");
         m_pendingTasks.toString(builder);
         if (m_duplicateCounters.size() > 0) {
             builder.append("\n  DUPLICATE COUNTERS:\n ");
-            for (Entry<DuplicateCounterKey, DuplicateCounter> e : m_duplicateCounters.entrySet()) {
-                builder.append("  ").append(e.getKey().toString()).append(": ").append(e.getValue().toString());
+            for (int rank = 0; rank < m_duplicateCounters.size(); rank++) {
+                builder.append("  ")
+                       .append(new DuplicateCounterKey(m_duplicateCounters.txnIdAt(rank), m_duplicateCounters.spHandleAt(rank)))
+                       .append(": ").append(m_duplicateCounters.counterAt(rank).toString());
             }
         }
         builder.append("END of STATE DUMP FOR SITE: ").append(who);
@@ -1459,7 +1451,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                         msg.getTxnId(),
                         m_replicaHSIds,
                         msg);
-                safeAddToDuplicateCounterMap(new DuplicateCounterKey(msg.getTxnId(), newSpHandle), counter);
+                safeAddToDuplicateCounterMap(msg.getTxnId(), newSpHandle, counter);
             }
         } else {
             setMaxSeenTxnId(msg.getSpHandle());
@@ -1482,8 +1474,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
 
     private void handleDummyTransactionResponseMessage(DummyTransactionResponseMessage message) {
         final long spHandle = message.getSpHandle();
-        final DuplicateCounterKey dcKey = new DuplicateCounterKey(message.getTxnId(), spHandle);
-        DuplicateCounter counter = m_duplicateCounters.get(dcKey);
+        DuplicateCounter counter = m_duplicateCounters.get(message.getTxnId(), spHandle);
         if (counter == null) {
             // this will be on SPI without k-safety or replica only with k-safety
             setRepairLogTruncationHandle(spHandle, message.isForOldLeader());
@@ -1496,7 +1487,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         int result = counter.offer(message);
         if (result == DuplicateCounter.DONE) {
             // DummyTransactionResponseMessage ends on SPI
-            m_duplicateCounters.remove(dcKey);
+            m_duplicateCounters.remove(message.getTxnId(), spHandle);
             setRepairLogTruncationHandle(spHandle, message.isForOldLeader());
         }
     }
@@ -1598,11 +1589,9 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
      * Just using "put" on the dup counter map is unsafe.
      * It won't detect the case where keys collide from two different transactions.
      */
-    void safeAddToDuplicateCounterMap(DuplicateCounterKey dpKey, DuplicateCounter counter) {
-        DuplicateCounter existingDC = m_duplicateCounters.get(dpKey);
-        if (existingDC == null) {
-            m_duplicateCounters.put(dpKey, counter);
-        } else {
+    void safeAddToDuplicateCounterMap(long txnId, long spHandle, DuplicateCounter counter) {
+        DuplicateCounter existingDC = m_duplicateCounters.putIfAbsent(txnId, spHandle, counter);
+        if (existingDC != null) {
             existingDC.logWithCollidingDuplicateCounters(counter);
             VoltDB.crashGlobalVoltDB("DUPLICATE COUNTER MISMATCH: two duplicate counter keys collided.", true, null);
         }
@@ -1725,14 +1714,20 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         if (m_migratePartitionLeaderCheckPoint < 0) {
             return false;
         }
-        List<DuplicateCounterKey> keys = m_duplicateCounters.keySet().stream()
-                .filter(k->k.m_spHandle < m_migratePartitionLeaderCheckPoint && k.isSpTransaction()).collect(Collectors.toList());
-        if (!keys.isEmpty()) {
+        List<Integer> ranks = new ArrayList<>();
+        for (int rank = 0; rank < m_duplicateCounters.size(); rank++) {
+            final DuplicateCounterKey key = new DuplicateCounterKey(m_duplicateCounters.txnIdAt(rank),
+                                                                    m_duplicateCounters.spHandleAt(rank));
+            if (key.m_spHandle < m_migratePartitionLeaderCheckPoint && key.isSpTransaction()) {
+                ranks.add(rank);
+            }
+        }
+        if (!ranks.isEmpty()) {
             if (tmLog.isDebugEnabled()) {
                 StringBuilder builder = new StringBuilder();
-                for (DuplicateCounterKey dc : keys) {
-                    builder.append(TxnEgo.txnIdToString(dc.m_txnId) + "(" + dc.m_spHandle + "),");
-                    DuplicateCounter counter = m_duplicateCounters.get(dc);
+                for (int rank : ranks) {
+                    builder.append(TxnEgo.txnIdToString(m_duplicateCounters.txnIdAt(rank)) + "(" + m_duplicateCounters.spHandleAt(rank) + "),");
+                    DuplicateCounter counter = m_duplicateCounters.counterAt(rank);
                     builder.append(counter.m_openMessage + "\n");
                 }
                 tmLog.debug("Duplicate counters on " + CoreUtils.hsIdToString(m_mailbox.getHSId()) + " have keys smaller than the sphandle:" + m_migratePartitionLeaderCheckPoint + "\n" + builder.toString());
@@ -1772,23 +1767,25 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         boolean forwarding = false;
         // HACKY HACKY HACKY, we know at this time there will be only one fragment with this txnId, so it's safe to use
         // Long.MAX_VALUE to match the duplicate counter key with the given txn id (there is only one!)
-        DuplicateCounterKey snapshotFragment = m_duplicateCounters.floorKey(new DuplicateCounterKey(txnId, Long.MAX_VALUE));
-        assert (snapshotFragment != null);
-        long snapshotSpHandle = snapshotFragment.m_spHandle;
-        for (Map.Entry<DuplicateCounterKey, DuplicateCounter> entry : m_duplicateCounters.entrySet()) {
+        final int snapshotFragment = m_duplicateCounters.floor(txnId, Long.MAX_VALUE);
+        assert (snapshotFragment != -1);
+        final long snapshotTxnId = m_duplicateCounters.txnIdAt(snapshotFragment);
+        final long snapshotSpHandle = m_duplicateCounters.spHandleAt(snapshotFragment);
+        for (int rank = 0; rank < m_duplicateCounters.size(); rank++) {
             // First find the mp fragment currently running
-            if (!forwarding && entry.getKey().m_spHandle > snapshotSpHandle) {
+            if (!forwarding && m_duplicateCounters.spHandleAt(rank) > snapshotSpHandle) {
                 forwarding = true;
                 if (tmLog.isDebugEnabled()) {
                     tmLog.debug("Start forwarding pending tasks to rejoin node.");
                 }
             }
             // Then forward any message after the MP txn, I expect them are all Iv2InitiateMessages
-            if (forwarding && entry.getKey().m_txnId != snapshotFragment.m_txnId) {
+            if (forwarding && m_duplicateCounters.txnIdAt(rank) != snapshotTxnId) {
+                final DuplicateCounter counter = m_duplicateCounters.counterAt(rank);
                 if (tmLog.isDebugEnabled()) {
-                    tmLog.debug(entry.getValue().getOpenMessage().getMessageInfo());
+                    tmLog.debug(counter.getOpenMessage().getMessageInfo());
                 }
-                m_mailbox.send(replicasAdded, entry.getValue().getOpenMessage());
+                m_mailbox.send(replicasAdded, counter.getOpenMessage());
             }
         }
         if (forwarding) {
@@ -1809,15 +1806,13 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         if (m_isLeader && m_sendToHSIds.length > 0) {
             m_mailbox.send(m_sendToHSIds, new MPBacklogFlushMessage());
         }
-        Iterator<Entry<Long, TransactionState>> iter = m_outstandingTxns.entrySet().iterator();
-        while (iter.hasNext()) {
-            Entry<Long, TransactionState> entry = iter.next();
-            TransactionState txnState = entry.getValue();
-            if (TxnEgo.getPartitionId(entry.getKey()) == MpInitiator.MP_INIT_PID ) {
+        for (long txnId : m_outstandingTxns.keys()) {
+            TransactionState txnState = m_outstandingTxns.get(txnId);
+            if (TxnEgo.getPartitionId(txnId) == MpInitiator.MP_INIT_PID ) {
                 if (txnState.isReadOnly()) {
                     txnState.setDone();
-                    m_duplicateCounters.entrySet().removeIf((e) -> e.getKey().m_txnId == entry.getKey());
-                    iter.remove();
+                    m_duplicateCounters.removeTransaction(txnId);
+                    m_outstandingTxns.remove(txnId);
                 }
             }
         }
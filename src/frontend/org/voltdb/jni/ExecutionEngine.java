@@ -188,6 +188,19 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
         return m_usingFallbackBuffer;
     }
 
+    /**
+     * Lease the buffer holding the results of the last batch to the result tables
+     * that are views of it, instead of having them copied to the heap. The tables
+     * each hold a reference to the buffer until they are released, and the EE is
+     * given a different buffer for subsequent batches.
+     *
+     * @param results Tables created over the result buffer of the last batch
+     * @return true if the buffer was leased, false if the tables still need to be copied
+     */
+    public boolean leaseResultBuffer(VoltTable[] results) {
+        return false;
+    }
+
     public void setBatchTimeout(int batchTimeout) {
         m_batchTimeout = batchTimeout;
     }
@@ -21,6 +21,8 @@ import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
@@ -76,6 +78,21 @@ public class ExecutionEngineJNI extends ExecutionEngine {
     // 256K is a reasonable size for those relatively small buffers.
     private static final int smallBufferSize = 256 * 1024;
 
+    /*
+     * Results of at least this many bytes are handed to the network by leasing the
+     * result buffer instead of copying it to the heap. Smaller results are cheaper to copy.
+     */
+    private static final int EE_RESULT_BUFFER_LEASE_THRESHOLD =
+            Integer.getInteger("EE_RESULT_BUFFER_LEASE_THRESHOLD", 64 * 1024);
+
+    /*
+     * Upper bound on the number of extra result buffers each engine allocates to stand in
+     * for leased ones. Once they are all out, results are copied until a lease is released.
+     * Zero disables leasing.
+     */
+    private static final int EE_MAX_LEASED_RESULT_BUFFERS =
+            Integer.getInteger("EE_MAX_LEASED_RESULT_BUFFERS", 2);
+
     static {
         EE_COMPACTION_THRESHOLD = Integer.getInteger("EE_COMPACTION_THRESHOLD", 95);
         if (EE_COMPACTION_THRESHOLD < 0 || EE_COMPACTION_THRESHOLD > 99) {
@@ -117,10 +134,11 @@ public class ExecutionEngineJNI extends ExecutionEngine {
      * that rely on being able to serialize large results sets will get the same amount of storage
      * when using the IPC backend.
      **/
-    private final BBContainer m_firstDeserializerBufferOrigin = org.voltcore.utils.DBBPool.allocateDirect(1024 * 1024 * 10);
+    private static final int RESULT_BUFFER_SIZE = 1024 * 1024 * 10;
+    private BBContainer m_firstDeserializerBufferOrigin = org.voltcore.utils.DBBPool.allocateDirect(RESULT_BUFFER_SIZE);
     private FastDeserializer m_firstDeserializer =
             new FastDeserializer(m_firstDeserializerBufferOrigin.b());
-    private final BBContainer m_nextDeserializerBufferOrigin = org.voltcore.utils.DBBPool.allocateDirect(1024 * 1024 * 10);
+    private final BBContainer m_nextDeserializerBufferOrigin = org.voltcore.utils.DBBPool.allocateDirect(RESULT_BUFFER_SIZE);
     private FastDeserializer m_nextDeserializer =
             new FastDeserializer(m_nextDeserializerBufferOrigin.b());
 
@@ -133,6 +151,20 @@ public class ExecutionEngineJNI extends ExecutionEngine {
      */
     private ByteBuffer m_fallbackBuffer = null;
 
+    /*
+     * True while the first result buffer holds the results of the most recent batch,
+     * i.e. they can be leased with leaseResultBuffer().
+     */
+    private boolean m_firstResultBufferHoldsLastBatch = false;
+
+    /*
+     * Result buffers returned by released leases, ready to be swapped in for the
+     * next leased one. Leases are released from network threads.
+     */
+    private final ConcurrentLinkedQueue<BBContainer> m_spareResultBuffers = new ConcurrentLinkedQueue<>();
+    private int m_allocatedSpareResultBuffers = 0;
+    private volatile boolean m_released = false;
+
     private final BBContainer m_exceptionBufferOrigin = org.voltcore.utils.DBBPool.allocateDirect(1024 * 1024 * 5);
     private ByteBuffer m_exceptionBuffer = m_exceptionBufferOrigin.b();
 
@@ -312,6 +344,9 @@ public class ExecutionEngineJNI extends ExecutionEngine {
         m_firstDeserializerBufferOrigin.discard();
         m_nextDeserializer = null;
         m_nextDeserializerBufferOrigin.discard();
+        // Leases still outstanding discard their buffers when they are released
+        m_released = true;
+        discardSpareResultBuffers();
         m_exceptionBuffer = null;
         m_exceptionBufferOrigin.discard();
         m_emptyDeserializer = null;
@@ -402,6 +437,7 @@ public class ExecutionEngineJNI extends ExecutionEngine {
         // plan frag zero is invalid
         assert((numFragmentIds == 0) || (planFragmentIds[0] != 0));
 
+        m_firstResultBufferHoldsLastBatch = false;
         if (numFragmentIds == 0) {
             return m_emptyDeserializer;
         }
@@ -475,6 +511,7 @@ public class ExecutionEngineJNI extends ExecutionEngine {
             m_usingFallbackBuffer = m_fallbackBuffer != null;
             FastDeserializer fds = m_usingFallbackBuffer ? new FastDeserializer(m_fallbackBuffer) : targetDeserializer;
             assert(fds != null);
+            m_firstResultBufferHoldsLastBatch = fds == m_firstDeserializer;
             try {
                 // check if anything was changed
                 m_dirty |= fds.readBoolean();
@@ -489,6 +526,80 @@ public class ExecutionEngineJNI extends ExecutionEngine {
         }
     }
 
+    @Override
+    public boolean leaseResultBuffer(VoltTable[] results) {
+        if (!m_firstResultBufferHoldsLastBatch || results.length == 0) {
+            return false;
+        }
+        long resultSize = 0;
+        for (VoltTable vt : results) {
+            resultSize += vt.getSerializedSize();
+        }
+        if (resultSize < EE_RESULT_BUFFER_LEASE_THRESHOLD) {
+            return false;
+        }
+
+        BBContainer replacement = m_spareResultBuffers.poll();
+        if (replacement == null) {
+            if (m_allocatedSpareResultBuffers >= EE_MAX_LEASED_RESULT_BUFFERS) {
+                return false;
+            }
+            replacement = DBBPool.allocateDirect(RESULT_BUFFER_SIZE);
+            m_allocatedSpareResultBuffers++;
+        }
+
+        LeasedResultBuffer lease = new LeasedResultBuffer(m_firstDeserializerBufferOrigin, results.length);
+        m_firstDeserializerBufferOrigin = replacement;
+        m_firstDeserializer = new FastDeserializer(replacement.b());
+        m_firstResultBufferHoldsLastBatch = false;
+        updateEEBufferPointers();
+
+        for (VoltTable vt : results) {
+            PrivateVoltTableFactory.attachLeasedBuffer(vt, lease);
+        }
+        return true;
+    }
+
+    private void returnResultBuffer(BBContainer buffer) {
+        m_spareResultBuffers.offer(buffer);
+        // The engine may have been released while the buffer was leased
+        if (m_released) {
+            discardSpareResultBuffers();
+        }
+    }
+
+    private void discardSpareResultBuffers() {
+        BBContainer buffer;
+        while ((buffer = m_spareResultBuffers.poll()) != null) {
+            buffer.discard();
+        }
+    }
+
+    /**
+     * A result buffer leased to the result tables that are views of it. Every table
+     * discards its reference once it has been serialized, and the last one to do so
+     * returns the buffer to the engine as a spare.
+     */
+    private final class LeasedResultBuffer extends BBContainer {
+        private final BBContainer m_origin;
+        private final AtomicInteger m_refCount;
+
+        private LeasedResultBuffer(BBContainer origin, int refCount) {
+            super(origin.b());
+            m_origin = origin;
+            m_refCount = new AtomicInteger(refCount);
+        }
+
+        @Override
+        public void discard() {
+            if (m_refCount.decrementAndGet() > 0) {
+                return;
+            }
+            checkDoubleFree();
+            returnResultBuffer(m_origin);
+        }
+    }
+
     @Override
     public VoltTable serializeTable(final int tableId) throws EEException {
         if (HOST_TRACE_ENABLED) {
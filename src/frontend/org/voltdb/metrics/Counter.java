@@ -0,0 +1,52 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.voltdb.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing count. Increments are striped by {@link LongAdder}
+ * so threads counting the same event don't contend on one cache line.
+ */
+public final class Counter extends Metric {
+
+    private final LongAdder m_count = new LongAdder();
+
+    Counter(String name, String labels) {
+        super(name, labels);
+    }
+
+    public void inc() {
+        m_count.increment();
+    }
+
+    public void add(long delta) {
+        assert(delta >= 0);
+        m_count.add(delta);
+    }
+
+    public long get() {
+        return m_count.sum();
+    }
+
+    @Override
+    void writeSamples(StringBuilder sb, MetricsRegistry.Format format) {
+        writeSample(sb, "_total", null, Long.toString(get()));
+    }
+}
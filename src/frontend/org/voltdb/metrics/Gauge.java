@@ -0,0 +1,56 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.voltdb.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A value that can go up and down. It is either set by the code that owns it or,
+ * for values some component already keeps, read from a supplier when scraped.
+ */
+public final class Gauge extends Metric {
+
+    private final AtomicLong m_value = new AtomicLong();
+    private final LongSupplier m_supplier;
+
+    Gauge(String name, String labels, LongSupplier supplier) {
+        super(name, labels);
+        m_supplier = supplier;
+    }
+
+    public void set(long value) {
+        assert(m_supplier == null);
+        m_value.set(value);
+    }
+
+    public void add(long delta) {
+        assert(m_supplier == null);
+        m_value.addAndGet(delta);
+    }
+
+    public long get() {
+        return m_supplier == null ? m_value.get() : m_supplier.getAsLong();
+    }
+
+    @Override
+    void writeSamples(StringBuilder sb, MetricsRegistry.Format format) {
+        writeSample(sb, "", null, Long.toString(get()));
+    }
+}
@@ -0,0 +1,60 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.voltdb.metrics;
+
+/**
+ * One labelled series of a metric family in the {@link MetricsRegistry}.
+ *
+ * The labels are fixed when the series is registered and rendered once, so updating
+ * a series from a hot path touches nothing but its value.
+ */
+public abstract class Metric {
+
+    final String m_name;
+    // Rendered label pairs without the braces, empty if the series has no labels
+    final String m_labels;
+
+    Metric(String name, String labels) {
+        m_name = name;
+        m_labels = labels;
+    }
+
+    public String getName() {
+        return m_name;
+    }
+
+    /** Append the samples of this series in the exposition format */
+    abstract void writeSamples(StringBuilder sb, MetricsRegistry.Format format);
+
+    /** Append a sample line for the series, with an optional extra label */
+    final void writeSample(StringBuilder sb, String suffix, String extraLabel, String value) {
+        sb.append(m_name).append(suffix);
+        if (!m_labels.isEmpty() || extraLabel != null) {
+            sb.append('{').append(m_labels);
+            if (extraLabel != null) {
+                if (!m_labels.isEmpty()) {
+                    sb.append(',');
+                }
+                sb.append(extraLabel);
+            }
+            sb.append('}');
+        }
+        sb.append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,208 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.voltdb.metrics;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * Metrics kept natively by this server, for scraping in the Prometheus text or
+ * OpenMetrics format without going through @Statistics or the transaction system.
+ *
+ * Series are registered once, usually when the component that updates them is
+ * created, and the returned {@link Counter}, {@link Gauge} or {@link Timer} is kept
+ * in a field so hot paths update it without a lookup. Registering a series that
+ * already exists returns it, so components recreated by a catalog update or
+ * running once per site share their series, and the series of what a catalog
+ * update drops are removed with {@link #retainSeries}. Families are written in
+ * name order and series in label order.
+ */
+public final class MetricsRegistry {
+
+    private static final MetricsRegistry s_instance = new MetricsRegistry();
+
+    private static final Pattern NAME = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+    private static final Pattern LABEL_NAME = Pattern.compile("[a-zA-Z_][a-zA-Z0-9_]*");
+
+    enum Type {
+        COUNTER("counter"),
+        GAUGE("gauge"),
+        SUMMARY("summary");
+
+        final String m_text;
+
+        Type(String text) {
+            m_text = text;
+        }
+    }
+
+    public enum Format {
+        PROMETHEUS("text/plain; version=0.0.4; charset=utf-8"),
+        OPENMETRICS("application/openmetrics-text; version=1.0.0; charset=utf-8");
+
+        public final String m_contentType;
+
+        Format(String contentType) {
+            m_contentType = contentType;
+        }
+
+        /** The format a scraper asks for in its Accept header, the Prometheus text format by default */
+        public static Format fromAcceptHeader(String accept) {
+            return accept != null && accept.contains("application/openmetrics-text") ? OPENMETRICS : PROMETHEUS;
+        }
+    }
+
+    private static final class Family {
+        final Type m_type;
+        final String m_help;
+        final Map<String, Metric> m_series = new ConcurrentSkipListMap<>();
+
+        Family(Type type, String help) {
+            m_type = type;
+            m_help = help;
+        }
+    }
+
+    private final Map<String, Family> m_families = new ConcurrentSkipListMap<>();
+
+    public static MetricsRegistry instance() {
+        return s_instance;
+    }
+
+    /**
+     * @param labels label names alternating with their values
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter)register(Type.COUNTER, name, help, labels, text -> new Counter(name, text));
+    }
+
+    /** A gauge its owner sets */
+    public Gauge gauge(String name, String help, String... labels) {
+        return (Gauge)register(Type.GAUGE, name, help, labels, text -> new Gauge(name, text, null));
+    }
+
+    /**
+     * A gauge read from supplier when scraped. The supplier is called by the HTTP
+     * threads and mustn't block.
+     */
+    public Gauge gauge(String name, String help, LongSupplier supplier, String... labels) {
+        return (Gauge)register(Type.GAUGE, name, help, labels, text -> new Gauge(name, text, supplier));
+    }
+
+    /** A timer, whose name should end in _seconds */
+    public Timer timer(String name, String help, String... labels) {
+        return (Timer)register(Type.SUMMARY, name, help, labels, text -> new Timer(name, text));
+    }
+
+    private Metric register(Type type, String name, String help, String[] labels, Function<String, Metric> factory) {
+        if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid metric name " + name);
+        }
+        final Family family = m_families.computeIfAbsent(name, n -> new Family(type, help));
+        if (family.m_type != type) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.m_type.m_text);
+        }
+        return family.m_series.computeIfAbsent(renderLabels(labels), factory);
+    }
+
+    /**
+     * Remove the series of family name whose label isn't one of values, once the things
+     * they were registered for are gone. Meant for families with that one label.
+     */
+    public void retainSeries(String name, String label, Collection<String> values) {
+        final Family family = m_families.get(name);
+        if (family == null) {
+            return;
+        }
+        final Set<String> keep = new HashSet<>();
+        for (String value : values) {
+            keep.add(renderLabels(new String[] { label, value }));
+        }
+        family.m_series.keySet().retainAll(keep);
+    }
+
+    static String renderLabels(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name and value pairs");
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (int ii = 0; ii < labels.length; ii += 2) {
+            if (!LABEL_NAME.matcher(labels[ii]).matches() || labels[ii].equals("quantile")) {
+                throw new IllegalArgumentException("Invalid label name " + labels[ii]);
+            }
+            if (ii > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[ii]).append("=\"");
+            escape(sb, labels[ii + 1], true);
+            sb.append('"');
+        }
+        return sb.toString();
+    }
+
+    private static void escape(StringBuilder sb, String text, boolean quotes) {
+        for (int ii = 0; ii < text.length(); ii++) {
+            final char c = text.charAt(ii);
+            if (c == '\\') {
+                sb.append("\\\\");
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c == '"' && quotes) {
+                sb.append("\\\"");
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+    /** Write every registered series in the given format */
+    public void write(StringBuilder sb, Format format) {
+        for (Map.Entry<String, Family> e : m_families.entrySet()) {
+            final Family family = e.getValue();
+            if (family.m_series.isEmpty()) {
+                continue;
+            }
+            // The Prometheus text format names a counter family after its samples
+            final String name = e.getKey() + (family.m_type == Type.COUNTER && format == Format.PROMETHEUS ? "_total" : "");
+            sb.append("# HELP ").append(name).append(' ');
+            // OpenMetrics escapes quotes in help text as well
+            escape(sb, family.m_help, format == Format.OPENMETRICS);
+            sb.append('\n');
+            sb.append("# TYPE ").append(name).append(' ').append(family.m_type.m_text).append('\n');
+            for (Metric metric : family.m_series.values()) {
+                metric.writeSamples(sb, format);
+            }
+        }
+        if (format == Format.OPENMETRICS) {
+            sb.append("# EOF\n");
+        }
+    }
+
+    public String write(Format format) {
+        final StringBuilder sb = new StringBuilder(4096);
+        write(sb, format);
+        return sb.toString();
+    }
+}
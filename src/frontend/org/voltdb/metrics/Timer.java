@@ -0,0 +1,77 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.voltdb.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram_voltpatches.AbstractHistogram;
+import org.voltdb.dtxn.LatencyHistogramStats;
+
+/**
+ * Durations recorded into the same thread safe HdrHistogram the latency statistics
+ * use, microsecond resolution up to an hour, exposed as a summary in seconds.
+ *
+ * Recording is an atomic increment of a histogram bucket and of the sum, so it
+ * allocates nothing. Quantiles are read from the live histogram when scraped and
+ * cover everything recorded since the server started.
+ */
+public final class Timer extends Metric {
+
+    static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final double MICROS_PER_SECOND = TimeUnit.SECONDS.toMicros(1);
+
+    private final AbstractHistogram m_histogram = LatencyHistogramStats.constructHistogram(true);
+    private final LongAdder m_sumNanos = new LongAdder();
+
+    Timer(String name, String labels) {
+        super(name, labels);
+    }
+
+    public void update(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        final long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        m_histogram.recordValue(Math.max(1, Math.min(micros, m_histogram.getHighestTrackableValue())));
+        m_sumNanos.add(nanos);
+    }
+
+    public long getCount() {
+        return m_histogram.getTotalCount();
+    }
+
+    /** @return the value at the given percentile, in microseconds */
+    public long getValueAtPercentile(double percentile) {
+        return m_histogram.getValueAtPercentile(percentile);
+    }
+
+    @Override
+    void writeSamples(StringBuilder sb, MetricsRegistry.Format format) {
+        // Read the count first, the quantiles and the sum may include a few later values
+        final long count = getCount();
+        for (double quantile : QUANTILES) {
+            final double seconds = count == 0 ? 0 : m_histogram.getValueAtPercentile(quantile * 100) / MICROS_PER_SECOND;
+            writeSample(sb, "", "quantile=\"" + quantile + '"', Double.toString(seconds));
+        }
+        writeSample(sb, "_sum", null, Double.toString(m_sumNanos.sum() / NANOS_PER_SECOND));
+        writeSample(sb, "_count", null, Long.toString(count));
+    }
+}
@@ -21,6 +21,7 @@ import java.util.Arrays;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -31,6 +32,7 @@ import org.voltcore.utils.CoreUtils;
 import org.voltdb.CatalogContext;
 import org.voltdb.ClientResponseImpl;
 import org.voltdb.ParameterConverter;
+import org.voltdb.TheHashinator;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltNTSystemProcedure;
 import org.voltdb.VoltProcedure.VoltAbortException;
@@ -40,7 +42,6 @@ import org.voltdb.VoltType;
 import org.voltdb.catalog.Column;
 import org.voltdb.catalog.Table;
 import org.voltdb.client.ClientResponse;
-import org.voltdb.client.ClientResponseWithPartitionKey;
 
 public class LowImpactDeleteNT extends VoltNTSystemProcedure {
     VoltLogger hostLog = new VoltLogger("HOST");
@@ -118,6 +119,8 @@ public class LowImpactDeleteNT extends VoltNTSystemProcedure {
         long rowsLeft;
         long rowsJustDeleted;
         String errorMessages;
+        // Slowest delete transaction, as seen by this procedure
+        final AtomicLong maxDeleteNanos = new AtomicLong();
 
         NibbleStatus(long rowsLeft, long rowsJustDeleted, String errorMessages) {
             this.rowsLeft = rowsLeft;
@@ -125,81 +128,178 @@ public class LowImpactDeleteNT extends VoltNTSystemProcedure {
             rowsDeleted = new AtomicLong(rowsJustDeleted);
             this.errorMessages = errorMessages;
         }
+
+        NibbleStatus(long rowsLeft, long rowsJustDeleted, String errorMessages, long deleteNanos) {
+            this(rowsLeft, rowsJustDeleted, errorMessages);
+            maxDeleteNanos.set(deleteNanos);
+        }
+
+        void deleteTook(long nanos) {
+            maxDeleteNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    static VoltTable parameterTable(Object value) {
+        VoltTable parameter = new VoltTable(new ColumnInfo[] {
+                new ColumnInfo("col1", VoltType.typeFromObject(value)),
+        });
+        parameter.addRow(value);
+        return parameter;
     }
 
+    // Delete from a replicated table
     NibbleStatus runNibbleDeleteOperation(
             String tableName,
             String columnName,
             String comparisonOp,
             Object value,
-            long chunksize,
-            boolean isReplicated) {
+            long chunksize) {
         long rowsJustDeleted = 0;
         long rowsLeft = 0;
         int ONE = 1;
-        VoltTable parameter = new VoltTable(new ColumnInfo[] {
-                new ColumnInfo("col1", VoltType.typeFromObject(value)),
-        });
-        parameter.addRow(value);
-        if (isReplicated) {
+        VoltTable parameter = parameterTable(value);
+        final long start = System.nanoTime();
+        try {
+            CompletableFuture<ClientResponse> cf = callProcedure("@NibbleDeleteMP", tableName, columnName, comparisonOp, parameter, chunksize);
+            ClientResponse cr;
             try {
-                CompletableFuture<ClientResponse> cf = callProcedure("@NibbleDeleteMP", tableName, columnName, comparisonOp, parameter, chunksize);
-                ClientResponse cr;
+                cr = cf.get(ONE, TimeUnit.MINUTES);
+            } catch (Exception e) {
+                return new NibbleStatus(-1, rowsJustDeleted, "TTL system procedure task failed after timeout (60 seconds)",
+                        System.nanoTime() - start);
+            }
+            ClientResponseImpl cri = (ClientResponseImpl) cr;
+            switch(cri.getStatus()) {
+            case ClientResponse.SUCCESS:
+                VoltTable result = cri.getResults()[0];
+                result.advanceRow();
+                rowsJustDeleted = result.getLong("DELETED_ROWS");
+                rowsLeft = result.getLong("LEFT_ROWS");
+                break;
+            case ClientResponse.RESPONSE_UNKNOWN:
+                // Could because node failure, nothing to do here I guess
+                break;
+            default:
+                return new NibbleStatus(rowsLeft, rowsJustDeleted, cri.toJSONString(), System.nanoTime() - start);
+            }
+        } catch (Exception e) {
+            return new NibbleStatus(rowsLeft, rowsJustDeleted, e.getMessage());
+        }
+        return new NibbleStatus(rowsLeft, rowsJustDeleted, "", System.nanoTime() - start);
+    }
+
+    /**
+     * Delete from every partition of a partitioned table at once. Each partition keeps
+     * deleting, up to maxFrequency times spread over the interval, for as long as it has
+     * rows left to delete, without waiting for the other partitions between its deletes.
+     */
+    NibbleStatus runPartitionedDeletes(
+            String tableName,
+            String columnName,
+            String comparisonOp,
+            Object value,
+            long chunksize,
+            long maxFrequency,
+            long interval) {
+        final VoltTable parameter = parameterTable(value);
+        final VoltTable keys = TheHashinator.getPartitionKeys(VoltType.INTEGER);
+        keys.resetRowPosition();
+        final ScheduledExecutorService es = Executors.newSingleThreadScheduledExecutor(CoreUtils.getThreadFactory("TTLDeleter"));
+        final CountDownLatch latch = new CountDownLatch(keys.getRowCount());
+        final NibbleStatus status = new NibbleStatus(0, 0, "");
+        class PartitionDeleter implements Runnable {
+            final int partitionKey;
+            int attempts = 0;
+            int attemptsAllowed = 1;
+            long delay = 0;
+            volatile long rowsLeft = 0;
+            volatile long rowsJustDeleted = 0;
+            volatile String error = "";
+            PartitionDeleter(int partitionKey) {
+                this.partitionKey = partitionKey;
+            }
+            @Override
+            public void run() {
+                final long start = System.nanoTime();
                 try {
-                    cr = cf.get(ONE, TimeUnit.MINUTES);
+                    callProcedure("@NibbleDeleteSP", partitionKey, tableName, columnName, comparisonOp, parameter, chunksize)
+                        .whenComplete((cr, t) -> completed(cr, t, System.nanoTime() - start));
                 } catch (Exception e) {
-                    return new NibbleStatus(-1, rowsJustDeleted, "TTL system procedure task failed after timeout (60 seconds)");
+                    finish(e.getMessage());
+                }
+            }
+            void completed(ClientResponse cr, Throwable t, long nanos) {
+                status.deleteTook(nanos);
+                if (t != null) {
+                    finish(t.getMessage());
+                    return;
                 }
-                ClientResponseImpl cri = (ClientResponseImpl) cr;
-                switch(cri.getStatus()) {
+                switch (cr.getStatus()) {
                 case ClientResponse.SUCCESS:
-                    VoltTable result = cri.getResults()[0];
+                    VoltTable result = cr.getResults()[0];
                     result.advanceRow();
                     rowsJustDeleted = result.getLong("DELETED_ROWS");
                     rowsLeft = result.getLong("LEFT_ROWS");
+                    status.rowsDeleted.addAndGet(rowsJustDeleted);
                     break;
                 case ClientResponse.RESPONSE_UNKNOWN:
                     // Could because node failure, nothing to do here I guess
-                    break;
+                    finish("");
+                    return;
                 default:
-                    return new NibbleStatus(rowsLeft, rowsJustDeleted, cri.toJSONString());
+                    finish(((ClientResponseImpl) cr).toJSONString());
+                    return;
+                }
+                if (++attempts == 1) {
+                    //spread the additional deletes this partition needs within the interval
+                    attemptsAllowed += (int)Math.min((long)Math.ceil((double)rowsLeft/(double)chunksize), (maxFrequency-1));
+                    delay = interval / Math.max(1, attemptsAllowed - 1);
+                }
+                // Stop if jammed, the first round reports it
+                if (attempts < attemptsAllowed && rowsLeft > 0 && rowsJustDeleted > 0) {
+                    try {
+                        es.schedule(this, delay, TimeUnit.MILLISECONDS);
+                    } catch (RejectedExecutionException e) {
+                        // Timed out, the results so far are reported
+                    }
+                } else {
+                    finish("");
                 }
-            } catch (Exception e) {
-                return new NibbleStatus(rowsLeft, rowsJustDeleted, e.getMessage());
-            }
-        } else {
-            // for single partitioned table, run the smart delete everywhere
-            CompletableFuture<ClientResponseWithPartitionKey[]> pf = null;
-            try {
-                pf = callAllPartitionProcedure("@NibbleDeleteSP", tableName, columnName, comparisonOp, parameter, chunksize);
-            } catch (Exception e) {
-                return new NibbleStatus(rowsLeft, rowsJustDeleted, e.getMessage());
             }
-            ClientResponseWithPartitionKey[] crs;
-            try {
-                crs = pf.get(ONE, TimeUnit.MINUTES);
-            } catch (Exception e) {
-                return new NibbleStatus(-1, rowsJustDeleted, "TTL system procedure task failed after timeout (60 seconds)");
+            void finish(String message) {
+                error = message == null ? "" : message;
+                latch.countDown();
             }
+        }
 
-            for (ClientResponseWithPartitionKey crwp : crs) {
-                ClientResponseImpl cri = (ClientResponseImpl) crwp.response;
-                switch (crwp.response.getStatus()) {
-                case ClientResponse.SUCCESS:
-                    VoltTable result = cri.getResults()[0];
-                    result.advanceRow();
-                    rowsJustDeleted += result.getLong("DELETED_ROWS");
-                    rowsLeft += result.getLong("LEFT_ROWS");
-                    break;
-                case ClientResponse.RESPONSE_UNKNOWN:
-                    // Could because node failure, nothing to do here I guess
-                    break;
-                default:
-                    return new NibbleStatus(rowsLeft, rowsJustDeleted, cri.toJSONString());
-                }
+        PartitionDeleter[] deleters = new PartitionDeleter[keys.getRowCount()];
+        int index = 0;
+        while (keys.advanceRow()) {
+            deleters[index] = new PartitionDeleter((int) keys.getLong(1));
+            deleters[index++].run();
+        }
+        boolean done = false;
+        try {
+            done = latch.await(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            hostLog.warn("TTL interrupted" + e.getMessage());
+        } finally {
+            es.shutdownNow();
+        }
+
+        StringBuilder errors = new StringBuilder();
+        for (PartitionDeleter deleter : deleters) {
+            status.rowsLeft += deleter.rowsLeft;
+            status.rowsJustDeleted += deleter.rowsJustDeleted;
+            if (!deleter.error.isEmpty()) {
+                errors.append(errors.length() == 0 ? "" : ", ").append(deleter.error);
             }
         }
-        return new NibbleStatus(rowsLeft, rowsJustDeleted, "");
+        if (!done && errors.length() == 0) {
+            errors.append("TTL system procedure task failed after timeout (60 seconds)");
+        }
+        status.errorMessages = errors.toString();
+        return status;
     }
 
     public VoltTable run(
@@ -217,7 +317,8 @@ public class LowImpactDeleteNT extends VoltNTSystemProcedure {
                                 new ColumnInfo("DELETED_LAST_ROUND", VoltType.BIGINT),
                                 new ColumnInfo("LAST_DELETE_TIMESTAMP", VoltType.BIGINT),
                                 new ColumnInfo("STATUS", VoltType.BIGINT),
-                                new ColumnInfo("MESSAGE", VoltType.STRING));
+                                new ColumnInfo("MESSAGE", VoltType.STRING),
+                                new ColumnInfo("MAX_DELETE_TIME", VoltType.BIGINT));
 
         // collect all the validated info and metadata needed
         // these throw helpful errors if they run into problems
@@ -227,33 +328,52 @@ public class LowImpactDeleteNT extends VoltNTSystemProcedure {
         VoltType colType = VoltType.get((byte) catColumn.getType());
         Object value = getValidatedValue(colType, valueStr);
 
+        if (!catTable.getIsreplicated()) {
+            NibbleStatus status = runPartitionedDeletes(
+                    tableName,
+                    columnName,
+                    comparisonOp,
+                    value,
+                    chunksize,
+                    maxFrequency,
+                    interval);
+            if (status.errorMessages.isEmpty() && status.rowsDeleted.get() == 0 && status.rowsLeft > 0) {
+                throw jammed(catTable, status.rowsLeft);
+            }
+            returnTable.addRow(
+                    status.rowsDeleted,
+                    status.rowsLeft,
+                    status.rowsJustDeleted,
+                    System.currentTimeMillis(),
+                    status.errorMessages.isEmpty() ? ClientResponse.SUCCESS : ClientResponse.GRACEFUL_FAILURE,
+                    status.errorMessages,
+                    status.maxDeleteNanos);
+            return returnTable;
+        }
+
         // always run nibble delete at least once
         NibbleStatus status = runNibbleDeleteOperation(
                     tableName,
                     columnName,
                     comparisonOp,
                     value,
-                    chunksize,
-                    catTable.getIsreplicated());
+                    chunksize);
         long rowsLeft = status.rowsLeft;
         // If any partition receive failure, report the delete status plus the error message back.
         if (!status.errorMessages.isEmpty()) {
             returnTable.addRow(status.rowsJustDeleted, rowsLeft, status.rowsJustDeleted, System.currentTimeMillis(),
-                    ClientResponse.GRACEFUL_FAILURE, status.errorMessages);
+                    ClientResponse.GRACEFUL_FAILURE, status.errorMessages, status.maxDeleteNanos);
             return returnTable;
         }
         // handle the case where we're jammed from the start (no rows deleted)
         if (status.rowsJustDeleted == 0 && status.rowsLeft > 0) {
-            throw new VoltAbortException(String.format(
-                    "While removing tuples from table %s, first delete deleted zero tuples while %d"
-                    + " still met the criteria for delete. This is unexpected, but doesn't imply corrupt state.",
-                    catTable.getTypeName(), rowsLeft));
+            throw jammed(catTable, rowsLeft);
         }
 
         int attemptsLeft = (int)Math.min((long)Math.ceil((double)rowsLeft/(double)chunksize), (maxFrequency-1));
         if (attemptsLeft == 0) {
             returnTable.addRow(status.rowsJustDeleted, rowsLeft, status.rowsJustDeleted, System.currentTimeMillis(),
-                    ClientResponse.SUCCESS, "");
+                    ClientResponse.SUCCESS, "", status.maxDeleteNanos);
             return returnTable;
         }
 
@@ -276,8 +396,8 @@ public class LowImpactDeleteNT extends VoltNTSystemProcedure {
                         columnName,
                         comparisonOp,
                         value,
-                        chunksize,
-                        catTable.getIsreplicated());
+                        chunksize);
+                status.deleteTook(thisStatus.maxDeleteNanos.get());
                 if (!thisStatus.errorMessages.isEmpty()) {
                     errors[attempt] = thisStatus.errorMessages;
                     success.set(false);
@@ -316,7 +436,15 @@ public class LowImpactDeleteNT extends VoltNTSystemProcedure {
                 status.rowsJustDeleted,
                 System.currentTimeMillis(),
                 success.get() ? ClientResponse.SUCCESS : ClientResponse.GRACEFUL_FAILURE,
-                success.get() ? "" : Arrays.toString(errors));
+                success.get() ? "" : Arrays.toString(errors),
+                status.maxDeleteNanos);
         return returnTable;
     }
+
+    static VoltAbortException jammed(Table catTable, long rowsLeft) {
+        return new VoltAbortException(String.format(
+                "While removing tuples from table %s, first delete deleted zero tuples while %d"
+                + " still met the criteria for delete. This is unexpected, but doesn't imply corrupt state.",
+                catTable.getTypeName(), rowsLeft));
+    }
 }
@@ -259,6 +259,19 @@ public class SnapshotRestore extends VoltSystemProcedure {
             }
             assert(m_saveFiles.peekLast().getCompleted());
         }
+        startReadAhead();
+    }
+
+    /*
+     * The files are consumed one after the other. Reading ahead in the file after the one
+     * being consumed overlaps its I/O and decompression with the end of the current one
+     * without holding read ahead buffers for every file at once.
+     */
+    private static synchronized void startReadAhead() {
+        Iterator<TableSaveFile> files = m_saveFiles.iterator();
+        for (int ii = 0; ii < 2 && files.hasNext(); ii++) {
+            files.next().startReadAhead();
+        }
     }
 
     private static synchronized boolean hasMoreChunks() throws IOException {
@@ -272,6 +285,7 @@ public class SnapshotRestore extends VoltSystemProcedure {
                 } catch (IOException e) {
                 }
                 m_saveFiles.poll();
+                startReadAhead();
             }
         }
         return hasMoreChunks;
@@ -285,6 +299,7 @@ public class SnapshotRestore extends VoltSystemProcedure {
             if (c == null) {
                 f.close();
                 m_saveFiles.poll();
+                startReadAhead();
             }
         }
         return c;
@@ -779,6 +794,7 @@ public class SnapshotRestore extends VoltSystemProcedure {
             String result_str = "SUCCESS";
             String error_msg = "";
             long cnt = 0;
+            final long loadStart = System.nanoTime();
             try {
                 VoltTable table = PrivateVoltTableFactory.createVoltTableFromBuffer(
                                 ByteBuffer.wrap(CompressionService.decompressBytes(compressedTable)), true);
@@ -803,10 +819,11 @@ public class SnapshotRestore extends VoltSystemProcedure {
                 result_str = "FAILURE";
                 error_msg = CoreUtils.throwableToString(e);
             }
+            final long loadTime = System.nanoTime() - loadStart;
             VoltTable result = constructResultsTable();
             result.addRow(m_hostId, CoreUtils.getHostnameOrAddress(), CoreUtils.getSiteIdFromHSId(m_siteId), table_name,
                             ((checkUniqueViolations == K_CHECK_UNIQUE_VIOLATIONS_PARTITIONED) ? partition_ids[0] : -1),
-                    result_str, error_msg);
+                    result_str, error_msg, cnt, 0, 0, loadTime);
             reportProgress(table_name, cnt, (partition_ids == null), context.getPartitionId());
             return new DependencyPair.TableDependencyPair(dependency_id, result);
         }
@@ -888,11 +905,15 @@ public class SnapshotRestore extends VoltSystemProcedure {
                 String hostname = CoreUtils.getHostnameOrAddress();
                 VoltTable result = constructResultsTable();
                 result.addRow(m_hostId, hostname, CoreUtils.getSiteIdFromHSId(m_siteId), table_name, -1,
-                        "FAILURE", "Unable to load table: " + table_name + " error:\n" + CoreUtils.throwableToString(e), 0, 0);
+                        "FAILURE", "Unable to load table: " + table_name + " error:\n" + CoreUtils.throwableToString(e),
+                        0, 0, 0, 0);
                 return new DependencyPair.TableDependencyPair(dependency_id, result);
             }
 
             long cnt = 0;
+            long readTime = 0;
+            long convertTime = 0;
+            long loadTime = 0;
             try {
                 final Table new_catalog_table = getCatalogTable(table_name);
                 final boolean preserveDRHiddenColumn =
@@ -905,10 +926,13 @@ public class SnapshotRestore extends VoltSystemProcedure {
                 {
                     VoltTable table = null;
 
+                    long start = System.nanoTime();
                     final org.voltcore.utils.DBBPool.BBContainer c = savefile.getNextChunk();
+                    readTime += System.nanoTime() - start;
                     if (c == null) {
                         continue;//Should be equivalent to break
                     }
+                    start = System.nanoTime();
                     try {
                         if (needsConversion == null) {
                             VoltTable old_table =
@@ -933,7 +957,9 @@ public class SnapshotRestore extends VoltSystemProcedure {
                     } finally {
                         c.discard();
                     }
+                    convertTime += System.nanoTime() - start;
 
+                    start = System.nanoTime();
                     try
                     {
                         @SuppressWarnings("deprecation")
@@ -966,19 +992,25 @@ public class SnapshotRestore extends VoltSystemProcedure {
                         error_msg = CoreUtils.throwableToString(e);
                         break;
                     }
+                    finally
+                    {
+                        loadTime += System.nanoTime() - start;
+                    }
                 }
 
             } catch (IOException e) {
                 String hostname = CoreUtils.getHostnameOrAddress();
                 VoltTable result = constructResultsTable();
                 result.addRow(m_hostId, hostname, CoreUtils.getSiteIdFromHSId(m_siteId), table_name,
-                        -1, "FAILURE", "Unable to load table: " + table_name + " error:\n" + CoreUtils.throwableToString(e));
+                        -1, "FAILURE", "Unable to load table: " + table_name + " error:\n" + CoreUtils.throwableToString(e),
+                        0, 0, 0, 0);
                 return new DependencyPair.TableDependencyPair(dependency_id, result);
             } catch (VoltTypeException e) {
                 String hostname = CoreUtils.getHostnameOrAddress();
                 VoltTable result = constructResultsTable();
                 result.addRow(m_hostId, hostname, CoreUtils.getSiteIdFromHSId(m_siteId), table_name, -1,
-                        "FAILURE", "Unable to load table: " + table_name + " error:\n" + CoreUtils.throwableToString(e));
+                        "FAILURE", "Unable to load table: " + table_name + " error:\n" + CoreUtils.throwableToString(e),
+                        0, 0, 0, 0);
                 return new DependencyPair.TableDependencyPair(dependency_id, result);
             } finally {
                 try {
@@ -991,7 +1023,7 @@ public class SnapshotRestore extends VoltSystemProcedure {
             String hostname = CoreUtils.getHostnameOrAddress();
             VoltTable result = constructResultsTable();
             result.addRow(m_hostId, hostname, CoreUtils.getSiteIdFromHSId(m_siteId), table_name, -1, result_str,
-                    error_msg);
+                    error_msg, cnt, readTime, convertTime, loadTime);
 
             reportProgress(table_name, cnt, true, context.getPartitionId());
             return new DependencyPair.TableDependencyPair(dependency_id, result);
@@ -1634,7 +1666,7 @@ public class SnapshotRestore extends VoltSystemProcedure {
 
     private VoltTable constructResultsTable()
     {
-        ColumnInfo[] result_columns = new ColumnInfo[7];
+        ColumnInfo[] result_columns = new ColumnInfo[7 + SnapshotRestoreResultSet.STATS_COLUMNS.length];
         int ii = 0;
         result_columns[ii++] = new ColumnInfo(CNAME_HOST_ID, CTYPE_ID);
         result_columns[ii++] = new ColumnInfo("HOSTNAME", VoltType.STRING);
@@ -1643,6 +1675,10 @@ public class SnapshotRestore extends VoltSystemProcedure {
         result_columns[ii++] = new ColumnInfo(CNAME_PARTITION_ID, CTYPE_ID);
         result_columns[ii++] = new ColumnInfo("RESULT", VoltType.STRING);
         result_columns[ii++] = new ColumnInfo("ERR_MSG", VoltType.STRING);
+        // Rows loaded and nanoseconds spent reading, converting and loading them
+        for (String column : SnapshotRestoreResultSet.STATS_COLUMNS) {
+            result_columns[ii++] = new ColumnInfo(column, VoltType.BIGINT);
+        }
         return new VoltTable(result_columns);
     }
 
@@ -2155,7 +2191,11 @@ public class SnapshotRestore extends VoltSystemProcedure {
                         m_runner.getTxnState().getTimetamp());
     }
 
-    private void verifyRestoreWorkResult(VoltTable[] results, VoltTable[] restore_results) {
+    /*
+     * Returns the row count and phase times of the table summed over its results
+     */
+    private long[] verifyRestoreWorkResult(VoltTable[] results, VoltTable[] restore_results) {
+        long[] tableStats = new long[SnapshotRestoreResultSet.STATS_COLUMNS.length];
         while (results[0].advanceRow()) {
             // this will actually add the active row of results[0]
             restore_results[0].add(results[0]);
@@ -2164,7 +2204,11 @@ public class SnapshotRestore extends VoltSystemProcedure {
             if (results[0].getString("RESULT").equalsIgnoreCase("FAILURE")) {
                 noteOperationalFailure(RESTORE_FAILED);
             }
+            for (int ii = 0; ii < tableStats.length; ii++) {
+                tableStats[ii] += results[0].getLong(SnapshotRestoreResultSet.STATS_COLUMNS[ii]);
+            }
         }
+        return tableStats;
     }
 
     private VoltTable[] performTableRestoreWork(
@@ -2292,8 +2336,15 @@ public class SnapshotRestore extends VoltSystemProcedure {
                      * This isn't ye olden executeSysProcPlanFragments. It uses the provided mailbox
                      * and has it's own tiny run loop to process incoming fragments.
                      */
+                    final long start = System.nanoTime();
                     results = executeSysProcPlanFragments(restore_plan, m);
-                    verifyRestoreWorkResult(results, restore_results);
+                    final long[] tableStats = verifyRestoreWorkResult(results, restore_results);
+                    SNAP_LOG.info(String.format(
+                            "Restored table %s in %d ms, %d rows loaded. Time summed over all sites: " +
+                            "read %d ms, convert %d ms, load %d ms",
+                            table.getTypeName(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                            tableStats[0], TimeUnit.NANOSECONDS.toMillis(tableStats[1]),
+                            TimeUnit.NANOSECONDS.toMillis(tableStats[2]), TimeUnit.NANOSECONDS.toMillis(tableStats[3])));
                 }
 
                 // Re-enable the views after the table restore work completes.
@@ -2353,13 +2404,14 @@ public class SnapshotRestore extends VoltSystemProcedure {
         {
             VoltTable result = constructResultsTable();
             result.addRow(m_hostId, hostname, CoreUtils.getSiteIdFromHSId(m_siteId), tableName, -1,
-                    "FAILURE", "Unable to load table: " + tableName + " error:\n" + CoreUtils.throwableToString(e));
+                    "FAILURE", "Unable to load table: " + tableName + " error:\n" + CoreUtils.throwableToString(e),
+                    0, 0, 0, 0);
             return result;
         }
 
-        VoltTable[] results = new VoltTable[] { constructResultsTable() };
-        results[0].addRow(m_hostId, hostname, CoreUtils.getSiteIdFromHSId(m_siteId), tableName, -1,
-                "SUCCESS", "NO DATA TO DISTRIBUTE");
+        SnapshotRestoreResultSet resultSet = new SnapshotRestoreResultSet();
+        long readTime = 0;
+        long convertTime = 0;
         final Table new_catalog_table = getCatalogTable(tableName);
         final boolean preserveDRHiddenColumn =
             DrRoleType.XDCR.value().equals(m_cluster.getDrrole()) && new_catalog_table.getIsdred();
@@ -2387,10 +2439,13 @@ public class SnapshotRestore extends VoltSystemProcedure {
             while (savefile.hasMoreChunks())
             {
                 VoltTable table = null;
+                long start = System.nanoTime();
                 final org.voltcore.utils.DBBPool.BBContainer c = savefile.getNextChunk();
+                readTime += System.nanoTime() - start;
                 if (c == null) {
                     continue;   // Should be equivalent to break
                 }
+                start = System.nanoTime();
                 try {
                     if (needsConversion == null) {
                         VoltTable old_table =
@@ -2416,6 +2471,7 @@ public class SnapshotRestore extends VoltSystemProcedure {
                         partitioned_tables = createPartitionedTables(
                                 tableName, table, partitionCount, partitioned_table_cache);
                         if (partitioned_tables.isEmpty()) {
+                            convertTime += System.nanoTime() - start;
                             continue;
                         }
                         int depIdCnt = 0;
@@ -2491,7 +2547,13 @@ public class SnapshotRestore extends VoltSystemProcedure {
                                     siteId);
                         }
                     }
-                    results = executeSysProcPlanFragments(pfs, m_mbox);
+                    convertTime += System.nanoTime() - start;
+                    VoltTable[] results = executeSysProcPlanFragments(pfs, m_mbox);
+                    if (results[0] != null) {
+                        while (results[0].advanceRow()) {
+                            resultSet.parseRestoreResultRow(results[0]);
+                        }
+                    }
                 } finally {
                     c.discard();
                 }
@@ -2500,7 +2562,8 @@ public class SnapshotRestore extends VoltSystemProcedure {
             VoltTable result = PrivateVoltTableFactory.createUninitializedVoltTable();
             result = constructResultsTable();
             result.addRow(m_hostId, hostname, CoreUtils.getSiteIdFromHSId(m_siteId), tableName, -1,
-                    "FAILURE", "Unable to load table: " + tableName + " error:\n" + CoreUtils.throwableToString(e));
+                    "FAILURE", "Unable to load table: " + tableName + " error:\n" + CoreUtils.throwableToString(e),
+                    0, 0, 0, 0);
             return result;
         } finally {
             try {
@@ -2510,7 +2573,17 @@ public class SnapshotRestore extends VoltSystemProcedure {
             }
         }
 
-        return results[0];
+        VoltTable result = constructResultsTable();
+        if (resultSet.addDistributionStats(m_hostId, new long[] { 0, readTime, convertTime, 0 })) {
+            for (RestoreResultKey key : resultSet.keySet()) {
+                resultSet.addRowsForKey(key, result);
+            }
+        }
+        else {
+            result.addRow(m_hostId, hostname, CoreUtils.getSiteIdFromHSId(m_siteId), tableName, -1,
+                    "SUCCESS", "NO DATA TO DISTRIBUTE", 0, readTime, convertTime, 0);
+        }
+        return result;
     }
 
     private VoltTable performDistributePartitionedTable(String tableName,
@@ -2566,7 +2639,8 @@ public class SnapshotRestore extends VoltSystemProcedure {
             }
             VoltTable result = constructResultsTable();
             result.addRow(m_hostId, hostname, CoreUtils.getSiteIdFromHSId(m_siteId), tableName, relevantPartitionIds[0],
-                    "FAILURE", "Unable to load table: " + tableName + " error:\n" + CoreUtils.throwableToString(e));
+                    "FAILURE", "Unable to load table: " + tableName + " error:\n" + CoreUtils.throwableToString(e),
+                    0, 0, 0, 0);
             return result;
         }
 
@@ -2575,6 +2649,8 @@ public class SnapshotRestore extends VoltSystemProcedure {
         TreeMap<Integer, VoltTable> partitioned_table_cache = new TreeMap<>();
         SnapshotRestoreResultSet resultSet = new SnapshotRestoreResultSet();
         VoltTable firstResult = null;
+        long readTime = 0;
+        long convertTime = 0;
 
         try {
             final Table new_catalog_table = getCatalogTable(tableName);
@@ -2585,10 +2661,13 @@ public class SnapshotRestore extends VoltSystemProcedure {
                 VoltTable table = null;
 
                 c = null;
+                long start = System.nanoTime();
                 c = getNextChunk();
+                readTime += System.nanoTime() - start;
                 if (c == null) {
                     continue;//Should be equivalent to break
                 }
+                start = System.nanoTime();
 
                 // use if will load as partitioned table
                 Map<Integer, byte[]> partitioned_tables = null;
@@ -2620,6 +2699,7 @@ public class SnapshotRestore extends VoltSystemProcedure {
                     } else {
                         partitioned_tables = createPartitionedTables(tableName, table, partitionCount, partitioned_table_cache);
                         if (partitioned_tables.isEmpty()) {
+                            convertTime += System.nanoTime() - start;
                             continue;
                         }
                         int depIdCnt = 0;
@@ -2692,6 +2772,7 @@ public class SnapshotRestore extends VoltSystemProcedure {
                 }
                 assert(pfs.length == pfs_index+1);
                 pfs[pfs_index] = aggregatorFragment;
+                convertTime += System.nanoTime() - start;
                 VoltTable[] results = executeSysProcPlanFragments(pfs, m_mbox);
                 VoltTable vt = results[0];
                 if (firstResult == null) {
@@ -2706,7 +2787,8 @@ public class SnapshotRestore extends VoltSystemProcedure {
             result = constructResultsTable();
             result.addRow(m_hostId, hostname, CoreUtils.getSiteIdFromHSId(m_siteId), tableName,
                     relevantPartitionIds[0], "FAILURE",
-                    "Unable to load table: " + tableName + " error:\n" + CoreUtils.throwableToString(e));
+                    "Unable to load table: " + tableName + " error:\n" + CoreUtils.throwableToString(e),
+                    0, 0, 0, 0);
             return result;
         } finally {
             synchronized (SnapshotRestore.class) {
@@ -2722,7 +2804,7 @@ public class SnapshotRestore extends VoltSystemProcedure {
         }
 
         VoltTable result = null;
-        if (!resultSet.isEmpty()) {
+        if (resultSet.addDistributionStats(m_hostId, new long[] { 0, readTime, convertTime, 0 })) {
             result = new VoltTable(VoltTableUtil.extractTableSchema(firstResult));
             result.setStatusCode(firstResult.getStatusCode());
             for (RestoreResultKey key : resultSet.keySet()) {
@@ -2732,7 +2814,7 @@ public class SnapshotRestore extends VoltSystemProcedure {
         else {
             result = constructResultsTable();
             result.addRow(m_hostId, hostname, CoreUtils.getSiteIdFromHSId(m_siteId), tableName, 0,
-                    "SUCCESS", "NO DATA TO DISTRIBUTE");
+                    "SUCCESS", "NO DATA TO DISTRIBUTE", 0, readTime, convertTime, 0);
         }
         return result;
     }
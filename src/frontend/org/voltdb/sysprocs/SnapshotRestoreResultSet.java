@@ -35,6 +35,13 @@ public class SnapshotRestoreResultSet extends TreeMap<RestoreResultKey, RestoreR
 
     private static final long serialVersionUID = -7968937051509766792L;
 
+    /**
+     * Row count and phase times that follow ERR_MSG in a restore result row. The times
+     * are in nanoseconds: reading and decompressing snapshot chunks, converting and
+     * splitting them for the sites loading them, and loading them into the EE.
+     */
+    public static final String[] STATS_COLUMNS = { "ROWS", "READ_TIME", "CONVERT_TIME", "LOAD_TIME" };
+
     /**
      * Restore result key data (host ID / partition ID / table name).
      */
@@ -66,35 +73,62 @@ public class SnapshotRestoreResultSet extends TreeMap<RestoreResultKey, RestoreR
     }
 
     /**
-     * Non-key restore result data (host name / site ID / success codes / errors).
-     * One instance captures all the data that is uniquely identified by a
+     * Non-key restore result data (host name / site ID / success codes / errors / row counts
+     * and phase times). One instance captures all the data that is uniquely identified by a
      * host/partition/table key. There are multiple success codes and error
      * messages that are either expanded back to multiple result rows for
      * replicated tables or merged to one result row for partitioned tables.
+     * Replicated table results from the same site are merged, row counts and times are summed.
      */
     public static class RestoreResultValue
     {
         public final Integer m_siteId;
         public final String m_hostName;
+        public List<Integer> m_siteIds = new ArrayList<Integer>();
         public List<Boolean> m_successes = new ArrayList<Boolean>();
         public List<String> m_errMsgs = new ArrayList<String>();
+        public List<long[]> m_stats = new ArrayList<long[]>();
 
-        public RestoreResultValue(int siteId, boolean success, String hostName, String errMsg)
+        public RestoreResultValue(int siteId, boolean success, String hostName, String errMsg, long[] stats)
         {
             m_siteId = siteId;
             m_hostName = hostName;
+            m_siteIds.add(siteId);
             m_successes.add(success);
             m_errMsgs.add(errMsg);
+            m_stats.add(stats);
         }
 
         /**
-         * Merge restore result value data.
-         * @param value  restore result value to merge.
+         * Merge the result of one site, combining it with an earlier result from the same site.
          */
-        public void mergeData(boolean success, String errMsg)
+        public void mergeSiteData(int siteId, boolean success, String errMsg, long[] stats)
         {
-            m_successes.add(success);
-            m_errMsgs.add(errMsg);
+            int index = m_siteIds.indexOf(siteId);
+            if (index == -1) {
+                m_siteIds.add(siteId);
+                m_successes.add(success);
+                m_errMsgs.add(errMsg);
+                m_stats.add(stats);
+                return;
+            }
+            m_successes.set(index, m_successes.get(index) && success);
+            if (errMsg != null && !errMsg.isEmpty()) {
+                String merged = m_errMsgs.get(index);
+                m_errMsgs.set(index, merged == null || merged.isEmpty() ? errMsg : merged + " | " + errMsg);
+            }
+            addStats(index, stats);
+        }
+
+        /**
+         * Add to the row count and phase times of one of the entries.
+         */
+        public void addStats(int index, long[] stats)
+        {
+            long[] entry = m_stats.get(index);
+            for (int ii = 0; ii < entry.length; ii++) {
+                entry[ii] += stats[ii];
+            }
         }
 
         /**
@@ -148,6 +182,21 @@ public class SnapshotRestoreResultSet extends TreeMap<RestoreResultKey, RestoreR
             }
             return sb.toString();
         }
+
+        /**
+         * Produce the merged row count and phase times, the sum over all entries.
+         * @return  values of the STATS_COLUMNS
+         */
+        public long[] getStatsColumnValues()
+        {
+            long[] merged = new long[STATS_COLUMNS.length];
+            for (long[] stats : m_stats) {
+                for (int ii = 0; ii < merged.length; ii++) {
+                    merged[ii] += stats[ii];
+                }
+            }
+            return merged;
+        }
     }
 
     /**
@@ -160,16 +209,48 @@ public class SnapshotRestoreResultSet extends TreeMap<RestoreResultKey, RestoreR
                 (int)vt.getLong("HOST_ID"),
                 (int)vt.getLong("PARTITION_ID"),
                 vt.getString("TABLE"));
+        long[] stats = new long[STATS_COLUMNS.length];
+        for (int ii = 0; ii < STATS_COLUMNS.length; ii++) {
+            stats[ii] = vt.getLong(STATS_COLUMNS[ii]);
+        }
         if (containsKey(key)) {
-            get(key).mergeData(vt.getString("RESULT").equals("SUCCESS"),
-                               vt.getString("ERR_MSG"));
+            get(key).mergeSiteData((int)vt.getLong("SITE_ID"),
+                                   vt.getString("RESULT").equals("SUCCESS"),
+                                   vt.getString("ERR_MSG"),
+                                   stats);
         }
         else {
             put(key, new RestoreResultValue((int)vt.getLong("SITE_ID"),
                                             vt.getString("RESULT").equals("SUCCESS"),
                                             vt.getString("HOSTNAME"),
-                                            vt.getString("ERR_MSG")));
+                                            vt.getString("ERR_MSG"),
+                                            stats));
+        }
+    }
+
+    /**
+     * Add the time a site spent reading and converting a table it distributed to other sites.
+     * The times go to one result of the site's host, so summing a table's results over the
+     * whole cluster gives the total time spent in each phase.
+     *
+     * @param hostId  host of the distributing site
+     * @param stats  values of the STATS_COLUMNS, the row count is expected to be zero
+     * @return  false if there is no result to add them to
+     */
+    public boolean addDistributionStats(int hostId, long[] stats)
+    {
+        if (isEmpty()) {
+            return false;
+        }
+        RestoreResultKey key = firstKey();
+        for (RestoreResultKey candidate : keySet()) {
+            if (candidate.m_hostId == hostId) {
+                key = candidate;
+                break;
+            }
         }
+        get(key).addStats(0, stats);
+        return true;
     }
 
     /**
@@ -193,24 +274,28 @@ public class SnapshotRestoreResultSet extends TreeMap<RestoreResultKey, RestoreR
             if (key.m_partitionId == -1) {
                 // Re-expand replicated table results.
                 for (int i = 0; i < value.getCount(); ++i) {
+                    long[] stats = value.m_stats.get(i);
                     vt.addRow(key.m_hostId,
                               value.m_hostName,
-                              value.m_siteId,
+                              value.m_siteIds.get(i),
                               key.m_table,
                               key.m_partitionId,
                               value.m_successes.get(i) ? "SUCCESS" : "FAILURE",
-                              value.m_errMsgs.get(i));
+                              value.m_errMsgs.get(i),
+                              stats[0], stats[1], stats[2], stats[3]);
                 }
             }
             else {
                 // Partitioned table results merge redundant partition results.
+                long[] stats = value.getStatsColumnValues();
                 vt.addRow(key.m_hostId,
                           value.m_hostName,
                           value.m_siteId,
                           key.m_table,
                           key.m_partitionId,
                           value.getSuccessColumnValue(),
-                          value.getErrorMessageColumnValue());
+                          value.getErrorMessageColumnValue(),
+                          stats[0], stats[1], stats[2], stats[3]);
             }
         }
         catch(RuntimeException e) {
@@ -26,10 +26,14 @@ import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayDeque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.Checksum;
 
@@ -41,10 +45,12 @@ import org.json_voltpatches.JSONObject;
 import org.voltcore.TransactionIdManager;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.Bits;
+import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.EELibraryLoader;
 import org.voltdb.messaging.FastDeserializer;
+import org.voltdb.utils.CompressionCodec;
 import org.voltdb.utils.CompressionService;
 import org.voltdb.utils.PosixAdvise;
 
@@ -243,6 +249,7 @@ public class TableSaveFile
                 m_tableName = fd.readString();
                 m_isReplicated = fd.readBoolean();
                 m_isCompressed = false;
+                m_compressionCodec = CompressionCodec.SNAPPY;
                 m_checksumType = ChecksumType.CRC32;
                 if (!m_isReplicated) {
                     m_partitionIds = (int[])fd.readArray(int.class);
@@ -288,6 +295,13 @@ public class TableSaveFile
                 m_tableName = obj.getString("tableName");
                 m_isReplicated = obj.getBoolean("isReplicated");
                 m_isCompressed = obj.optBoolean("isCompressed", false);
+                // Snapshots from before the codec was recorded are all Snappy
+                final String codecName = obj.optString("compressionCodec", CompressionCodec.SNAPPY.name());
+                try {
+                    m_compressionCodec = CompressionCodec.fromName(codecName);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Unknown compression codec " + codecName + " in " + m_tableName);
+                }
                 m_checksumType = ChecksumType.valueOf(obj.optString("checksumType", "CRC32"));
                 if (!m_isReplicated) {
                     JSONArray partitionIds = obj.getJSONArray("partitionIds");
@@ -368,6 +382,10 @@ public class TableSaveFile
         return m_isCompressed;
     }
 
+    public CompressionCodec getCompressionCodec() {
+        return m_compressionCodec;
+    }
+
     public int getTotalPartitions() {
         return m_totalPartitions;
     }
@@ -401,9 +419,19 @@ public class TableSaveFile
         }
 
         synchronized (this) {
+            // Chunks still being decompressed are discarded as they complete
+            if (!awaitPendingChunks()) {
+                throw new IOException("Interrupted waiting for chunk decompression");
+            }
             while (!m_availableChunks.isEmpty()) {
                 m_availableChunks.poll().discard();
             }
+            for (Container c : m_decompressedChunks.values()) {
+                if (c != null) {
+                    c.discard();
+                }
+            }
+            m_decompressedChunks.clear();
             notifyAll();
         }
 
@@ -414,9 +442,12 @@ public class TableSaveFile
         while ((cont = m_buffers.poll()) != null) {
             cont.discard();
         }
+        while ((cont = m_inputBuffers.poll()) != null) {
+            cont.discard();
+        }
     }
 
-    public Set<Integer> getCorruptedPartitionIds() {
+    public synchronized Set<Integer> getCorruptedPartitionIds() {
         return m_corruptedPartitions;
     }
 
@@ -435,11 +466,7 @@ public class TableSaveFile
             return c;
         }
 
-        if (m_chunkReader == null) {
-            m_chunkReader = new ChunkReader();
-            m_chunkReaderThread = new Thread(m_chunkReader, "ChunkReader");
-            m_chunkReaderThread.start();
-        }
+        startReadAhead();
 
         Container c = null;
         while (c == null && (m_hasMoreChunks.get() || !m_availableChunks.isEmpty())) {
@@ -470,6 +497,98 @@ public class TableSaveFile
         return m_hasMoreChunks.get() || !m_availableChunks.isEmpty();
     }
 
+    /**
+     * Start reading chunks into the read ahead without waiting for the first one. Restore
+     * starts all the files it is going to consume so their I/O and decompression overlap.
+     */
+    public synchronized void startReadAhead()
+    {
+        if (m_chunkReader == null && m_hasMoreChunks.get()) {
+            m_chunkReader = new ChunkReader();
+            m_chunkReaderThread = new Thread(m_chunkReader, "ChunkReader");
+            m_chunkReaderThread.start();
+        }
+    }
+
+    /*
+     * Make a decompressed chunk available once every chunk before it in the file has been.
+     * A null chunk was skipped and only gives back its read ahead permit.
+     */
+    private synchronized void publishChunk(long sequence, Container c) {
+        if (!m_hasMoreChunks.get()) {
+            // Closed or failed, nobody is going to consume it
+            if (c != null) {
+                c.discard();
+            }
+            notifyAll();
+            return;
+        }
+        m_decompressedChunks.put(sequence, c);
+        while (m_decompressedChunks.containsKey(m_nextPublishedSequence)) {
+            final Container ready = m_decompressedChunks.remove(m_nextPublishedSequence++);
+            if (ready == null) {
+                m_chunkReads.release();
+            } else {
+                m_availableChunks.offer(ready);
+            }
+        }
+        notifyAll();
+    }
+
+    /*
+     * Stop reading after an error in the reader or one of the decompressors. A permit is
+     * given back in case the reader is waiting for one so that it notices.
+     */
+    private synchronized void failChunkReads(IOException e) {
+        m_hasMoreChunks.set(false);
+        if (m_chunkReaderException == null) {
+            m_chunkReaderException = e;
+        }
+        m_chunkReads.release();
+        notifyAll();
+    }
+
+    /*
+     * Wait for all the chunks handed to the decompression pool, false if interrupted
+     */
+    private synchronized boolean awaitPendingChunks() {
+        while (m_pendingChunks > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized void markAllPartitionsCorrupted() {
+        for (int partitionId : m_partitionIds) {
+            m_corruptedPartitions.add(partitionId);
+        }
+    }
+
+    private BBContainer getInputBuffer() {
+        final BBContainer c = m_inputBuffers.poll();
+        if (c == null) {
+            //For reading the compressed input.
+            return DBBPool.allocateDirect(CompressionService.maxCompressedLength(DEFAULT_CHUNKSIZE));
+        }
+        return c;
+    }
+
+    /*
+     * Input buffers are freed by close, which waits for the reader and the pending chunks
+     */
+    private void returnInputBuffer(BBContainer c) {
+        m_inputBuffers.offer(c);
+    }
+
+    private synchronized void chunkDecompressed() {
+        m_pendingChunks--;
+        notifyAll();
+    }
+
     // thread safe file channels
     private final FileChannel m_saveFile;
     private final FileDescriptor m_fd;
@@ -483,6 +602,7 @@ public class TableSaveFile
     private final String m_tableName;
     private final boolean m_isReplicated;
     private final boolean m_isCompressed;
+    private final CompressionCodec m_compressionCodec;
     private final int m_partitionIds[];
     private final int m_totalPartitions;
     private final long m_txnId;
@@ -520,6 +640,29 @@ public class TableSaveFile
     private Thread m_chunkReaderThread = null;
     private IOException m_chunkReaderException = null;
 
+    /**
+     * Decompresses V2 chunks for all the files being read, the threads reading the files
+     * only do the I/O. Threads go away when restore is not running.
+     */
+    private static final ThreadPoolExecutor m_decompressionPool;
+    static {
+        final int threads = Math.max(1, CoreUtils.availableProcessors() / 2);
+        m_decompressionPool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                CoreUtils.getThreadFactory("Snapshot Restore Decompression"));
+        m_decompressionPool.allowCoreThreadTimeOut(true);
+    }
+
+    /*
+     * Compressed chunks read by the ChunkReader and handed to the decompression pool
+     * are numbered so they are made available in file order.
+     */
+    private long m_nextChunkSequence = 0;
+    private long m_nextPublishedSequence = 0;
+    private int m_pendingChunks = 0;
+    private final HashMap<Long, Container> m_decompressedChunks = new HashMap<Long, Container>();
+    private final ConcurrentLinkedQueue<BBContainer> m_inputBuffers = new ConcurrentLinkedQueue<BBContainer>();
+
     /**
      * Thread to read chunks from the disk
      */
@@ -528,12 +671,13 @@ public class TableSaveFile
         /*
          * The old method was out of hand. Going to start a new one with a different format
          * that should be easier to understand and validate.
+         *
+         * This thread only does the I/O. Each compressed chunk is handed to the shared
+         * decompression pool, which validates and decompresses it and publishes it
+         * in file order. Chunks in flight hold a permit from m_chunkReads just like chunks
+         * waiting to be consumed, so the read ahead still bounds the memory used.
          */
         private void readChunksV2() {
-            //For reading the compressed input.
-            final BBContainer fileInputBufferC =
-                    DBBPool.allocateDirect(CompressionService.maxCompressedLength(DEFAULT_CHUNKSIZE));
-            final ByteBuffer fileInputBuffer = fileInputBufferC.b();
             long sinceLastFAdvise = Long.MAX_VALUE;
             long positionAtLastFAdvise = 0;
 
@@ -580,11 +724,10 @@ public class TableSaveFile
                 try {
                     m_chunkReads.acquire();
                 } catch (InterruptedException e) {
-                    fileInputBufferC.discard();
                     return;
                 }
                 boolean expectedAnotherChunk = false;
-                Container c = null;
+                BBContainer input = null;
                 try {
 
                     /*
@@ -617,9 +760,7 @@ public class TableSaveFile
                     int generatedValue = (int)partitionIdCRC.getValue();
                     if (generatedValue != nextChunkPartitionIdCRC) {
                         chunkLengthB.position(0);
-                        for (int partitionId : m_partitionIds) {
-                            m_corruptedPartitions.add(partitionId);
-                        }
+                        markAllPartitionsCorrupted();
                         throw new IOException("Chunk partition ID CRC check failed. " +
                                 "This corrupts all partitions in this file");
                     }
@@ -637,16 +778,15 @@ public class TableSaveFile
                         throw new IOException("Corrupted TableSaveFile chunk has negative chunk length");
                     }
 
+                    input = getInputBuffer();
+                    final ByteBuffer fileInputBuffer = input.b();
                     if (nextChunkLength > fileInputBuffer.capacity()) {
                         throw new IOException("Corrupted TableSaveFile chunk has unreasonable length " +
                                 "> DEFAULT_CHUNKSIZE bytes");
                     }
 
                     /*
-                     * Go fetch the compressed data so that the uncompressed size is known
-                     * and use that to set nextChunkLength to be the uncompressed length,
-                     * the code ahead that constructs the volt table is expecting
-                     * the uncompressed size/data since it is producing an uncompressed table
+                     * Go fetch the compressed data, the rest is done by the decompression pool
                      */
                     fileInputBuffer.clear();
                     fileInputBuffer.limit(nextChunkLength);
@@ -658,128 +798,40 @@ public class TableSaveFile
                         sinceLastFAdvise += read;
                     }
                     fileInputBuffer.flip();
-                    nextChunkLength = CompressionService.uncompressedLength(fileInputBuffer);
-
-                    /*
-                     * Validate the rest of the chunk. This can fail if the data is corrupted
-                     * or the length value was corrupted.
-                     */
-                    final int calculatedCRC =
-                            DBBPool.getBufferCRC32C(fileInputBuffer, 0, fileInputBuffer.remaining());
-                    if (calculatedCRC != nextChunkCRC) {
-                        m_corruptedPartitions.add(nextChunkPartitionId);
-                        if (m_continueOnCorruptedChunk) {
-                            m_chunkReads.release();
-                            continue;
-                        } else {
-                            throw new IOException("CRC mismatch in saved table chunk");
-                        }
-                    }
-
-                    /*
-                     * Now allocate space to store the chunk using the VoltTable serialization representation.
-                     * The chunk will contain an integer row count preceding it so it can
-                     * be sucked straight in. There is a little funny business to overwrite the
-                     * partition id that is not part of the serialization format
-                     */
-                    c = getOutputBuffer(nextChunkPartitionId);
-
-                    /*
-                     * If the length value is wrong or not all data made it to disk this read will
-                     * not complete correctly. There could be overflow, underflow etc.
-                     * so use a try finally block to indicate that all partitions are now corrupt.
-                     * The enclosing exception handlers will do the right thing WRT to
-                     * propagating the error and closing the file.
-                     */
-                    boolean completedRead = false;
-                    try {
-                        final ByteBuffer buf = c.b();
-                        /*
-                         * Assemble a VoltTable out of the chunk of tuples.
-                         * Put in the header that was cached in the constructor,
-                         * then copy the tuple data.
-                         */
-                        buf.clear();
-                        buf.limit(nextChunkLength  + m_tableHeader.capacity());
-                        m_tableHeader.position(0);
-                        buf.put(m_tableHeader);
-                        //Doesn't move buffer position, does change the limit
-                        CompressionService.decompressBuffer(fileInputBuffer, buf);
-                        completedRead = true;
-                    } finally {
-                        if (!completedRead) {
-                            for (int partitionId : m_partitionIds) {
-                                m_corruptedPartitions.add(partitionId);
-                            }
-                            if (m_continueOnCorruptedChunk) {
-                                m_chunkReads.release();
-                                continue;
-                            } else {
-                                throw new IOException("Failed decompression of saved table chunk");
-                            }
-                        }
-                    }
-
-                    /*
-                     * Skip irrelevant chunks after CRC is calculated. Always calulate the CRC
-                     * in case it is the length value that is corrupted
-                     */
-                    if (m_relevantPartitionIds != null) {
-                        if (!m_relevantPartitionIds.contains(nextChunkPartitionId)) {
-                            m_chunkReads.release();
-                            continue;
-                        }
-                    }
-
-                    /*
-                     * VoltTable wants the buffer at the home position 0
-                     */
-                    c.b().position(0);
 
                     synchronized (TableSaveFile.this) {
-                        m_availableChunks.offer(c);
-                        c = null;
-                        TableSaveFile.this.notifyAll();
+                        m_pendingChunks++;
                     }
+                    m_decompressionPool.execute(
+                            new ChunkDecompressor(m_nextChunkSequence++, input, nextChunkPartitionId, nextChunkCRC));
+                    input = null;
                 } catch (EOFException eof) {
                     synchronized (TableSaveFile.this) {
-                        m_hasMoreChunks.set(false);
                         if (expectedAnotherChunk) {
+                            m_hasMoreChunks.set(false);
                             m_chunkReaderException = new IOException(
                                     "Expected to find another chunk but reached end of file instead");
+                        } else if (!awaitPendingChunks()) {
+                            return;
                         }
+                        m_hasMoreChunks.set(false);
                         TableSaveFile.this.notifyAll();
                     }
                 } catch (IOException e) {
                     e.printStackTrace();
-                    synchronized (TableSaveFile.this) {
-                        m_hasMoreChunks.set(false);
-                        m_chunkReaderException = e;
-                        TableSaveFile.this.notifyAll();
-                    }
+                    failChunkReads(e);
                 } catch (BufferUnderflowException e) {
-                    synchronized (TableSaveFile.this) {
-                        m_hasMoreChunks.set(false);
-                        m_chunkReaderException = new IOException(e);
-                        TableSaveFile.this.notifyAll();
-                    }
+                    failChunkReads(new IOException(e));
                 } catch (BufferOverflowException e) {
-                    synchronized (TableSaveFile.this) {
-                        m_hasMoreChunks.set(false);
-                        m_chunkReaderException = new IOException(e);
-                        TableSaveFile.this.notifyAll();
-                    }
+                    failChunkReads(new IOException(e));
                 } catch (IndexOutOfBoundsException e) {
-                    synchronized (TableSaveFile.this) {
-                        m_hasMoreChunks.set(false);
-                        m_chunkReaderException = new IOException(e);
-                        TableSaveFile.this.notifyAll();
-                    }
+                    failChunkReads(new IOException(e));
                 } finally {
-                    if (c != null) c.discard();
+                    if (input != null) {
+                        returnInputBuffer(input);
+                    }
                 }
             }
-            fileInputBufferC.discard();
         }
 
         private void readChunks() {
@@ -880,7 +932,7 @@ public class TableSaveFile
                             }
                         }
                         fileInputBuffer.flip();
-                        nextChunkLength = CompressionService.uncompressedLength(fileInputBuffer);
+                        nextChunkLength = m_compressionCodec.uncompressedLength(fileInputBuffer);
                     }
 
                     /*
@@ -926,7 +978,7 @@ public class TableSaveFile
                         c.b().position(c.b().position() + 4);//Leave space for row count to be moved into
                         checksumStartPosition = c.b().position();
                         if (isCompressed()) {
-                            CompressionService.decompressBuffer(fileInputBuffer, c.b());
+                            m_compressionCodec.decompress(fileInputBuffer, c.b());
                             c.b().position(c.b().limit());
                         } else {
                             while (c.b().hasRemaining()) {
@@ -1044,6 +1096,118 @@ public class TableSaveFile
             }
             fileInputBufferC.discard();
         }
+        /*
+         * Validates and decompresses one V2 chunk on the decompression pool
+         */
+        private class ChunkDecompressor implements Runnable {
+            private final long m_sequence;
+            private final BBContainer m_input;
+            private final int m_partitionId;
+            private final int m_crc;
+
+            ChunkDecompressor(long sequence, BBContainer input, int partitionId, int crc) {
+                m_sequence = sequence;
+                m_input = input;
+                m_partitionId = partitionId;
+                m_crc = crc;
+            }
+
+            @Override
+            public void run() {
+                Container c = null;
+                try {
+                    final ByteBuffer fileInputBuffer = m_input.b();
+                    final int nextChunkLength = m_compressionCodec.uncompressedLength(fileInputBuffer);
+
+                    /*
+                     * Validate the rest of the chunk. This can fail if the data is corrupted
+                     * or the length value was corrupted.
+                     */
+                    final int calculatedCRC =
+                            DBBPool.getBufferCRC32C(fileInputBuffer, 0, fileInputBuffer.remaining());
+                    if (calculatedCRC != m_crc) {
+                        synchronized (TableSaveFile.this) {
+                            m_corruptedPartitions.add(m_partitionId);
+                        }
+                        if (m_continueOnCorruptedChunk) {
+                            publishChunk(m_sequence, null);
+                            return;
+                        } else {
+                            throw new IOException("CRC mismatch in saved table chunk");
+                        }
+                    }
+
+                    /*
+                     * Now allocate space to store the chunk using the VoltTable serialization representation.
+                     * The chunk will contain an integer row count preceding it so it can
+                     * be sucked straight in. There is a little funny business to overwrite the
+                     * partition id that is not part of the serialization format
+                     */
+                    c = getOutputBuffer(m_partitionId);
+
+                    /*
+                     * If the length value is wrong or not all data made it to disk this read will
+                     * not complete correctly. There could be overflow, underflow etc.
+                     * so use a try finally block to indicate that all partitions are now corrupt.
+                     */
+                    boolean completedRead = false;
+                    try {
+                        final ByteBuffer buf = c.b();
+                        /*
+                         * Assemble a VoltTable out of the chunk of tuples.
+                         * Put in the header that was cached in the constructor,
+                         * then copy the tuple data. The header is shared by all the
+                         * decompressors so copy it from a duplicate.
+                         */
+                        buf.clear();
+                        buf.limit(nextChunkLength  + m_tableHeader.capacity());
+                        final ByteBuffer tableHeader = m_tableHeader.duplicate();
+                        tableHeader.position(0);
+                        buf.put(tableHeader);
+                        //Doesn't move buffer position, does change the limit
+                        m_compressionCodec.decompress(fileInputBuffer, buf);
+                        completedRead = true;
+                    } finally {
+                        if (!completedRead) {
+                            markAllPartitionsCorrupted();
+                            if (m_continueOnCorruptedChunk) {
+                                publishChunk(m_sequence, null);
+                                return;
+                            } else {
+                                throw new IOException("Failed decompression of saved table chunk");
+                            }
+                        }
+                    }
+
+                    /*
+                     * Skip irrelevant chunks after CRC is calculated. Always calulate the CRC
+                     * in case it is the length value that is corrupted
+                     */
+                    if (m_relevantPartitionIds != null && !m_relevantPartitionIds.contains(m_partitionId)) {
+                        publishChunk(m_sequence, null);
+                        return;
+                    }
+
+                    /*
+                     * VoltTable wants the buffer at the home position 0
+                     */
+                    c.b().position(0);
+                    publishChunk(m_sequence, c);
+                    c = null;
+                } catch (IOException e) {
+                    failChunkReads(e);
+                } catch (RuntimeException e) {
+                    failChunkReads(new IOException(e));
+                } finally {
+                    if (c != null) {
+                        c.discard();
+                    }
+                    returnInputBuffer(m_input);
+                    chunkDecompressed();
+                }
+            }
+        }
+
         private Container getOutputBuffer(final int nextChunkPartitionId) {
             BBContainer c = m_buffers.poll();
             if (c == null) {
@@ -0,0 +1,317 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.voltdb.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.xerial.snappy.Snappy;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+/**
+ * Block compression codecs for data written to disk. The id of the codec that compressed
+ * a block is stored next to it, SNAPPY is id 0 so files written before there was a choice
+ * of codec read back as Snappy.
+ *
+ * The ByteBuffer methods follow the Snappy conventions: input is read from position to limit,
+ * output is written starting at position and its limit is set to the end of the output,
+ * positions are left unchanged. The buffers must be direct.
+ *
+ * LZ4 blocks don't carry their uncompressed length, so the LZ4 codecs prefix each block with it.
+ * LZ4 is the fast mode, LZ4HC is slower to compress but compresses better and is as fast to
+ * decompress.
+ */
+public enum CompressionCodec {
+    SNAPPY(0) {
+        @Override
+        public int maxCompressedLength(int uncompressedSize) {
+            return Snappy.maxCompressedLength(uncompressedSize);
+        }
+
+        @Override
+        public int compress(ByteBuffer uncompressed, ByteBuffer compressed) throws IOException {
+            return Snappy.compress(uncompressed, compressed);
+        }
+
+        @Override
+        public int uncompressedLength(ByteBuffer compressed) throws IOException {
+            return Snappy.uncompressedLength(compressed);
+        }
+
+        @Override
+        public int decompress(ByteBuffer compressed, ByteBuffer uncompressed) throws IOException {
+            return Snappy.uncompress(compressed, uncompressed);
+        }
+
+        @Override
+        public byte[] compress(byte[] data) throws IOException {
+            return Snappy.compress(data);
+        }
+
+        @Override
+        public byte[] decompress(byte[] data) throws IOException {
+            return Snappy.uncompress(data);
+        }
+    },
+    LZ4(1) {
+        private final Lz4Block m_lz4 = new Lz4Block(Lz4Block.FACTORY.fastCompressor());
+
+        @Override
+        public int maxCompressedLength(int uncompressedSize) {
+            return m_lz4.maxCompressedLength(uncompressedSize);
+        }
+
+        @Override
+        public int compress(ByteBuffer uncompressed, ByteBuffer compressed) throws IOException {
+            return m_lz4.compress(uncompressed, compressed);
+        }
+
+        @Override
+        public int uncompressedLength(ByteBuffer compressed) throws IOException {
+            return Lz4Block.uncompressedLength(compressed);
+        }
+
+        @Override
+        public int decompress(ByteBuffer compressed, ByteBuffer uncompressed) throws IOException {
+            return Lz4Block.decompress(compressed, uncompressed);
+        }
+
+        @Override
+        public byte[] compress(byte[] data) throws IOException {
+            return m_lz4.compress(data);
+        }
+
+        @Override
+        public byte[] decompress(byte[] data) throws IOException {
+            return Lz4Block.decompress(data);
+        }
+    },
+    LZ4HC(2) {
+        private final Lz4Block m_lz4 = new Lz4Block(Lz4Block.FACTORY.highCompressor());
+
+        @Override
+        public int maxCompressedLength(int uncompressedSize) {
+            return m_lz4.maxCompressedLength(uncompressedSize);
+        }
+
+        @Override
+        public int compress(ByteBuffer uncompressed, ByteBuffer compressed) throws IOException {
+            return m_lz4.compress(uncompressed, compressed);
+        }
+
+        @Override
+        public int uncompressedLength(ByteBuffer compressed) throws IOException {
+            return Lz4Block.uncompressedLength(compressed);
+        }
+
+        @Override
+        public int decompress(ByteBuffer compressed, ByteBuffer uncompressed) throws IOException {
+            return Lz4Block.decompress(compressed, uncompressed);
+        }
+
+        @Override
+        public byte[] compress(byte[] data) throws IOException {
+            return m_lz4.compress(data);
+        }
+
+        @Override
+        public byte[] decompress(byte[] data) throws IOException {
+            return Lz4Block.decompress(data);
+        }
+    };
+
+    private final byte m_id;
+
+    private CompressionCodec(int id) {
+        m_id = (byte) id;
+    }
+
+    /**
+     * @return the id stored with blocks compressed by this codec
+     */
+    public byte id() {
+        return m_id;
+    }
+
+    public static CompressionCodec fromId(int id) throws IOException {
+        for (CompressionCodec codec : values()) {
+            if (codec.m_id == id) {
+                return codec;
+            }
+        }
+        throw new IOException("Unknown compression codec id " + id);
+    }
+
+    /**
+     * Codec from its name ignoring case, as used in the deployment file and in snapshot headers.
+     */
+    public static CompressionCodec fromName(String name) {
+        return valueOf(name.toUpperCase());
+    }
+
+    public abstract int maxCompressedLength(int uncompressedSize);
+
+    public abstract int compress(ByteBuffer uncompressed, ByteBuffer compressed) throws IOException;
+
+    public abstract int uncompressedLength(ByteBuffer compressed) throws IOException;
+
+    public abstract int decompress(ByteBuffer compressed, ByteBuffer uncompressed) throws IOException;
+
+    public abstract byte[] compress(byte[] data) throws IOException;
+
+    public abstract byte[] decompress(byte[] data) throws IOException;
+
+    /*
+     * LZ4 block with a 4 byte big endian uncompressed length in front, compressed by the
+     * compressor of the codec. Blocks decompress the same whichever compressor wrote them.
+     * The LZ4 library used here only compresses arrays, direct buffers are staged through
+     * per thread arrays. The arrays a thread keeps are capped, larger blocks are staged
+     * through arrays that are dropped once the block is done.
+     */
+    static final class Lz4Block {
+        static final int LENGTH_PREFIX = 4;
+        static final LZ4Factory FACTORY = LZ4Factory.fastestInstance();
+        static final LZ4SafeDecompressor DECOMPRESSOR = FACTORY.safeDecompressor();
+        // Largest staging array a thread keeps between blocks
+        static final int MAX_SCRATCH_BYTES = Integer.getInteger("LZ4_MAX_SCRATCH_BYTES", 1024 * 1024 * 4);
+
+        private static final ThreadLocal<byte[][]> m_scratch = new ThreadLocal<byte[][]>() {
+            @Override
+            protected byte[][] initialValue() {
+                return new byte[][] { new byte[1024 * 32], new byte[1024 * 32] };
+            }
+        };
+
+        private final LZ4Compressor m_compressor;
+
+        Lz4Block(LZ4Compressor compressor) {
+            m_compressor = compressor;
+        }
+
+        int maxCompressedLength(int uncompressedSize) {
+            return LENGTH_PREFIX + m_compressor.maxCompressedLength(uncompressedSize);
+        }
+
+        int compress(ByteBuffer uncompressed, ByteBuffer compressed) throws IOException {
+            assert(uncompressed.isDirect() && compressed.isDirect());
+            final int length = uncompressed.remaining();
+            final byte[] in = input(length);
+            final byte[] out = output(maxCompressedLength(length));
+            uncompressed.duplicate().get(in, 0, length);
+            final int compressedSize = compress(in, length, out);
+            if (compressed.remaining() < compressedSize) {
+                throw new IOException("Output buffer too small for " + compressedSize + " compressed bytes");
+            }
+            final int position = compressed.position();
+            compressed.put(out, 0, compressedSize);
+            compressed.position(position);
+            compressed.limit(position + compressedSize);
+            return compressedSize;
+        }
+
+        byte[] compress(byte[] data) {
+            final byte[] out = output(maxCompressedLength(data.length));
+            final int compressedSize = compress(data, data.length, out);
+            final byte[] result = new byte[compressedSize];
+            System.arraycopy(out, 0, result, 0, compressedSize);
+            return result;
+        }
+
+        private int compress(byte[] in, int length, byte[] out) {
+            ByteBuffer.wrap(out).putInt(length);
+            return LENGTH_PREFIX + m_compressor.compress(in, 0, length, out, LENGTH_PREFIX,
+                    out.length - LENGTH_PREFIX);
+        }
+
+        static int uncompressedLength(ByteBuffer compressed) throws IOException {
+            if (compressed.remaining() < LENGTH_PREFIX) {
+                throw new IOException("Compressed block of " + compressed.remaining() + " bytes is truncated");
+            }
+            final int length = compressed.getInt(compressed.position());
+            if (length < 0) {
+                throw new IOException("Corrupt LZ4 block, uncompressed length " + length);
+            }
+            return length;
+        }
+
+        static int decompress(ByteBuffer compressed, ByteBuffer uncompressed) throws IOException {
+            assert(compressed.isDirect() && uncompressed.isDirect());
+            final int length = compressed.remaining();
+            final int uncompressedLength = uncompressedLength(compressed);
+            if (uncompressed.remaining() < uncompressedLength) {
+                throw new IOException("Output buffer too small for " + uncompressedLength + " uncompressed bytes");
+            }
+            final byte[] in = input(length);
+            final byte[] out = output(uncompressedLength);
+            compressed.duplicate().get(in, 0, length);
+            decompress(in, length, out, uncompressedLength);
+            final int position = uncompressed.position();
+            uncompressed.put(out, 0, uncompressedLength);
+            uncompressed.position(position);
+            uncompressed.limit(position + uncompressedLength);
+            return uncompressedLength;
+        }
+
+        static byte[] decompress(byte[] data) throws IOException {
+            if (data.length < LENGTH_PREFIX) {
+                throw new IOException("Compressed block of " + data.length + " bytes is truncated");
+            }
+            final int uncompressedLength = ByteBuffer.wrap(data).getInt();
+            if (uncompressedLength < 0) {
+                throw new IOException("Corrupt LZ4 block, uncompressed length " + uncompressedLength);
+            }
+            final byte[] out = new byte[uncompressedLength];
+            decompress(data, data.length, out, out.length);
+            return out;
+        }
+
+        private static void decompress(byte[] in, int length, byte[] out, int uncompressedLength) throws IOException {
+            try {
+                final int actual = DECOMPRESSOR.decompress(in, LENGTH_PREFIX, length - LENGTH_PREFIX,
+                        out, 0, uncompressedLength);
+                if (actual != uncompressedLength) {
+                    throw new IOException("Decompressed " + actual + " bytes, expected " + uncompressedLength);
+                }
+            } catch (LZ4Exception e) {
+                throw new IOException("Corrupt LZ4 block", e);
+            }
+        }
+
+        private static byte[] scratch(int index, int length) {
+            if (length > MAX_SCRATCH_BYTES) {
+                return new byte[length];
+            }
+            final byte[][] scratch = m_scratch.get();
+            if (scratch[index].length < length) {
+                scratch[index] = new byte[Math.min(Math.max(scratch[index].length * 2, length), MAX_SCRATCH_BYTES)];
+            }
+            return scratch[index];
+        }
+
+        private static byte[] input(int length) {
+            return scratch(0, length);
+        }
+
+        private static byte[] output(int length) {
+            return scratch(1, length);
+        }
+    }
+}
@@ -72,6 +72,29 @@ public final class CompressionService {
         m_buffers.remove();
     }
 
+    /*
+     * Codecs for the data each use site writes to disk, from the deployment file. Data is
+     * always read back with the codec recorded with it, so changing these only affects new files.
+     */
+    private static volatile CompressionCodec m_snapshotCodec = CompressionCodec.SNAPPY;
+    private static volatile CompressionCodec m_exportOverflowCodec = CompressionCodec.SNAPPY;
+
+    public static CompressionCodec getSnapshotCodec() {
+        return m_snapshotCodec;
+    }
+
+    public static void setSnapshotCodec(CompressionCodec codec) {
+        m_snapshotCodec = codec;
+    }
+
+    public static CompressionCodec getExportOverflowCodec() {
+        return m_exportOverflowCodec;
+    }
+
+    public static void setExportOverflowCodec(CompressionCodec codec) {
+        m_exportOverflowCodec = codec;
+    }
+
     /*
      * The executor service is only used if the VoltDB computation service is not available.
      */
@@ -129,6 +152,11 @@ public final class CompressionService {
     }
 
     public static Future<BBContainer> compressAndCRC32cBufferAsync(final ByteBuffer inBuffer, final BBContainer outBufferC) {
+        return compressAndCRC32cBufferAsync(CompressionCodec.SNAPPY, inBuffer, outBufferC);
+    }
+
+    public static Future<BBContainer> compressAndCRC32cBufferAsync(final CompressionCodec codec,
+            final ByteBuffer inBuffer, final BBContainer outBufferC) {
         assert(inBuffer.isDirect());
         assert(outBufferC.b().isDirect());
         return submitCompressionTask(new Callable<BBContainer>() {
@@ -140,7 +168,7 @@ public final class CompressionService {
                 final int crcPosition = outBuffer.position();
                 outBuffer.position(outBuffer.position() + 4);
                 final int crcCalcStart = outBuffer.position();
-                compressBuffer(inBuffer, outBuffer);
+                codec.compress(inBuffer, outBuffer);
                 final int crc32c =
                         DBBPool.getCRC32C( outBufferC.address(), crcCalcStart, outBuffer.limit() - crcCalcStart);
                 outBuffer.putInt(crcPosition, crc32c);
@@ -217,6 +245,10 @@ public final class CompressionService {
         return result;
     }
 
+    /**
+     * The Snappy bound is larger than the bound of any other codec, so buffers sized with
+     * this hold the output of any codec.
+     */
     public static int maxCompressedLength(int uncompressedSize) {
         return Snappy.maxCompressedLength(uncompressedSize);
     }
@@ -0,0 +1,79 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import com.google_voltpatches.common.base.Preconditions;
+
+/**
+ * Sizes batches of work by how long the last one took.
+ *
+ * A batch slower than the target time shrinks the batch size in proportion to the rows it
+ * had. A batch well under the target, half of it or less, grows the batch size by half when
+ * the caller says it may grow, never above the maximum.
+ *
+ * The batch size may be read from any thread without locking.
+ */
+public final class LatencyBatchSizer {
+
+    private final long m_targetNanos;
+    private int m_max;
+    private volatile int m_batchSize;
+
+    /**
+     * @param initial batch size to start from
+     * @param max largest batch size to grow to
+     * @param targetNanos time a batch should take at most
+     */
+    public LatencyBatchSizer(int initial, int max, long targetNanos) {
+        Preconditions.checkArgument(targetNanos > 0, "target time must be positive");
+        m_targetNanos = targetNanos;
+        reset(initial, max);
+    }
+
+    /** Start over from a new batch size and maximum */
+    public synchronized void reset(int initial, int max) {
+        m_max = Math.max(1, max);
+        m_batchSize = Math.max(1, Math.min(initial, m_max));
+    }
+
+    public int getBatchSize() {
+        return m_batchSize;
+    }
+
+    public synchronized int getMax() {
+        return m_max;
+    }
+
+    /**
+     * A batch completed.
+     * @param rows rows in the batch
+     * @param nanos time the batch took
+     * @param mayGrow whether a fast batch may grow the batch size
+     * @return the batch size for the next batches
+     */
+    public synchronized int batchCompleted(int rows, long nanos, boolean mayGrow) {
+        int batchSize = m_batchSize;
+        if (nanos > m_targetNanos) {
+            batchSize = (int)Math.max(1, Math.min(batchSize, rows * m_targetNanos / nanos));
+        } else if (mayGrow && nanos < m_targetNanos / 2) {
+            batchSize = Math.min(m_max, batchSize + Math.max(1, batchSize / 2));
+        }
+        m_batchSize = batchSize;
+        return batchSize;
+    }
+}
@@ -0,0 +1,68 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.voltdb.utils;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.voltdb.AuthenticationResult;
+import org.voltdb.metrics.MetricsRegistry;
+
+/**
+ * Serves the /metrics endpoint scraped by Prometheus and other OpenMetrics collectors.
+ * The registry of this host is written straight from the HTTP thread, nothing goes
+ * through the transaction system, so scraping works whatever the cluster is doing.
+ */
+public class MetricsServlet extends VoltBaseServlet {
+
+    private static final long serialVersionUID = -2394765207946133120L;
+
+    // GET on /metrics resources.
+    @Override
+    public void doGet(HttpServletRequest request,
+            HttpServletResponse response)
+            throws IOException, ServletException {
+        super.doGet(request, response);
+        String target = request.getPathInfo();
+        if (target == null) target = "/";
+        try {
+            AuthenticationResult authResult = authenticate(request);
+            if (!authResult.isAuthenticated()) {
+                response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                response.getWriter().print(authResult.m_message);
+                return;
+            }
+            if (!target.equals("/")) {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                response.getWriter().print("Resource not found");
+                return;
+            }
+            MetricsRegistry.Format format = MetricsRegistry.Format.fromAcceptHeader(request.getHeader("Accept"));
+            response.setContentType(format.m_contentType);
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.getWriter().print(MetricsRegistry.instance().write(format));
+        } catch (Exception ex) {
+            rateLimitedLogWarn("Not servicing url: %s Details: ", target, ex.getMessage());
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+    }
+}
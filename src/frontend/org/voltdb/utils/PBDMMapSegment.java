@@ -0,0 +1,550 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.DeferredSerialization;
+import org.voltdb.utils.BinaryDeque.OutputContainerFactory;
+
+import com.google_voltpatches.common.base.Preconditions;
+
+/**
+ * Segment that uses the same on disk format as {@link PBDRegularSegment}, so a deque
+ * can switch between the two across restarts, but does its I/O through a memory
+ * mapping of the segment file instead of FileChannel reads and writes.
+ *
+ * A segment opened for appending maps the full CHUNK_SIZE and the file is trimmed back
+ * to the end of the last entry when the segment is closed. Uncompressed entries are
+ * handed out by the readers as slices of the mapping without copying, the output container
+ * factory is only used for entries that have to be decompressed. The mapping is reference
+ * counted so it is not unmapped until the segment is closed and every container that
+ * references it has been discarded. Containers reference the file contents directly, the
+ * file is mapped read-write so that a truncator (parseAndTruncate, as StreamBlockQueue uses)
+ * can rewrite the entry it is handed in place. That is the only write allowed: readers must
+ * not change the contents of the containers they poll.
+ */
+public class PBDMMapSegment extends PBDSegment {
+    private static final VoltLogger LOG = new VoltLogger("HOST");
+
+    private final Map<String, SegmentReader> m_readCursors = new HashMap<>();
+    private final Map<String, SegmentReader> m_closedCursors = new HashMap<>();
+
+    //ID of this segment
+    private final Long m_index;
+
+    private int m_numOfEntries = -1;
+    private int m_size = -1;
+
+    //Mapping of the file, the position is the write offset
+    private Mapping m_mapping = null;
+    private MappedByteBuffer m_buf = null;
+    //Whether the mapping was extended to CHUNK_SIZE for appends and has to be trimmed on close
+    private boolean m_trimOnClose = false;
+
+    /**
+     * A mapping of the segment file shared by the segment and every container handed
+     * out from it. The segment holds one reference while it is open.
+     */
+    private static final class Mapping {
+        private final MappedByteBuffer m_buf;
+        private final AtomicInteger m_refCount = new AtomicInteger(1);
+
+        private Mapping(MappedByteBuffer buf) {
+            m_buf = buf;
+        }
+
+        private void retain() {
+            m_refCount.incrementAndGet();
+        }
+
+        private void release() {
+            if (m_refCount.decrementAndGet() == 0) {
+                DBBPool.wrapMBB(m_buf).discard();
+            }
+        }
+    }
+
+    public PBDMMapSegment(Long index, File file) {
+        super(file);
+        m_index = index;
+        reset();
+    }
+
+    @Override
+    public long segmentId()
+    {
+        return m_index;
+    }
+
+    @Override
+    public File file()
+    {
+        return m_file;
+    }
+
+    @Override
+    public void reset()
+    {
+        m_syncedSinceLastEdit = false;
+    }
+
+    @Override
+    public int getNumEntries() throws IOException
+    {
+        if (m_closed) {
+            // Not worth mapping the file just to read the header
+            try (RandomAccessFile ras = new RandomAccessFile(m_file, "r")) {
+                if (ras.length() >= SEGMENT_HEADER_BYTES) {
+                    m_numOfEntries = ras.readInt();
+                    m_size = ras.readInt();
+                } else {
+                    m_numOfEntries = 0;
+                    m_size = 0;
+                }
+            }
+        } else if (m_buf.capacity() >= SEGMENT_HEADER_BYTES) {
+            m_numOfEntries = m_buf.getInt(COUNT_OFFSET);
+            m_size = m_buf.getInt(SIZE_OFFSET);
+        } else {
+            m_numOfEntries = 0;
+            m_size = 0;
+        }
+        return m_numOfEntries;
+    }
+
+    @Override
+    public boolean isBeingPolled()
+    {
+        return !m_readCursors.isEmpty();
+    }
+
+    @Override
+    public boolean isOpenForReading(String cursorId) {
+        return m_readCursors.containsKey(cursorId);
+    }
+
+    @Override
+    public PBDSegmentReader openForRead(String cursorId) throws IOException
+    {
+        Preconditions.checkNotNull(cursorId, "Reader id must be non-null");
+        if (m_readCursors.containsKey(cursorId) || m_closedCursors.containsKey(cursorId)) {
+            throw new IOException("Segment is already open for reading for cursor " + cursorId);
+        }
+
+        if (m_closed) {
+            open(false, false);
+        }
+        SegmentReader reader = new SegmentReader(cursorId);
+        m_readCursors.put(cursorId, reader);
+        return reader;
+    }
+
+    @Override
+    public PBDSegmentReader getReader(String cursorId) {
+        PBDSegmentReader reader = m_closedCursors.get(cursorId);
+        return (reader == null) ? m_readCursors.get(cursorId) : reader;
+    }
+
+    @Override
+    protected void openForWrite(boolean emptyFile) throws IOException {
+        open(true, emptyFile);
+    }
+
+    private void open(boolean forWrite, boolean emptyFile) throws IOException {
+        if (!m_closed) {
+            throw new IOException("Segment is already opened");
+        }
+
+        if (!m_file.exists()) {
+            if (!forWrite) {
+                throw new IOException("File " + m_file + " does not exist");
+            }
+            m_syncedSinceLastEdit = false;
+        }
+        assert(m_ras == null);
+        // Always map read/write, consumers like StreamBlock rewrite header fields in place
+        m_ras = new RandomAccessFile(m_file, "rw");
+        m_fc = m_ras.getChannel();
+
+        try {
+            // Only a segment that is being emptied is appended to, truncation
+            // and scanning open the existing contents for write
+            m_trimOnClose = emptyFile;
+            final long mapSize = emptyFile ? CHUNK_SIZE : m_fc.size();
+            m_buf = m_fc.map(MapMode.READ_WRITE, 0, mapSize);
+            m_mapping = new Mapping(m_buf);
+        } catch (IOException e) {
+            m_ras.close();
+            m_ras = null;
+            m_fc = null;
+            throw e;
+        }
+
+        if (emptyFile) {
+            initNumEntries(0, 0);
+        }
+        if (m_buf.capacity() >= SEGMENT_HEADER_BYTES) {
+            m_buf.position(SEGMENT_HEADER_BYTES);
+        }
+        m_fc.position(SEGMENT_HEADER_BYTES);
+
+        m_closed = false;
+    }
+
+    @Override
+    protected void initNumEntries(int count, int size) throws IOException {
+        m_numOfEntries = count;
+        m_size = size;
+
+        m_buf.putInt(COUNT_OFFSET, m_numOfEntries);
+        m_buf.putInt(SIZE_OFFSET, m_size);
+        m_syncedSinceLastEdit = false;
+    }
+
+    private void incrementNumEntries(int size) throws IOException
+    {
+        initNumEntries(m_numOfEntries + 1, m_size + size);
+    }
+
+    /**
+     * Bytes of space available for inserting more entries
+     * @return
+     */
+    private int remaining() throws IOException {
+        //Subtract 8 for the length and size prefix
+        return m_buf.remaining() - SEGMENT_HEADER_BYTES;
+    }
+
+    @Override
+    public void closeAndDelete() throws IOException {
+        close();
+        m_file.delete();
+
+        m_numOfEntries = -1;
+        m_size = -1;
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+        return m_closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        m_closedCursors.clear();
+        closeReadersAndFile();
+    }
+
+    private void closeReadersAndFile() throws IOException {
+        m_readCursors.clear();
+        try {
+            if (m_trimOnClose && m_fc != null) {
+                // Don't leave appended segments at the full mapped size on disk,
+                // nothing past the write offset is referenced by any container
+                m_fc.truncate(m_buf.position());
+            }
+        } finally {
+            try {
+                if (m_ras != null) {
+                    m_ras.close();
+                }
+            } finally {
+                if (m_mapping != null) {
+                    m_mapping.release();
+                }
+                m_mapping = null;
+                m_buf = null;
+                m_trimOnClose = false;
+                m_ras = null;
+                m_fc = null;
+                m_closed = true;
+                reset();
+            }
+        }
+    }
+
+    @Override
+    public void sync() throws IOException {
+        if (m_closed) throw new IOException("Segment closed");
+        if (!m_syncedSinceLastEdit) {
+            m_buf.force();
+            // Entries written by writeTruncatedEntry went through the channel
+            m_fc.force(true);
+        }
+        m_syncedSinceLastEdit = true;
+    }
+
+    @Override
+    public boolean hasAllFinishedReading() throws IOException {
+        if (m_closed) throw new IOException("Segment closed");
+
+        if (m_readCursors.size() == 0) return false;
+
+        for (SegmentReader reader : m_readCursors.values()) {
+            if (reader.m_objectReadIndex < m_numOfEntries) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean offer(DBBPool.BBContainer cont, CompressionCodec codec) throws IOException
+    {
+        if (m_closed) throw new IOException("Segment closed");
+        final ByteBuffer buf = cont.b();
+        final int remaining = buf.remaining();
+        final boolean compress = codec != null && remaining >= 32 && buf.isDirect();
+        final int maxCompressedSize = (compress ? codec.maxCompressedLength(remaining) : remaining) + OBJECT_HEADER_BYTES;
+        if (remaining() < maxCompressedSize) return false;
+
+        m_syncedSinceLastEdit = false;
+
+        try {
+            final int objSizePosition = m_buf.position();
+            final int objStartPosition = objSizePosition + OBJECT_HEADER_BYTES;
+
+            if (compress) {
+                // Compress straight into the mapping
+                final ByteBuffer dest = m_buf.duplicate();
+                dest.position(objStartPosition);
+                final int compressedSize = codec.compress(buf, dest);
+
+                m_buf.putInt(objSizePosition, compressedSize);
+                m_buf.putInt(objSizePosition + 4, compressedFlags(codec));
+                m_buf.position(objStartPosition + compressedSize);
+            } else {
+                m_buf.putInt(objSizePosition, remaining);
+                m_buf.putInt(objSizePosition + 4, NO_FLAGS);
+                m_buf.position(objStartPosition);
+                m_buf.put(buf);
+            }
+
+            incrementNumEntries(remaining);
+        } finally {
+            cont.discard();
+        }
+
+        return true;
+    }
+
+    @Override
+    public int offer(DeferredSerialization ds) throws IOException
+    {
+        if (m_closed) throw new IOException("closed");
+        final int fullSize = ds.getSerializedSize() + OBJECT_HEADER_BYTES;
+        if (remaining() < fullSize) return -1;
+
+        m_syncedSinceLastEdit = false;
+
+        // Serialize straight into the mapping, the limit guards against overrunning the estimate
+        final ByteBuffer dest = m_buf.duplicate();
+        dest.limit(dest.position() + fullSize);
+        final int written = PBDUtils.writeDeferredSerialization(dest, ds);
+        m_buf.position(dest.position());
+
+        incrementNumEntries(written);
+        return written;
+    }
+
+    @Override
+    public int size() {
+        return m_size;
+    }
+
+    @Override
+    protected int writeTruncatedEntry(BinaryDeque.TruncatorResponse entry) throws IOException
+    {
+        // The truncated object may be backed by the mapping so stage it
+        // in a separate buffer before writing it at the channel position
+        int written = 0;
+        final DBBPool.BBContainer partialCont = DBBPool.allocateDirect(OBJECT_HEADER_BYTES + entry.getTruncatedBuffSize());
+        try {
+            written += entry.writeTruncatedObject(partialCont.b());
+            partialCont.b().flip();
+
+            while (partialCont.b().hasRemaining()) {
+                m_fc.write(partialCont.b());
+            }
+        } finally {
+            partialCont.discard();
+        }
+        return written;
+    }
+
+    private class SegmentReader implements PBDSegmentReader {
+        private final String m_cursorId;
+        private long m_readOffset = SEGMENT_HEADER_BYTES;
+        //Index of the next object to read, not an offset into the file
+        private int m_objectReadIndex = 0;
+        private int m_bytesRead = 0;
+        private int m_discardCount = 0;
+        private boolean m_closed = false;
+
+        public SegmentReader(String cursorId) {
+            assert(cursorId != null);
+            m_cursorId = cursorId;
+        }
+
+        @Override
+        public boolean hasMoreEntries() throws IOException {
+            return m_objectReadIndex < m_numOfEntries;
+        }
+
+        @Override
+        public boolean allReadAndDiscarded() throws IOException {
+            return m_discardCount == m_numOfEntries;
+        }
+
+        @Override
+        public BBContainer poll(OutputContainerFactory factory) throws IOException {
+            if (m_closed) throw new IOException("Reader closed");
+
+            if (!hasMoreEntries()) {
+                return null;
+            }
+
+            final int readOffset = (int)m_readOffset;
+            if (readOffset + OBJECT_HEADER_BYTES > m_buf.capacity()) {
+                throw new IOException("Segment " + m_file + " ends before entry " + m_objectReadIndex);
+            }
+            //Get the length and size prefix and then the object
+            final int length = m_buf.getInt(readOffset);
+            final int flags = m_buf.getInt(readOffset + 4);
+            final boolean compressed = (flags & FLAG_COMPRESSED) != 0;
+            final int uncompressedLen;
+
+            if (length < 1) {
+                throw new IOException("Read an invalid length");
+            }
+            final int objStartPosition = readOffset + OBJECT_HEADER_BYTES;
+            if (objStartPosition + length > m_buf.capacity()) {
+                throw new IOException("Segment " + m_file + " ends before the end of entry " + m_objectReadIndex);
+            }
+
+            final ByteBuffer entry = m_buf.duplicate();
+            entry.limit(objStartPosition + length);
+            entry.position(objStartPosition);
+
+            final BBContainer retcont;
+            if (compressed) {
+                final DBBPool.BBContainer uncompressed;
+                final CompressionCodec codec = codecFromFlags(flags);
+                uncompressedLen = codec.uncompressedLength(entry.slice());
+                uncompressed = factory.getContainer(uncompressedLen);
+                uncompressed.b().limit(uncompressedLen);
+                codec.decompress(entry.slice(), uncompressed.b());
+
+                retcont = new DBBPool.BBContainer(uncompressed.b()) {
+                    private boolean m_discarded = false;
+
+                    @Override
+                    public void discard() {
+                        checkDoubleFree();
+                        if (m_discarded) {
+                            LOG.error("PBD Container discarded more than once");
+                            return;
+                        }
+
+                        m_discarded = true;
+                        uncompressed.discard();
+                        m_discardCount++;
+                    }
+                };
+            } else {
+                uncompressedLen = length;
+                final Mapping mapping = m_mapping;
+                mapping.retain();
+
+                retcont = new DBBPool.BBContainer(entry.slice()) {
+                    private boolean m_discarded = false;
+
+                    @Override
+                    public void discard() {
+                        checkDoubleFree();
+                        if (m_discarded) {
+                            LOG.error("PBD Container discarded more than once");
+                            return;
+                        }
+
+                        m_discarded = true;
+                        mapping.release();
+                        m_discardCount++;
+                    }
+                };
+            }
+
+            m_readOffset = objStartPosition + length;
+            m_bytesRead += uncompressedLen;
+            m_objectReadIndex++;
+
+            return retcont;
+        }
+
+        @Override
+        public int uncompressedBytesToRead() {
+            if (m_closed) throw new RuntimeException("Reader closed");
+
+            return m_size - m_bytesRead;
+        }
+
+        @Override
+        public long readOffset() {
+            return m_readOffset;
+        }
+
+        @Override
+        public int readIndex() {
+            return m_objectReadIndex;
+        }
+
+        @Override
+        public void rewindReadOffset(int byBytes) {
+            m_readOffset -= byBytes;
+        }
+
+        @Override
+        public void close() throws IOException {
+            m_closed = true;
+            m_readCursors.remove(m_cursorId);
+            m_closedCursors.put(m_cursorId, this);
+            if (m_readCursors.isEmpty()) {
+                closeReadersAndFile();
+            }
+        }
+
+        @Override
+        public boolean isClosed() {
+            return m_closed;
+        }
+    }
+}
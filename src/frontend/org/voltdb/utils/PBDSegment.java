@@ -101,6 +101,10 @@ public abstract class PBDSegment {
     private static final String SCANNER_CURSOR = "__scanner__";
     static final int NO_FLAGS = 0;
     static final int FLAG_COMPRESSED = 1;
+    // Compressed entries keep the id of their codec in the second byte of the flags,
+    // older versions only wrote Snappy which is id 0
+    static final int CODEC_SHIFT = 8;
+    static final int CODEC_MASK = 0xff << CODEC_SHIFT;
 
     static final int COUNT_OFFSET = 0;
     static final int SIZE_OFFSET = 4;
@@ -122,6 +126,14 @@ public abstract class PBDSegment {
         m_file = file;
     }
 
+    static int compressedFlags(CompressionCodec codec) {
+        return FLAG_COMPRESSED | (codec.id() << CODEC_SHIFT);
+    }
+
+    static CompressionCodec codecFromFlags(int flags) throws IOException {
+        return CompressionCodec.fromId((flags & CODEC_MASK) >>> CODEC_SHIFT);
+    }
+
     abstract long segmentId();
     abstract File file();
 
@@ -160,7 +172,11 @@ public abstract class PBDSegment {
 
     abstract boolean hasAllFinishedReading() throws IOException;
 
-    abstract boolean offer(DBBPool.BBContainer cont, boolean compress) throws IOException;
+    /**
+     * Append cont compressed with codec, or as is if codec is null.
+     * @return false if the entry doesn't fit in the segment
+     */
+    abstract boolean offer(DBBPool.BBContainer cont, CompressionCodec codec) throws IOException;
 
     abstract int offer(DeferredSerialization ds) throws IOException;
 
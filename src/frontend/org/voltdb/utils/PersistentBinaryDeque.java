@@ -238,6 +238,9 @@ public class PersistentBinaryDeque implements BinaryDeque {
 
     public static final OutputContainerFactory UNSAFE_CONTAINER_FACTORY = new UnsafeOutputContainerFactory();
 
+    // Default segment I/O mode for deques that don't pick one explicitly
+    private static final boolean USE_MMAP_SEGMENTS = Boolean.getBoolean("PBD_USE_MMAP");
+
     /**
      * Processors also log using this facility.
      */
@@ -245,6 +248,8 @@ public class PersistentBinaryDeque implements BinaryDeque {
 
     private final File m_path;
     private final String m_nonce;
+    private final boolean m_useMmap;
+    private volatile CompressionCodec m_compressionCodec = CompressionCodec.SNAPPY;
     private boolean m_initializedFromExistingFiles = false;
     private boolean m_awaitingTruncation = false;
 
@@ -280,9 +285,26 @@ public class PersistentBinaryDeque implements BinaryDeque {
      * @throws IOException
      */
     public PersistentBinaryDeque(final String nonce, final File path, VoltLogger logger, final boolean deleteEmpty) throws IOException {
+        this(nonce, path, logger, deleteEmpty, USE_MMAP_SEGMENTS);
+    }
+
+    /**
+     * Create a persistent binary deque with the specified nonce and storage back at the specified path.
+     * Segments are read and written through memory mappings instead of file channels if useMmap is true.
+     * The on disk format is the same either way.
+     *
+     * @param nonce
+     * @param path
+     * @param deleteEmpty
+     * @param useMmap
+     * @throws IOException
+     */
+    public PersistentBinaryDeque(final String nonce, final File path, VoltLogger logger, final boolean deleteEmpty,
+            final boolean useMmap) throws IOException {
         EELibraryLoader.loadExecutionEngineLibrary(true);
         m_path = path;
         m_nonce = nonce;
+        m_useMmap = useMmap;
         m_usageSpecificLog = logger;
 
         if (!path.exists() || !path.canRead() || !path.canWrite() || !path.canExecute() || !path.isDirectory()) {
@@ -484,6 +506,9 @@ public class PersistentBinaryDeque implements BinaryDeque {
     }
 
     private PBDSegment newSegment(long segmentId, File file) {
+        if (m_useMmap) {
+            return new PBDMMapSegment(segmentId, file);
+        }
         return new PBDRegularSegment(segmentId, file);
     }
 
@@ -546,10 +571,10 @@ public class PersistentBinaryDeque implements BinaryDeque {
         }
 
         PBDSegment tail = peekLastSegment();
-        final boolean compress = object.b().isDirect() && allowCompression;
-        if (!tail.offer(object, compress)) {
+        final CompressionCodec codec = object.b().isDirect() && allowCompression ? m_compressionCodec : null;
+        if (!tail.offer(object, codec)) {
             tail = addSegment(tail);
-            final boolean success = tail.offer(object, compress);
+            final boolean success = tail.offer(object, codec);
             if (!success) {
                 throw new IOException("Failed to offer object in PBD");
             }
@@ -579,6 +604,14 @@ public class PersistentBinaryDeque implements BinaryDeque {
         return written;
     }
 
+    /**
+     * Codec for entries offered with compression allowed from now on. Entries already
+     * written are read back with the codec they were written with.
+     */
+    public void setCompressionCodec(CompressionCodec codec) {
+        m_compressionCodec = codec;
+    }
+
     private PBDSegment addSegment(PBDSegment tail) throws IOException {
         //Check to see if the tail is completely consumed so we can close and delete it
         if (tail.hasAllFinishedReading() && canDeleteSegment(tail)) {
@@ -656,7 +689,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
             }
 
             while (currentSegmentContents.peek() != null) {
-                writeSegment.offer(currentSegmentContents.pollFirst(), false);
+                writeSegment.offer(currentSegmentContents.pollFirst(), null);
                 m_numObjects++;
             }
 
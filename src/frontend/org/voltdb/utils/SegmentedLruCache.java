@@ -0,0 +1,231 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread safe LRU cache bounded by both the number of entries and the total weight of its values.
+ *
+ * The cache is split into a power of two number of segments by key hash. Each segment is an access
+ * ordered LinkedHashMap with its own lock and an equal share of both bounds, so threads only contend
+ * when they hit the same segment and eviction is LRU within a segment, which approximates LRU over the
+ * whole cache. The bounds are never exceeded with one exception: an entry that is heavier than its
+ * segment's share on its own is kept until the next insert into the segment evicts it.
+ */
+public class SegmentedLruCache<K, V> {
+
+    /**
+     * Weight of a value, it must not change while the value is in the cache.
+     */
+    public interface Weigher<V> {
+        long weigh(V value);
+    }
+
+    private static final Weigher<Object> UNIT_WEIGHER = new Weigher<Object>() {
+        @Override
+        public long weigh(Object value) {
+            return 1;
+        }
+    };
+
+    private static final class Segment<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int m_maxEntries;
+        private final long m_maxWeight;
+        private final Weigher<? super V> m_weigher;
+        private final LongAdder m_evictions;
+        private long m_weight;
+
+        Segment(int maxEntries, long maxWeight, Weigher<? super V> weigher, LongAdder evictions) {
+            // set accessOrder to true for LRU
+            super(Math.min(maxEntries, 1024) * 2, .75f, true);
+            m_maxEntries = maxEntries;
+            m_maxWeight = maxWeight;
+            m_weigher = weigher;
+            m_evictions = evictions;
+        }
+
+        synchronized V getEntry(K key) {
+            return get(key);
+        }
+
+        synchronized V putEntryIfAbsent(K key, V value) {
+            V existing = get(key);
+            if (existing != null) {
+                return existing;
+            }
+            put(key, value);
+            m_weight += m_weigher.weigh(value);
+            // Evict from the least recently used end, but keep the entry just added
+            Iterator<Map.Entry<K, V>> it = entrySet().iterator();
+            while (size() > 1 && (size() > m_maxEntries || m_weight > m_maxWeight)) {
+                Map.Entry<K, V> eldest = it.next();
+                m_weight -= m_weigher.weigh(eldest.getValue());
+                it.remove();
+                m_evictions.increment();
+            }
+            return null;
+        }
+
+        synchronized V removeEntry(K key) {
+            V value = remove(key);
+            if (value != null) {
+                m_weight -= m_weigher.weigh(value);
+            }
+            return value;
+        }
+
+        synchronized void clearEntries() {
+            clear();
+            m_weight = 0;
+        }
+
+        synchronized int entryCount() {
+            return size();
+        }
+
+        synchronized long weight() {
+            return m_weight;
+        }
+
+        synchronized void snapshot(List<Map.Entry<K, V>> out) {
+            for (Map.Entry<K, V> e : entrySet()) {
+                out.add(new AbstractMap.SimpleImmutableEntry<K, V>(e));
+            }
+        }
+    }
+
+    private final Segment<K, V>[] m_segments;
+    private final int m_segmentMask;
+    private final int m_segmentShift;
+    private final LongAdder m_evictions = new LongAdder();
+
+    /**
+     * Cache bounded by the number of entries only.
+     */
+    public SegmentedLruCache(int segments, int maxEntries) {
+        this(segments, maxEntries, Long.MAX_VALUE, UNIT_WEIGHER);
+    }
+
+    /**
+     * @param segments   number of segments, rounded down to a power of two and to no more than maxEntries
+     * @param maxEntries upper bound on the number of entries
+     * @param maxWeight  upper bound on the total weight of the values
+     * @param weigher    weight of a value
+     */
+    public SegmentedLruCache(int segments, int maxEntries, long maxWeight, Weigher<? super V> weigher) {
+        int count = Integer.highestOneBit(Math.max(1, Math.min(segments, maxEntries)));
+        @SuppressWarnings("unchecked")
+        final Segment<K, V>[] segmentArray = (Segment<K, V>[]) new Segment<?, ?>[count];
+        m_segments = segmentArray;
+        m_segmentMask = count - 1;
+        m_segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+        for (int ii = 0; ii < count; ii++) {
+            m_segments[ii] = new Segment<K, V>(Math.max(1, maxEntries / count),
+                    maxWeight == Long.MAX_VALUE ? Long.MAX_VALUE : maxWeight / count,
+                    weigher, m_evictions);
+        }
+    }
+
+    private Segment<K, V> segmentFor(Object key) {
+        // Pick the segment with the top bits of a scrambled hash, the segment's own
+        // HashMap buckets by the low bits and they must stay well distributed within it
+        int h = key.hashCode() * 0x9E3779B9;
+        return m_segments[(h >>> m_segmentShift) & m_segmentMask];
+    }
+
+    /**
+     * @return the value for key, marking it most recently used, or null if it is not cached
+     */
+    public V get(K key) {
+        return segmentFor(key).getEntry(key);
+    }
+
+    /**
+     * Cache value for key unless a value is already cached for it, evicting least recently used
+     * entries of the segment as needed to stay within the bounds.
+     * @return the value already cached for key, or null if value was added
+     */
+    public V putIfAbsent(K key, V value) {
+        assert(value != null);
+        return segmentFor(key).putEntryIfAbsent(key, value);
+    }
+
+    /**
+     * @return the value that was removed, or null
+     */
+    public V remove(K key) {
+        return segmentFor(key).removeEntry(key);
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : m_segments) {
+            segment.clearEntries();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : m_segments) {
+            size += segment.entryCount();
+        }
+        return size;
+    }
+
+    /**
+     * @return total weight of the cached values
+     */
+    public long weight() {
+        long weight = 0;
+        for (Segment<K, V> segment : m_segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    /**
+     * @return number of entries evicted to stay within the bounds, explicit removals are not counted
+     */
+    public long evictions() {
+        return m_evictions.sum();
+    }
+
+    int segmentCount() {
+        return m_segments.length;
+    }
+
+    /**
+     * Copy of the entries, each segment from least to most recently used.
+     * Segments are copied one at a time, not atomically.
+     */
+    public List<Map.Entry<K, V>> entries() {
+        List<Map.Entry<K, V>> entries = new ArrayList<Map.Entry<K, V>>();
+        for (Segment<K, V> segment : m_segments) {
+            segment.snapshot(entries);
+        }
+        return entries;
+    }
+}
@@ -26,10 +26,15 @@ package org.voltcore.messaging;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.Selector;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.voltcore.network.VoltNetworkPool;
+import org.voltcore.utils.Pair;
 import org.voltcore.utils.PortGenerator;
 
 import junit.framework.TestCase;
@@ -304,6 +309,222 @@ public class TestMessaging extends TestCase {
         }
     }
 
+    public void testCoalescedMessages() throws Exception {
+        System.setProperty(ForeignHost.COALESCE_MESSAGES_PROPERTY, "true");
+        List<HostMessenger.Config> configs = getConfigs(2);
+        HostMessenger msg1 = new HostMessenger(configs.get(0), null, null);
+        HostMessenger msg2 = new HostMessenger(configs.get(1), null, null);
+        try {
+            msg1.start();
+            msg2.start();
+            msg1.waitForGroupJoin(2);
+            msg2.waitForGroupJoin(2);
+        } finally {
+            System.clearProperty(ForeignHost.COALESCE_MESSAGES_PROPERTY);
+        }
+
+        Mailbox mb1 = msg1.createMailbox();
+        Mailbox mb2 = msg2.createMailbox();
+        long siteId2 = mb2.getHSId();
+
+        // Bursts of small messages with the odd one too large to coalesce, which must stay in order
+        final int count = 5000;
+        for (int i = 0; i < count; i++) {
+            MsgTest mt = new MsgTest();
+            mt.m_localValue = new byte[i % 500 == 0 ? ForeignHost.COALESCE_MAX_MESSAGE_BYTES * 2 : 4 + i % 64];
+            ByteBuffer.wrap(mt.m_localValue).putInt(i);
+            mb1.send(siteId2, mt);
+        }
+        for (int i = 0; i < count; i++) {
+            MsgTest mt = null;
+            while (mt == null) {
+                mt = (MsgTest) mb2.recv();
+            }
+            assertEquals(i % 500 == 0 ? ForeignHost.COALESCE_MAX_MESSAGE_BYTES * 2 : 4 + i % 64, mt.m_length);
+            assertEquals(i, ByteBuffer.wrap(mt.m_localValue).getInt());
+        }
+
+        long messages = 0;
+        long frames = 0;
+        for (Pair<String, long[]> stats : msg1.getForeignHostMessagingStats(false).values()) {
+            assertEquals(msg2.getHostId(), stats.getSecond()[0]);
+            messages += stats.getSecond()[1];
+            frames += stats.getSecond()[2];
+        }
+        assertTrue(messages >= count);
+        assertTrue("messages " + messages + " frames " + frames, frames < messages);
+
+        msg1.shutdown();
+        msg2.shutdown();
+    }
+
+    /** Start two hosts with two secondary connections between them */
+    private static HostMessenger[] startWithSecondaryConnections() throws Exception {
+        List<HostMessenger.Config> configs = getConfigs(2);
+        HostMessenger msg1 = new HostMessenger(configs.get(0), null, null);
+        HostMessenger msg2 = new HostMessenger(configs.get(1), null, null);
+        msg1.start();
+        msg2.start();
+        msg1.waitForGroupJoin(2);
+        msg2.waitForGroupJoin(2);
+
+        System.setProperty(HostMessenger.SECONDARY_PICONETWORK_THREADS, "2");
+        try {
+            for (HostMessenger msg : new HostMessenger[] { msg1, msg2 }) {
+                Set<Integer> peers = new HashSet<Integer>();
+                peers.add(msg1.getHostId());
+                peers.add(msg2.getHostId());
+                msg.setPartitionGroupPeers(peers, 2);
+            }
+        } finally {
+            System.clearProperty(HostMessenger.SECONDARY_PICONETWORK_THREADS);
+        }
+        msg1.createAuxiliaryConnections(false);
+        msg2.createAuxiliaryConnections(false);
+        for (int i = 0; msg1.m_foreignHosts.get(msg2.getHostId()).size() < 3 ||
+                        msg2.m_foreignHosts.get(msg1.getHostId()).size() < 3; i++) {
+            if (i > 1000) fail();
+            Thread.sleep(10);
+        }
+        return new HostMessenger[] { msg1, msg2 };
+    }
+
+    private static MsgTest numbered(int i, int size) {
+        MsgTest mt = new MsgTest();
+        mt.m_localValue = new byte[size];
+        ByteBuffer.wrap(mt.m_localValue).putInt(i);
+        return mt;
+    }
+
+    private static void receiveInOrder(Mailbox mb, int from, int to) {
+        for (int i = from; i < to; i++) {
+            MsgTest mt = null;
+            while (mt == null) {
+                mt = (MsgTest) mb.recv();
+            }
+            assertEquals(i, ByteBuffer.wrap(mt.m_localValue).getInt());
+        }
+    }
+
+    private static void waitForRebind(SiteConnectionBinding binding) throws InterruptedException {
+        for (int i = 0; binding.isRebinding(); i++) {
+            if (i > 1000) fail();
+            Thread.sleep(10);
+        }
+    }
+
+    private static ForeignHost otherConnection(HostMessenger msg, int hostId, ForeignHost fh) {
+        for (ForeignHost other : msg.m_foreignHosts.get(hostId)) {
+            if (other != fh) {
+                return other;
+            }
+        }
+        return null;
+    }
+
+    public void testSiteRebindKeepsMessagesInOrder() throws Exception {
+        HostMessenger msgs[] = startWithSecondaryConnections();
+        final HostMessenger msg1 = msgs[0];
+        final HostMessenger msg2 = msgs[1];
+        final Mailbox mb1 = msg1.createMailbox();
+        final Mailbox mb2 = msg2.createMailbox();
+        final Mailbox mb3 = msg2.createMailbox();
+        final long site2 = mb2.getHSId();
+        final long site3 = mb3.getHSId();
+
+        mb1.send(site2, numbered(0, 8));
+        final SiteConnectionBinding binding = msg1.m_siteBindings.get(site2);
+        assertNotNull(binding);
+
+        // Stream to the site, alone and along with another, while it moves between connections
+        final int count = 20000;
+        Thread sender = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 1; i < count; i++) {
+                    if (i % 10 == 0) {
+                        mb1.send(new long[] { site2, site3 }, numbered(i, 8 + i % 64));
+                    } else {
+                        mb1.send(site2, numbered(i, 8 + i % 64));
+                    }
+                }
+            }
+        };
+        sender.start();
+        for (int r = 0; r < 5; r++) {
+            ForeignHost target = otherConnection(msg1, msg2.getHostId(), binding.foreignHost());
+            assertTrue(msg1.rebindSite(binding, target));
+            waitForRebind(binding);
+            assertSame(target, binding.foreignHost());
+        }
+        sender.join();
+
+        receiveInOrder(mb2, 0, count);
+        for (int i = 0; i < count / 10 - 1; i++) {
+            MsgTest mt = null;
+            while (mt == null) {
+                mt = (MsgTest) mb3.recv();
+            }
+            assertEquals((i + 1) * 10, ByteBuffer.wrap(mt.m_localValue).getInt());
+        }
+
+        msg1.shutdown();
+        msg2.shutdown();
+    }
+
+    public void testRebalanceMovesSiteOffBusiestConnection() throws Exception {
+        HostMessenger msgs[] = startWithSecondaryConnections();
+        HostMessenger msg1 = msgs[0];
+        HostMessenger msg2 = msgs[1];
+        Mailbox mb1 = msg1.createMailbox();
+        Mailbox mb2 = msg2.createMailbox();
+        Mailbox mb3 = msg2.createMailbox();
+        long site2 = mb2.getHSId();
+        long site3 = mb3.getHSId();
+
+        // New sites go to the connections with the fewest sites
+        mb1.send(site2, numbered(0, 8));
+        mb1.send(site3, numbered(0, 8));
+        receiveInOrder(mb2, 0, 1);
+        receiveInOrder(mb3, 0, 1);
+        SiteConnectionBinding binding2 = msg1.m_siteBindings.get(site2);
+        SiteConnectionBinding binding3 = msg1.m_siteBindings.get(site3);
+        assertNotSame(binding2.foreignHost(), binding3.foreignHost());
+        binding2.sampleLoad(VoltNetworkPool.MESSAGE_LOAD_BYTES);
+        binding3.sampleLoad(VoltNetworkPool.MESSAGE_LOAD_BYTES);
+
+        // Put both on one connection, with site 2 twice as busy
+        assertTrue(msg1.rebindSite(binding3, binding2.foreignHost()));
+        waitForRebind(binding3);
+        assertSame(binding2.foreignHost(), binding3.foreignHost());
+        for (int i = 1; i < 300; i++) {
+            mb1.send(site2, numbered(i, 1024));
+            if (i < 150) {
+                mb1.send(site3, numbered(i, 1024));
+            }
+        }
+        receiveInOrder(mb2, 1, 300);
+        receiveInOrder(mb3, 1, 150);
+
+        msg1.rebalanceSiteBindings(0);
+        waitForRebind(binding3);
+        assertNotSame(binding2.foreignHost(), binding3.foreignHost());
+        // Nothing left to even out
+        msg1.rebalanceSiteBindings(0);
+        assertFalse(binding2.isRebinding());
+
+        // Secondary connections report the utilization of their network threads
+        for (Map.Entry<Long, Pair<String, long[]>> e : msg1.getIOStats(false).entrySet()) {
+            long[] stats = e.getValue().getSecond();
+            assertEquals(VoltNetworkPool.IOSTATS_TRAFFIC_COUNTERS + 2, stats.length);
+            assertTrue(stats[VoltNetworkPool.IOSTATS_TRAFFIC_COUNTERS + 1] >= 0);
+            assertTrue(stats[VoltNetworkPool.IOSTATS_TRAFFIC_COUNTERS + 1] <= 100);
+        }
+
+        msg1.shutdown();
+        msg2.shutdown();
+    }
+
     public void testFailAndRejoin() throws Exception {
         /* Why is throwing away a selector interesting !? */
         try {
@@ -0,0 +1,248 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltcore.network;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.voltcore.utils.Pair;
+
+import junit.framework.TestCase;
+
+public class TestVoltNetworkPool extends TestCase {
+
+    private ServerSocketChannel m_ssc;
+    private VoltNetworkPool m_pool;
+    private final List<SocketChannel> m_channels = new ArrayList<SocketChannel>();
+
+    private static class MockInputHandler extends VoltProtocolHandler {
+        final boolean m_allowMigration;
+        final BlockingQueue<String> m_handledOn = new LinkedBlockingQueue<String>();
+        final CountDownLatch m_migrated = new CountDownLatch(1);
+        volatile String m_migratingOn;
+        volatile String m_migratedOn;
+
+        MockInputHandler(boolean allowMigration) {
+            m_allowMigration = allowMigration;
+        }
+
+        @Override
+        public int getMaxRead() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void handleMessage(ByteBuffer message, Connection c) {
+            m_handledOn.offer(Thread.currentThread().getName());
+            // Echo it back
+            ByteBuffer response = ByteBuffer.allocate(4 + message.remaining());
+            response.putInt(message.remaining()).put(message).flip();
+            c.writeStream().enqueue(response);
+        }
+
+        @Override
+        public boolean migrating(Connection c) {
+            m_migratingOn = Thread.currentThread().getName();
+            return m_allowMigration;
+        }
+
+        @Override
+        public void migrated(Connection c) {
+            m_migratedOn = Thread.currentThread().getName();
+            m_migrated.countDown();
+        }
+
+        @Override
+        public void started(Connection c) {}
+
+        @Override
+        public void starting(Connection c) {}
+
+        @Override
+        public void stopped(Connection c) {}
+
+        @Override
+        public void stopping(Connection c) {}
+
+        @Override
+        public Runnable offBackPressure() {
+            return new Runnable() {
+                @Override
+                public void run() {}
+            };
+        }
+
+        @Override
+        public Runnable onBackPressure() {
+            return new Runnable() {
+                @Override
+                public void run() {}
+            };
+        }
+
+        @Override
+        public QueueMonitor writestreamMonitor() {
+            return null;
+        }
+
+        @Override
+        public long connectionId() {
+            return 0;
+        }
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        m_ssc = ServerSocketChannel.open();
+        m_ssc.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        m_pool = new VoltNetworkPool(2, 0, null, "Test");
+        m_pool.start();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        for (SocketChannel sc : m_channels) {
+            sc.close();
+        }
+        m_pool.shutdown();
+        m_ssc.close();
+    }
+
+    /** Connect a client and register the server side of the connection with the pool */
+    private VoltPort connect(MockInputHandler handler) throws Exception {
+        SocketChannel client = SocketChannel.open(m_ssc.getLocalAddress());
+        m_channels.add(client);
+        SocketChannel server = m_ssc.accept();
+        server.configureBlocking(false);
+        server.socket().setTcpNoDelay(true);
+        return (VoltPort) m_pool.registerChannel(server, handler, SelectionKey.OP_READ,
+                ReverseDNSPolicy.NONE, null, null);
+    }
+
+    /** Send a message and wait for the echo, returning the thread that handled it */
+    private static String roundTrip(SocketChannel client, MockInputHandler handler, int value) throws Exception {
+        ByteBuffer message = ByteBuffer.allocate(8);
+        message.putInt(4).putInt(value).flip();
+        while (message.hasRemaining()) {
+            client.write(message);
+        }
+        String thread = handler.m_handledOn.poll(10, TimeUnit.SECONDS);
+        assertNotNull(thread);
+
+        ByteBuffer response = ByteBuffer.allocate(8);
+        while (response.hasRemaining()) {
+            assertTrue(client.read(response) >= 0);
+        }
+        response.flip();
+        assertEquals(4, response.getInt());
+        assertEquals(value, response.getInt());
+        return thread;
+    }
+
+    /** Wait until the network has run everything queued to it so far */
+    private static void drain(VoltNetwork network) throws Exception {
+        network.sampleLoad().get(10, TimeUnit.SECONDS);
+    }
+
+    public void testMigratedPortKeepsServingConnection() throws Exception {
+        MockInputHandler handler = new MockInputHandler(true);
+        VoltPort port = connect(handler);
+        // The pool places the second connection on the other network
+        VoltPort other = connect(new MockInputHandler(true));
+        VoltNetwork source = port.m_network;
+        VoltNetwork target = other.m_network;
+        assertNotSame(source, target);
+
+        assertEquals(source.networkThreadName, roundTrip(m_channels.get(0), handler, 1));
+
+        source.migratePort(port, target);
+        assertTrue(handler.m_migrated.await(10, TimeUnit.SECONDS));
+        drain(target);
+        assertEquals(source.networkThreadName, handler.m_migratingOn);
+        assertEquals(target.networkThreadName, handler.m_migratedOn);
+        assertSame(target, port.m_network);
+        assertEquals(0, source.numPorts());
+        assertEquals(2, target.numPorts());
+
+        for (int ii = 2; ii < 100; ii++) {
+            assertEquals(target.networkThreadName, roundTrip(m_channels.get(0), handler, ii));
+        }
+
+        // IO stats follow the port to its new network
+        Map<Long, Pair<String, long[]>> stats = m_pool.getIOStats(false, new ArrayList<VoltNetworkPool.IOStatsIntf>());
+        long[] global = stats.get(-1L).getSecond();
+        assertEquals(VoltNetworkPool.IOSTATS_TRAFFIC_COUNTERS + 2, global.length);
+        assertEquals(-1, global[VoltNetworkPool.IOSTATS_TRAFFIC_COUNTERS]);
+        assertEquals(99 * 8, global[0]);
+        assertEquals(99, global[1]);
+        long[] portStats = stats.get(port.connectionId()).getSecond();
+        assertEquals(target.m_networkId, portStats[VoltNetworkPool.IOSTATS_TRAFFIC_COUNTERS]);
+        assertTrue(portStats[VoltNetworkPool.IOSTATS_TRAFFIC_COUNTERS + 1] >= 0);
+        assertTrue(portStats[VoltNetworkPool.IOSTATS_TRAFFIC_COUNTERS + 1] <= 100);
+    }
+
+    public void testHandlerCanRefuseMigration() throws Exception {
+        MockInputHandler handler = new MockInputHandler(false);
+        VoltPort port = connect(handler);
+        VoltPort other = connect(new MockInputHandler(true));
+        VoltNetwork source = port.m_network;
+        VoltNetwork target = other.m_network;
+
+        source.migratePort(port, target);
+        drain(source);
+        drain(target);
+        assertEquals(source.networkThreadName, handler.m_migratingOn);
+        assertNull(handler.m_migratedOn);
+        assertSame(source, port.m_network);
+        assertEquals(1, source.numPorts());
+        assertEquals(source.networkThreadName, roundTrip(m_channels.get(0), handler, 1));
+    }
+
+    public void testLoadSampleCountsTrafficSincePreviousSample() throws Exception {
+        MockInputHandler handler = new MockInputHandler(true);
+        VoltPort port = connect(handler);
+        VoltNetwork network = port.m_network;
+        network.sampleLoad().get(10, TimeUnit.SECONDS);
+
+        for (int ii = 0; ii < 10; ii++) {
+            roundTrip(m_channels.get(0), handler, ii);
+        }
+        VoltNetwork.LoadSample sample = network.sampleLoad().get(10, TimeUnit.SECONDS);
+        // 10 eight byte messages in each direction
+        assertEquals(20 * (8 + VoltNetworkPool.MESSAGE_LOAD_BYTES), sample.m_portLoads.get(port).longValue());
+        assertEquals(sample.m_portLoads.get(port).longValue(), sample.m_totalLoad);
+        assertEquals(0, network.sampleLoad().get(10, TimeUnit.SECONDS).m_totalLoad);
+    }
+}
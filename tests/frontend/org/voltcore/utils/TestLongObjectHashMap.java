@@ -0,0 +1,110 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltcore.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class TestLongObjectHashMap extends TestCase {
+
+    @Test
+    public void testPutGetRemove() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        assertTrue(map.isEmpty());
+        assertNull(map.put(1, "one"));
+        assertNull(map.put(-1, "minus one"));
+        assertNull(map.put(Long.MIN_VALUE, "min"));
+        assertEquals(3, map.size());
+        assertEquals("one", map.get(1));
+        assertEquals("minus one", map.get(-1));
+        assertEquals("min", map.get(Long.MIN_VALUE));
+        assertNull(map.get(0));
+
+        assertEquals("one", map.put(1, "uno"));
+        assertEquals(3, map.size());
+        assertEquals("uno", map.remove(1));
+        assertNull(map.remove(1));
+        assertFalse(map.containsKey(1));
+        assertEquals(2, map.size());
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(-1));
+        assertEquals(0, map.keys().length);
+    }
+
+    @Test
+    public void testNullValueRejected() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        try {
+            map.put(1, null);
+            fail();
+        } catch (NullPointerException expected) {}
+        assertTrue(map.isEmpty());
+    }
+
+    /*
+     * Compare against a HashMap across enough inserts and removes to force
+     * resizing and plenty of backward shift deletions. Keys step like txnIds,
+     * which share their low bits.
+     */
+    @Test
+    public void testRandomizedAgainstHashMap() {
+        final Random r = new Random(42);
+        LongObjectHashMap<Long> map = new LongObjectHashMap<>(4);
+        Map<Long, Long> expected = new HashMap<>();
+        long next = 0;
+        for (int ii = 0; ii < 200000; ii++) {
+            final int op = r.nextInt(10);
+            if (op < 5) {
+                final long key = r.nextInt(20) == 0 ? -r.nextInt(1000) : (next++ << 14) | 3;
+                assertEquals(expected.put(key, key * 3), map.put(key, key * 3));
+            } else {
+                final long key = ((next - r.nextInt(64)) << 14) | 3;
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+            if (ii % 10000 == 0) {
+                assertEquals(expected.size(), map.size());
+                long[] keys = map.keys();
+                Arrays.sort(keys);
+                long[] expectedKeys = new long[expected.size()];
+                int count = 0;
+                for (long key : expected.keySet()) {
+                    expectedKeys[count++] = key;
+                }
+                Arrays.sort(expectedKeys);
+                assertTrue(Arrays.equals(expectedKeys, keys));
+                for (Map.Entry<Long, Long> e : expected.entrySet()) {
+                    assertEquals(e.getValue(), map.get(e.getKey()));
+                }
+            }
+        }
+    }
+}
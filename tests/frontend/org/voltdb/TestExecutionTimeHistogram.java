@@ -0,0 +1,97 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TestExecutionTimeHistogram {
+
+    static long micros(long micros) {
+        return TimeUnit.MICROSECONDS.toNanos(micros);
+    }
+
+    @Test
+    public void testNothingRecorded() {
+        ExecutionTimeHistogram histogram = new ExecutionTimeHistogram(2, 1000000);
+        assertNull(histogram.poll(false));
+        assertNull(histogram.poll(true));
+    }
+
+    @Test
+    public void testCumulativeAndInterval() {
+        ExecutionTimeHistogram histogram = new ExecutionTimeHistogram(2, 1000000);
+        // The slowest of 101 times is past the 99th percentile
+        for (int ii = 1; ii <= 100; ii++) {
+            histogram.record(micros(100));
+        }
+        histogram.record(micros(5000));
+        long[] cumulative = histogram.poll(false);
+        assertArrayEquals(new long[] { micros(100), micros(100), micros(100) },
+                          new long[] { cumulative[0], cumulative[1], cumulative[2] });
+        assertEquals(micros(5000), cumulative[3], micros(50));
+        // A cumulative poll doesn't end the interval
+        assertArrayEquals(cumulative, histogram.poll(true));
+
+        // The slow time is out of the interval but not of the cumulative percentiles
+        for (int ii = 1; ii <= 100; ii++) {
+            histogram.record(micros(200));
+        }
+        long[] interval = histogram.poll(true);
+        assertEquals(micros(200), interval[0], micros(2));
+        assertEquals(micros(200), interval[3], micros(2));
+        cumulative = histogram.poll(false);
+        assertEquals(micros(200), cumulative[0], micros(2));
+        assertEquals(micros(5000), cumulative[3], micros(50));
+
+        // Nothing recorded in the interval
+        assertNull(histogram.poll(true));
+        assertEquals(micros(200), histogram.poll(false)[1], micros(2));
+    }
+
+    @Test
+    public void testOutOfRangeTimes() {
+        ExecutionTimeHistogram histogram = new ExecutionTimeHistogram(2, 1000000);
+        histogram.record(10);
+        histogram.record(TimeUnit.SECONDS.toNanos(5));
+        long[] percentiles = histogram.poll(false);
+        assertEquals(micros(1), percentiles[0]);
+        assertEquals(TimeUnit.SECONDS.toNanos(1), percentiles[3], TimeUnit.SECONDS.toNanos(1) / 100);
+    }
+
+    @Test
+    public void testFootprint() {
+        // The defaults documented by ExecutionTimeHistogram
+        long footprint = new ExecutionTimeHistogram(2, TimeUnit.SECONDS.toMicros(10)).getFootprintBytes();
+        assertTrue(Long.toString(footprint), footprint > 60 * 1024 && footprint < 100 * 1024);
+        // One digit costs a fraction of that
+        assertTrue(new ExecutionTimeHistogram(1, TimeUnit.SECONDS.toMicros(10)).getFootprintBytes() < footprint / 4);
+    }
+}
@@ -0,0 +1,281 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureCallback;
+import org.voltdb.importer.AbstractImporter;
+import org.voltdb.importer.ImporterStatsCollector;
+
+public class TestImporterBatcher {
+
+    static final String PROC = "EVENTS.insert";
+    static final int PARTITIONS = 4;
+
+    static final ImporterBatcher.Target TARGET = new ImporterBatcher.Target("EVENTS", false,
+            new ColumnInfo[] { new ColumnInfo("ID", VoltType.BIGINT), new ColumnInfo("VAL", VoltType.STRING) }, 0);
+
+    static class Importer extends AbstractImporter {
+        @Override
+        public String getName() {
+            return "TestImporter";
+        }
+        @Override
+        public URI getResourceID() {
+            return URI.create("test://importer");
+        }
+        @Override
+        protected void accept() {
+        }
+        @Override
+        public void stop() {
+        }
+    }
+
+    // Completes every transaction as soon as it is submitted, with the status it is told to
+    static class Submitter implements ImporterBatcher.Submitter {
+        final List<VoltTable> m_loads = new ArrayList<>();
+        final List<byte[]> m_partitionParams = new ArrayList<>();
+        final List<Object[]> m_calls = new ArrayList<>();
+        byte m_loadStatus = ClientResponse.SUCCESS;
+        // Whether single row calls are accepted, as when the procedure was dropped
+        boolean m_acceptCalls = true;
+
+        @Override
+        public synchronized boolean loadPartition(AbstractImporter importer, Function<Integer, Boolean> backPressurePredicate,
+                ProcedureCallback callback, byte[] partitionParam, String tableName, byte upsertMode, VoltTable rows) {
+            assertEquals("EVENTS", tableName);
+            assertEquals(0, upsertMode);
+            // The batcher reuses the table once the load is submitted
+            ByteBuffer copy = ByteBuffer.allocate(PrivateVoltTableFactory.getTableDataReference(rows).remaining());
+            copy.put(PrivateVoltTableFactory.getTableDataReference(rows).duplicate()).flip();
+            m_loads.add(PrivateVoltTableFactory.createVoltTableFromBuffer(copy, true));
+            m_partitionParams.add(partitionParam);
+            respond(callback, m_loadStatus);
+            return true;
+        }
+
+        @Override
+        public synchronized boolean callProcedure(AbstractImporter importer, Function<Integer, Boolean> backPressurePredicate,
+                ProcedureCallback callback, String proc, Object... fieldList) {
+            m_calls.add(fieldList);
+            if (!m_acceptCalls) {
+                return false;
+            }
+            respond(callback, ClientResponse.SUCCESS);
+            return true;
+        }
+
+        static void respond(ProcedureCallback callback, byte status) {
+            try {
+                callback.clientCallback(new ClientResponseImpl(status, new VoltTable[0], ""));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    Submitter m_submitter;
+    Importer m_importer;
+    ImporterBatcher m_batcher;
+    AtomicInteger m_successes;
+    AtomicInteger m_failures;
+    ProcedureCallback m_callback;
+
+    @Before
+    public void setUp() {
+        TheHashinator.initialize(ElasticHashinator.class, TheHashinator.getConfigureBytes(PARTITIONS));
+        m_submitter = new Submitter();
+        m_importer = new Importer();
+        m_successes = new AtomicInteger();
+        m_failures = new AtomicInteger();
+        m_callback = response -> {
+            if (response.getStatus() == ClientResponse.SUCCESS) {
+                m_successes.incrementAndGet();
+            } else {
+                m_failures.incrementAndGet();
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        if (m_batcher != null) {
+            m_batcher.shutdown();
+        }
+    }
+
+    ImporterBatcher makeBatcher(int batchSize, int lingerMillis) {
+        m_batcher = new ImporterBatcher(m_submitter, new ImporterStatsCollector(0),
+                proc -> PROC.equals(proc) ? TARGET : null, batchSize, lingerMillis);
+        return m_batcher;
+    }
+
+    // Keys that all hash to one partition
+    static List<Long> keysOf(int partition, int count) {
+        List<Long> keys = new ArrayList<>();
+        for (long key = 0; keys.size() < count; key++) {
+            if (TheHashinator.getPartitionForParameter(VoltType.BIGINT, key) == partition) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    @Test
+    public void testRowsGroupedByPartition() {
+        ImporterBatcher batcher = makeBatcher(3, 60_000);
+        int partition = TheHashinator.getPartitionForParameter(VoltType.BIGINT, 0L);
+        for (long key : keysOf(partition, 3)) {
+            // Importers often hand over strings
+            assertTrue(batcher.offer(m_importer, null, m_callback, PROC, Long.toString(key), "v" + key));
+        }
+        assertEquals(1, m_submitter.m_loads.size());
+        VoltTable loaded = m_submitter.m_loads.get(0);
+        assertEquals(3, loaded.getRowCount());
+        while (loaded.advanceRow()) {
+            assertEquals(partition, TheHashinator.getPartitionForParameter(VoltType.BIGINT, loaded.getLong(0)));
+            assertEquals("v" + loaded.getLong(0), loaded.getString(1));
+        }
+        assertEquals(3, m_successes.get());
+        assertTrue(m_submitter.m_calls.isEmpty());
+    }
+
+    @Test
+    public void testLingerFlushesPartialBatch() throws Exception {
+        ImporterBatcher batcher = makeBatcher(100, 10);
+        for (long key : keysOf(1, 2)) {
+            assertTrue(batcher.offer(m_importer, null, m_callback, PROC, key, "x"));
+        }
+        for (int ii = 0; ii < 500 && m_successes.get() < 2; ii++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, m_successes.get());
+        synchronized (m_submitter) {
+            assertEquals(1, m_submitter.m_loads.size());
+            assertEquals(2, m_submitter.m_loads.get(0).getRowCount());
+        }
+    }
+
+    @Test
+    public void testFailedBatchRetriedRowByRow() throws Exception {
+        m_submitter.m_loadStatus = ClientResponse.GRACEFUL_FAILURE;
+        ImporterBatcher batcher = makeBatcher(2, 60_000);
+        for (long key : keysOf(2, 2)) {
+            assertTrue(batcher.offer(m_importer, null, m_callback, PROC, key, "x"));
+        }
+        for (int ii = 0; ii < 500 && m_successes.get() < 2; ii++) {
+            Thread.sleep(10);
+        }
+        // Each row gets the response of its own insert
+        assertEquals(2, m_successes.get());
+        assertEquals(0, m_failures.get());
+        synchronized (m_submitter) {
+            assertEquals(2, m_submitter.m_calls.size());
+        }
+    }
+
+    @Test
+    public void testRejectedRetryStillCallsBack() throws Exception {
+        m_submitter.m_loadStatus = ClientResponse.GRACEFUL_FAILURE;
+        m_submitter.m_acceptCalls = false;
+        ImporterBatcher batcher = makeBatcher(3, 60_000);
+        for (long key : keysOf(2, 3)) {
+            assertTrue(batcher.offer(m_importer, null, m_callback, PROC, key, "x"));
+        }
+        for (int ii = 0; ii < 500 && m_failures.get() < 3; ii++) {
+            Thread.sleep(10);
+        }
+        // Every row hears back, so its importer can commit past it
+        assertEquals(3, m_failures.get());
+        assertEquals(0, m_successes.get());
+        synchronized (m_submitter) {
+            assertEquals(3, m_submitter.m_calls.size());
+        }
+    }
+
+    @Test
+    public void testRowsThatCantBeBatched() {
+        ImporterBatcher batcher = makeBatcher(2, 60_000);
+        assertFalse(batcher.offer(m_importer, null, m_callback, "OtherProc", 1L, "x"));
+        // Wrong number of columns, or a value that doesn't convert, take the single row path
+        assertFalse(batcher.offer(m_importer, null, m_callback, PROC, 1L));
+        assertFalse(batcher.offer(m_importer, null, m_callback, PROC, "not a number", "x"));
+        assertTrue(m_submitter.m_loads.isEmpty());
+    }
+
+    @Test
+    public void testPartitionParamFromBatchedRow() {
+        ImporterBatcher batcher = makeBatcher(2, 60_000);
+        List<Long> keys = keysOf(3, 4);
+        for (long key : keys) {
+            assertTrue(batcher.offer(m_importer, null, m_callback, PROC, key, "x"));
+        }
+        assertEquals(2, m_submitter.m_loads.size());
+        // Each load is routed by one of its own rows, not the first row the partition ever had
+        assertTrue(Arrays.equals(VoltType.valueToBytes(keys.get(0)), m_submitter.m_partitionParams.get(0)));
+        assertTrue(Arrays.equals(VoltType.valueToBytes(keys.get(2)), m_submitter.m_partitionParams.get(1)));
+    }
+
+    @Test
+    public void testHashinatorChangeResendsRows() {
+        ImporterBatcher batcher = makeBatcher(100, 60_000);
+        assertTrue(batcher.offer(m_importer, null, m_callback, PROC, 5L, "x"));
+        TheHashinator.updateHashinator(ElasticHashinator.class, 1, TheHashinator.getConfigureBytes(PARTITIONS * 2), false);
+        assertTrue(batcher.offer(m_importer, null, m_callback, PROC, 6L, "y"));
+        // The row grouped by the old hashinator went on its own, the new one waits in a new batch
+        assertEquals(1, m_submitter.m_calls.size());
+        assertEquals(5L, m_submitter.m_calls.get(0)[0]);
+        assertTrue(m_submitter.m_loads.isEmpty());
+        batcher.shutdown();
+        m_batcher = null;
+        assertEquals(1, m_submitter.m_loads.size());
+        assertEquals(2, m_successes.get());
+    }
+
+    @Test
+    public void testShutdownFlushes() {
+        ImporterBatcher batcher = makeBatcher(100, 60_000);
+        assertTrue(batcher.offer(m_importer, null, m_callback, PROC, 5L, "x"));
+        batcher.shutdown();
+        m_batcher = null;
+        assertEquals(1, m_submitter.m_loads.size());
+        assertEquals(1, m_successes.get());
+    }
+}
@@ -0,0 +1,204 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.voltdb.common.Constants;
+import org.voltdb.types.TimestampType;
+
+public class TestPrimitiveParameterSet {
+
+    // A single statement procedure as ProcedureRunner types it: integers widened to long
+    private static final Class<?>[] PROC_TYPES = {
+        long.class, long.class, long.class, long.class, double.class, String.class, byte[].class, TimestampType.class
+    };
+    private static final byte[] STMT_TYPES = {
+        VoltType.BIGINT.getValue(), VoltType.INTEGER.getValue(), VoltType.SMALLINT.getValue(),
+        VoltType.TINYINT.getValue(), VoltType.FLOAT.getValue(), VoltType.STRING.getValue(),
+        VoltType.VARBINARY.getValue(), VoltType.TIMESTAMP.getValue()
+    };
+
+    private static ByteBuffer serialize(Object... params) throws Exception {
+        ParameterSet pset = ParameterSet.fromArrayNoCopy(params);
+        ByteBuffer buf = ByteBuffer.allocate(pset.getSerializedSize());
+        pset.flattenToBuffer(buf);
+        buf.flip();
+        return buf;
+    }
+
+    /*
+     * What ProcedureRunner produces for the EE with boxed parameters: convert each parameter,
+     * substitute statement typed nulls as getCleanParams() does, and flatten.
+     */
+    private static byte[] boxedPath(ByteBuffer serialized, Class<?>[] procTypes, byte[] stmtTypes) throws Exception {
+        Object[] params = ParameterSet.fromByteBuffer(serialized.duplicate()).toArray();
+        for (int i = 0; i < params.length; i++) {
+            params[i] = ParameterConverter.tryToMakeCompatible(procTypes[i], params[i]);
+            if (params[i] == null) {
+                VoltType type = VoltType.get(stmtTypes[i]);
+                params[i] = type == VoltType.TIMESTAMP ? new TimestampType(Long.MIN_VALUE) :
+                    VoltType.NULL_STRING_OR_VARBINARY;
+            }
+        }
+        ParameterSet pset = ParameterSet.fromArrayNoCopy(params);
+        ByteBuffer buf = ByteBuffer.allocate(pset.getSerializedSize());
+        pset.flattenToBuffer(buf);
+        return buf.array();
+    }
+
+    private static byte[] primitivePath(PrimitiveParameterSet pps, ByteBuffer serialized,
+            Class<?>[] procTypes, byte[] stmtTypes) {
+        assertTrue(pps.read(serialized));
+        assertTrue(pps.isCompatible(procTypes, new byte[][] { stmtTypes }));
+        assertEquals(serialized.remaining(), pps.getSerializedSize());
+        ByteBuffer flat = pps.flattenForStatement(0, 0, procTypes, stmtTypes);
+        byte[] bytes = new byte[flat.remaining()];
+        flat.get(bytes);
+        return bytes;
+    }
+
+    private static Object randomValue(Random rand, int index) {
+        if (rand.nextInt(8) == 0) {
+            return null;
+        }
+        switch (index) {
+        case 0:
+            // integer parameters of any width for a widened BIGINT
+            switch (rand.nextInt(5)) {
+            case 0: return (byte) rand.nextInt();
+            case 1: return (short) rand.nextInt();
+            case 2: return rand.nextInt();
+            case 3: return VoltType.NULL_INTEGER;
+            default: return rand.nextLong();
+            }
+        case 1: return rand.nextBoolean() ? rand.nextInt() : VoltType.NULL_BIGINT;
+        case 2: return rand.nextBoolean() ? (short) rand.nextInt() : VoltType.NULL_SMALLINT;
+        case 3: return rand.nextBoolean() ? (byte) rand.nextInt() : VoltType.NULL_TINYINT;
+        case 4: return rand.nextBoolean() ? rand.nextDouble() : VoltType.NULL_FLOAT;
+        case 5:
+            switch (rand.nextInt(4)) {
+            case 0: return Constants.CSV_NULL;
+            case 1: return "";
+            case 2: return "kéy中😀" + rand.nextInt();
+            default: return "key" + rand.nextLong();
+            }
+        case 6:
+            byte[] bytes = new byte[rand.nextInt(40)];
+            rand.nextBytes(bytes);
+            return bytes;
+        default:
+            return new TimestampType(rand.nextLong() / 1000);
+        }
+    }
+
+    @Test
+    public void testMatchesBoxedPath() throws Exception {
+        Random rand = new Random(0);
+        PrimitiveParameterSet pps = new PrimitiveParameterSet();
+        for (int iter = 0; iter < 2000; iter++) {
+            Object[] params = new Object[PROC_TYPES.length];
+            for (int i = 0; i < params.length; i++) {
+                params[i] = randomValue(rand, i);
+            }
+            ByteBuffer serialized = serialize(params);
+            assertArrayEquals(Arrays.toString(params),
+                    boxedPath(serialized, PROC_TYPES, STMT_TYPES),
+                    primitivePath(pps, serialized, PROC_TYPES, STMT_TYPES));
+        }
+    }
+
+    @Test
+    public void testMultipleStatements() throws Exception {
+        PrimitiveParameterSet pps = new PrimitiveParameterSet();
+        ByteBuffer serialized = serialize(1L, "a", 2L);
+        Class<?>[] procTypes = { long.class, String.class, long.class };
+        byte[] first = { VoltType.BIGINT.getValue(), VoltType.STRING.getValue() };
+        byte[] second = { VoltType.INTEGER.getValue() };
+
+        assertTrue(pps.read(serialized));
+        assertTrue(pps.isCompatible(procTypes, new byte[][] { first, second }));
+        assertFalse(pps.isCompatible(procTypes, new byte[][] { first }));
+        assertFalse(pps.isCompatible(procTypes, new byte[][] { first, second, second }));
+
+        ByteBuffer one = pps.flattenForStatement(0, 0, procTypes, first);
+        ByteBuffer two = pps.flattenForStatement(1, 2, procTypes, second);
+        assertEquals(ParameterSet.fromArrayNoCopy(1L, "a").getSerializedSize(), one.remaining());
+        ParameterSet decoded = ParameterSet.fromByteBuffer(two);
+        assertEquals(1, decoded.size());
+        assertEquals(2L, decoded.getParam(0));
+    }
+
+    @Test
+    public void testFallsBackToBoxedPath() throws Exception {
+        PrimitiveParameterSet pps = new PrimitiveParameterSet();
+        // Types left to the boxed path
+        assertFalse(pps.read(serialize(1L, new long[] { 1, 2 })));
+        assertFalse(pps.read(serialize(new BigDecimal("1.5"))));
+        // Conversions left to the boxed path
+        assertTrue(pps.read(serialize("12")));
+        assertFalse(pps.isCompatible(new Class<?>[] { long.class }, new byte[][] { { VoltType.BIGINT.getValue() } }));
+        assertTrue(pps.read(serialize(12L)));
+        assertFalse(pps.isCompatible(new Class<?>[] { double.class }, new byte[][] { { VoltType.FLOAT.getValue() } }));
+        assertFalse(pps.isCompatible(new Class<?>[] { long.class, long.class },
+                new byte[][] { { VoltType.BIGINT.getValue(), VoltType.BIGINT.getValue() } }));
+        // Strings that would not survive decoding
+        assertTrue(pps.read(serialize((Object) new byte[] { 'a', (byte) 0xc0, (byte) 0x80 })));
+        assertTrue(pps.isCompatible(new Class<?>[] { byte[].class }, new byte[][] { { VoltType.VARBINARY.getValue() } }));
+        ByteBuffer invalid = serialize((Object) new byte[] { 'a', (byte) 0xc0, (byte) 0x80 });
+        invalid.put(2, VoltType.STRING.getValue());
+        assertTrue(pps.read(invalid));
+        assertFalse(pps.isCompatible(new Class<?>[] { String.class }, new byte[][] { { VoltType.STRING.getValue() } }));
+        // Truncated
+        ByteBuffer truncated = serialize(1L, "abc");
+        truncated.limit(truncated.limit() - 1);
+        assertFalse(pps.read(truncated));
+    }
+
+    @Test
+    public void testWellFormedUtf8MatchesDecoder() {
+        Random rand = new Random(0);
+        byte[] interesting = { 0x41, (byte) 0x80, (byte) 0xbf, (byte) 0xc0, (byte) 0xc2, (byte) 0xdf, (byte) 0xe0,
+                (byte) 0xa0, (byte) 0xed, (byte) 0x9f, (byte) 0xf0, (byte) 0x90, (byte) 0xf4, (byte) 0x8f, (byte) 0xf5 };
+        for (int iter = 0; iter < 100000; iter++) {
+            byte[] bytes = new byte[rand.nextInt(6)];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = interesting[rand.nextInt(interesting.length)];
+            }
+            boolean roundTrips = Arrays.equals(bytes,
+                    new String(bytes, Constants.UTF8ENCODING).getBytes(Constants.UTF8ENCODING));
+            assertEquals(Arrays.toString(bytes), roundTrips,
+                    PrimitiveParameterSet.isWellFormedUtf8(ByteBuffer.wrap(bytes), 0, bytes.length));
+        }
+    }
+}
@@ -124,6 +124,76 @@ public class TestStatsAgent {
         return ParameterSet.fromArrayWithCopy(blah);
     }
 
+    private ParameterSet subselect(String subselector, int interval, String options)
+    {
+        return ParameterSet.fromArrayWithCopy(subselector, interval, options);
+    }
+
+    private Object[][] registerIndexStats() {
+        MockStatsSource.columns = Arrays.asList(new VoltTable.ColumnInfo[] {
+                new VoltTable.ColumnInfo("INDEX_NAME", VoltType.STRING),
+                new VoltTable.ColumnInfo("TABLE_NAME", VoltType.STRING),
+                new VoltTable.ColumnInfo("MEMORY_ESTIMATE", VoltType.BIGINT)
+        });
+        Object[][] rows = new Object[][] {
+            { "ORDERS_PK", "ORDERS", 300L },
+            { "ORDERS_IDX", "ORDERS", 200L },
+            { "CUSTOMER_PK", "CUSTOMER", 500L },
+            { "ORDER_LINE_PK", "ORDER_LINE", 100L }
+        };
+        m_mvoltdb.getStatsAgent().registerStatsSource(StatsSelector.INDEX, 0, new MockStatsSource(rows));
+        return rows;
+    }
+
+    private VoltTable collect(ParameterSet params) throws Exception {
+        m_mvoltdb.getStatsAgent().performOpsAction(m_mockConnection, 32, OpsSelector.STATISTICS, params);
+        ClientResponseImpl response = responses.take();
+        assertEquals(response.getStatusString(), ClientResponse.SUCCESS, response.getStatus());
+        assertEquals(1, response.getResults().length);
+        return response.getResults()[0];
+    }
+
+    @Test
+    public void testStatisticsOptions() throws Exception {
+        registerIndexStats();
+        VoltTable result = collect(subselect("INDEX", 0,
+                "{\"filter\":\"ORDERS\", \"orderBy\":\"MEMORY_ESTIMATE\", \"top\":1}"));
+        assertEquals(1, result.getRowCount());
+        result.advanceRow();
+        assertEquals("ORDERS_PK", result.getString("INDEX_NAME"));
+
+        result = collect(subselect("INDEX", 0, "{\"filter\":\"ORDER*\", \"offset\":1, \"limit\":5}"));
+        assertEquals(2, result.getRowCount());
+
+        m_mvoltdb.getStatsAgent().performOpsAction(m_mockConnection, 32, OpsSelector.STATISTICS,
+                subselect("INDEX", 0, "{\"orderBy\":\"TUPLE_COUNT\"}"));
+        ClientResponseImpl response = responses.take();
+        assertEquals(ClientResponse.GRACEFUL_FAILURE, response.getStatus());
+        assertEquals("@Statistics INDEX has no column TUPLE_COUNT to order by", response.getStatusString());
+
+        m_mvoltdb.getStatsAgent().performOpsAction(m_mockConnection, 32, OpsSelector.STATISTICS,
+                ParameterSet.fromArrayWithCopy("INDEX", 0, "{}", "OHHAI"));
+        response = responses.take();
+        assertEquals(ClientResponse.GRACEFUL_FAILURE, response.getStatus());
+        assertEquals("Incorrect number of arguments to @Statistics (expects 2 or 3, received 4)",
+                response.getStatusString());
+    }
+
+    @Test
+    public void testStatisticsDelta() throws Exception {
+        Object[][] rows = registerIndexStats();
+        final String delta = "{\"delta\":\"scraper\"}";
+        assertEquals(4, collect(subselect("INDEX", 0, delta)).getRowCount());
+        assertEquals(0, collect(subselect("INDEX", 0, delta)).getRowCount());
+        rows[2][2] = 600L;
+        VoltTable result = collect(subselect("INDEX", 0, delta));
+        assertEquals(1, result.getRowCount());
+        result.advanceRow();
+        assertEquals("CUSTOMER_PK", result.getString("INDEX_NAME"));
+        // Without delta everything is still there
+        assertEquals(4, collect(subselect("INDEX", 0)).getRowCount());
+    }
+
     @Test
     public void testInvalidStatisticsSubselector() throws Exception {
         createAndRegisterStats();
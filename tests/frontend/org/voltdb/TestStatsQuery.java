@@ -0,0 +1,186 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.json_voltpatches.JSONObject;
+import org.junit.Test;
+
+public class TestStatsQuery {
+
+    static VoltTable procedureTable() {
+        return procedureTable(1L, 40L);
+    }
+
+    static VoltTable procedureTable(long timestamp, long lookups) {
+        VoltTable table = new VoltTable(
+                new VoltTable.ColumnInfo("TIMESTAMP", VoltType.BIGINT),
+                new VoltTable.ColumnInfo(VoltSystemProcedure.CNAME_HOST_ID, VoltSystemProcedure.CTYPE_ID),
+                new VoltTable.ColumnInfo("PROCEDURE", VoltType.STRING),
+                new VoltTable.ColumnInfo("INVOCATIONS", VoltType.BIGINT));
+        table.addRow(timestamp, 0, "com.example.Insert", 30L);
+        table.addRow(timestamp, 1, "com.example.Insert", 10L);
+        table.addRow(timestamp, 0, "com.example.Delete", 20L);
+        table.addRow(timestamp, 1, "Lookup", lookups);
+        table.addRow(timestamp, 0, "Lookup", null);
+        return table;
+    }
+
+    static StatsQuery query(StatsSelector selector, String options) throws Exception {
+        JSONObject obj = new JSONObject();
+        assertNull(StatsQuery.parse(selector, options, obj));
+        return StatsQuery.fromRequest(selector, obj);
+    }
+
+    static String column(VoltTable table, String column) {
+        StringBuilder sb = new StringBuilder();
+        table.resetRowPosition();
+        while (table.advanceRow()) {
+            Object value = StatsQuery.value(table, table.getColumnIndex(column));
+            sb.append(sb.length() == 0 ? "" : ",").append(value);
+        }
+        table.resetRowPosition();
+        return sb.toString();
+    }
+
+    @Test
+    public void testParseErrors() throws Exception {
+        JSONObject obj = new JSONObject();
+        assertTrue(StatsQuery.parse(StatsSelector.TABLE, 1, obj).startsWith("Third argument"));
+        assertTrue(StatsQuery.parse(StatsSelector.TABLE, "OHHAI", obj).startsWith("Third argument"));
+        assertEquals("Unknown @Statistics option sort",
+                StatsQuery.parse(StatsSelector.TABLE, "{\"sort\":1}", obj));
+        assertEquals("@Statistics MANAGEMENT does not take options",
+                StatsQuery.parse(StatsSelector.MANAGEMENT, "{\"top\":1}", obj));
+        assertEquals("@Statistics MEMORY can't be filtered by name",
+                StatsQuery.parse(StatsSelector.MEMORY, "{\"filter\":\"A\"}", obj));
+        assertEquals("@Statistics option top requires orderBy",
+                StatsQuery.parse(StatsSelector.TABLE, "{\"top\":1}", obj));
+        assertEquals("@Statistics option limit must be a non-negative number",
+                StatsQuery.parse(StatsSelector.TABLE, "{\"limit\":-1}", obj));
+        assertEquals("@Statistics option delta can't be combined with offset",
+                StatsQuery.parse(StatsSelector.TABLE, "{\"delta\":\"me\",\"offset\":5}", obj));
+        assertTrue(!obj.has(StatsQuery.OPTIONS));
+        // No options at all
+        assertNull(StatsQuery.parse(StatsSelector.TABLE, "{}", obj));
+        assertNull(StatsQuery.fromRequest(StatsSelector.TABLE, obj));
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        StatsQuery query = query(StatsSelector.PROCEDURE, "{\"filter\":\"ins*, lookup\"}");
+        VoltTable result = query.applyOnHost(procedureTable());
+        assertEquals("com.example.Insert,com.example.Insert,Lookup,Lookup", column(result, "PROCEDURE"));
+        // Whole names only
+        query = query(StatsSelector.PROCEDURE, "{\"filter\":\"com.example.*\"}");
+        result = query.applyOnHost(procedureTable());
+        assertEquals(3, result.getRowCount());
+        query = query(StatsSelector.PROCEDURE, "{\"filter\":\"Look\"}");
+        assertEquals(0, query.applyOnHost(procedureTable()).getRowCount());
+    }
+
+    @Test
+    public void testTop() throws Exception {
+        StatsQuery query = query(StatsSelector.PROCEDURE, "{\"orderBy\":\"invocations\", \"top\":2}");
+        VoltTable host = query.applyOnHost(procedureTable());
+        assertEquals("40,30", column(host, "INVOCATIONS"));
+        VoltTable merged = procedureTable();
+        merged.add(host.fetchRow(0));
+        assertEquals("40,40", column(query.applyFinal(merged, new StatsDeltaTracker(), 0), "INVOCATIONS"));
+
+        // Rolled up later, so hosts ship everything
+        query = query(StatsSelector.PROCEDUREPROFILE, "{\"orderBy\":\"INVOCATIONS\", \"top\":2}");
+        assertEquals(5, query.applyOnHost(procedureTable()).getRowCount());
+
+        query = query(StatsSelector.PROCEDURE, "{\"orderBy\":\"CALLS\", \"top\":2}");
+        assertEquals(5, query.applyOnHost(procedureTable()).getRowCount());
+        try {
+            query.applyFinal(procedureTable(), new StatsDeltaTracker(), 0);
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals("@Statistics PROCEDURE has no column CALLS to order by", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testPages() throws Exception {
+        // Ordered on host id and procedure name without an orderBy
+        StatsQuery first = query(StatsSelector.PROCEDURE, "{\"limit\":2}");
+        StatsQuery second = query(StatsSelector.PROCEDURE, "{\"offset\":2, \"limit\":2}");
+        StatsQuery last = query(StatsSelector.PROCEDURE, "{\"offset\":4, \"limit\":2}");
+        assertEquals("Lookup,com.example.Delete",
+                column(first.applyFinal(procedureTable(), new StatsDeltaTracker(), 0), "PROCEDURE"));
+        assertEquals("com.example.Insert,Lookup",
+                column(second.applyFinal(procedureTable(), new StatsDeltaTracker(), 0), "PROCEDURE"));
+        assertEquals("com.example.Insert", column(last.applyFinal(procedureTable(), new StatsDeltaTracker(), 0), "PROCEDURE"));
+        // Hosts ship what the page may need
+        assertEquals(4, second.applyOnHost(procedureTable()).getRowCount());
+
+        // Pages of the top
+        StatsQuery topPage = query(StatsSelector.PROCEDURE,
+                "{\"orderBy\":\"INVOCATIONS\", \"top\":3, \"offset\":2, \"limit\":2}");
+        assertEquals(3, topPage.applyOnHost(procedureTable()).getRowCount());
+        assertEquals("20", column(topPage.applyFinal(procedureTable(), new StatsDeltaTracker(), 0), "INVOCATIONS"));
+    }
+
+    @Test
+    public void testDelta() throws Exception {
+        StatsDeltaTracker deltas = new StatsDeltaTracker();
+        StatsQuery query = query(StatsSelector.PROCEDURE, "{\"delta\":\"scraper\"}");
+        // Hosts leave the delta to the coordinator
+        assertEquals(5, query.applyOnHost(procedureTable()).getRowCount());
+        assertEquals(5, query.applyFinal(procedureTable(), deltas, 0).getRowCount());
+        // Timestamps don't count as a change
+        VoltTable later = procedureTable(2L, 41L);
+        assertEquals("41", column(query.applyFinal(later, deltas, 1), "INVOCATIONS"));
+        assertEquals(0, query.applyFinal(later, deltas, 2).getRowCount());
+
+        // Another caller, or the same caller for another selector, starts over
+        assertEquals(5, query(StatsSelector.PROCEDURE, "{\"delta\":\"other\"}").applyFinal(later, deltas, 3).getRowCount());
+        assertEquals(5, query(StatsSelector.PROCEDUREDETAIL, "{\"delta\":\"scraper\"}").applyFinal(later, deltas, 3).getRowCount());
+        assertEquals(3, deltas.callers());
+
+        // Forgotten once idle
+        assertEquals(5, query(StatsSelector.PROCEDURE, "{\"delta\":\"new\"}")
+                .applyFinal(later, deltas, StatsDeltaTracker.EXPIRY_MILLIS + 4).getRowCount());
+        assertEquals(1, deltas.callers());
+        assertEquals(5, query.applyFinal(later, deltas, StatsDeltaTracker.EXPIRY_MILLIS + 4).getRowCount());
+    }
+
+    @Test
+    public void testDeltaOfTop() throws Exception {
+        StatsDeltaTracker deltas = new StatsDeltaTracker();
+        StatsQuery query = query(StatsSelector.PROCEDURE, "{\"orderBy\":\"INVOCATIONS\", \"top\":2, \"delta\":\"me\"}");
+        assertEquals("40,30", column(query.applyFinal(procedureTable(), deltas, 0), "INVOCATIONS"));
+        assertEquals(0, query.applyFinal(procedureTable(), deltas, 1).getRowCount());
+        // A row that wasn't in the top before is new to the caller once it makes it
+        VoltTable later = procedureTable(2L, 5L);
+        assertEquals("20", column(query.applyFinal(later, deltas, 2), "INVOCATIONS"));
+    }
+}
@@ -0,0 +1,88 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestTTLBatchSizer {
+
+    static final long TARGET = 10_000_000L;
+
+    @Test
+    public void testStartsAtConfiguredSize() {
+        TTLBatchSizer sizer = new TTLBatchSizer(1000, Integer.MAX_VALUE, TARGET);
+        assertEquals(1000, sizer.getBatchSize());
+        // Never above the DR ceiling
+        sizer = new TTLBatchSizer(1000, 300, TARGET);
+        assertEquals(300, sizer.getBatchSize());
+    }
+
+    @Test
+    public void testGrowsOnlyWithBacklogAndFastDeletes() {
+        TTLBatchSizer sizer = new TTLBatchSizer(1000, Integer.MAX_VALUE, TARGET);
+        assertEquals(1000, sizer.roundCompleted(TARGET / 4, false));
+        assertEquals(1000, sizer.roundCompleted(TARGET * 3 / 4, true));
+        assertEquals(1500, sizer.roundCompleted(TARGET / 4, true));
+        for (int ii = 0; ii < 20; ii++) {
+            sizer.roundCompleted(TARGET / 4, true);
+        }
+        assertEquals(1000 * TTLBatchSizer.MAX_GROWTH, sizer.getBatchSize());
+
+        sizer = new TTLBatchSizer(1000, 2000, TARGET);
+        for (int ii = 0; ii < 20; ii++) {
+            sizer.roundCompleted(TARGET / 4, true);
+        }
+        assertEquals(2000, sizer.getBatchSize());
+    }
+
+    @Test
+    public void testShrinksInProportionToSlowDeletes() {
+        TTLBatchSizer sizer = new TTLBatchSizer(1000, Integer.MAX_VALUE, TARGET);
+        assertEquals(250, sizer.roundCompleted(TARGET * 4, true));
+        assertEquals(1, sizer.roundCompleted(TARGET * 1000, true));
+        assertEquals(2, sizer.roundCompleted(0, true));
+    }
+
+    @Test
+    public void testDrLimitLowersCeiling() {
+        TTLBatchSizer sizer = new TTLBatchSizer(1000, Integer.MAX_VALUE, TARGET);
+        assertTrue(sizer.drLimitExceeded());
+        assertEquals(500, sizer.getBatchSize());
+        for (int ii = 0; ii < 20; ii++) {
+            sizer.roundCompleted(0, true);
+        }
+        assertEquals(500, sizer.getBatchSize());
+        while (sizer.getBatchSize() > 1) {
+            assertTrue(sizer.drLimitExceeded());
+        }
+        assertFalse(sizer.drLimitExceeded());
+
+        // A DDL change starts over
+        sizer.configure(200, Integer.MAX_VALUE);
+        assertEquals(200, sizer.getBatchSize());
+    }
+}
@@ -28,12 +28,15 @@ import java.math.BigDecimal;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 
 import org.json_voltpatches.JSONException;
+import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.TableHelper.RandomTable;
 import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.client.ClientResponse;
 import org.voltdb.types.GeographyPointValue;
 import org.voltdb.types.GeographyValue;
 import org.voltdb.types.TimestampType;
@@ -1455,4 +1458,53 @@ public class TestVoltTable extends TestCase {
                 .forEach(s -> System.out.println(s));
         }
     }
+
+    public void testLeasedResultBuffer() throws Exception {
+        VoltTable source = new VoltTable(new ColumnInfo("ID", VoltType.BIGINT), new ColumnInfo("NAME", VoltType.STRING));
+        for (int i = 0; i < 100; i++) {
+            source.addRow(i, "row" + i);
+        }
+        ByteBuffer shared = ByteBuffer.allocateDirect(source.getSerializedSize() * 2);
+        source.flattenToBuffer(shared);
+        source.flattenToBuffer(shared);
+        shared.flip();
+
+        final AtomicInteger discards = new AtomicInteger();
+        BBContainer lease = new BBContainer(shared) {
+            @Override
+            public void discard() {
+                if (discards.incrementAndGet() == 2) {
+                    checkDoubleFree();
+                }
+            }
+        };
+        VoltTable sent = PrivateVoltTableFactory.createVoltTableFromSharedBuffer(shared);
+        VoltTable copied = PrivateVoltTableFactory.createVoltTableFromSharedBuffer(shared);
+        PrivateVoltTableFactory.attachLeasedBuffer(sent, lease);
+        PrivateVoltTableFactory.attachLeasedBuffer(copied, lease);
+
+        // Serializing the response and releasing it drops the reference once
+        ClientResponseImpl response = new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[] { sent }, null);
+        ByteBuffer wire = ByteBuffer.allocate(response.getSerializedSize());
+        response.flattenToBuffer(wire);
+        response.releaseResultBuffers();
+        response.releaseResultBuffers();
+        assertFalse(PrivateVoltTableFactory.hasLeasedBuffer(sent));
+        assertEquals(1, discards.get());
+
+        // Converting to the heap copies the rows out before releasing the buffer
+        copied.convertToHeapBuffer();
+        assertFalse(PrivateVoltTableFactory.hasLeasedBuffer(copied));
+        assertEquals(2, discards.get());
+        shared.clear();
+        while (shared.hasRemaining()) {
+            shared.put((byte) 0);
+        }
+        assertTrue(source.hasSameContents(copied));
+
+        wire.flip();
+        ClientResponseImpl received = new ClientResponseImpl();
+        received.initFromBuffer(wire);
+        assertTrue(source.hasSameContents(received.getResults()[0]));
+    }
 }
@@ -0,0 +1,115 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.client;
+
+import java.util.Arrays;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class TestCallbackTable extends TestCase {
+
+    @Test
+    public void testPutGetRemove() {
+        CallbackTable<String> table = new CallbackTable<>();
+        assertTrue(table.isEmpty());
+        assertNull(table.put(1, "one"));
+        assertNull(table.put(-1, "minus one"));
+        assertNull(table.put(Long.MAX_VALUE - 1, "topo"));
+        assertEquals(3, table.size());
+        assertEquals("one", table.get(1));
+        assertEquals("minus one", table.get(-1));
+        assertEquals("topo", table.get(Long.MAX_VALUE - 1));
+        assertNull(table.get(2));
+
+        assertEquals("one", table.put(1, "uno"));
+        assertEquals(3, table.size());
+        assertEquals("uno", table.remove(1));
+        assertNull(table.remove(1));
+        assertFalse(table.containsKey(1));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    public void testHandles() {
+        CallbackTable<Long> table = new CallbackTable<>();
+        // Enough sequential handles to land in every stripe
+        for (long handle = 0; handle < 1000; handle++) {
+            table.put(handle, handle);
+        }
+        for (long handle = 0; handle < 1000; handle += 2) {
+            table.remove(handle);
+        }
+        long handles[] = table.handles();
+        assertEquals(500, handles.length);
+        Arrays.sort(handles);
+        for (int ii = 0; ii < handles.length; ii++) {
+            assertEquals(ii * 2 + 1, handles[ii]);
+        }
+    }
+
+    /*
+     * Every handle must be removed by exactly one of the racing threads, the same
+     * guarantee the response, timeout and connection loss paths rely on
+     */
+    @Test
+    public void testConcurrentRemoveIsExactlyOnce() throws Exception {
+        final int threadCount = 8;
+        final int handleCount = 100000;
+        final CallbackTable<Object> table = new CallbackTable<>();
+        final Object value = new Object();
+        for (long handle = 0; handle < handleCount; handle++) {
+            table.put(handle, value);
+        }
+        final AtomicInteger removed = new AtomicInteger();
+        final CyclicBarrier barrier = new CyclicBarrier(threadCount);
+        Thread threads[] = new Thread[threadCount];
+        for (int ii = 0; ii < threadCount; ii++) {
+            threads[ii] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        barrier.await();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                    for (long handle = 0; handle < handleCount; handle++) {
+                        if (table.remove(handle) != null) {
+                            removed.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[ii].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(handleCount, removed.get());
+        assertTrue(table.isEmpty());
+    }
+}
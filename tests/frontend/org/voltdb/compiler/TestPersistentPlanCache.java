@@ -0,0 +1,294 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.compiler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.voltdb.ParameterSet;
+import org.voltdb.VoltType;
+import org.voltdb.common.Constants;
+import org.voltdb.planner.BoundPlan;
+import org.voltdb.planner.CorePlan;
+
+/**
+ * Saving the parameterized plan cache to disk and warming a new cache from it.
+ */
+public class TestPersistentPlanCache {
+
+    private static final String BUILD = "test build";
+
+    private File m_dir;
+
+    private static byte[] catalogHash(int seed) {
+        byte[] hash = new byte[20];
+        Arrays.fill(hash, (byte) seed);
+        return hash;
+    }
+
+    private static CorePlan makeCore(int id, byte[] catalogHash) {
+        byte[] fragment = ("{\"plan\": " + id + "}").getBytes(Constants.UTF8ENCODING);
+        byte[] fragmentHash = new byte[20];
+        Arrays.fill(fragmentHash, (byte) id);
+        CorePlan core = new CorePlan(fragment, null, fragmentHash, null, false, true,
+                new VoltType[] { VoltType.BIGINT, VoltType.STRING }, catalogHash);
+        core.setPartitioningParamIndex(1);
+        core.setPartitioningParamValue("key" + id);
+        return core;
+    }
+
+    private static void putPlan(AdHocCompilerCache cache, int id, byte[] catalogHash) {
+        String sql = "select * from t where a = " + id + " and b = ?;";
+        AdHocPlannedStatement stmt = new AdHocPlannedStatement(sql.getBytes(Constants.UTF8ENCODING),
+                makeCore(id, catalogHash), ParameterSet.emptyParameterSet(), null);
+        cache.put(sql, token(id), stmt, new String[] { Integer.toString(id), "?" }, true, false);
+    }
+
+    private static String token(int id) {
+        return "select * from t where a = " + id + " and b = ?";
+    }
+
+    private AdHocCompilerCache openCache(byte[] catalogHash, String build) {
+        // One segment so eviction is exactly LRU
+        return new AdHocCompilerCache(10, 10, 1, m_dir, catalogHash, build);
+    }
+
+    private static void assertWarmed(AdHocCompilerCache cache, int id, byte[] catalogHash) {
+        List<BoundPlan> plans = cache.getWithParsedToken(token(id));
+        assertEquals(1, plans.size());
+        CorePlan core = plans.get(0).m_core;
+        assertEquals(makeCore(id, catalogHash), core);
+        assertArrayEquals(makeCore(id, catalogHash).aggregatorFragment, core.aggregatorFragment);
+        assertEquals("key" + id, core.getPartitioningParamValue());
+        assertNull(plans.get(0).m_constants);
+    }
+
+    // Descriptors this process holds open on file, -1 where /proc/self/fd doesn't exist
+    private static int openDescriptors(File file) throws IOException {
+        final Path fds = Paths.get("/proc/self/fd");
+        if (!Files.isDirectory(fds)) {
+            return -1;
+        }
+        int count = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(fds)) {
+            for (Path fd : stream) {
+                try {
+                    if (Files.readSymbolicLink(fd).equals(file.toPath().toAbsolutePath())) {
+                        count++;
+                    }
+                } catch (IOException closedMeanwhile) {}
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testWarmFromSavedPlans() throws Exception {
+        AdHocCompilerCache cache = openCache(catalogHash(1), BUILD);
+        for (int ii = 0; ii < 5; ii++) {
+            putPlan(cache, ii, catalogHash(1));
+        }
+        cache.m_persistentCache.sync();
+
+        AdHocCompilerCache warmed = openCache(catalogHash(1), BUILD);
+        assertEquals(5, warmed.getCoreCacheSize());
+        assertEquals(5, warmed.m_persistentCache.getLoadedPlans());
+        for (int ii = 0; ii < 5; ii++) {
+            assertWarmed(warmed, ii, catalogHash(1));
+        }
+        // The literal cache is not saved
+        assertEquals(0, warmed.getLiteralCacheSize());
+
+        // Replanning a warmed statement must not save it again
+        putPlan(warmed, 3, catalogHash(1));
+        warmed.m_persistentCache.sync();
+        assertEquals(5, warmed.m_persistentCache.getRecords());
+    }
+
+    @Test
+    public void testRecentCatalogsAreKept() throws Exception {
+        AdHocCompilerCache cache = openCache(catalogHash(1), BUILD);
+        putPlan(cache, 1, catalogHash(1));
+        cache.m_persistentCache.sync();
+        File oldFile = cache.m_persistentCache.getFile();
+        assertTrue(oldFile.exists());
+
+        AdHocCompilerCache other = openCache(catalogHash(2), BUILD);
+        assertEquals(0, other.getCoreCacheSize());
+        putPlan(other, 2, catalogHash(2));
+        other.m_persistentCache.sync();
+        // Switching back to the first catalog warms it with its own plans
+        assertTrue(oldFile.exists());
+        assertWarmed(openCache(catalogHash(1), BUILD), 1, catalogHash(1));
+        assertWarmed(openCache(catalogHash(2), BUILD), 2, catalogHash(2));
+
+        // Only the files of the most recently used catalogs are kept
+        final int catalogs = PersistentPlanCache.MAX_CATALOG_FILES;
+        for (int ii = 3; ii <= catalogs; ii++) {
+            cache = openCache(catalogHash(ii), BUILD);
+            putPlan(cache, ii, catalogHash(ii));
+            cache.m_persistentCache.sync();
+        }
+        // Catalog 1 was loaded last before the new ones, the file of catalog 2 is the oldest
+        oldFile.setLastModified(System.currentTimeMillis() - 1000);
+        other.m_persistentCache.getFile().setLastModified(System.currentTimeMillis() - 2000);
+        cache = openCache(catalogHash(catalogs + 1), BUILD);
+        putPlan(cache, catalogs + 1, catalogHash(catalogs + 1));
+        cache.m_persistentCache.sync();
+        assertEquals(PersistentPlanCache.MAX_CATALOG_FILES, m_dir.listFiles().length);
+        assertFalse(other.m_persistentCache.getFile().exists());
+        assertTrue(oldFile.exists());
+        assertEquals(0, openCache(catalogHash(2), BUILD).getCoreCacheSize());
+        assertWarmed(openCache(catalogHash(catalogs + 1), BUILD), catalogs + 1, catalogHash(catalogs + 1));
+    }
+
+    @Test
+    public void testOtherBuildIsIgnored() throws Exception {
+        AdHocCompilerCache cache = openCache(catalogHash(1), BUILD);
+        putPlan(cache, 1, catalogHash(1));
+        cache.m_persistentCache.sync();
+
+        AdHocCompilerCache upgraded = openCache(catalogHash(1), "another build");
+        assertEquals(0, upgraded.getCoreCacheSize());
+        putPlan(upgraded, 2, catalogHash(1));
+        upgraded.m_persistentCache.sync();
+
+        // The file was rewritten for the new build
+        AdHocCompilerCache warmed = openCache(catalogHash(1), "another build");
+        assertEquals(1, warmed.getCoreCacheSize());
+        assertWarmed(warmed, 2, catalogHash(1));
+    }
+
+    @Test
+    public void testTornTailIsDropped() throws Exception {
+        AdHocCompilerCache cache = openCache(catalogHash(1), BUILD);
+        for (int ii = 0; ii < 3; ii++) {
+            putPlan(cache, ii, catalogHash(1));
+        }
+        cache.m_persistentCache.sync();
+        File file = cache.m_persistentCache.getFile();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+
+        AdHocCompilerCache warmed = openCache(catalogHash(1), BUILD);
+        assertEquals(2, warmed.getCoreCacheSize());
+        assertWarmed(warmed, 0, catalogHash(1));
+        assertWarmed(warmed, 1, catalogHash(1));
+
+        // The next write cuts off the damaged record before appending
+        putPlan(warmed, 5, catalogHash(1));
+        warmed.m_persistentCache.sync();
+        assertEquals(3, openCache(catalogHash(1), BUILD).getCoreCacheSize());
+    }
+
+    @Test
+    public void testFileIsCompacted() throws Exception {
+        AdHocCompilerCache cache = openCache(catalogHash(1), BUILD);
+        for (int ii = 0; ii < 100; ii++) {
+            putPlan(cache, ii, catalogHash(1));
+        }
+        cache.m_persistentCache.sync();
+        // The cache holds 10 plans, the file never holds more than twice that
+        assertTrue(cache.m_persistentCache.getRecords() <= 20);
+        assertEquals(cache.m_persistentCache.getFileBytes(), cache.m_persistentCache.getFile().length());
+
+        // Most recently used plans survive
+        AdHocCompilerCache warmed = openCache(catalogHash(1), BUILD);
+        assertEquals(10, warmed.getCoreCacheSize());
+        assertWarmed(warmed, 99, catalogHash(1));
+        assertNull(warmed.getWithParsedToken(token(0)));
+    }
+
+    @Test
+    public void testFileIsClosedWhenIdle() throws Exception {
+        AdHocCompilerCache cache = openCache(catalogHash(1), BUILD);
+        putPlan(cache, 0, catalogHash(1));
+        cache.m_persistentCache.sync();
+        assertTrue(openDescriptors(cache.m_persistentCache.getFile()) <= 0);
+
+        // Reopened where it left off
+        putPlan(cache, 1, catalogHash(1));
+        cache.m_persistentCache.sync();
+        assertEquals(2, cache.m_persistentCache.getRecords());
+        assertEquals(cache.m_persistentCache.getFileBytes(), cache.m_persistentCache.getFile().length());
+        AdHocCompilerCache warmed = openCache(catalogHash(1), BUILD);
+        assertWarmed(warmed, 0, catalogHash(1));
+        assertWarmed(warmed, 1, catalogHash(1));
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        AdHocCompilerCache cache = openCache(catalogHash(1), BUILD);
+        for (int ii = 0; ii < 5; ii++) {
+            putPlan(cache, ii, catalogHash(1));
+        }
+        // Queued plans are still written
+        cache.m_persistentCache.close();
+        // and later ones are not
+        putPlan(cache, 5, catalogHash(1));
+        cache.m_persistentCache.close();
+
+        AdHocCompilerCache warmed = null;
+        for (int ii = 0; ii < 100; ii++) {
+            warmed = openCache(catalogHash(1), BUILD);
+            if (warmed.getCoreCacheSize() == 5 && openDescriptors(cache.m_persistentCache.getFile()) <= 0) {
+                break;
+            }
+            Thread.sleep(10);
+        }
+        assertEquals(5, warmed.getCoreCacheSize());
+        assertNull(warmed.getWithParsedToken(token(5)));
+        assertTrue(openDescriptors(cache.m_persistentCache.getFile()) <= 0);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        m_dir = Files.createTempDirectory("plancache").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File f : m_dir.listFiles()) {
+            f.delete();
+        }
+        m_dir.delete();
+    }
+}
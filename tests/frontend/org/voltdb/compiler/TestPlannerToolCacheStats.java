@@ -0,0 +1,75 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.compiler;
+
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+
+import org.voltcore.messaging.HostMessenger;
+import org.voltdb.CatalogContext;
+import org.voltdb.benchmark.tpcc.TPCCProjectBuilder;
+import org.voltdb.catalog.Catalog;
+import org.voltdb.settings.ClusterSettings;
+import org.voltdb.settings.DbSettings;
+import org.voltdb.settings.NodeSettings;
+import org.voltdb.utils.CatalogUtil;
+import org.voltdb.utils.MiscUtils;
+
+import junit.framework.TestCase;
+
+/**
+ * Literal cache statistics as counted through PlannerTool.
+ */
+public class TestPlannerToolCacheStats extends TestCase {
+
+    public void testLiteralLookupsCountedOnce() throws Exception {
+        TPCCProjectBuilder builder = new TPCCProjectBuilder();
+        builder.addAllDefaults();
+        final File jar = new File("tpcc-cachestats.jar");
+        jar.deleteOnExit();
+        builder.compile(jar.getPath());
+
+        byte[] bytes = MiscUtils.fileToBytes(jar);
+        String serializedCatalog = CatalogUtil.getSerializedCatalogStringFromJar(CatalogUtil.loadAndUpgradeCatalogFromJar(bytes, false).getFirst());
+        Catalog catalog = new Catalog();
+        catalog.execute(serializedCatalog);
+        DbSettings settings = new DbSettings(ClusterSettings.create().asSupplier(), NodeSettings.create());
+        CatalogContext context = new CatalogContext(catalog, settings, 0, 0, bytes, null, new byte[] {}, mock(HostMessenger.class));
+
+        PlannerTool pt = new PlannerTool(context.database, context.getCatalogHash());
+        AdHocCompilerCache cache = AdHocCompilerCache.getCacheForCatalogHash(context.getCatalogHash());
+        long queries = cache.m_literalQueries.sum();
+        long hits = cache.m_literalHits.sum();
+
+        // A miss is looked up before and after taking the planner lock, but counted once
+        pt.planSqlForTest("select * from warehouse where w_id = 1;");
+        assertEquals(queries + 1, cache.m_literalQueries.sum());
+        assertEquals(hits, cache.m_literalHits.sum());
+
+        pt.planSqlForTest("select * from warehouse where w_id = 1;");
+        assertEquals(queries + 2, cache.m_literalQueries.sum());
+        assertEquals(hits + 1, cache.m_literalHits.sum());
+    }
+}
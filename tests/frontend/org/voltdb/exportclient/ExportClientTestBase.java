@@ -29,13 +29,17 @@ import org.voltdb.export.AdvertisedDataSource;
 import org.voltdb.types.GeographyPointValue;
 import org.voltdb.types.GeographyValue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 
 public class ExportClientTestBase {
 
-    static final GeographyPointValue GEOG_POINT = GeographyPointValue.fromWKT("point(-122 37)");
-    static final GeographyValue GEOG = GeographyValue.fromWKT("polygon((0 0, 1 1, 0 1, 0 0))");
+    protected static final GeographyPointValue GEOG_POINT = GeographyPointValue.fromWKT("point(-122 37)");
+    protected static final GeographyValue GEOG = GeographyValue.fromWKT("polygon((0 0, 1 1, 0 1, 0 0))");
 
 
     static final String[] COLUMN_NAMES = {"tid", "ts", "sq", "pid", "site", "op",
@@ -52,7 +56,7 @@ public class ExportClientTestBase {
             0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 64, 0, 0, 2048
     };
 
-    static VoltTable vtable = new VoltTable(
+    protected static VoltTable vtable = new VoltTable(
             new VoltTable.ColumnInfo("VOLT_TRANSACTION_ID", VoltType.BIGINT),
             new VoltTable.ColumnInfo("VOLT_EXPORT_TIMESTAMP", VoltType.BIGINT),
             new VoltTable.ColumnInfo("VOLT_EXPORT_SEQUENCE_NUMBER", VoltType.BIGINT),
@@ -75,7 +79,7 @@ public class ExportClientTestBase {
         return constructTestSource(replicated, partition, "yankeelover");
     }
 
-    static AdvertisedDataSource constructTestSource(boolean replicated, int partition, String tableName) {
+    protected static AdvertisedDataSource constructTestSource(boolean replicated, int partition, String tableName) {
         ArrayList<String> col_names = new ArrayList<String>();
         ArrayList<VoltType> col_types = new ArrayList<VoltType>();
         for (int i = 0; i < COLUMN_TYPES.length; i++) {
@@ -91,6 +95,33 @@ public class ExportClientTestBase {
         return source;
     }
 
+    /**
+     * Decode the schema GuestProcessor finds at the head of a block holding the rows of table,
+     * which needs at least one row.
+     */
+    protected static ExportRow encodeSchema(VoltTable table, String tableName, int partition) throws IOException {
+        table.resetRowPosition();
+        table.advanceRow();
+        byte[] bytes = ExportEncoder.encodeRow(table, tableName, 0, 1L);
+        int schemaSize = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        ByteBuffer sbuf = ByteBuffer.wrap(bytes, 4, schemaSize).slice().order(ByteOrder.LITTLE_ENDIAN);
+        return ExportRow.decodeBufferSchema(sbuf, schemaSize, partition, 1L);
+    }
+
+    /**
+     * Encode all the rows of table the way they follow the schema in a block.
+     */
+    protected static ByteBuffer encodeRows(VoltTable table, String tableName, int partitionColumnIndex) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.resetRowPosition();
+        while (table.advanceRow()) {
+            byte[] bytes = ExportEncoder.encodeRow(table, tableName, partitionColumnIndex, 1L);
+            int schemaSize = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getInt();
+            out.write(bytes, 4 + schemaSize, bytes.length - 4 - schemaSize);
+        }
+        return ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
     protected void setup() {
         vtable.clearRowData();
     }
@@ -0,0 +1,256 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb.exportclient;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.voltdb.VoltType;
+import org.voltdb.export.AdvertisedDataSource;
+import org.voltdb.types.TimestampType;
+
+public class TestExportRowCursor extends ExportClientTestBase {
+
+    static final int PARTITION = 3;
+    static final int SMALLINT_COL = 7;
+
+    static class RecordingDecoder extends ExportDecoderBase {
+        final List<String> m_events = new ArrayList<>();
+        final List<ExportRow> m_rows = new ArrayList<>();
+        boolean m_failCompletion = false;
+
+        RecordingDecoder(AdvertisedDataSource source) {
+            super(source);
+        }
+
+        @Override
+        public void onBlockStart(ExportRow row) {
+            m_events.add("start");
+        }
+
+        @Override
+        public boolean processRow(ExportRow row) {
+            m_events.add("row");
+            m_rows.add(row);
+            return true;
+        }
+
+        @Override
+        public void onBlockCompletion(ExportRow row) throws RestartBlockException {
+            m_events.add("complete");
+            assertSame(m_rows.get(m_rows.size() - 1), row);
+            if (m_failCompletion) {
+                throw new RestartBlockException("completion failed", true);
+            }
+        }
+
+        @Override
+        public void sourceNoLongerAdvertised(AdvertisedDataSource source) {
+        }
+    }
+
+    @Override
+    @Before
+    public void setup() {
+        super.setup();
+        long l = System.currentTimeMillis();
+        vtable.addRow(l, l, l, PARTITION, l, l, (byte) 1, (short) 2, 3, 4L, 5.5, new TimestampType(6),
+                "xx", new BigDecimal("88.5"), GEOG_POINT, GEOG);
+        vtable.addRow(l + 1, l, l, PARTITION, l, l, null, null, null, null, null, null, null, null, null, null);
+        vtable.addRow(l + 2, l, l, PARTITION, l, l, (byte) -1, (short) -2, -3, Long.MIN_VALUE + 1, -0.5,
+                new TimestampType(-6), "héllo wörld", new BigDecimal("-1.000000000001"), GEOG_POINT, GEOG);
+    }
+
+    @Test
+    public void testMatchesDecodeRow() throws Exception {
+        ExportRow schema = encodeSchema(vtable, "mytable", PARTITION);
+        ByteBuffer rows = encodeRows(vtable, "mytable", SMALLINT_COL);
+        ByteBuffer legacy = rows.duplicate().order(rows.order());
+
+        ExportRowCursor cursor = new ExportRowCursor();
+        cursor.reset(schema, PARTITION, rows);
+        assertEquals("mytable", cursor.getTableName());
+        assertEquals(COLUMN_TYPES.length, cursor.getColumnCount());
+        int count = 0;
+        while (cursor.advance()) {
+            legacy.getInt();
+            ExportRow expected = ExportRow.decodeRow(schema, PARTITION, 0L, legacy);
+            ExportRow actual = cursor.toExportRow();
+            assertArrayEquals(expected.values, actual.values);
+            assertEquals(expected.partitionValue, actual.partitionValue);
+            assertEquals(expected.partitionValue, cursor.getPartitionValue());
+            assertEquals(expected.partitionColIndex, actual.partitionColIndex);
+            assertEquals(SMALLINT_COL, cursor.getPartitionColumnIndex());
+            for (int i = 0; i < cursor.getColumnCount(); i++) {
+                assertEquals(expected.values[i] == null, cursor.isNull(i));
+                assertEquals(expected.values[i], cursor.getObject(i));
+            }
+            count++;
+        }
+        assertEquals(3, count);
+        assertEquals(3, cursor.getRowCount());
+        assertFalse(rows.hasRemaining());
+    }
+
+    @Test
+    public void testRowBytes() throws Exception {
+        ExportRow schema = encodeSchema(vtable, "mytable", PARTITION);
+        ByteBuffer rows = encodeRows(vtable, "mytable", SMALLINT_COL);
+        ByteBuffer legacy = rows.duplicate().order(rows.order());
+
+        ExportRowCursor cursor = new ExportRowCursor();
+        cursor.reset(schema, PARTITION, rows);
+        while (cursor.advance()) {
+            byte[] expected = new byte[legacy.getInt()];
+            legacy.get(expected);
+            assertEquals(expected.length, cursor.getRowLength());
+            byte[] actual = cursor.getRowBytes();
+            assertArrayEquals(expected, actual);
+            assertArrayEquals(cursor.toExportRow().values,
+                    ExportRow.decodeRow(schema, PARTITION, 0L, actual).values);
+        }
+    }
+
+    @Test
+    public void testTypedAccessors() throws Exception {
+        ExportRowCursor cursor = new ExportRowCursor();
+        cursor.reset(encodeSchema(vtable, "mytable", PARTITION), PARTITION,
+                encodeRows(vtable, "mytable", SMALLINT_COL));
+
+        assertTrue(cursor.advance());
+        assertEquals(PARTITION, cursor.getLong(3));
+        assertEquals(1, cursor.getLong(6));
+        assertEquals(2, cursor.getLong(7));
+        assertEquals(3, cursor.getLong(8));
+        assertEquals(4, cursor.getLong(9));
+        assertEquals(5.5, cursor.getDouble(10), 0.0);
+        assertEquals(6, cursor.getLong(11));
+        assertEquals(VoltType.STRING, cursor.getColumnType(12));
+        assertEquals("xx", cursor.getString(12));
+        assertEquals(2, cursor.getLength(12));
+        assertEquals(new BigDecimal("88.5").setScale(12), cursor.getDecimal(13));
+
+        assertTrue(cursor.advance());
+        for (int i = 6; i < cursor.getColumnCount(); i++) {
+            assertTrue(cursor.isNull(i));
+            assertNull(cursor.getObject(i));
+        }
+        // a null partition column falls back to the partition id
+        assertEquals(PARTITION, cursor.getPartitionValue());
+
+        assertTrue(cursor.advance());
+        assertEquals(Long.MIN_VALUE + 1, cursor.getLong(9));
+        byte[] utf8 = "héllo wörld".getBytes(StandardCharsets.UTF_8);
+        byte[] copy = new byte[utf8.length + 2];
+        cursor.getBytes(12, copy, 1);
+        assertEquals(utf8.length, cursor.getLength(12));
+        for (int i = 0; i < utf8.length; i++) {
+            assertEquals(utf8[i], copy[i + 1]);
+        }
+        assertEquals(utf8[0], cursor.getBuffer().get(cursor.getOffset(12)));
+        assertFalse(cursor.advance());
+    }
+
+    @Test
+    public void testStopCondition() throws Exception {
+        ExportRow schema = encodeSchema(vtable, "mytable", PARTITION);
+        ByteBuffer rows = encodeRows(vtable, "mytable", SMALLINT_COL);
+        ExportRowCursor cursor = new ExportRowCursor();
+        cursor.reset(schema, PARTITION, rows, () -> cursor.getRowCount() == 2);
+        assertTrue(cursor.advance());
+        assertTrue(cursor.advance());
+        assertFalse(cursor.advance());
+        assertTrue(rows.hasRemaining());
+    }
+
+    @Test
+    public void testDefaultProcessRowsAdapter() throws Exception {
+        ExportRow schema = encodeSchema(vtable, "mytable", PARTITION);
+        ByteBuffer rows = encodeRows(vtable, "mytable", SMALLINT_COL);
+        // constructing the source clears vtable
+        RecordingDecoder decoder = new RecordingDecoder(constructTestSource(false, PARTITION));
+        decoder.setPreviousRow(schema);
+        ExportRowCursor cursor = decoder.getRowCursor();
+        cursor.reset(decoder.getPreviousRow(), PARTITION, rows);
+        decoder.processRows(cursor);
+
+        assertEquals("[start, row, row, row, complete]", decoder.m_events.toString());
+        assertSame(decoder.m_rows.get(2), decoder.getPreviousRow());
+        assertEquals((short) 2, decoder.m_rows.get(0).values[SMALLINT_COL]);
+        assertEquals((short) 2, decoder.m_rows.get(0).partitionValue);
+    }
+
+    @Test
+    public void testCorruptRow() throws Exception {
+        ExportRow schema = encodeSchema(vtable, "mytable", PARTITION);
+        ByteBuffer rows = encodeRows(vtable, "mytable", SMALLINT_COL);
+        RecordingDecoder decoder = new RecordingDecoder(constructTestSource(false, PARTITION));
+        // claim the second row is longer than what is left of the block
+        int second = 4 + rows.getInt(0);
+        rows.putInt(second, rows.capacity());
+
+        ExportRowCursor cursor = decoder.getRowCursor();
+        cursor.reset(schema, PARTITION, rows);
+        try {
+            decoder.processRows(cursor);
+            fail("decoded a corrupt row");
+        } catch (IOException expected) {
+        }
+        // the rows decoded before the bad one still complete
+        assertEquals("[start, row, complete]", decoder.m_events.toString());
+    }
+
+    @Test
+    public void testCorruptRowWithFailedCompletion() throws Exception {
+        ExportRow schema = encodeSchema(vtable, "mytable", PARTITION);
+        ByteBuffer rows = encodeRows(vtable, "mytable", SMALLINT_COL);
+        RecordingDecoder decoder = new RecordingDecoder(constructTestSource(false, PARTITION));
+        decoder.m_failCompletion = true;
+        int second = 4 + rows.getInt(0);
+        rows.putInt(second, rows.capacity());
+
+        ExportRowCursor cursor = decoder.getRowCursor();
+        cursor.reset(schema, PARTITION, rows);
+        try {
+            decoder.processRows(cursor);
+            fail("decoded a corrupt row");
+        } catch (IOException expected) {
+            // the decode error isn't replaced by the failed completion
+        }
+        assertEquals("[start, row, complete]", decoder.m_events.toString());
+    }
+}
@@ -29,9 +29,20 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.export.HSQLDriverForTest;
 
 public class TestJDBCExportClient extends ExportClientTestBase {
     @Test
@@ -142,6 +153,28 @@ public class TestJDBCExportClient extends ExportClientTestBase {
         }
     }
 
+    @Test
+    public void testInvalidBatchSettings() throws Exception
+    {
+        for (String property : new String[] { "parallelconnections", "committargetmillis", "maxbatchsize" }) {
+            final JDBCExportClient client = new JDBCExportClient();
+            Properties config = new Properties();
+            config.setProperty("jdbcurl", "fakeurl");
+            config.setProperty("jdbcuser", "fakeuser");
+            config.setProperty("jdbcdriver", "org.voltdb.export.JDBCDriverForTest");
+            config.setProperty(property, "0");
+            try {
+                client.configure(config);
+                fail("Invalid " + property);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().contains(property));
+            }
+            finally {
+                client.shutdown();
+            }
+        }
+    }
+
     @Test
     public void testPropIdentifiers() throws Exception
     {
@@ -205,4 +238,168 @@ public class TestJDBCExportClient extends ExportClientTestBase {
             client.shutdown();
         }
     }
+
+    @Test
+    public void testTargetStats() throws Exception
+    {
+        final ExportTargetStats stats = new ExportTargetStats();
+        assertEquals(0, stats.getRowsPerSecond(0));
+
+        final long ms = TimeUnit.MILLISECONDS.toNanos(1);
+        stats.batchCommitted(100, 10 * ms, 10 * ms);
+        // The first window isn't complete yet
+        assertEquals(0, stats.getRowsPerSecond(10 * ms));
+        stats.batchCommitted(300, 30 * ms, 500 * ms);
+        stats.batchCommitted(600, 20 * ms, 1000 * ms);
+        assertEquals(1000, stats.getRowsPerSecond(1000 * ms));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), stats.getCommitLatencyNanos());
+        assertEquals(20, stats.getCommitLatencyMillis());
+        // Idle targets don't keep reporting their last rate
+        assertEquals(0, stats.getRowsPerSecond(5000 * ms));
+    }
+
+    @Test
+    public void testExportToEmbeddedDatabase() throws Exception
+    {
+        ExportTargetStats stats = exportToEmbeddedDatabase("single", new Properties());
+        // One batch per block
+        assertEquals(ROWS_PER_BLOCK, stats.getBatchSize());
+    }
+
+    @Test
+    public void testParallelExportToEmbeddedDatabase() throws Exception
+    {
+        final Properties config = new Properties();
+        config.setProperty("parallelconnections", "4");
+        config.setProperty("parallelkeycolumns", "order_key");
+        config.setProperty("maxbatchsize", "50");
+        ExportTargetStats stats = exportToEmbeddedDatabase("parallel", config);
+        assertTrue(stats.getBatchSize() > 0 && stats.getBatchSize() <= 50);
+    }
+
+    @Test
+    public void testParallelExportByPartitionValue() throws Exception
+    {
+        final Properties config = new Properties();
+        config.setProperty("parallelconnections", "3");
+        ExportTargetStats stats = exportToEmbeddedDatabase("partitionvalue", config);
+        assertTrue(stats.getBatchSize() > 0);
+    }
+
+    @Test
+    public void testParallelExportRestartsBlock() throws Exception
+    {
+        final String url = HSQLDriverForTest.URL_PREFIX + "mem:restart";
+        final Properties config = new Properties();
+        config.setProperty("jdbcurl", url);
+        config.setProperty("jdbcuser", "SA");
+        config.setProperty("jdbcpassword", "");
+        config.setProperty("jdbcdriver", HSQLDriverForTest.class.getName());
+        config.setProperty("createtable", "false");
+        config.setProperty("parallelconnections", "2");
+        final JDBCExportClient client = new JDBCExportClient();
+        client.configure(config);
+
+        final VoltTable table = new VoltTable(
+                new VoltTable.ColumnInfo("VOLT_TRANSACTION_ID", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("VOLT_EXPORT_TIMESTAMP", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("VOLT_EXPORT_SEQUENCE_NUMBER", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("VOLT_PARTITION_ID", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("VOLT_OP", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("VOLT_SITE_ID", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("ORDER_KEY", VoltType.BIGINT));
+        table.addRow(0L, 0L, 0L, 0L, 0L, 0L, 1L);
+        table.addRow(0L, 0L, 0L, 0L, 0L, 0L, 2L);
+        final ExportDecoderBase decoder = client.constructExportDecoder(constructTestSource(false, 0, "MISSING"));
+        final ExportRowCursor cursor = new ExportRowCursor();
+        try {
+            // The target table doesn't exist
+            cursor.reset(encodeSchema(table, "MISSING", 0), 0, encodeRows(table, "MISSING", 6));
+            decoder.processRows(cursor);
+            fail("Block should be restarted");
+        } catch (ExportDecoderBase.RestartBlockException e) {
+            assertTrue(e.requestBackoff);
+        } finally {
+            decoder.sourceNoLongerAdvertised(null);
+            client.shutdown();
+        }
+    }
+
+    static final int KEYS = 20;
+    static final int BLOCKS = 5;
+    static final int ROWS_PER_BLOCK = 400;
+
+    /**
+     * Export BLOCKS blocks of rows of KEYS keys, numbered in order for each key, to an in memory
+     * HSQL database and check all of them arrived with the rows of each key in order.
+     * @return the statistics of the decoder
+     */
+    private ExportTargetStats exportToEmbeddedDatabase(String dbName, Properties config) throws Exception
+    {
+        final String url = HSQLDriverForTest.URL_PREFIX + "mem:" + dbName;
+        Class.forName(HSQLDriverForTest.class.getName());
+        try (Connection conn = DriverManager.getConnection(url, "SA", "")) {
+            // Row ids are assigned as rows are inserted, to check the order they were committed in
+            conn.createStatement().execute("CREATE TABLE ORDERS (ID BIGINT GENERATED BY DEFAULT AS IDENTITY, "
+                    + "ORDER_KEY BIGINT, ORDER_SEQ INTEGER, ORDER_NAME VARCHAR(64))");
+        }
+
+        config.setProperty("jdbcurl", url);
+        config.setProperty("jdbcuser", "SA");
+        config.setProperty("jdbcpassword", "");
+        config.setProperty("jdbcdriver", HSQLDriverForTest.class.getName());
+        config.setProperty("createtable", "false");
+        config.setProperty("skipinternals", "true");
+        final JDBCExportClient client = new JDBCExportClient();
+        client.configure(config);
+
+        final VoltTable table = new VoltTable(
+                new VoltTable.ColumnInfo("VOLT_TRANSACTION_ID", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("VOLT_EXPORT_TIMESTAMP", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("VOLT_EXPORT_SEQUENCE_NUMBER", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("VOLT_PARTITION_ID", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("VOLT_OP", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("VOLT_SITE_ID", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("ORDER_KEY", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("ORDER_SEQ", VoltType.INTEGER),
+                new VoltTable.ColumnInfo("ORDER_NAME", VoltType.STRING));
+        final ExportDecoderBase decoder = client.constructExportDecoder(constructTestSource(false, 0, "ORDERS"));
+        final ExportRowCursor cursor = new ExportRowCursor();
+        try {
+            final int[] seq = new int[KEYS];
+            for (int block = 0; block < BLOCKS; block++) {
+                table.clearRowData();
+                for (int i = 0; i < ROWS_PER_BLOCK; i++) {
+                    final int key = (i * 7 + block) % KEYS;
+                    table.addRow(0L, 0L, 0L, 0L, 0L, 0L, (long)key, seq[key]++, "name" + i);
+                }
+                final ExportRow schema = encodeSchema(table, "ORDERS", 0);
+                final ByteBuffer rows = encodeRows(table, "ORDERS", 6);
+                cursor.reset(schema, 0, rows);
+                decoder.processRows(cursor);
+            }
+        } finally {
+            decoder.sourceNoLongerAdvertised(null);
+            client.shutdown();
+        }
+
+        final Map<Long, Integer> lastSeq = new HashMap<>();
+        int count = 0;
+        try (Connection conn = DriverManager.getConnection(url, "SA", "")) {
+            final Statement stmt = conn.createStatement();
+            final ResultSet rs = stmt.executeQuery("SELECT ORDER_KEY, ORDER_SEQ, ORDER_NAME FROM ORDERS ORDER BY ID");
+            while (rs.next()) {
+                final long key = rs.getLong(1);
+                final int seq = rs.getInt(2);
+                final Integer last = lastSeq.put(key, seq);
+                assertEquals("key " + key, last == null ? 0 : last + 1, seq);
+                assertTrue(rs.getString(3).startsWith("name"));
+                count++;
+            }
+            stmt.execute("SHUTDOWN");
+        }
+        assertEquals(BLOCKS * ROWS_PER_BLOCK, count);
+        assertEquals(KEYS, lastSeq.size());
+        return decoder.getTargetStats();
+    }
 }
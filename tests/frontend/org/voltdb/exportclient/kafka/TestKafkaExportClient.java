@@ -23,19 +23,302 @@
 
 package org.voltdb.exportclient.kafka;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import static junit.framework.Assert.assertFalse;
 
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.junit.Test;
 import org.voltdb.exportclient.ExportClientTestBase;
+import org.voltdb.exportclient.ExportDecoderBase;
 import org.voltdb.exportclient.ExportDecoderBase.BinaryEncoding;
+import org.voltdb.exportclient.ExportDecoderBase.RestartBlockException;
+import org.voltdb.exportclient.ExportRow;
+import org.voltdb.exportclient.ExportRowCursor;
+import org.voltdb.exportclient.decode.AvroDecoder;
+import org.voltdb.types.TimestampType;
 
 public class TestKafkaExportClient extends ExportClientTestBase {
+
+    static final int PARTITION = 5;
+    static final int SMALLINT_COL = 7;
+
+    /**
+     * Client sending the records of its binary value formats to a mock producer.
+     */
+    static class MockedKafkaExportClient extends KafkaExportClient {
+        final MockProducer m_mock;
+
+        MockedKafkaExportClient(MockProducer mock) {
+            m_mock = mock;
+        }
+
+        @Override
+        Producer<byte[], byte[]> createBinaryProducer() {
+            return m_mock;
+        }
+    }
+
+    /**
+     * Add the rows of a block, after the test source was constructed: that clears the table.
+     */
+    private static void addRows() {
+        long l = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            vtable.addRow(l + i, l, l, PARTITION, l, l, (byte) i, (short) (i * 2), i * 3, i * 4L, i * 0.5,
+                    new TimestampType(i), "row " + i, new BigDecimal("88.5"), GEOG_POINT, GEOG);
+        }
+        vtable.addRow(l, l, l, PARTITION, l, l, null, null, null, null, null, null, null, null, null, null);
+    }
+
+    private static Properties binaryConfig(String format) {
+        final Properties config = new Properties();
+        config.setProperty(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "fakehost");
+        config.setProperty("value.format", format);
+        return config;
+    }
+
+    private static ExportRowCursor cursor(ExportRow schema) throws Exception {
+        ExportRowCursor cursor = new ExportRowCursor();
+        cursor.reset(schema, PARTITION, encodeRows(vtable, "mytable", SMALLINT_COL));
+        return cursor;
+    }
+
+    @Test
+    public void testValueFormatConfig() throws Exception
+    {
+        KafkaExportClient client = new KafkaExportClient();
+        client.configure(binaryConfig("Avro"));
+        assertEquals(KafkaExportClient.ValueFormat.AVRO, client.m_valueFormat);
+        assertEquals(ByteArraySerializer.class.getName(), client.m_producerConfig.getProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG));
+        assertEquals(ByteArraySerializer.class.getName(), client.m_producerConfig.getProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG));
+        assertFalse(client.m_producerConfig.containsKey("value.format"));
+
+        client = new KafkaExportClient();
+        try {
+            client.configure(binaryConfig("json"));
+            fail("unknown value format");
+        } catch (IllegalArgumentException e) {
+        }
+
+        // The binary formats serialize keys and values themselves
+        for (String serializer : new String[] {
+                ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG }) {
+            Properties config = binaryConfig("raw");
+            config.setProperty(serializer, StringSerializer.class.getName());
+            try {
+                new KafkaExportClient().configure(config);
+                fail("serializer overridden by the value format");
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains(serializer));
+            }
+            config.setProperty(serializer, ByteArraySerializer.class.getName());
+            new KafkaExportClient().configure(config);
+        }
+    }
+
+    @Test
+    public void testRawValueFormat() throws Exception
+    {
+        final MockProducer mock = new MockProducer(true);
+        final KafkaExportClient client = new MockedKafkaExportClient(mock);
+        client.configure(binaryConfig("raw"));
+        final ExportDecoderBase decoder = client.constructExportDecoder(constructTestSource(false, PARTITION, "mytable"));
+        addRows();
+        final ExportRow schema = encodeSchema(vtable, "mytable", PARTITION);
+        try {
+            ExportRowCursor rows = cursor(schema);
+            decoder.processRows(rows);
+
+            List<ProducerRecord<byte[], byte[]>> sent = mock.history();
+            assertEquals(vtable.getRowCount(), sent.size());
+            ByteBuffer legacy = encodeRows(vtable, "mytable", SMALLINT_COL);
+            for (ProducerRecord<byte[], byte[]> record : sent) {
+                assertEquals("voltdbexportmytable", record.topic());
+                byte[] expected = new byte[legacy.getInt()];
+                legacy.get(expected);
+                assertArrayEquals(expected, record.value());
+                ExportRow row = ExportRow.decodeRow(schema, PARTITION, 0L, record.value());
+                assertEquals(row.partitionValue.toString(), new String(record.key(), StandardCharsets.UTF_8));
+            }
+            assertEquals(vtable.getRowCount(), decoder.getTargetStats().getBatchSize());
+        } finally {
+            decoder.sourceNoLongerAdvertised(null);
+        }
+    }
+
+    @Test
+    public void testAvroValueFormat() throws Exception
+    {
+        final MockProducer mock = new MockProducer(true);
+        final KafkaExportClient client = new MockedKafkaExportClient(mock);
+        client.configure(binaryConfig("avro"));
+        final ExportDecoderBase decoder = client.constructExportDecoder(constructTestSource(false, PARTITION, "mytable"));
+        addRows();
+        final ExportRow schema = encodeSchema(vtable, "mytable", PARTITION);
+        try {
+            decoder.processRows(cursor(schema));
+            // Rows of a second block are written with the same schema
+            decoder.processRows(cursor(schema));
+
+            List<ProducerRecord<byte[], byte[]>> sent = mock.history();
+            assertEquals(2 * vtable.getRowCount(), sent.size());
+
+            AvroDecoder.Builder builder = new AvroDecoder.Builder();
+            builder.skipInternalFields(client.m_skipInternals);
+            AvroDecoder expectedDecoder = builder.build();
+            Schema avroSchema = expectedDecoder.getSchema(schema.generation, schema.tableName, schema.types, schema.names);
+            GenericDatumReader<GenericRecord> reader = new GenericDatumReader<>(avroSchema);
+            GenericDatumWriter<GenericRecord> writer = new GenericDatumWriter<>(avroSchema);
+            ExportRowCursor rows = cursor(schema);
+            for (int i = 0; i < sent.size(); i++) {
+                if (!rows.advance()) {
+                    rows = cursor(schema);
+                    assertTrue(rows.advance());
+                }
+                ExportRow row = rows.toExportRow();
+                GenericRecord expected = expectedDecoder.decode(
+                        row.generation, row.tableName, row.types, row.names, null, row.values);
+                GenericRecord actual = reader.read(null, DecoderFactory.get().binaryDecoder(sent.get(i).value(), null));
+                assertEquals(expected.toString(), actual.toString());
+
+                // Same encoding as the generic writer
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+                writer.write(expected, encoder);
+                encoder.flush();
+                assertArrayEquals(out.toByteArray(), sent.get(i).value());
+            }
+        } finally {
+            decoder.sourceNoLongerAdvertised(null);
+        }
+    }
+
+    @Test
+    public void testBlockWaitsOnceForAcks() throws Exception
+    {
+        final MockProducer mock = new MockProducer(false);
+        final KafkaExportClient client = new MockedKafkaExportClient(mock);
+        final Properties config = binaryConfig("raw");
+        config.setProperty(ProducerConfig.ACKS_CONFIG, "all");
+        client.configure(config);
+        final ExportDecoderBase decoder = client.constructExportDecoder(constructTestSource(false, PARTITION, "mytable"));
+        addRows();
+        final ExportRow schema = encodeSchema(vtable, "mytable", PARTITION);
+        final ExecutorService es = Executors.newSingleThreadExecutor();
+        try {
+            // Every record is handed to the producer before the block waits for the first ack
+            Future<?> block = es.submit(() -> {
+                decoder.processRows(cursor(schema));
+                return null;
+            });
+            while (mock.history().size() < vtable.getRowCount()) {
+                Thread.sleep(1);
+            }
+            assertFalse(block.isDone());
+            while (mock.completeNext()) {}
+            block.get(10, TimeUnit.SECONDS);
+            assertEquals(vtable.getRowCount(), decoder.getTargetStats().getBatchSize());
+
+            // One failed record restarts the block once all are acknowledged
+            block = es.submit(() -> {
+                decoder.processRows(cursor(schema));
+                return null;
+            });
+            while (mock.history().size() < 2 * vtable.getRowCount()) {
+                Thread.sleep(1);
+            }
+            mock.errorNext(new KafkaException("not the leader"));
+            while (mock.completeNext()) {}
+            try {
+                block.get(10, TimeUnit.SECONDS);
+                fail("failed send");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RestartBlockException);
+            }
+        } finally {
+            es.shutdownNow();
+            decoder.sourceNoLongerAdvertised(null);
+        }
+    }
+
+    @Test
+    public void testBlockAckTimeout() throws Exception
+    {
+        final MockProducer mock = new MockProducer(false);
+        final KafkaExportClient client = new MockedKafkaExportClient(mock);
+        final Properties config = binaryConfig("raw");
+        config.setProperty(ProducerConfig.ACKS_CONFIG, "1");
+        config.setProperty("acks.retry.timeout", "50");
+        client.configure(config);
+        final ExportDecoderBase decoder = client.constructExportDecoder(constructTestSource(false, PARTITION, "mytable"));
+        addRows();
+        try {
+            decoder.processRows(cursor(encodeSchema(vtable, "mytable", PARTITION)));
+            fail("acks timed out");
+        } catch (RestartBlockException e) {
+            assertEquals("Send operation timed out", e.getMessage());
+        } finally {
+            decoder.sourceNoLongerAdvertised(null);
+        }
+    }
+    @Test
+    public void testCorruptRowWithUnackedSends() throws Exception
+    {
+        final MockProducer mock = new MockProducer(false);
+        final KafkaExportClient client = new MockedKafkaExportClient(mock);
+        final Properties config = binaryConfig("raw");
+        config.setProperty(ProducerConfig.ACKS_CONFIG, "1");
+        config.setProperty("acks.retry.timeout", "50");
+        client.configure(config);
+        final ExportDecoderBase decoder = client.constructExportDecoder(constructTestSource(false, PARTITION, "mytable"));
+        addRows();
+        final ExportRow schema = encodeSchema(vtable, "mytable", PARTITION);
+        // claim the second row is longer than what is left of the block
+        final ByteBuffer rows = encodeRows(vtable, "mytable", SMALLINT_COL);
+        rows.putInt(4 + rows.getInt(0), rows.capacity());
+        final ExportRowCursor cursor = new ExportRowCursor();
+        cursor.reset(schema, PARTITION, rows);
+        try {
+            decoder.processRows(cursor);
+            fail("decoded a corrupt row");
+        } catch (IOException e) {
+            // the decode error is reported, not the timed out acks of the row sent before it
+            assertEquals(1, mock.history().size());
+        } finally {
+            decoder.sourceNoLongerAdvertised(null);
+        }
+    }
+
     @Test
     public void testConfigValidation() throws Exception
     {
@@ -0,0 +1,212 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb.importer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.Test;
+import org.voltdb.ParameterSet;
+import org.voltdb.VoltType;
+import org.voltdb.importer.formatter.FormatException;
+import org.voltdb.importer.formatter.FormattedRow;
+import org.voltdb.importer.formatter.builtin.VoltCSVFormatter;
+import org.voltdb.importer.formatter.builtin.VoltSuperCSVFormatter;
+
+import au.com.bytecode.opencsv_voltpatches.CSVParser;
+
+public class TestFormattedRow {
+
+    private static ByteBuffer wrap(String line) {
+        return ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testTypedFields() throws Exception {
+        FormattedRow row = new FormattedRow();
+        row.addLong(-42);
+        row.addDouble(2.5);
+        row.addNull();
+        row.addString("héllo");
+        row.addString("-9223372036854775808");
+
+        assertEquals(5, row.size());
+        assertEquals(VoltType.BIGINT, row.getType(0));
+        assertEquals(-42, row.getLong(0));
+        assertEquals(2.5, row.getDouble(1), 0.0);
+        assertTrue(row.isNull(2));
+        assertNull(row.getString(2));
+        assertEquals("héllo", row.getString(3));
+        assertEquals(Long.MIN_VALUE, row.getLong(4));
+        assertArrayEquals(new Object[] { -42L, 2.5, null, "héllo", "-9223372036854775808" }, row.toArray());
+
+        for (String bad : new String[] { "", "-", "1a", "9223372036854775808", " 1" }) {
+            row.clear();
+            row.addString(bad);
+            try {
+                row.getLong(0);
+                fail("parsed " + bad);
+            } catch (NumberFormatException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testGrowAndReuse() throws Exception {
+        FormattedRow row = new FormattedRow();
+        StringBuilder wide = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            row.addString("value" + i);
+            wide.append('x');
+        }
+        row.addString(wide.toString());
+        assertEquals(1001, row.size());
+        assertEquals("value999", row.getString(999));
+        assertEquals(wide.toString(), row.getString(1000));
+
+        row.clear();
+        assertEquals(0, row.size());
+        row.addLong(7);
+        assertEquals(7, row.getLong(0));
+    }
+
+    @Test
+    public void testFlattenMatchesParameterSet() throws Exception {
+        FormattedRow row = new FormattedRow();
+        row.addString("12");
+        row.addNull();
+        row.addLong(Long.MAX_VALUE);
+        row.addDouble(-0.125);
+        row.addString("");
+        row.addString("naïve");
+
+        ParameterSet expected = ParameterSet.fromArrayNoCopy(row.toArray());
+        assertEquals(expected.getSerializedSize(), row.getSerializedSize());
+        ByteBuffer expectedBuf = ByteBuffer.allocate(expected.getSerializedSize());
+        expected.flattenToBuffer(expectedBuf);
+        ByteBuffer buf = ByteBuffer.allocate(row.getSerializedSize());
+        row.flattenToBuffer(buf);
+        assertArrayEquals(expectedBuf.array(), buf.array());
+
+        buf.flip();
+        assertArrayEquals(row.toArray(), ParameterSet.fromByteBuffer(buf).toArray());
+    }
+
+    @Test
+    public void testCSVFormatter() throws Exception {
+        VoltCSVFormatter formatter = new VoltCSVFormatter("csv", new Properties());
+        FormattedRow row = new FormattedRow();
+
+        assertTrue(formatter.transform(wrap("12,\"a,b\",NULL,\\N,\"\"\"q\"\"\", é "), row));
+        assertArrayEquals(new Object[] { "12", "a,b", null, null, "\"q\"", " é " }, row.toArray());
+        assertEquals(12, row.getLong(0));
+
+        assertFalse(formatter.transform(null, row));
+        assertEquals(0, row.size());
+        assertNull(formatter.transform(null));
+
+        try {
+            formatter.transform(wrap("1,\"open"), row);
+            fail("unterminated quote");
+        } catch (FormatException expected) {
+        }
+
+        Properties props = new Properties();
+        props.setProperty("separator", "|");
+        VoltCSVFormatter tsv = new VoltCSVFormatter("tsv", props);
+        assertTrue(tsv.transform(wrap("1|two\tthree|"), row));
+        assertArrayEquals(new Object[] { "1", "two\tthree", "" }, row.toArray());
+    }
+
+    @Test
+    public void testSuperCSVFormatter() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("nullstring", "none");
+        VoltSuperCSVFormatter formatter = new VoltSuperCSVFormatter("csv", props);
+        FormattedRow row = new FormattedRow();
+        assertTrue(formatter.transform(wrap("1,none,\"x,y\""), row));
+        assertArrayEquals(new Object[] { "1", null, "x,y" }, row.toArray());
+        assertFalse(formatter.transform(null, row));
+    }
+
+    /**
+     * The byte level tokenizer must split every record exactly like the CSVParser it replaced,
+     * including the state CSVParser carries over from one record to the next.
+     */
+    @Test
+    public void testCSVMatchesCSVParser() throws Exception {
+        final String alphabet = ",\"\\N ab\té\u2003";
+        Random random = new Random(12345);
+        for (boolean strictQuotes : new boolean[] { false, true }) {
+            for (boolean ignoreLeadingWhiteSpace : new boolean[] { true, false }) {
+                Properties props = new Properties();
+                props.setProperty("strictquotes", Boolean.toString(strictQuotes));
+                props.setProperty("ignoreleadingwhitespace", Boolean.toString(ignoreLeadingWhiteSpace));
+                VoltCSVFormatter formatter = new VoltCSVFormatter("csv", props);
+                CSVParser parser = new CSVParser(',', '"', '\\', strictQuotes, ignoreLeadingWhiteSpace);
+                FormattedRow row = new FormattedRow();
+
+                for (int n = 0; n < 20000; n++) {
+                    StringBuilder sb = new StringBuilder();
+                    int length = random.nextInt(12);
+                    for (int i = 0; i < length; i++) {
+                        sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                    }
+                    String line = sb.toString();
+
+                    String[] expected;
+                    try {
+                        expected = parser.parseLine(line);
+                    } catch (IOException e) {
+                        expected = null;
+                    }
+                    try {
+                        formatter.transform(wrap(line), row);
+                        assertTrue("accepted [" + line + "]", expected != null);
+                    } catch (FormatException e) {
+                        assertNull("rejected [" + line + "]", expected);
+                        continue;
+                    }
+                    assertEquals("[" + line + "]", expected.length, row.size());
+                    for (int i = 0; i < expected.length; i++) {
+                        String value = expected[i];
+                        if ("NULL".equals(value) || "\\N".equals(value) || "\"\\N\"".equals(value)) {
+                            value = null;
+                        }
+                        assertEquals("[" + line + "] field " + i, value, row.getString(i));
+                    }
+                }
+            }
+        }
+    }
+}
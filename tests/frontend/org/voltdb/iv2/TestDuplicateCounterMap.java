@@ -0,0 +1,162 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.voltcore.utils.Pair;
+
+public class TestDuplicateCounterMap extends TestCase {
+
+    private static Pair<Long, Long> key(long txnId, long spHandle) {
+        return Pair.of(txnId, spHandle);
+    }
+
+    private static final Comparator<Pair<Long, Long>> KEY_ORDER = (a, b) -> {
+        final int cmp = Long.compare(a.getFirst(), b.getFirst());
+        return cmp != 0 ? cmp : Long.compare(a.getSecond(), b.getSecond());
+    };
+
+    private static void assertSameContents(TreeMap<Pair<Long, Long>, DuplicateCounter> expected, DuplicateCounterMap map) {
+        assertEquals(expected.size(), map.size());
+        int rank = 0;
+        for (Map.Entry<Pair<Long, Long>, DuplicateCounter> e : expected.entrySet()) {
+            assertEquals(e.getKey().getFirst().longValue(), map.txnIdAt(rank));
+            assertEquals(e.getKey().getSecond().longValue(), map.spHandleAt(rank));
+            assertSame(e.getValue(), map.counterAt(rank));
+            rank++;
+        }
+    }
+
+    @Test
+    public void testOrderedByTxnIdThenSpHandle() {
+        DuplicateCounterMap map = new DuplicateCounterMap();
+        DuplicateCounter a = mock(DuplicateCounter.class);
+        DuplicateCounter b = mock(DuplicateCounter.class);
+        DuplicateCounter c = mock(DuplicateCounter.class);
+        assertNull(map.putIfAbsent(10, 12, a));
+        assertNull(map.putIfAbsent(5, 13, b));
+        assertNull(map.putIfAbsent(10, 11, c));
+        assertSame(a, map.putIfAbsent(10, 12, c));
+        assertEquals(3, map.size());
+        assertSame(b, map.counterAt(0));
+        assertSame(c, map.counterAt(1));
+        assertSame(a, map.counterAt(2));
+
+        assertEquals(0, map.floor(5, Long.MAX_VALUE));
+        assertEquals(-1, map.floor(4, Long.MAX_VALUE));
+        assertEquals(2, map.floor(10, Long.MAX_VALUE));
+        assertEquals(1, map.ceiling(10, 0));
+        assertEquals(-1, map.ceiling(11, 0));
+
+        assertSame(c, map.remove(10, 11));
+        assertNull(map.remove(10, 11));
+        assertNull(map.get(10, 11));
+        assertSame(a, map.get(10, 12));
+        map.removeTransaction(10);
+        assertEquals(1, map.size());
+        assertSame(b, map.get(5, 13));
+    }
+
+    /*
+     * Compare against a TreeMap. Keys are mostly appended in order and retired
+     * oldest first, like SP transactions, with out of order keys and removals
+     * from the middle mixed in like MP fragments and restarts, and enough
+     * outstanding keys to wrap and grow the ring.
+     */
+    @Test
+    public void testRandomizedAgainstTreeMap() {
+        final Random r = new Random(42);
+        DuplicateCounterMap map = new DuplicateCounterMap();
+        TreeMap<Pair<Long, Long>, DuplicateCounter> expected = new TreeMap<>(KEY_ORDER);
+        List<DuplicateCounter> counters = new ArrayList<>();
+        for (int ii = 0; ii < 16; ii++) {
+            counters.add(mock(DuplicateCounter.class));
+        }
+        long next = 1000;
+        for (int ii = 0; ii < 100000; ii++) {
+            final int op = r.nextInt(20);
+            final int target = ii % 20000 < 10000 ? 200 : 20;
+            final DuplicateCounter counter = counters.get(r.nextInt(counters.size()));
+            if (op < 9 && expected.size() < target) {
+                next += 1 + r.nextInt(3);
+                assertEquals(expected.putIfAbsent(key(next, next), counter), map.putIfAbsent(next, next, counter));
+            } else if (op < 11) {
+                final long txnId = next - r.nextInt(300);
+                final long spHandle = txnId + r.nextInt(3);
+                assertEquals(expected.putIfAbsent(key(txnId, spHandle), counter),
+                             map.putIfAbsent(txnId, spHandle, counter));
+            } else if (op < 18) {
+                if (!expected.isEmpty()) {
+                    final Pair<Long, Long> oldest = expected.firstKey();
+                    assertSame(expected.remove(oldest), map.remove(oldest.getFirst(), oldest.getSecond()));
+                }
+            } else if (op < 19) {
+                final long txnId = next - r.nextInt(300);
+                final long spHandle = txnId + r.nextInt(3);
+                assertSame(expected.remove(key(txnId, spHandle)), map.remove(txnId, spHandle));
+            } else {
+                final long txnId = next - r.nextInt(300);
+                Iterator<Pair<Long, Long>> iter = expected.keySet().iterator();
+                while (iter.hasNext()) {
+                    if (iter.next().getFirst() == txnId) {
+                        iter.remove();
+                    }
+                }
+                map.removeTransaction(txnId);
+            }
+            if (ii % 1000 == 0) {
+                assertSameContents(expected, map);
+                final long txnId = next - r.nextInt(300);
+                final Pair<Long, Long> floor = expected.floorKey(key(txnId, Long.MAX_VALUE));
+                final int floorRank = map.floor(txnId, Long.MAX_VALUE);
+                if (floor == null) {
+                    assertEquals(-1, floorRank);
+                } else {
+                    assertEquals(floor.getSecond().longValue(), map.spHandleAt(floorRank));
+                }
+                final Pair<Long, Long> ceiling = expected.ceilingKey(key(txnId, 0));
+                final int ceilingRank = map.ceiling(txnId, 0);
+                if (ceiling == null) {
+                    assertEquals(-1, ceilingRank);
+                } else {
+                    assertEquals(ceiling.getFirst().longValue(), map.txnIdAt(ceilingRank));
+                    assertEquals(ceiling.getSecond().longValue(), map.spHandleAt(ceilingRank));
+                }
+            }
+        }
+        assertSameContents(expected, map);
+    }
+}
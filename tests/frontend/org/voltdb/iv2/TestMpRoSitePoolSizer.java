@@ -0,0 +1,150 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestMpRoSitePoolSizer {
+
+    static final long INTERVAL = 1_000_000_000L;
+    static final long THRESHOLD = 1_000_000L;
+
+    // Min 2, base 4, max 10, grows below 85% CPU
+    MpRoSitePoolSizer makeSizer() {
+        return new MpRoSitePoolSizer(2, 4, 10, THRESHOLD, 0.85, INTERVAL, 0);
+    }
+
+    // Keep every allowed site busy for the interval with reads waiting waitNanos for one
+    long saturate(MpRoSitePoolSizer sizer, long now, long waitNanos) {
+        int busy = 0;
+        while (sizer.allows(busy)) {
+            sizer.dispatched(waitNanos);
+            sizer.busyChanged(now, ++busy);
+        }
+        sizer.rejected();
+        now += INTERVAL;
+        assertTrue(sizer.intervalElapsed(now));
+        return now;
+    }
+
+    @Test
+    public void testBaseSizeAlwaysAllowed() {
+        MpRoSitePoolSizer sizer = makeSizer();
+        assertEquals(4, sizer.getLimit());
+        assertTrue(sizer.allows(3));
+        assertFalse(sizer.allows(4));
+        assertFalse(sizer.intervalElapsed(INTERVAL - 1));
+    }
+
+    @Test
+    public void testGrowsWhenReadsWaitAndCpuIsFree() {
+        MpRoSitePoolSizer sizer = makeSizer();
+        long now = saturate(sizer, 0, 2 * THRESHOLD);
+        assertEquals(5, sizer.adjust(now, 0.5));
+        assertEquals(1, sizer.getGrows());
+        assertEquals(100, sizer.getUtilization());
+        assertEquals(2 * THRESHOLD, sizer.getAvgWaitNanos());
+
+        // Never past the maximum
+        for (int ii = 0; ii < 10; ii++) {
+            sizer.busyChanged(now, 0);
+            now = saturate(sizer, now, 2 * THRESHOLD);
+            sizer.adjust(now, -1);
+        }
+        assertEquals(10, sizer.getLimit());
+        assertFalse(sizer.allows(10));
+    }
+
+    @Test
+    public void testNoGrowthWithoutWaitOrCpu() {
+        MpRoSitePoolSizer sizer = makeSizer();
+        // Saturated but reads barely waited
+        long now = saturate(sizer, 0, THRESHOLD / 2);
+        assertEquals(4, sizer.adjust(now, 0.1));
+        // Reads waited but the CPU is spent
+        sizer.busyChanged(now, 0);
+        now = saturate(sizer, now, 2 * THRESHOLD);
+        assertEquals(4, sizer.adjust(now, 0.9));
+        // Long waits without saturation are the writes' doing
+        sizer.busyChanged(now, 0);
+        sizer.dispatched(10 * THRESHOLD);
+        now += INTERVAL;
+        assertEquals(4, sizer.adjust(now, 0.1));
+        assertEquals(0, sizer.getGrows());
+    }
+
+    @Test
+    public void testSaturatedWithoutDispatchCountsTheInterval() {
+        MpRoSitePoolSizer sizer = makeSizer();
+        for (int busy = 1; busy <= 4; busy++) {
+            sizer.busyChanged(0, busy);
+        }
+        sizer.adjust(INTERVAL, 0.1);
+        // Nothing finished in the next interval while reads queued up
+        sizer.rejected();
+        assertEquals(5, sizer.adjust(2 * INTERVAL, 0.1));
+        assertEquals(INTERVAL, sizer.getMaxWaitNanos());
+    }
+
+    @Test
+    public void testShrinksBackToBaseWhenIdle() {
+        MpRoSitePoolSizer sizer = makeSizer();
+        long now = 0;
+        for (int ii = 0; ii < 10; ii++) {
+            sizer.busyChanged(now, 0);
+            now = saturate(sizer, now, 2 * THRESHOLD);
+            sizer.adjust(now, 0.1);
+        }
+        assertEquals(10, sizer.getLimit());
+        sizer.busyChanged(now, 1);
+        now += INTERVAL;
+        assertEquals(8, sizer.adjust(now, 0.1));
+        assertEquals(10, sizer.getUtilization());
+        for (int ii = 0; ii < 10; ii++) {
+            now += INTERVAL;
+            sizer.adjust(now, 0.1);
+        }
+        assertEquals(4, sizer.getLimit());
+        assertEquals(4, sizer.getShrinks());
+    }
+
+    @Test
+    public void testRetiresIdleSitesDownToPeakOrMinimum() {
+        MpRoSitePoolSizer sizer = makeSizer();
+        // Nothing to go on before the first interval
+        assertFalse(sizer.shouldRetire(10));
+        sizer.busyChanged(0, 3);
+        sizer.busyChanged(10, 0);
+        sizer.adjust(INTERVAL, 0.1);
+        assertTrue(sizer.shouldRetire(4));
+        assertFalse(sizer.shouldRetire(3));
+        sizer.adjust(2 * INTERVAL, 0.1);
+        assertTrue(sizer.shouldRetire(3));
+        assertFalse(sizer.shouldRetire(2));
+    }
+}
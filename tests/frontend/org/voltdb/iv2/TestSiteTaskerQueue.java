@@ -0,0 +1,217 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.voltdb.QueueDepthTracker;
+import org.voltdb.SiteProcedureConnection;
+import org.voltdb.StarvationTracker;
+import org.voltdb.rejoin.TaskLog;
+
+public class TestSiteTaskerQueue {
+
+    private static class NumberedTask extends SiteTasker {
+        final int m_producer;
+        final int m_sequence;
+
+        NumberedTask(int producer, int sequence) {
+            m_producer = producer;
+            m_sequence = sequence;
+        }
+
+        @Override
+        public void run(SiteProcedureConnection siteConnection) {}
+
+        @Override
+        public void runForRejoin(SiteProcedureConnection siteConnection, TaskLog taskLog) {}
+    }
+
+    private static SiteTaskerQueue createQueue(long spinNanos, long yieldNanos) {
+        SiteTaskerQueue queue = new SiteTaskerQueue(0, spinNanos, yieldNanos);
+        queue.setStarvationTracker(new StarvationTracker(0));
+        queue.setupQueueDepthTracker(0);
+        return queue;
+    }
+
+    private static int currentDepth(QueueDepthTracker tracker) {
+        Object[] row = tracker.getStatsRows(false, System.currentTimeMillis())[0];
+        // After TIMESTAMP, HOST_ID, HOSTNAME and SITE_ID
+        return (Integer) row[4];
+    }
+
+    @Test
+    public void testSingleThreadedOrderAndDepth() throws Exception {
+        SiteTaskerQueue queue = new SiteTaskerQueue(0, 0, 0);
+        queue.setStarvationTracker(new StarvationTracker(0));
+        QueueDepthTracker tracker = queue.setupQueueDepthTracker(0);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        assertNull(queue.peek());
+
+        NumberedTask[] tasks = new NumberedTask[10];
+        for (int ii = 0; ii < tasks.length; ii++) {
+            tasks[ii] = new NumberedTask(0, ii);
+            queue.offer(tasks[ii]);
+        }
+        assertEquals(10, queue.size());
+        assertEquals(10, currentDepth(tracker));
+        assertSame(tasks[0], queue.peek());
+        assertSame(tasks[0], queue.take());
+        assertSame(tasks[1], queue.poll());
+
+        SiteTasker[] batch = new SiteTasker[5];
+        assertEquals(5, queue.drainTo(batch));
+        for (int ii = 0; ii < 5; ii++) {
+            assertSame(tasks[ii + 2], batch[ii]);
+        }
+        assertEquals(3, queue.drainTo(batch));
+        assertSame(tasks[9], batch[2]);
+        assertEquals(0, queue.drainTo(batch));
+        assertTrue(queue.isEmpty());
+        assertEquals(0, currentDepth(tracker));
+    }
+
+    @Test
+    public void testParkedTakeWakesOnOffer() throws Exception {
+        final SiteTaskerQueue queue = createQueue(0, 0);
+        final AtomicReference<SiteTasker> taken = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread site = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    taken.set(queue.take());
+                } catch (InterruptedException e) {
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+        site.start();
+        // Let the site thread get past spinning and park
+        Thread.sleep(100);
+        assertEquals(1, done.getCount());
+        NumberedTask task = new NumberedTask(0, 0);
+        queue.offer(task);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertSame(task, taken.get());
+    }
+
+    @Test
+    public void testTakeIsInterruptible() throws Exception {
+        final SiteTaskerQueue queue = createQueue(0, TimeUnit.MILLISECONDS.toNanos(1));
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        Thread site = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    queue.take();
+                    fail();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+        };
+        site.start();
+        Thread.sleep(50);
+        site.interrupt();
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+    }
+
+    /*
+     * Several producers against a consumer that alternates take, poll and
+     * drainTo. Every task must arrive exactly once and each producer's tasks in
+     * the order it offered them.
+     */
+    @Test
+    public void testProducersKeepTheirOrder() throws Exception {
+        final int producers = 4;
+        final int perProducer = 50000;
+        for (long[] wait : new long[][] { { 0, 0 }, { TimeUnit.MICROSECONDS.toNanos(50), TimeUnit.MICROSECONDS.toNanos(50) } }) {
+            final SiteTaskerQueue queue = createQueue(wait[0], wait[1]);
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread[] threads = new Thread[producers];
+            for (int pp = 0; pp < producers; pp++) {
+                final int producer = pp;
+                threads[pp] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        for (int ii = 0; ii < perProducer; ii++) {
+                            queue.offer(new NumberedTask(producer, ii));
+                            if (ii % 1000 == 0) {
+                                Thread.yield();
+                            }
+                        }
+                    }
+                };
+                threads[pp].start();
+            }
+            start.countDown();
+
+            int[] next = new int[producers];
+            SiteTasker[] batch = new SiteTasker[16];
+            int received = 0;
+            while (received < producers * perProducer) {
+                final int count;
+                switch (received % 3) {
+                case 0:
+                    batch[0] = queue.take();
+                    count = 1;
+                    break;
+                case 1:
+                    batch[0] = queue.poll();
+                    count = batch[0] == null ? 0 : 1;
+                    break;
+                default:
+                    count = queue.drainTo(batch);
+                }
+                for (int ii = 0; ii < count; ii++) {
+                    NumberedTask task = (NumberedTask) batch[ii];
+                    assertEquals(next[task.m_producer]++, task.m_sequence);
+                }
+                received += count;
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+            assertTrue(queue.isEmpty());
+            assertNull(queue.poll());
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TestMetricsRegistry {
+
+    @Test
+    public void testRegisteringAgainReturnsTheSeries() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter counter = registry.counter("test_events", "Events", "site", "1");
+        assertSame(counter, registry.counter("test_events", "Events", "site", "1"));
+        Counter other = registry.counter("test_events", "Events", "site", "2");
+        counter.inc();
+        counter.add(2);
+        other.inc();
+        assertEquals(3, counter.get());
+        assertEquals(1, other.get());
+    }
+
+    @Test
+    public void testRetainSeries() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("test_invocations", "Invocations", "procedure", "Insert").inc();
+        registry.counter("test_invocations", "Invocations", "procedure", "Dropped").inc();
+        registry.retainSeries("test_invocations", "procedure", Arrays.asList("Insert", "Lookup"));
+        registry.retainSeries("test_unregistered", "procedure", Arrays.asList("Insert"));
+        assertEquals("# HELP test_invocations_total Invocations\n" +
+                     "# TYPE test_invocations_total counter\n" +
+                     "test_invocations_total{procedure=\"Insert\"} 1\n",
+                     registry.write(MetricsRegistry.Format.PROMETHEUS));
+        // A family with no series left isn't written
+        registry.retainSeries("test_invocations", "procedure", Collections.<String>emptyList());
+        assertEquals("", registry.write(MetricsRegistry.Format.PROMETHEUS));
+    }
+
+    @Test
+    public void testInvalidRegistrations() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("test_events", "Events");
+        String[][] invalid = {
+                { "test_events" },              // registered as a counter
+                { "1test" },                    // bad name
+                { "test_gauge", "kind" },       // label without a value
+                { "test_gauge", "quantile", "x" },
+                { "test_gauge", "bad-label", "x" } };
+        for (String[] args : invalid) {
+            try {
+                String[] labels = new String[args.length - 1];
+                System.arraycopy(args, 1, labels, 0, labels.length);
+                registry.gauge(args[0], "Gauge", labels);
+                fail("Registered " + String.join(",", args));
+            } catch (IllegalArgumentException expected) {}
+        }
+    }
+
+    @Test
+    public void testPrometheusFormat() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("test_events", "Events seen", "procedure", "Say \"hi\"\\\n").add(5);
+        registry.gauge("test_depth", "Queue depth").set(7);
+        registry.gauge("test_supplied", "Supplied", () -> 42L);
+        assertEquals("# HELP test_depth Queue depth\n" +
+                     "# TYPE test_depth gauge\n" +
+                     "test_depth 7\n" +
+                     "# HELP test_events_total Events seen\n" +
+                     "# TYPE test_events_total counter\n" +
+                     "test_events_total{procedure=\"Say \\\"hi\\\"\\\\\\n\"} 5\n" +
+                     "# HELP test_supplied Supplied\n" +
+                     "# TYPE test_supplied gauge\n" +
+                     "test_supplied 42\n",
+                     registry.write(MetricsRegistry.Format.PROMETHEUS));
+    }
+
+    @Test
+    public void testOpenMetricsFormat() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("test_events", "Events \"seen\"", "kind", "read").inc();
+        registry.timer("test_latency_seconds", "Latency");
+        assertEquals("# HELP test_events Events \\\"seen\\\"\n" +
+                     "# TYPE test_events counter\n" +
+                     "test_events_total{kind=\"read\"} 1\n" +
+                     "# HELP test_latency_seconds Latency\n" +
+                     "# TYPE test_latency_seconds summary\n" +
+                     "test_latency_seconds{quantile=\"0.5\"} 0.0\n" +
+                     "test_latency_seconds{quantile=\"0.9\"} 0.0\n" +
+                     "test_latency_seconds{quantile=\"0.99\"} 0.0\n" +
+                     "test_latency_seconds{quantile=\"0.999\"} 0.0\n" +
+                     "test_latency_seconds_sum 0.0\n" +
+                     "test_latency_seconds_count 0\n" +
+                     "# EOF\n",
+                     registry.write(MetricsRegistry.Format.OPENMETRICS));
+        assertEquals(MetricsRegistry.Format.OPENMETRICS,
+                     MetricsRegistry.Format.fromAcceptHeader("application/openmetrics-text; version=1.0.0,text/plain;q=0.5"));
+        assertEquals(MetricsRegistry.Format.PROMETHEUS, MetricsRegistry.Format.fromAcceptHeader(null));
+    }
+
+    @Test
+    public void testTimer() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Timer timer = registry.timer("test_latency_seconds", "Latency", "kind", "write");
+        for (int ii = 1; ii <= 100; ii++) {
+            timer.update(TimeUnit.MILLISECONDS.toNanos(ii));
+        }
+        // Out of range values are clamped or dropped
+        timer.update(-1);
+        timer.update(TimeUnit.HOURS.toNanos(2));
+        assertEquals(101, timer.getCount());
+        // The 51st of 101 values, to the 3 significant digits the histogram keeps
+        long median = timer.getValueAtPercentile(50);
+        assertTrue("median " + median, Math.abs(median - 51000) <= 51);
+        assertEquals(TimeUnit.HOURS.toMicros(1), timer.getValueAtPercentile(100), TimeUnit.HOURS.toMicros(1) / 1000);
+
+        String text = registry.write(MetricsRegistry.Format.PROMETHEUS);
+        assertTrue(text, text.contains("test_latency_seconds_count{kind=\"write\"} 101\n"));
+        // 5.05 seconds for the first hundred and two hours for the last
+        assertTrue(text, text.contains("test_latency_seconds_sum{kind=\"write\"} 7205.05\n"));
+        assertTrue(text, text.contains("test_latency_seconds{kind=\"write\",quantile=\"0.5\"} 0.051"));
+    }
+}
@@ -179,6 +179,13 @@ public class TestProcedureDetails extends RegressionSuite {
         assertTrue(procedureDetail.getLong("MIN_PARAMETER_SET_SIZE") >= 0);
         assertTrue(procedureDetail.getLong("MAX_PARAMETER_SET_SIZE") >= 0);
         assertTrue(procedureDetail.getLong("AVG_PARAMETER_SET_SIZE") >= 0);
+        // Statements only keep histograms when asked to
+        if (procedureDetail.getString("STATEMENT").equals("<ALL>")) {
+            assertTrue(procedureDetail.getLong("P50_EXECUTION_TIME") > 0);
+            assertTrue(procedureDetail.getLong("P95_EXECUTION_TIME") >= procedureDetail.getLong("P50_EXECUTION_TIME"));
+            assertTrue(procedureDetail.getLong("P99_EXECUTION_TIME") >= procedureDetail.getLong("P95_EXECUTION_TIME"));
+            assertTrue(procedureDetail.getLong("P999_EXECUTION_TIME") >= procedureDetail.getLong("P99_EXECUTION_TIME"));
+        }
     }
 
     private void verifyRowsForStatement(String stmtName, long expectedInvocationCount,
@@ -142,18 +142,26 @@ public class TestStatisticsSuite extends StatisticsTestSuiteBase {
             // to check specifically for this error, otherwise things that
             // crash the cluster also turn into ProcCallExceptions and don't
             // trigger failure (ENG-2347)
-            assertEquals("Incorrect number of arguments to @Statistics (expects 2, received 0)",
+            assertEquals("Incorrect number of arguments to @Statistics (expects 2 or 3, received 0)",
                          ex.getMessage());
         }
         try {
             // extra stuff
-            client.callProcedure("@Statistics", "table", 0, "OHHAI");
+            client.callProcedure("@Statistics", "table", 0, "{}", "OHHAI");
             fail();
         }
         catch (ProcCallException ex) {
-            assertEquals("Incorrect number of arguments to @Statistics (expects 2, received 3)",
+            assertEquals("Incorrect number of arguments to @Statistics (expects 2 or 3, received 4)",
                          ex.getMessage());
         }
+        try {
+            // options that aren't JSON
+            client.callProcedure("@Statistics", "table", 0, "OHHAI");
+            fail();
+        }
+        catch (ProcCallException ex) {
+            assertTrue(ex.getMessage().startsWith("Third argument to @Statistics must be a JSON object of options"));
+        }
         try {
             // Invalid selector
             client.callProcedure("@Statistics", "garbage", 0);
@@ -491,7 +499,7 @@ public class TestStatisticsSuite extends StatisticsTestSuiteBase {
         // Based on doc, not code
         // HOST_ID, SITE_ID, and PARTITION_ID all differ.  Fixed to match
         // reality so tests would pass, but, ugh.
-        ColumnInfo[] expectedSchema = new ColumnInfo[9];
+        ColumnInfo[] expectedSchema = new ColumnInfo[11];
         expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
         expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
         expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
@@ -501,6 +509,8 @@ public class TestStatisticsSuite extends StatisticsTestSuiteBase {
         expectedSchema[6] = new ColumnInfo("MESSAGES_READ", VoltType.BIGINT);
         expectedSchema[7] = new ColumnInfo("BYTES_WRITTEN", VoltType.BIGINT);
         expectedSchema[8] = new ColumnInfo("MESSAGES_WRITTEN", VoltType.BIGINT);
+        expectedSchema[9] = new ColumnInfo("NETWORK_THREAD_ID", VoltType.INTEGER);
+        expectedSchema[10] = new ColumnInfo("NETWORK_THREAD_UTILIZATION", VoltType.INTEGER);
         VoltTable expectedTable = new VoltTable(expectedSchema);
 
         VoltTable[] results = null;
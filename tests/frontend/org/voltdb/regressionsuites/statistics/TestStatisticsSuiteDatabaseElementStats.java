@@ -61,18 +61,26 @@ public class TestStatisticsSuiteDatabaseElementStats extends StatisticsTestSuite
             // to check specifically for this error, otherwise things that
             // crash the cluster also turn into ProcCallExceptions and don't
             // trigger failure (ENG-2347)
-            assertEquals("Incorrect number of arguments to @Statistics (expects 2, received 0)",
+            assertEquals("Incorrect number of arguments to @Statistics (expects 2 or 3, received 0)",
                          ex.getMessage());
         }
         try {
             // extra stuff
-            client.callProcedure("@Statistics", "table", 0, "OHHAI");
+            client.callProcedure("@Statistics", "table", 0, "{}", "OHHAI");
             fail();
         }
         catch (ProcCallException ex) {
-            assertEquals("Incorrect number of arguments to @Statistics (expects 2, received 3)",
+            assertEquals("Incorrect number of arguments to @Statistics (expects 2 or 3, received 4)",
                          ex.getMessage());
         }
+        try {
+            // options that aren't JSON
+            client.callProcedure("@Statistics", "table", 0, "OHHAI");
+            fail();
+        }
+        catch (ProcCallException ex) {
+            assertTrue(ex.getMessage().startsWith("Third argument to @Statistics must be a JSON object of options"));
+        }
         try {
             // Invalid selector
             client.callProcedure("@Statistics", "garbage", 0);
@@ -312,7 +320,7 @@ public class TestStatisticsSuiteDatabaseElementStats extends StatisticsTestSuite
         // Validate the schema of PROCEDUREDETAIL
         results = client.callProcedure("@Statistics", "proceduredetail", 0).getResults();
         assertEquals(1, results.length);
-        expectedSchema = new ColumnInfo[20];
+        expectedSchema = new ColumnInfo[24];
         expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
         expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
         expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
@@ -333,6 +341,10 @@ public class TestStatisticsSuiteDatabaseElementStats extends StatisticsTestSuite
         expectedSchema[17] = new ColumnInfo("AVG_PARAMETER_SET_SIZE", VoltType.INTEGER);
         expectedSchema[18] = new ColumnInfo("ABORTS", VoltType.BIGINT);
         expectedSchema[19] = new ColumnInfo("FAILURES", VoltType.BIGINT);
+        expectedSchema[20] = new ColumnInfo("P50_EXECUTION_TIME", VoltType.BIGINT);
+        expectedSchema[21] = new ColumnInfo("P95_EXECUTION_TIME", VoltType.BIGINT);
+        expectedSchema[22] = new ColumnInfo("P99_EXECUTION_TIME", VoltType.BIGINT);
+        expectedSchema[23] = new ColumnInfo("P999_EXECUTION_TIME", VoltType.BIGINT);
         expectedTable = new VoltTable(expectedSchema);
         validateSchema(results[0], expectedTable);
 
@@ -0,0 +1,137 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.sysprocs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.sysprocs.SnapshotRestoreResultSet.RestoreResultKey;
+
+public class TestSnapshotRestoreResultSet {
+
+    private static VoltTable resultsTable() {
+        return new VoltTable(
+                new ColumnInfo("HOST_ID", VoltType.INTEGER),
+                new ColumnInfo("HOSTNAME", VoltType.STRING),
+                new ColumnInfo("SITE_ID", VoltType.INTEGER),
+                new ColumnInfo("TABLE", VoltType.STRING),
+                new ColumnInfo("PARTITION_ID", VoltType.INTEGER),
+                new ColumnInfo("RESULT", VoltType.STRING),
+                new ColumnInfo("ERR_MSG", VoltType.STRING),
+                new ColumnInfo("ROWS", VoltType.BIGINT),
+                new ColumnInfo("READ_TIME", VoltType.BIGINT),
+                new ColumnInfo("CONVERT_TIME", VoltType.BIGINT),
+                new ColumnInfo("LOAD_TIME", VoltType.BIGINT));
+    }
+
+    private static SnapshotRestoreResultSet parse(VoltTable vt) {
+        SnapshotRestoreResultSet resultSet = new SnapshotRestoreResultSet();
+        vt.resetRowPosition();
+        while (vt.advanceRow()) {
+            resultSet.parseRestoreResultRow(vt);
+        }
+        return resultSet;
+    }
+
+    private static VoltTable output(SnapshotRestoreResultSet resultSet) {
+        VoltTable vt = resultsTable();
+        for (RestoreResultKey key : resultSet.keySet()) {
+            assertTrue(resultSet.addRowsForKey(key, vt));
+        }
+        return vt;
+    }
+
+    @Test
+    public void testReplicatedResultsMergePerSite() {
+        VoltTable vt = resultsTable();
+        // Two chunks loaded at site 1, one at site 2
+        vt.addRow(0, "host0", 1, "R", -1, "SUCCESS", "", 10, 0, 0, 5);
+        vt.addRow(0, "host0", 2, "R", -1, "SUCCESS", "", 30, 0, 0, 9);
+        vt.addRow(0, "host0", 1, "R", -1, "FAILURE", "oops", 20, 0, 0, 7);
+
+        SnapshotRestoreResultSet resultSet = parse(vt);
+        assertEquals(1, resultSet.size());
+        assertEquals(2, resultSet.firstEntry().getValue().getCount());
+        assertFalse(resultSet.firstEntry().getValue().mergeSuccess());
+
+        VoltTable out = output(resultSet);
+        assertEquals(2, out.getRowCount());
+        out.advanceRow();
+        assertEquals(1, out.getLong("SITE_ID"));
+        assertEquals("FAILURE", out.getString("RESULT"));
+        assertEquals("oops", out.getString("ERR_MSG"));
+        assertEquals(30, out.getLong("ROWS"));
+        assertEquals(12, out.getLong("LOAD_TIME"));
+        out.advanceRow();
+        assertEquals(2, out.getLong("SITE_ID"));
+        assertEquals("SUCCESS", out.getString("RESULT"));
+        assertEquals(30, out.getLong("ROWS"));
+        assertEquals(9, out.getLong("LOAD_TIME"));
+    }
+
+    @Test
+    public void testPartitionedResultsSumAndDistributionStats() {
+        VoltTable vt = resultsTable();
+        vt.addRow(0, "host0", 1, "P", 0, "SUCCESS", "", 100, 0, 0, 11);
+        vt.addRow(0, "host0", 1, "P", 0, "SUCCESS", "", 50, 0, 0, 4);
+        vt.addRow(1, "host1", 5, "P", 1, "SUCCESS", "", 70, 0, 0, 8);
+
+        SnapshotRestoreResultSet resultSet = parse(vt);
+        assertEquals(2, resultSet.size());
+
+        // The distributing site's times go to a result of its own host
+        assertTrue(resultSet.addDistributionStats(1, new long[] { 0, 1000, 200, 0 }));
+        VoltTable out = output(resultSet);
+        assertEquals(2, out.getRowCount());
+        out.advanceRow();
+        assertEquals(0, out.getLong("PARTITION_ID"));
+        assertEquals(150, out.getLong("ROWS"));
+        assertEquals(0, out.getLong("READ_TIME"));
+        assertEquals(15, out.getLong("LOAD_TIME"));
+        out.advanceRow();
+        assertEquals(1, out.getLong("PARTITION_ID"));
+        assertArrayEquals(new long[] { 70, 1000, 200, 8 },
+                new long[] { out.getLong("ROWS"), out.getLong("READ_TIME"),
+                             out.getLong("CONVERT_TIME"), out.getLong("LOAD_TIME") });
+
+        // Merging again upstream keeps the totals
+        resultSet = parse(out);
+        long total[] = new long[SnapshotRestoreResultSet.STATS_COLUMNS.length];
+        for (RestoreResultKey key : resultSet.keySet()) {
+            long stats[] = resultSet.get(key).getStatsColumnValues();
+            for (int ii = 0; ii < total.length; ii++) {
+                total[ii] += stats[ii];
+            }
+        }
+        assertArrayEquals(new long[] { 220, 1000, 200, 23 }, total);
+
+        assertFalse(new SnapshotRestoreResultSet().addDistributionStats(0, new long[4]));
+    }
+}
@@ -40,6 +40,8 @@ import org.voltdb.VoltTable;
 import org.voltdb.VoltTable.ColumnInfo;
 import org.voltdb.VoltType;
 import org.voltdb.messaging.FastSerializer;
+import org.voltdb.utils.CompressionCodec;
+import org.voltdb.utils.CompressionService;
 
 import com.google_voltpatches.common.util.concurrent.Callables;
 
@@ -267,6 +269,32 @@ public class TestTableSaveFile extends TestCase {
         }
     }
 
+    public void testLz4Table() throws Exception {
+        System.out.println("Running testLz4Table");
+        Pair<VoltTable, File> generated;
+        CompressionService.setSnapshotCodec(CompressionCodec.LZ4HC);
+        try {
+            generated = generateTestTable(1000);
+        } finally {
+            CompressionService.setSnapshotCodec(CompressionCodec.SNAPPY);
+        }
+        VoltTable table = generated.getFirst();
+        File f = generated.getSecond();
+
+        // The codec comes from the header, not the current setting
+        FileInputStream fis = new FileInputStream(f);
+        savefile = new TableSaveFile(fis, 3, null);
+        assertEquals(CompressionCodec.LZ4HC, savefile.getCompressionCodec());
+
+        BBContainer c = savefile.getNextChunk();
+        try {
+            VoltTable test_table = PrivateVoltTableFactory.createVoltTableFromBuffer(c.b(), false);
+            assertEquals(table, test_table);
+        } finally {
+            c.discard();
+        }
+    }
+
     public void testChunkTable() throws Exception {
         System.out.println("Running testChunkTable");
         Pair<VoltTable, File> generated = generateTestTable(100000);
@@ -305,4 +333,44 @@ public class TestTableSaveFile extends TestCase {
             savefile.close();
         }
     }
+
+    public void testRelevantChunksInOrderAndEarlyClose() throws Exception {
+        System.out.println("Running testRelevantChunksInOrderAndEarlyClose");
+        File f = generateTestTable(100000).getSecond();
+
+        // Chunks are decompressed on a pool but must come back in file order
+        Integer relevant[] = new Integer[50];
+        for (int ii = 0; ii < relevant.length; ii++) {
+            relevant[ii] = ii * 2;
+        }
+        TableSaveFile savefile = new TableSaveFile(new FileInputStream(f), 2, relevant);
+        try {
+            savefile.startReadAhead();
+            int expectedPartitionId = 0;
+            while (savefile.hasMoreChunks()) {
+                final BBContainer c = savefile.getNextChunk();
+                if (c == null) {
+                    break;
+                }
+                try {
+                    assertEquals(expectedPartitionId, ((TableSaveFile.Container)c).partitionId);
+                    assertEquals(1000, PrivateVoltTableFactory.createVoltTableFromBuffer(c.b(), false).getRowCount());
+                } finally {
+                    c.discard();
+                }
+                expectedPartitionId += 2;
+            }
+            assertEquals(100, expectedPartitionId);
+            assertTrue(savefile.getCorruptedPartitionIds().isEmpty());
+        } finally {
+            savefile.close();
+        }
+
+        // Closing with chunks still being read and decompressed must not hang
+        savefile = new TableSaveFile(new FileInputStream(f), 4, null);
+        for (int ii = 0; ii < 10; ii++) {
+            savefile.getNextChunk().discard();
+        }
+        savefile.close();
+    }
 }
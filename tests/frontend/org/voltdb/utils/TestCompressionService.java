@@ -24,9 +24,13 @@
 package org.voltdb.utils;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 import junit.framework.TestCase;
 
 import org.voltdb.benchmark.tpcc.TPCCProjectBuilder;
+import org.voltdb.common.Constants;
 
 public class TestCompressionService extends TestCase {
 
@@ -46,4 +50,64 @@ public class TestCompressionService extends TestCase {
 
         assertEquals(someText, result);
     }
+
+    public void testCodecRoundTrip() throws IOException {
+        byte data[] = TPCCProjectBuilder.getTPCCSchemaCatalog().serialize().getBytes(Constants.UTF8ENCODING);
+        for (CompressionCodec codec : CompressionCodec.values()) {
+            assertEquals(codec, CompressionCodec.fromId(codec.id()));
+            assertEquals(codec, CompressionCodec.fromName(codec.name().toLowerCase()));
+
+            byte compressed[] = codec.compress(data);
+            assertTrue(compressed.length < data.length);
+            assertTrue(Arrays.equals(data, codec.decompress(compressed)));
+
+            // Direct buffers at an offset, positions must be left alone
+            ByteBuffer input = ByteBuffer.allocateDirect(data.length + 10);
+            input.position(10);
+            input.put(data);
+            input.position(10);
+            ByteBuffer output = ByteBuffer.allocateDirect(CompressionService.maxCompressedLength(data.length) + 7);
+            output.position(7);
+            int compressedSize = codec.compress(input, output);
+            assertTrue(compressedSize <= codec.maxCompressedLength(data.length));
+            assertEquals(10, input.position());
+            assertEquals(7, output.position());
+            assertEquals(7 + compressedSize, output.limit());
+            assertEquals(data.length, codec.uncompressedLength(output));
+
+            ByteBuffer uncompressed = ByteBuffer.allocateDirect(data.length + 3);
+            uncompressed.position(3);
+            assertEquals(data.length, codec.decompress(output, uncompressed));
+            assertEquals(3, uncompressed.position());
+            byte roundTrip[] = new byte[data.length];
+            uncompressed.get(roundTrip);
+            assertTrue(Arrays.equals(data, roundTrip));
+        }
+    }
+
+    public void testBlockLargerThanScratch() throws IOException {
+        // Staged through arrays that are not kept by the thread
+        byte data[] = new byte[CompressionCodec.Lz4Block.MAX_SCRATCH_BYTES + 1024];
+        for (int ii = 0; ii < data.length; ii++) {
+            data[ii] = (byte) (ii % 251);
+        }
+        ByteBuffer input = ByteBuffer.allocateDirect(data.length);
+        input.put(data);
+        input.flip();
+        ByteBuffer output = ByteBuffer.allocateDirect(CompressionCodec.LZ4.maxCompressedLength(data.length));
+        CompressionCodec.LZ4.compress(input, output);
+        ByteBuffer uncompressed = ByteBuffer.allocateDirect(data.length);
+        assertEquals(data.length, CompressionCodec.LZ4.decompress(output, uncompressed));
+        byte roundTrip[] = new byte[data.length];
+        uncompressed.get(roundTrip);
+        assertTrue(Arrays.equals(data, roundTrip));
+        assertTrue(Arrays.equals(data, CompressionCodec.LZ4.decompress(CompressionCodec.LZ4.compress(data))));
+    }
+
+    public void testUnknownCodecId() {
+        try {
+            CompressionCodec.fromId(42);
+            fail();
+        } catch (IOException expected) {}
+    }
 }
@@ -0,0 +1,72 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TestLatencyBatchSizer {
+
+    @Test
+    public void testGrowsByHalfWhenFastAndAllowed() {
+        final long target = TimeUnit.MILLISECONDS.toNanos(100);
+        final LatencyBatchSizer sizer = new LatencyBatchSizer(100, 1000, target);
+        assertEquals(100, sizer.getBatchSize());
+
+        assertEquals(150, sizer.batchCompleted(100, target / 10, true));
+        // Not allowed to grow, or not fast enough
+        assertEquals(150, sizer.batchCompleted(10, target / 10, false));
+        assertEquals(150, sizer.batchCompleted(150, target * 3 / 4, true));
+        for (int i = 0; i < 20; i++) {
+            sizer.batchCompleted(sizer.getBatchSize(), target / 10, true);
+        }
+        assertEquals(1000, sizer.getBatchSize());
+    }
+
+    @Test
+    public void testShrinksInProportionToRows() {
+        final long target = TimeUnit.MILLISECONDS.toNanos(100);
+        final LatencyBatchSizer sizer = new LatencyBatchSizer(1000, 1000, target);
+
+        assertEquals(250, sizer.batchCompleted(1000, target * 4, true));
+        // A slow partial batch shrinks by the rows it had, never growing
+        assertEquals(50, sizer.batchCompleted(100, target * 2, true));
+        assertEquals(50, sizer.batchCompleted(1000, target * 2, true));
+        assertEquals(1, sizer.batchCompleted(50, target * 1000, true));
+        assertEquals(2, sizer.batchCompleted(1, 0, true));
+    }
+
+    @Test
+    public void testReset() {
+        final LatencyBatchSizer sizer = new LatencyBatchSizer(0, 0, 1);
+        assertEquals(1, sizer.getBatchSize());
+        assertEquals(1, sizer.getMax());
+        sizer.reset(500, 200);
+        assertEquals(200, sizer.getBatchSize());
+        assertEquals(200, sizer.getMax());
+    }
+}
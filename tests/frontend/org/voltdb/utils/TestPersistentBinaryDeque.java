@@ -1054,6 +1054,31 @@ public class TestPersistentBinaryDeque {
         assert(files[0].getName().equals("pbd_nonce.1.pbd"));
     }
 
+    @Test
+    public void testMixedCompressionCodecs() throws Exception {
+        System.out.println("Running testMixedCompressionCodecs");
+        CompressionCodec codecs[] = CompressionCodec.values();
+        for (int ii = 0; ii < 12; ii++) {
+            m_pbd.setCompressionCodec(codecs[ii % codecs.length]);
+            m_pbd.offer(DBBPool.wrapBB(getFilledSmallBuffer(ii)));
+        }
+        m_pbd.close();
+
+        // Each entry is read back with the codec it was written with
+        m_pbd = new PersistentBinaryDeque(TEST_NONCE, TEST_DIR, logger);
+        m_pbd.setCompressionCodec(CompressionCodec.SNAPPY);
+        BinaryDequeReader reader = m_pbd.openForRead(CURSOR_ID);
+        for (int ii = 0; ii < 12; ii++) {
+            BBContainer cont = reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+            try {
+                assertEquals(getFilledSmallBuffer(ii), cont.b());
+            } finally {
+                cont.discard();
+            }
+        }
+        assertNull(reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY));
+    }
+
     @Before
     public void setUp() throws Exception {
         setupTestDir();
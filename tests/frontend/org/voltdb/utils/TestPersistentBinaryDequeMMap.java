@@ -0,0 +1,227 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.voltdb.utils.TestPersistentBinaryDeque.TEST_DIR;
+import static org.voltdb.utils.TestPersistentBinaryDeque.TEST_NONCE;
+import static org.voltdb.utils.TestPersistentBinaryDeque.getFilledBuffer;
+import static org.voltdb.utils.TestPersistentBinaryDeque.getSortedDirectoryListing;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.utils.BinaryDeque.BinaryDequeReader;
+import org.voltdb.utils.BinaryDeque.BinaryDequeTruncator;
+import org.voltdb.utils.BinaryDeque.TruncatorResponse;
+
+/**
+ * Exercises PersistentBinaryDeque with memory mapped segments, including
+ * switching between mapped and regular segments across restarts.
+ */
+public class TestPersistentBinaryDequeMMap {
+
+    private static final String CURSOR_ID = "testPBDMMap";
+    private final static VoltLogger logger = new VoltLogger("EXPORT");
+
+    private PersistentBinaryDeque m_pbd;
+
+    private static PersistentBinaryDeque openDeque(boolean useMmap) throws Exception {
+        return new PersistentBinaryDeque(TEST_NONCE, TEST_DIR, logger, true, useMmap);
+    }
+
+    private static void assertFilled(ByteBuffer buffer, long fillValue) {
+        assertEquals(1024 * 1024 * 2, buffer.remaining());
+        while (buffer.remaining() > 15) {
+            assertEquals(fillValue, buffer.getLong());
+            buffer.getLong();
+        }
+    }
+
+    private void offerAndPoll(boolean allowCompression) throws Exception {
+        BinaryDequeReader reader = m_pbd.openForRead(CURSOR_ID);
+        assertNull(reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY));
+
+        // Enough to span several segments
+        for (int ii = 0; ii < 96; ii++) {
+            m_pbd.offer(DBBPool.wrapBB(getFilledBuffer(ii)), allowCompression);
+        }
+        assertEquals(96, reader.getNumObjects());
+
+        for (int ii = 0; ii < 96; ii++) {
+            BBContainer cont = reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+            try {
+                assertFilled(cont.b(), ii);
+            } finally {
+                cont.discard();
+            }
+        }
+        assertNull(reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY));
+        assertTrue(reader.isEmpty());
+    }
+
+    @Test
+    public void testOfferThenPollUncompressed() throws Exception {
+        offerAndPoll(false);
+    }
+
+    @Test
+    public void testOfferThenPollCompressed() throws Exception {
+        offerAndPoll(true);
+    }
+
+    @Test
+    public void testOfferThenPollCompressedLz4() throws Exception {
+        m_pbd.setCompressionCodec(CompressionCodec.LZ4);
+        offerAndPoll(true);
+    }
+
+    @Test
+    public void testContainerOutlivesClose() throws Exception {
+        BinaryDequeReader reader = m_pbd.openForRead(CURSOR_ID);
+        m_pbd.offer(DBBPool.wrapBB(getFilledBuffer(7)), false);
+        BBContainer cont = reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+
+        // The mapping has to stay valid until the container is discarded
+        m_pbd.close();
+        try {
+            assertFilled(cont.b(), 7);
+        } finally {
+            cont.discard();
+        }
+    }
+
+    @Test
+    public void testSegmentsTrimmedOnClose() throws Exception {
+        for (int ii = 0; ii < 3; ii++) {
+            m_pbd.offer(DBBPool.wrapBB(getFilledBuffer(ii)), false);
+        }
+        m_pbd.close();
+
+        File segments[] = TEST_DIR.listFiles();
+        assertEquals(1, segments.length);
+        assertEquals(PBDSegment.SEGMENT_HEADER_BYTES + 3 * (PBDSegment.OBJECT_HEADER_BYTES + 1024 * 1024 * 2),
+                segments[0].length());
+    }
+
+    @Test
+    public void testSwitchModesAcrossRestart() throws Exception {
+        for (int ii = 0; ii < 48; ii++) {
+            m_pbd.offer(DBBPool.wrapBB(getFilledBuffer(ii)), ii % 2 == 0);
+        }
+        m_pbd.close();
+
+        // Read back the mapped segments with regular segments and keep appending
+        m_pbd = openDeque(false);
+        for (int ii = 48; ii < 96; ii++) {
+            m_pbd.offer(DBBPool.wrapBB(getFilledBuffer(ii)), ii % 2 == 0);
+        }
+        m_pbd.close();
+
+        m_pbd = openDeque(true);
+        BinaryDequeReader reader = m_pbd.openForRead(CURSOR_ID);
+        assertEquals(96, reader.getNumObjects());
+        for (int ii = 0; ii < 96; ii++) {
+            BBContainer cont = reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+            try {
+                assertFilled(cont.b(), ii);
+            } finally {
+                cont.discard();
+            }
+        }
+        assertNull(reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY));
+    }
+
+    @Test
+    public void testTruncator() throws Exception {
+        for (int ii = 0; ii < 160; ii++) {
+            m_pbd.offer(DBBPool.wrapBB(getFilledBuffer(ii)), false);
+        }
+        m_pbd.close();
+
+        m_pbd = openDeque(true);
+        m_pbd.parseAndTruncate(new BinaryDequeTruncator() {
+            @Override
+            public TruncatorResponse parse(BBContainer bbc) {
+                ByteBuffer b = bbc.b();
+                if (b.getLong(0) == 45) {
+                    // Keep the first half of the object, it is a view of the mapping being truncated
+                    b.limit(b.remaining() / 2);
+                    return new PersistentBinaryDeque.ByteBufferTruncatorResponse(b.slice());
+                }
+                return null;
+            }
+        });
+
+        // 31 uncompressed objects fit in a segment, so the truncated one is in the
+        // second segment and a new write segment follows it
+        TreeSet<String> listing = getSortedDirectoryListing();
+        assertEquals(3, listing.size());
+
+        BinaryDequeReader reader = m_pbd.openForRead(CURSOR_ID);
+        assertEquals(46, reader.getNumObjects());
+        for (int ii = 0; ii < 46; ii++) {
+            BBContainer cont = reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+            try {
+                ByteBuffer buffer = cont.b();
+                assertEquals(ii == 45 ? 1024 * 1024 : 1024 * 1024 * 2, buffer.remaining());
+                while (buffer.remaining() > 15) {
+                    assertEquals(ii, buffer.getLong());
+                    buffer.getLong();
+                }
+            } finally {
+                cont.discard();
+            }
+        }
+        assertNull(reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY));
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        TestPersistentBinaryDeque.setupTestDir();
+        m_pbd = openDeque(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            m_pbd.close();
+        } catch (Exception e) {}
+        try {
+            TestPersistentBinaryDeque.tearDownTestDir();
+        } finally {
+            m_pbd = null;
+        }
+        System.gc();
+        System.runFinalization();
+    }
+}
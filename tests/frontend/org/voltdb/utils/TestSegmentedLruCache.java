@@ -0,0 +1,153 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class TestSegmentedLruCache {
+
+    private static final SegmentedLruCache.Weigher<String> LENGTH = new SegmentedLruCache.Weigher<String>() {
+        @Override
+        public long weigh(String value) {
+            return value.length();
+        }
+    };
+
+    @Test
+    public void testLruWithinSegment() {
+        SegmentedLruCache<Integer, String> cache = new SegmentedLruCache<>(1, 3);
+        cache.putIfAbsent(1, "one");
+        cache.putIfAbsent(2, "two");
+        cache.putIfAbsent(3, "three");
+        // touch 1 so 2 is the least recently used
+        assertEquals("one", cache.get(1));
+        assertNull(cache.putIfAbsent(4, "four"));
+
+        assertEquals(3, cache.size());
+        assertNull(cache.get(2));
+        assertEquals("one", cache.get(1));
+        assertEquals(1, cache.evictions());
+
+        List<Map.Entry<Integer, String>> entries = cache.entries();
+        assertEquals(3, (int) entries.get(0).getKey());
+        assertEquals(1, (int) entries.get(2).getKey());
+    }
+
+    @Test
+    public void testPutIfAbsentKeepsExisting() {
+        SegmentedLruCache<Integer, String> cache = new SegmentedLruCache<>(4, 100, 100, LENGTH);
+        assertNull(cache.putIfAbsent(1, "one"));
+        assertEquals("one", cache.putIfAbsent(1, "uno"));
+        assertEquals(3, cache.weight());
+        assertEquals("one", cache.remove(1));
+        assertEquals(0, cache.weight());
+        assertEquals(0, cache.evictions());
+    }
+
+    @Test
+    public void testEntryBound() {
+        SegmentedLruCache<Integer, String> cache = new SegmentedLruCache<>(16, 1000);
+        assertEquals(16, cache.segmentCount());
+        for (int ii = 0; ii < 10000; ii++) {
+            cache.putIfAbsent(ii, "v");
+            assertTrue(cache.size() <= 1000);
+        }
+        assertEquals(10000 - cache.size(), cache.evictions());
+
+        // Never more segments than entries
+        assertEquals(4, new SegmentedLruCache<Integer, String>(16, 5).segmentCount());
+    }
+
+    @Test
+    public void testWeightBound() {
+        // 4 segments of 250 weight each
+        SegmentedLruCache<Integer, String> cache = new SegmentedLruCache<>(4, 1000, 1000, LENGTH);
+        for (int ii = 0; ii < 1000; ii++) {
+            cache.putIfAbsent(ii, "0123456789");
+            assertTrue(cache.weight() <= 1000);
+        }
+        assertEquals(cache.size() * 10, cache.weight());
+
+        // An entry heavier than its segment's share is still cached until the next insert
+        cache.clear();
+        assertEquals(0, cache.weight());
+        StringBuilder big = new StringBuilder();
+        for (int ii = 0; ii < 300; ii++) {
+            big.append('x');
+        }
+        cache.putIfAbsent(0, big.toString());
+        assertEquals(big.toString(), cache.get(0));
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final SegmentedLruCache<Integer, String> cache = new SegmentedLruCache<>(16, 512, 512 * 8, LENGTH);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int tt = 0; tt < 8; tt++) {
+            Thread t = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        for (int ii = 0; ii < 100000; ii++) {
+                            int key = random.nextInt(2048);
+                            String value = cache.get(key);
+                            if (value == null) {
+                                cache.putIfAbsent(key, Integer.toString(key));
+                            }
+                            else if (!value.equals(Integer.toString(key))) {
+                                throw new AssertionError("Wrong value " + value + " for " + key);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertNull(failure.get());
+        assertTrue(cache.size() <= 512);
+        long weight = 0;
+        for (Map.Entry<Integer, String> e : cache.entries()) {
+            weight += e.getValue().length();
+        }
+        assertEquals(weight, cache.weight());
+    }
+}
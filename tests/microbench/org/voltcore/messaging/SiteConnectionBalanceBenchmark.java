@@ -0,0 +1,306 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltcore.messaging;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltcore.utils.PortGenerator;
+
+/**
+ * Measures round trips between two hosts in separate JVMs over loopback when most of the traffic
+ * goes to two sites that were bound to the same secondary connection, with and without the
+ * traffic-aware rebalancing of sites across connections.
+ *
+ * The benchmark JVM is host 0 and sends to the sites of host 1, a peer JVM it starts, which echoes
+ * every message back. Half the messages go to one hot site, 30% to the other and the rest are
+ * spread over the remaining sites.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SiteConnectionBalanceBenchmark {
+
+    static final int SECONDARY_CONNECTIONS = 3;
+    static final int SITES = 8;
+    static final String READY = "PEER READY";
+    static final String SITES_LINE = "PEER SITES ";
+
+    @Param({ "false", "true" })
+    public boolean rebalance;
+
+    @Param({ "256" })
+    public int payload;
+
+    // Round trips allowed in flight
+    @Param({ "256" })
+    public int window;
+
+    private Process m_peer;
+    private HostMessenger m_messenger;
+    private Semaphore m_permits;
+    private Mailbox m_mailbox;
+    private long m_hotSites[];
+    private long m_coldSites[];
+
+    public static class EchoMessage extends VoltMessage {
+        byte[] m_payload;
+
+        public EchoMessage() {}
+
+        EchoMessage(int size) {
+            m_payload = new byte[size];
+        }
+
+        @Override
+        public int getSerializedSize() {
+            return super.getSerializedSize() + m_payload.length;
+        }
+
+        @Override
+        public void initFromBuffer(ByteBuffer buf) {
+            m_payload = new byte[buf.remaining()];
+            buf.get(m_payload);
+        }
+
+        @Override
+        public void flattenToBuffer(ByteBuffer buf) {
+            buf.put(MessageFactory.ECHO_ID);
+            buf.put(m_payload);
+            assert(buf.position() == buf.capacity());
+        }
+    }
+
+    public static class MessageFactory extends VoltMessageFactory {
+        final public static byte ECHO_ID = VOLTCORE_MESSAGE_ID_MAX + 1;
+
+        @Override
+        protected VoltMessage instantiate_local(byte messageType) {
+            return messageType == ECHO_ID ? new EchoMessage() : null;
+        }
+    }
+
+    /** Start a host and set up the secondary connections to the other one */
+    static HostMessenger startHost(HostMessenger.Config config, BufferedReader peerOutput) throws Exception {
+        config.factory = new MessageFactory();
+        HostMessenger messenger = new HostMessenger(config, null, null);
+        messenger.start();
+        messenger.waitForGroupJoin(2);
+        Set<Integer> peers = new HashSet<Integer>(messenger.getLiveHostIds());
+        System.setProperty(HostMessenger.SECONDARY_PICONETWORK_THREADS, Integer.toString(SECONDARY_CONNECTIONS));
+        messenger.setPartitionGroupPeers(peers, 2);
+        if (peerOutput == null) {
+            System.out.println(READY);
+        } else {
+            // The lower host id connects, and the other one must know its peers by then
+            readLine(peerOutput, READY);
+        }
+        messenger.createAuxiliaryConnections(false);
+        peers.remove(messenger.getHostId());
+        final int otherHost = peers.iterator().next();
+        while (messenger.m_foreignHosts.get(otherHost).size() < SECONDARY_CONNECTIONS + 1) {
+            Thread.sleep(10);
+        }
+        return messenger;
+    }
+
+    static String readLine(BufferedReader reader, String prefix) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith(prefix)) {
+                return line.substring(prefix.length());
+            }
+        }
+        throw new IOException("Peer exited before printing " + prefix);
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        List<HostMessenger.Config> configs = HostMessenger.Config.generate(new PortGenerator(), 2);
+        HostMessenger.Config peerConfig = configs.get(1);
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + "/bin/java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        if (System.getProperty("log4j.configuration") != null) {
+            command.add("-Dlog4j.configuration=" + System.getProperty("log4j.configuration"));
+        }
+        command.add(Peer.class.getName());
+        command.add(peerConfig.zkInterface);
+        command.add(Integer.toString(peerConfig.internalPort));
+        command.add(Integer.toString(configs.get(0).internalPort));
+        m_peer = new ProcessBuilder(command).redirectErrorStream(true).start();
+        final BufferedReader peerOutput = new BufferedReader(new InputStreamReader(m_peer.getInputStream()));
+
+        if (rebalance) {
+            System.setProperty(HostMessenger.SITE_REBALANCE_INTERVAL_PROPERTY, "1000");
+        } else {
+            System.clearProperty(HostMessenger.SITE_REBALANCE_INTERVAL_PROPERTY);
+        }
+        m_messenger = startHost(configs.get(0), peerOutput);
+
+        final String sites[] = readLine(peerOutput, SITES_LINE).split(",");
+        // Keep the peer from blocking on a full pipe
+        Thread drain = new Thread("Peer output") {
+            @Override
+            public void run() {
+                try {
+                    while (peerOutput.readLine() != null) {}
+                } catch (IOException ignore) {}
+            }
+        };
+        drain.setDaemon(true);
+        drain.start();
+
+        m_permits = new Semaphore(window);
+        final Semaphore permits = m_permits;
+        final long hsId = m_messenger.generateMailboxId(null);
+        m_mailbox = new SiteMailbox(m_messenger, hsId) {
+            @Override
+            public void deliver(VoltMessage message) {
+                permits.release();
+            }
+        };
+        m_messenger.registerMailbox(m_mailbox);
+
+        // Bind every site, then make the two sharing the first site's connection the hot ones
+        for (String site : sites) {
+            m_permits.acquire();
+            m_mailbox.send(Long.parseLong(site), new EchoMessage(payload));
+        }
+        m_permits.acquire(window);
+        m_permits.release(window);
+        ForeignHost hotConnection = m_messenger.m_siteBindings.get(Long.parseLong(sites[0])).foreignHost();
+        List<Long> hot = new ArrayList<Long>();
+        List<Long> cold = new ArrayList<Long>();
+        for (String site : sites) {
+            final long siteHSId = Long.parseLong(site);
+            if (m_messenger.m_siteBindings.get(siteHSId).foreignHost() == hotConnection) {
+                hot.add(siteHSId);
+            } else {
+                cold.add(siteHSId);
+            }
+        }
+        m_hotSites = new long[] { hot.get(0), hot.get(hot.size() - 1) };
+        m_coldSites = new long[cold.size()];
+        for (int ii = 0; ii < m_coldSites.length; ii++) {
+            m_coldSites[ii] = cold.get(ii);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() throws InterruptedException {
+        // Don't let round trips from this iteration be credited to the next one
+        m_permits.acquire(window);
+        m_permits.release(window);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        m_messenger.shutdown();
+        // The peer shuts down when its input closes
+        m_peer.getOutputStream().close();
+        if (!m_peer.waitFor(10, TimeUnit.SECONDS)) {
+            m_peer.destroyForcibly();
+        }
+        System.clearProperty(HostMessenger.SITE_REBALANCE_INTERVAL_PROPERTY);
+        System.clearProperty(HostMessenger.SECONDARY_PICONETWORK_THREADS);
+    }
+
+    @Benchmark
+    public void skewedRoundTrip() throws InterruptedException {
+        m_permits.acquire();
+        final int pick = ThreadLocalRandom.current().nextInt(100);
+        final long site;
+        if (pick < 50) {
+            site = m_hotSites[0];
+        } else if (pick < 80) {
+            site = m_hotSites[1];
+        } else {
+            site = m_coldSites[pick % m_coldSites.length];
+        }
+        m_mailbox.send(site, new EchoMessage(payload));
+    }
+
+    /**
+     * Host 1, in a JVM of its own. Arguments are its ZooKeeper interface, its internal port and
+     * the internal port of host 0, which coordinates.
+     */
+    public static class Peer {
+        public static void main(String[] args) throws Exception {
+            HostMessenger.Config config = new HostMessenger.Config(null, Integer.parseInt(args[2]), false);
+            config.zkInterface = args[0];
+            config.internalPort = Integer.parseInt(args[1]);
+            config.acceptor = org.voltdb.probe.MeshProber.builder()
+                    .startAction(org.voltdb.StartAction.PROBE)
+                    .hostCount(2)
+                    .coordinators(":" + args[2], ":" + args[1])
+                    .build();
+            final HostMessenger messenger = startHost(config, null);
+
+            StringBuilder sites = new StringBuilder();
+            for (int ii = 0; ii < SITES; ii++) {
+                final long hsId = messenger.generateMailboxId(null);
+                messenger.registerMailbox(new SiteMailbox(messenger, hsId) {
+                    @Override
+                    public void deliver(VoltMessage message) {
+                        send(message.m_sourceHSId, message);
+                    }
+                });
+                sites.append(ii == 0 ? "" : ",").append(hsId);
+            }
+            System.out.println(SITES_LINE + sites);
+            System.out.flush();
+
+            while (System.in.read() != -1) {}
+            messenger.shutdown();
+            System.exit(0);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltdb.types.TimestampType;
+
+/**
+ * The decode a ClientInterface does for each request read off a client connection: the
+ * invocation header and serialized parameters from the wire buffer, followed by the
+ * partitioning parameter lookup and hash the InvocationDispatcher does to route it.
+ *
+ *   ant jmh -Djmh.lib.dir=... -Djmh.args=ClientInvocationDecodeBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientInvocationDecodeBenchmark {
+
+    @Param({ "3", "10" })
+    public int paramCount;
+
+    private ByteBuffer m_wire;
+
+    @Setup
+    public void setup() throws Exception {
+        TheHashinator.initialize(ElasticHashinator.class, TheHashinator.getConfigureBytes(8));
+        Object[] params = new Object[paramCount];
+        params[0] = 42L;
+        for (int ii = 1; ii < paramCount; ii++) {
+            switch (ii % 3) {
+            case 0: params[ii] = (long) ii; break;
+            case 1: params[ii] = "value" + ii; break;
+            default: params[ii] = new TimestampType();
+            }
+        }
+        StoredProcedureInvocation invocation = new StoredProcedureInvocation();
+        invocation.setProcName("UpdateCustomer");
+        invocation.setClientHandle(1);
+        invocation.setParams(params);
+        m_wire = ByteBuffer.allocate(invocation.getSerializedSize());
+        invocation.flattenToBuffer(m_wire);
+        m_wire.flip();
+    }
+
+    @Benchmark
+    public int decodeAndRoute() throws Exception {
+        StoredProcedureInvocation task = new StoredProcedureInvocation();
+        task.initFromBuffer(m_wire.duplicate());
+        return TheHashinator.getPartitionForParameter(VoltType.BIGINT, task.getParameterAtIndex(0));
+    }
+}
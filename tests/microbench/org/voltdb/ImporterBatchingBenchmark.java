@@ -0,0 +1,248 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb;
+
+import java.net.URI;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.voltcore.utils.CoreUtils;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureCallback;
+import org.voltdb.importclient.kafka.util.DurableTracker;
+import org.voltdb.importclient.kafka.util.PendingWorkTracker;
+import org.voltdb.importclient.kafka.util.ProcedureInvocationCallback;
+import org.voltdb.importer.AbstractImporter;
+import org.voltdb.importer.ImporterStatsCollector;
+import org.voltdb.utils.MiscUtils;
+
+/**
+ * Rows per second an importer gets into the server inserting them one transaction per row
+ * (batchSize 1) or batched per partition by the ImporterBatcher.
+ *
+ * A fake Kafka topic partition hands out CSV messages, which are split into parameters and
+ * tracked to their offsets with a DurableTracker and the Kafka importer's callback, with at
+ * most a fetch worth of rows in flight. A fake server runs a site thread per partition. Each
+ * transaction pays the serialization the internal connection handler does and a fixed cost
+ * at its site, and each row a smaller cost on top.
+ *
+ *   ant jmh -Djmh.lib.dir=... -Djmh.args=ImporterBatchingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImporterBatchingBenchmark {
+
+    static final String PROC = "EVENTS.insert";
+    static final int PARTITIONS = 8;
+    static final int MESSAGES = 4096;
+    // Rows in flight, like a fetch being worked through
+    static final int WINDOW = 10_000;
+
+    static final ImporterBatcher.Target TARGET = new ImporterBatcher.Target("EVENTS", false,
+            new ColumnInfo[] {
+                    new ColumnInfo("ID", VoltType.BIGINT),
+                    new ColumnInfo("SOURCE", VoltType.STRING),
+                    new ColumnInfo("VAL", VoltType.BIGINT) },
+            0);
+
+    @Param({ "1", "10", "100", "1000" })
+    public int batchSize;
+
+    // Blackhole tokens each transaction costs at its site
+    @Param({ "2000" })
+    public long txnCost;
+
+    // Blackhole tokens each row costs at its site
+    @Param({ "100" })
+    public long rowCost;
+
+    private FakeServer m_server;
+    private ImporterBatcher m_batcher;
+    private Importer m_importer;
+    private String[] m_messages;
+    private long m_nextOffset = 0;
+    private Semaphore m_window;
+    private DurableTracker m_tracker;
+    private PendingWorkTracker m_pending;
+    private final AtomicBoolean m_dontCommit = new AtomicBoolean(false);
+    private final AtomicLong m_pauseOffset = new AtomicLong(-1);
+
+    static class Importer extends AbstractImporter {
+        @Override
+        public String getName() {
+            return "BenchmarkImporter";
+        }
+        @Override
+        public URI getResourceID() {
+            return URI.create("kafka://benchmark/events/0");
+        }
+        @Override
+        protected void accept() {
+        }
+        @Override
+        public void stop() {
+        }
+    }
+
+    /** Executes transactions on a site thread per partition */
+    class FakeServer implements ImporterBatcher.Submitter {
+        final ExecutorService[] m_sites = new ExecutorService[PARTITIONS];
+        final ClientResponse m_success = new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[0], "");
+
+        FakeServer() {
+            for (int ii = 0; ii < PARTITIONS; ii++) {
+                m_sites[ii] = CoreUtils.getSingleThreadExecutor("Site " + ii);
+            }
+        }
+
+        void execute(int partition, long cost, ProcedureCallback callback) {
+            m_sites[partition].execute(() -> {
+                Blackhole.consumeCPU(cost);
+                try {
+                    callback.clientCallback(m_success);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+
+        // What the internal connection handler does to every invocation
+        StoredProcedureInvocation roundTrip(String proc, Object... params) {
+            StoredProcedureInvocation task = new StoredProcedureInvocation();
+            task.setProcName(proc);
+            task.setParams(params);
+            try {
+                return MiscUtils.roundTripForCL(task);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public boolean loadPartition(AbstractImporter importer, Function<Integer, Boolean> backPressurePredicate,
+                ProcedureCallback callback, byte[] partitionParam, String tableName, byte upsertMode, VoltTable rows) {
+            roundTrip("@LoadSinglepartitionTable", partitionParam, tableName, upsertMode, rows);
+            rows.resetRowPosition();
+            rows.advanceRow();
+            final int partition = TheHashinator.getPartitionForParameter(VoltType.BIGINT, rows.getLong(0));
+            execute(partition, txnCost + rowCost * rows.getRowCount(), callback);
+            return true;
+        }
+
+        @Override
+        public boolean callProcedure(AbstractImporter importer, Function<Integer, Boolean> backPressurePredicate,
+                ProcedureCallback callback, String proc, Object... fieldList) {
+            StoredProcedureInvocation task = roundTrip(proc, fieldList);
+            final Object key = ParameterConverter.tryToMakeCompatible(long.class, task.getParameterAtIndex(0));
+            final int partition = TheHashinator.getPartitionForParameter(VoltType.BIGINT, key);
+            execute(partition, txnCost + rowCost, callback);
+            return true;
+        }
+
+        void shutdown() throws InterruptedException {
+            for (ExecutorService site : m_sites) {
+                site.shutdown();
+                site.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        TheHashinator.initialize(ElasticHashinator.class, TheHashinator.getConfigureBytes(PARTITIONS));
+        m_server = new FakeServer();
+        m_importer = new Importer();
+        if (batchSize > 1) {
+            m_batcher = new ImporterBatcher(m_server, new ImporterStatsCollector(0),
+                    proc -> PROC.equals(proc) ? TARGET : null, batchSize, ImporterBatcher.LINGER_MILLIS);
+        }
+        Random random = new Random(0);
+        m_messages = new String[MESSAGES];
+        for (int ii = 0; ii < MESSAGES; ii++) {
+            m_messages[ii] = random.nextLong() + ",sensor-" + random.nextInt(1000) + "," + random.nextInt();
+        }
+        m_window = new Semaphore(WINDOW);
+        m_tracker = new DurableTracker(10 * WINDOW, "events", 0);
+        m_pending = new PendingWorkTracker();
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() throws InterruptedException {
+        // Don't let rows from this iteration be credited to the next one
+        m_window.acquire(WINDOW);
+        m_window.release(WINDOW);
+        if (m_nextOffset > 0 && m_tracker.getSafe() != m_nextOffset) {
+            throw new IllegalStateException("Committed up to offset " + m_tracker.getSafe() + " of " + m_nextOffset);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws InterruptedException {
+        if (m_batcher != null) {
+            m_batcher.shutdown();
+        }
+        m_server.shutdown();
+    }
+
+    @Benchmark
+    public void importRow() throws InterruptedException {
+        m_window.acquire();
+        final long offset = m_nextOffset++;
+        final Object[] params = m_messages[(int) (offset % MESSAGES)].split(",");
+        m_tracker.submit(offset + 1);
+        m_pending.produceWork();
+        final ProcedureInvocationCallback committer = new ProcedureInvocationCallback(offset, offset + 1,
+                m_pending, m_tracker, m_dontCommit, m_pauseOffset, "events-0");
+        final ProcedureCallback callback = response -> {
+            committer.clientCallback(response);
+            m_window.release();
+        };
+        if (m_batcher == null || !m_batcher.offer(m_importer, null, callback, PROC, params)) {
+            m_server.callProcedure(m_importer, null, callback, PROC, params);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltdb.types.TimestampType;
+
+/**
+ * Parameter handling of a single statement procedure from the serialized invocation to the
+ * buffer handed to the EE, boxed through ParameterSet versus read into primitive slots.
+ *
+ * Parameters cycle through BIGINT, INTEGER, VARCHAR, FLOAT and TIMESTAMP columns. Run with
+ * the GC profiler to compare allocation per invocation (gc.alloc.rate.norm):
+ *
+ *   ant jmh -Djmh.lib.dir=... -Djmh.args="ParameterDeserializationBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParameterDeserializationBenchmark {
+
+    @Param({ "3", "10" })
+    public int paramCount;
+
+    private static final Class<?>[] PROC_TYPES =
+        { long.class, long.class, String.class, double.class, TimestampType.class };
+    private static final VoltType[] STMT_TYPES =
+        { VoltType.BIGINT, VoltType.INTEGER, VoltType.STRING, VoltType.FLOAT, VoltType.TIMESTAMP };
+
+    private ByteBuffer m_serialized;
+    private Class<?>[] m_procTypes;
+    private byte[] m_stmtTypes;
+    private byte[][] m_stmtTypesByStmt;
+    private ByteBuffer m_eeBuffer;
+    private final PrimitiveParameterSet m_primitive = new PrimitiveParameterSet();
+
+    @Setup
+    public void setup() throws Exception {
+        Random random = new Random(0);
+        Object[] params = new Object[paramCount];
+        m_procTypes = new Class<?>[paramCount];
+        m_stmtTypes = new byte[paramCount];
+        for (int ii = 0; ii < paramCount; ii++) {
+            int type = ii % PROC_TYPES.length;
+            m_procTypes[ii] = PROC_TYPES[type];
+            m_stmtTypes[ii] = STMT_TYPES[type].getValue();
+            switch (type) {
+            case 0: params[ii] = random.nextLong(); break;
+            case 1: params[ii] = random.nextInt(); break;
+            case 2: params[ii] = "customer" + random.nextInt(100000); break;
+            case 3: params[ii] = random.nextDouble(); break;
+            default: params[ii] = new TimestampType(System.currentTimeMillis() * 1000);
+            }
+        }
+        m_stmtTypesByStmt = new byte[][] { m_stmtTypes };
+
+        ParameterSet pset = ParameterSet.fromArrayNoCopy(params);
+        m_serialized = ByteBuffer.allocate(pset.getSerializedSize());
+        pset.flattenToBuffer(m_serialized);
+        m_serialized.flip();
+        m_eeBuffer = ByteBuffer.allocate(m_serialized.capacity() * 2);
+    }
+
+    @Benchmark
+    public ByteBuffer boxed() throws Exception {
+        Object[] params = ParameterSet.fromByteBuffer(m_serialized.duplicate()).toArray();
+        for (int ii = 0; ii < params.length; ii++) {
+            params[ii] = ParameterConverter.tryToMakeCompatible(m_procTypes[ii], params[ii]);
+        }
+        ParameterSet stmtParams = ParameterSet.fromArrayNoCopy(params);
+        m_eeBuffer.clear();
+        stmtParams.flattenToBuffer(m_eeBuffer);
+        return m_eeBuffer;
+    }
+
+    @Benchmark
+    public ByteBuffer primitive() {
+        if (!m_primitive.read(m_serialized) || !m_primitive.isCompatible(m_procTypes, m_stmtTypesByStmt)) {
+            throw new IllegalStateException("Parameters not eligible for the primitive path");
+        }
+        return m_primitive.flattenForStatement(0, 0, m_procTypes, m_stmtTypes);
+    }
+}
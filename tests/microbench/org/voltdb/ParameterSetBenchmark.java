@@ -0,0 +1,95 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltdb.types.TimestampType;
+
+/**
+ * ParameterSet flatten and deserialize round trip. The scalar shape is a typical OLTP
+ * procedure call, the array shape a batched call with a 100 element long array and a
+ * string array.
+ *
+ *   ant jmh -Djmh.lib.dir=... -Djmh.args=ParameterSetBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParameterSetBenchmark {
+
+    @Param({ "scalars", "arrays" })
+    public String shape;
+
+    private Object[] m_params;
+    private ByteBuffer m_buffer;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        if (shape.equals("scalars")) {
+            m_params = new Object[] {
+                random.nextLong(), random.nextInt(), "customer" + random.nextInt(100000),
+                random.nextDouble(), new TimestampType(), null
+            };
+        }
+        else {
+            long[] ids = new long[100];
+            String[] names = new String[100];
+            for (int ii = 0; ii < ids.length; ii++) {
+                ids[ii] = random.nextLong();
+                names[ii] = "customer" + random.nextInt(100000);
+            }
+            m_params = new Object[] { random.nextInt(), ids, names };
+        }
+        m_buffer = ByteBuffer.allocate(ParameterSet.fromArrayNoCopy(m_params).getSerializedSize());
+    }
+
+    @Benchmark
+    public ParameterSet roundTrip() throws Exception {
+        ParameterSet pset = ParameterSet.fromArrayWithCopy(m_params);
+        m_buffer.clear();
+        pset.flattenToBuffer(m_buffer);
+        m_buffer.flip();
+        ParameterSet result = ParameterSet.fromByteBuffer(m_buffer);
+        result.toArray();
+        return result;
+    }
+}
@@ -0,0 +1,92 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltdb.common.Constants;
+
+/**
+ * Routing a partitioning parameter to a partition with the elastic hashinator, as the
+ * InvocationDispatcher does for every single partition invocation.
+ *
+ *   ant jmh -Djmh.lib.dir=... -Djmh.args=TheHashinatorBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TheHashinatorBenchmark {
+
+    private static final int KEY_COUNT = 1024;
+
+    @Param({ "BIGINT", "STRING", "VARBINARY" })
+    public VoltType type;
+
+    @Param({ "8", "64" })
+    public int partitions;
+
+    private Object[] m_keys;
+    private int m_next;
+
+    @Setup
+    public void setup() {
+        TheHashinator.initialize(ElasticHashinator.class, TheHashinator.getConfigureBytes(partitions));
+        Random random = new Random(0);
+        m_keys = new Object[KEY_COUNT];
+        for (int ii = 0; ii < KEY_COUNT; ii++) {
+            long key = random.nextLong();
+            switch (type) {
+            case BIGINT:
+                m_keys[ii] = key;
+                break;
+            case STRING:
+                m_keys[ii] = "customer" + key;
+                break;
+            default:
+                m_keys[ii] = Long.toHexString(key).getBytes(Constants.UTF8ENCODING);
+            }
+        }
+    }
+
+    @Benchmark
+    public int getPartitionForParameter() {
+        m_next = (m_next + 1) & (KEY_COUNT - 1);
+        return TheHashinator.getPartitionForParameter(type, m_keys[m_next]);
+    }
+}
@@ -0,0 +1,124 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.types.TimestampType;
+
+/**
+ * Building, iterating and round tripping a VoltTable through its wire format, with the
+ * BIGINT, INTEGER, VARCHAR, FLOAT and TIMESTAMP columns of a typical procedure result.
+ *
+ *   ant jmh -Djmh.lib.dir=... -Djmh.args=VoltTableBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VoltTableBenchmark {
+
+    @Param({ "1", "1000" })
+    public int rows;
+
+    private static final ColumnInfo[] COLUMNS = {
+        new ColumnInfo("ID", VoltType.BIGINT),
+        new ColumnInfo("QUANTITY", VoltType.INTEGER),
+        new ColumnInfo("NAME", VoltType.STRING),
+        new ColumnInfo("PRICE", VoltType.FLOAT),
+        new ColumnInfo("UPDATED", VoltType.TIMESTAMP)
+    };
+
+    private Object[][] m_rows;
+    private VoltTable m_table;
+    private ByteBuffer m_serialized;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        m_rows = new Object[rows][];
+        for (int ii = 0; ii < rows; ii++) {
+            m_rows[ii] = new Object[] {
+                random.nextLong(),
+                random.nextInt(1000),
+                "item" + random.nextInt(100000),
+                random.nextDouble() * 100,
+                new TimestampType(System.currentTimeMillis() * 1000)
+            };
+        }
+        m_table = build();
+        m_serialized = ByteBuffer.allocate(m_table.getSerializedSize());
+    }
+
+    @Benchmark
+    public VoltTable build() {
+        VoltTable table = new VoltTable(COLUMNS);
+        for (Object[] row : m_rows) {
+            table.addRow(row);
+        }
+        return table;
+    }
+
+    @Benchmark
+    public long iterate() {
+        long sum = 0;
+        m_table.resetRowPosition();
+        while (m_table.advanceRow()) {
+            sum += m_table.getLong(0);
+            sum += m_table.getLong(1);
+            sum += m_table.getString(2).length();
+            sum += (long) m_table.getDouble(3);
+            sum += m_table.getTimestampAsLong(4);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public VoltTable roundTrip() {
+        m_serialized.clear();
+        m_table.flattenToBuffer(m_serialized);
+        m_serialized.flip();
+        // Read back the way a client response does: length prefix, then the table bytes
+        int length = m_serialized.getInt();
+        ByteBuffer table = m_serialized.slice();
+        table.limit(length);
+        return PrivateVoltTableFactory.createVoltTableFromBuffer(table, true);
+    }
+}
@@ -0,0 +1,295 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.voltcore.network.Connection;
+import org.voltcore.network.QueueMonitor;
+import org.voltcore.network.VoltNetworkPool;
+import org.voltcore.network.VoltProtocolHandler;
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.StoredProcedureInvocation;
+import org.voltdb.VoltTable;
+
+/**
+ * Measures how the async dispatch path of the client (ClientImpl.callProcedure(callback, ...)
+ * through Distributer.queue() and response delivery) scales with the number of caller threads.
+ *
+ * The server side is an in-process stand-in that completes the login handshake and answers every
+ * invocation immediately with an empty success response, so the client is the bottleneck.
+ *
+ * Run the thread sweep (1 to 32 callers) with
+ *   java -cp ... org.voltdb.client.ClientDispatchBenchmark [result.json]
+ * or a single configuration through the jmh ant target.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientDispatchBenchmark {
+
+    static final int[] CALLER_THREADS = { 1, 2, 4, 8, 16, 32 };
+
+    @Param({ "1", "3" })
+    public int connections;
+
+    // Outstanding invocations allowed per caller thread
+    @Param({ "64" })
+    public int window;
+
+    private StandInServer[] m_servers;
+    private Client m_client;
+
+    @State(Scope.Thread)
+    public static class Caller {
+        Semaphore m_permits;
+        ProcedureCallback m_callback;
+        int m_window;
+
+        @Setup(Level.Trial)
+        public void setup(ClientDispatchBenchmark bench) {
+            m_window = bench.window;
+            final Semaphore permits = new Semaphore(m_window);
+            m_permits = permits;
+            m_callback = new ProcedureCallback() {
+                @Override
+                public void clientCallback(ClientResponse clientResponse) {
+                    permits.release();
+                }
+            };
+        }
+
+        @TearDown(Level.Iteration)
+        public void drain() throws InterruptedException {
+            // Don't let responses from this iteration be credited to the next one
+            m_permits.acquire(m_window);
+            m_permits.release(m_window);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        m_servers = new StandInServer[connections];
+        ClientConfig config = new ClientConfig();
+        config.setClientAffinity(false);
+        config.setHeavyweight(true);
+        config.setMaxOutstandingTxns(Integer.MAX_VALUE);
+        m_client = ClientFactory.createClient(config);
+        for (int ii = 0; ii < connections; ii++) {
+            m_servers[ii] = new StandInServer();
+            m_servers[ii].start();
+            m_client.createConnection("localhost", m_servers[ii].getPort());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        m_client.drain();
+        m_client.close();
+        for (StandInServer server : m_servers) {
+            server.shutdown();
+        }
+    }
+
+    @Benchmark
+    public boolean asyncCallProcedure(Caller caller) throws Exception {
+        caller.m_permits.acquire();
+        return m_client.callProcedure(caller.m_callback, "Noop", 1L, "key");
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int threads : CALLER_THREADS) {
+            OptionsBuilder builder = new OptionsBuilder();
+            builder.include(ClientDispatchBenchmark.class.getSimpleName())
+                   .threads(threads);
+            if (args.length > 0) {
+                builder.resultFormat(ResultFormatType.JSON)
+                       .result(args[0].replace(".json", "-" + threads + "t.json"));
+            }
+            Options opts = builder.build();
+            new Runner(opts).run();
+        }
+    }
+
+    /**
+     * Accepts client connections, performs the login handshake and replies to every
+     * invocation with an empty success response.
+     */
+    static class StandInServer extends Thread {
+        private final VoltNetworkPool m_network = new VoltNetworkPool();
+        private final ServerSocketChannel m_socket;
+        private final AtomicBoolean m_shutdown = new AtomicBoolean(false);
+        private final List<SocketChannel> m_channels = new ArrayList<>();
+
+        StandInServer() throws IOException {
+            super("Stand-in server");
+            m_network.start();
+            m_socket = ServerSocketChannel.open();
+            m_socket.configureBlocking(false);
+            m_socket.socket().bind(new InetSocketAddress(0));
+        }
+
+        int getPort() {
+            return m_socket.socket().getLocalPort();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!m_shutdown.get()) {
+                    SocketChannel client = m_socket.accept();
+                    if (client == null) {
+                        Thread.sleep(1);
+                        continue;
+                    }
+                    client.configureBlocking(true);
+                    readLogin(client);
+
+                    final ByteBuffer responseBuffer = ByteBuffer.allocate(34);
+                    responseBuffer.putInt(30);
+                    responseBuffer.put((byte)0);//version
+                    responseBuffer.put((byte)0);//success response
+                    responseBuffer.putInt(0);//hostId
+                    responseBuffer.putLong(0);//connectionId
+                    responseBuffer.putLong(0);//instanceId
+                    responseBuffer.putInt(0);//instanceId pt 2
+                    responseBuffer.putInt(0);
+                    responseBuffer.flip();
+                    while (responseBuffer.hasRemaining()) {
+                        client.write(responseBuffer);
+                    }
+
+                    client.configureBlocking(false);
+                    m_channels.add(client);
+                    m_network.registerChannel(client, new Responder(), null, null);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        private static ByteBuffer read(SocketChannel client, int length) throws IOException {
+            final ByteBuffer buf = ByteBuffer.allocate(length);
+            while (buf.hasRemaining()) {
+                if (client.read(buf) < 0) {
+                    throw new IOException("Connection closed during login");
+                }
+            }
+            buf.flip();
+            return buf;
+        }
+
+        private static void readLogin(SocketChannel client) throws IOException {
+            read(client, 4);//length
+            read(client, 1);//version
+            ClientAuthScheme scheme = ClientAuthScheme.get(read(client, 1).get());
+            read(client, read(client, 4).getInt());//service
+            read(client, read(client, 4).getInt());//username
+            read(client, ClientAuthScheme.getDigestLength(scheme));//password
+        }
+
+        void shutdown() throws InterruptedException {
+            m_shutdown.set(true);
+            join();
+            m_network.shutdown();
+            try {
+                m_socket.close();
+            } catch (IOException ignored) {}
+            for (SocketChannel sc : m_channels) {
+                try {
+                    sc.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    static class Responder extends VoltProtocolHandler {
+        private static final Runnable NOOP = new Runnable() {
+            @Override
+            public void run() {}
+        };
+        private final StoredProcedureInvocation m_spi = new StoredProcedureInvocation();
+
+        @Override
+        public int getMaxRead() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void handleMessage(ByteBuffer message, Connection c) throws IOException {
+            m_spi.initFromBuffer(message);
+            ClientResponseImpl response = new ClientResponseImpl(ClientResponse.SUCCESS,
+                    new VoltTable[0], null, m_spi.getClientHandle());
+            ByteBuffer buf = ByteBuffer.allocate(4 + response.getSerializedSize());
+            buf.putInt(buf.capacity() - 4);
+            response.flattenToBuffer(buf);
+            buf.flip();
+            c.writeStream().enqueue(buf);
+        }
+
+        @Override
+        public Runnable offBackPressure() {
+            return NOOP;
+        }
+
+        @Override
+        public Runnable onBackPressure() {
+            return NOOP;
+        }
+
+        @Override
+        public QueueMonitor writestreamMonitor() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.compiler;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltdb.ParameterSet;
+import org.voltdb.VoltType;
+import org.voltdb.common.Constants;
+import org.voltdb.planner.CorePlan;
+
+/**
+ * Ad hoc plan cache lookup throughput from many planner threads.
+ *
+ * Each lookup is a literal cache get, and on a miss a put of a ready made plan, standing in
+ * for planning it. Statements are drawn from a Zipf distribution over four times as many
+ * statements as the cache holds, which gives a literal cache hit ratio of about 78% with LRU
+ * eviction, roughly what a dashboard plus ad hoc exploration workload sees. One segment
+ * behaves like the single lock cache this replaced.
+ *
+ *   ant jmh -Djmh.lib.dir=... -Djmh.args="AdHocCompilerCacheBenchmark -t 8"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class AdHocCompilerCacheBenchmark {
+
+    private static final int CACHE_ENTRIES = 1000;
+    private static final int STATEMENTS = CACHE_ENTRIES * 4;
+    // Lookups pregenerated per thread, a power of two
+    private static final int SEQUENCE_LENGTH = 1 << 16;
+
+    @Param({ "1", "16" })
+    public int segments;
+
+    private AdHocCompilerCache m_cache;
+    private String[] m_sql;
+    private String[] m_tokens;
+    private AdHocPlannedStatement[] m_plans;
+    private double[] m_zipfCdf;
+
+    @State(Scope.Thread)
+    public static class Lookups {
+        int[] m_sequence;
+        int m_next;
+
+        @Setup(Level.Trial)
+        public void setup(AdHocCompilerCacheBenchmark bench) {
+            Random random = new Random(Thread.currentThread().getId());
+            m_sequence = new int[SEQUENCE_LENGTH];
+            for (int ii = 0; ii < SEQUENCE_LENGTH; ii++) {
+                int index = Arrays.binarySearch(bench.m_zipfCdf, random.nextDouble());
+                m_sequence[ii] = Math.min(index < 0 ? -index - 1 : index, STATEMENTS - 1);
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        m_cache = new AdHocCompilerCache(CACHE_ENTRIES, CACHE_ENTRIES, segments, null, null, null);
+        m_sql = new String[STATEMENTS];
+        m_tokens = new String[STATEMENTS];
+        m_plans = new AdHocPlannedStatement[STATEMENTS];
+        byte[] catalogHash = new byte[20];
+        for (int ii = 0; ii < STATEMENTS; ii++) {
+            m_sql[ii] = "SELECT C_NAME, C_BALANCE FROM CUSTOMER WHERE C_W_ID = " + (ii % 100) +
+                    " AND C_D_ID = " + (ii / 100) + " ORDER BY C_NAME LIMIT 10;";
+            m_tokens[ii] = "SELECT C_NAME, C_BALANCE FROM CUSTOMER WHERE C_W_ID = ? AND C_D_ID = ? " +
+                    "ORDER BY C_NAME LIMIT " + ii;
+            // About the size of a simple single table plan
+            byte[] fragment = new byte[1500];
+            Arrays.fill(fragment, (byte) 'x');
+            byte[] fragmentHash = new byte[20];
+            fragmentHash[0] = (byte) ii;
+            fragmentHash[1] = (byte) (ii >> 8);
+            CorePlan core = new CorePlan(fragment, null, fragmentHash, null, false, true,
+                    new VoltType[] { VoltType.INTEGER, VoltType.INTEGER }, catalogHash);
+            m_plans[ii] = new AdHocPlannedStatement(m_sql[ii].getBytes(Constants.UTF8ENCODING), core,
+                    ParameterSet.fromArrayNoCopy(ii % 100, ii / 100), null);
+        }
+
+        // Zipf with exponent 1 over the statements
+        m_zipfCdf = new double[STATEMENTS];
+        double sum = 0;
+        for (int ii = 0; ii < STATEMENTS; ii++) {
+            sum += 1.0 / (ii + 1);
+            m_zipfCdf[ii] = sum;
+        }
+        for (int ii = 0; ii < STATEMENTS; ii++) {
+            m_zipfCdf[ii] /= sum;
+        }
+    }
+
+    @Benchmark
+    public AdHocPlannedStatement lookup(Lookups lookups) {
+        int statement = lookups.m_sequence[lookups.m_next++ & (SEQUENCE_LENGTH - 1)];
+        AdHocPlannedStatement plan = m_cache.getWithSQL(m_sql[statement]);
+        if (plan == null) {
+            plan = m_plans[statement];
+            m_cache.put(m_sql[statement], m_tokens[statement], plan, null, false, false);
+        }
+        return plan;
+    }
+}
@@ -0,0 +1,160 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb.exportclient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.types.TimestampType;
+
+/**
+ * Export blocks per second decoded from a synthetic block of rows:
+ *
+ *   exportRow - what GuestProcessor did per row: copy the row out of the block and decode
+ *               it with ExportRow.decodeRow into boxed values
+ *   adapter   - ExportRowCursor.toExportRow, what the default processRows hands to decoders
+ *               still implementing processRow(ExportRow)
+ *   typed     - ExportRowCursor typed getters, reading every column in place
+ *
+ *   ant jmh -Djmh.lib.dir=... -Djmh.args=ExportDecodeBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportDecodeBenchmark {
+
+    @Param({ "100", "1000" })
+    public int rowsPerBlock;
+
+    private ExportRow m_schema;
+    private ByteBuffer m_block;
+    private ExportRowCursor m_cursor;
+    private byte[] m_scratch;
+
+    @Setup
+    public void setup() throws IOException {
+        VoltTable table = new VoltTable(
+                new VoltTable.ColumnInfo("VOLT_TRANSACTION_ID", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("VOLT_EXPORT_TIMESTAMP", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("VOLT_EXPORT_SEQUENCE_NUMBER", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("VOLT_PARTITION_ID", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("VOLT_OP", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("VOLT_SITE_ID", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("ID", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("QTY", VoltType.INTEGER),
+                new VoltTable.ColumnInfo("PRICE", VoltType.FLOAT),
+                new VoltTable.ColumnInfo("TS", VoltType.TIMESTAMP),
+                new VoltTable.ColumnInfo("SYMBOL", VoltType.STRING),
+                new VoltTable.ColumnInfo("NOTE", VoltType.STRING));
+        Random random = new Random(0);
+        ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        for (int i = 0; i < rowsPerBlock; i++) {
+            table.clearRowData();
+            table.addRow(i, i, i, 0, 1, 0, random.nextLong() & Long.MAX_VALUE, random.nextInt(1000),
+                    random.nextDouble() * 100, new TimestampType(random.nextInt() & Integer.MAX_VALUE),
+                    "SYM" + random.nextInt(500), random.nextInt(5) == 0 ? null : "note for row number " + i);
+            table.advanceRow();
+            byte[] bytes = ExportEncoder.encodeRow(table, "TRADES", 6, 1L);
+            ByteBuffer bb = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            int schemaSize = bb.getInt();
+            if (m_schema == null) {
+                ByteBuffer sbuf = ByteBuffer.wrap(bytes, 4, schemaSize).slice().order(ByteOrder.LITTLE_ENDIAN);
+                m_schema = ExportRow.decodeBufferSchema(sbuf, schemaSize, 0, 1L);
+            }
+            rows.write(bytes, 4 + schemaSize, bytes.length - 4 - schemaSize);
+        }
+        m_block = ByteBuffer.wrap(rows.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        m_cursor = new ExportRowCursor();
+        m_scratch = new byte[1024];
+    }
+
+    @Benchmark
+    public void exportRow(Blackhole bh) throws IOException {
+        ByteBuffer buf = m_block;
+        buf.position(0);
+        ExportRow previous = m_schema;
+        while (buf.hasRemaining()) {
+            int length = buf.getInt();
+            byte[] rowdata = new byte[length];
+            buf.get(rowdata, 0, length);
+            ExportRow row = ExportRow.decodeRow(previous, 0, 0L, rowdata);
+            bh.consume(row.values);
+            previous = row;
+        }
+    }
+
+    @Benchmark
+    public void adapter(Blackhole bh) throws IOException {
+        m_block.position(0);
+        m_cursor.reset(m_schema, 0, m_block);
+        while (m_cursor.advance()) {
+            bh.consume(m_cursor.toExportRow().values);
+        }
+    }
+
+    @Benchmark
+    public void typed(Blackhole bh) throws IOException {
+        m_block.position(0);
+        ExportRowCursor rows = m_cursor;
+        rows.reset(m_schema, 0, m_block);
+        while (rows.advance()) {
+            for (int i = 0; i < rows.getColumnCount(); i++) {
+                if (rows.isNull(i)) {
+                    continue;
+                }
+                switch (rows.getColumnType(i)) {
+                case FLOAT:
+                    bh.consume(rows.getDouble(i));
+                    break;
+                case STRING:
+                    rows.getBytes(i, m_scratch, 0);
+                    bh.consume(m_scratch);
+                    break;
+                default:
+                    bh.consume(rows.getLong(i));
+                }
+            }
+        }
+    }
+}
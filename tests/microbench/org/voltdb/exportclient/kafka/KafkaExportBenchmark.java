@@ -0,0 +1,189 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb.exportclient.kafka;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.common.Constants;
+import org.voltdb.export.AdvertisedDataSource;
+import org.voltdb.exportclient.ExportDecoderBase;
+import org.voltdb.exportclient.ExportEncoder;
+import org.voltdb.exportclient.ExportRow;
+import org.voltdb.exportclient.ExportRowCursor;
+import org.voltdb.exportclient.decode.CSVStringDecoder;
+import org.voltdb.types.TimestampType;
+
+/**
+ * Export blocks per second sent to an in process mock producer acknowledging every record,
+ * so rows per second is the score times rowsPerBlock and its inverse the latency of a block:
+ *
+ *   csvPerRow - what the kafka export client did: a CSV string per row and a future polled
+ *               per row once the block is sent
+ *   raw       - value.format=raw, the serialized rows sent as is, one wait per block
+ *   avro      - value.format=avro, binary avro records, one wait per block
+ *
+ *   ant jmh -Djmh.lib.dir=... -Djmh.args=KafkaExportBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KafkaExportBenchmark {
+
+    @Param({ "100", "1000" })
+    public int rowsPerBlock;
+
+    private ExportRow m_schema;
+    private ByteBuffer m_block;
+    private final ExportRowCursor m_cursor = new ExportRowCursor();
+    private final MockProducer m_mock = new MockProducer(true);
+    private CSVStringDecoder m_csvDecoder;
+    private ExportDecoderBase m_rawDecoder;
+    private ExportDecoderBase m_avroDecoder;
+
+    @Setup
+    public void setup() throws Exception {
+        VoltTable table = new VoltTable(
+                new VoltTable.ColumnInfo("VOLT_TRANSACTION_ID", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("VOLT_EXPORT_TIMESTAMP", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("VOLT_EXPORT_SEQUENCE_NUMBER", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("VOLT_PARTITION_ID", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("VOLT_OP", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("VOLT_SITE_ID", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("ID", VoltType.BIGINT),
+                new VoltTable.ColumnInfo("QTY", VoltType.INTEGER),
+                new VoltTable.ColumnInfo("PRICE", VoltType.FLOAT),
+                new VoltTable.ColumnInfo("TS", VoltType.TIMESTAMP),
+                new VoltTable.ColumnInfo("SYMBOL", VoltType.STRING),
+                new VoltTable.ColumnInfo("NOTE", VoltType.STRING));
+        Random random = new Random(0);
+        ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        for (int i = 0; i < rowsPerBlock; i++) {
+            table.clearRowData();
+            table.addRow(i, i, i, 0, 1, 0, random.nextLong() & Long.MAX_VALUE, random.nextInt(1000),
+                    random.nextDouble() * 100, new TimestampType(random.nextInt() & Integer.MAX_VALUE),
+                    "SYM" + random.nextInt(500), random.nextInt(5) == 0 ? null : "note for row number " + i);
+            table.advanceRow();
+            byte[] bytes = ExportEncoder.encodeRow(table, "TRADES", 6, 1L);
+            ByteBuffer bb = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            int schemaSize = bb.getInt();
+            if (m_schema == null) {
+                ByteBuffer sbuf = ByteBuffer.wrap(bytes, 4, schemaSize).slice().order(ByteOrder.LITTLE_ENDIAN);
+                m_schema = ExportRow.decodeBufferSchema(sbuf, schemaSize, 0, 1L);
+            }
+            rows.write(bytes, 4 + schemaSize, bytes.length - 4 - schemaSize);
+        }
+        m_block = ByteBuffer.wrap(rows.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+
+        CSVStringDecoder.Builder builder = CSVStringDecoder.builder();
+        builder.dateFormatter(Constants.ODBC_DATE_FORMAT_STRING);
+        m_csvDecoder = builder.build();
+        m_rawDecoder = createDecoder("raw");
+        m_avroDecoder = createDecoder("avro");
+    }
+
+    private ExportDecoderBase createDecoder(String format) throws Exception {
+        KafkaExportClient client = new KafkaExportClient() {
+            @Override
+            Producer<byte[], byte[]> createBinaryProducer() {
+                return m_mock;
+            }
+        };
+        Properties config = new Properties();
+        config.setProperty("bootstrap.servers", "localhost:9092");
+        config.setProperty("acks", "all");
+        config.setProperty("value.format", format);
+        client.configure(config);
+        return client.constructExportDecoder(new AdvertisedDataSource(0, "foo", "TRADES", "ID", 0, 1L,
+                new ArrayList<>(m_schema.names), new ArrayList<>(m_schema.types), m_schema.lengths,
+                AdvertisedDataSource.ExportFormat.SEVENDOTX));
+    }
+
+    @TearDown
+    public void tearDown() {
+        m_rawDecoder.sourceNoLongerAdvertised(null);
+        m_avroDecoder.sourceNoLongerAdvertised(null);
+    }
+
+    private ExportRowCursor block() {
+        m_mock.clear();
+        m_block.position(0);
+        m_cursor.reset(m_schema, 0, m_block);
+        return m_cursor;
+    }
+
+    @Benchmark
+    public void csvPerRow() throws Exception {
+        ExportRowCursor rows = block();
+        List<Future<RecordMetadata>> futures = new ArrayList<>(rowsPerBlock);
+        while (rows.advance()) {
+            ExportRow row = rows.toExportRow();
+            String value = m_csvDecoder.decode(row.generation, row.tableName, row.types, row.names, null, row.values);
+            byte[] key = row.partitionValue.toString().getBytes(StandardCharsets.UTF_8);
+            futures.add(m_mock.send(new ProducerRecord<>("TRADES", key, value.getBytes(StandardCharsets.UTF_8))));
+        }
+        for (Future<RecordMetadata> future : futures) {
+            future.get(5_000, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Benchmark
+    public void raw() throws ExportDecoderBase.RestartBlockException, IOException {
+        m_rawDecoder.processRows(block());
+    }
+
+    @Benchmark
+    public void avro() throws ExportDecoderBase.RestartBlockException, IOException {
+        m_avroDecoder.processRows(block());
+    }
+}
@@ -0,0 +1,128 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb.importer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltdb.ParameterSet;
+import org.voltdb.importer.formatter.FormattedRow;
+import org.voltdb.importer.formatter.builtin.VoltCSVFormatter;
+
+/**
+ * Records per second taken from a CSV message to serialized procedure parameters:
+ *
+ *   transform - Formatter.transform(), which decodes the message and splits it with
+ *               CSVParser, followed by a ParameterSet of the resulting strings
+ *   row       - RowFormatter.transform() into a reused FormattedRow which serializes itself
+ *
+ * Run with -prof gc to compare the allocation rates as well.
+ *
+ *   ant jmh -Djmh.lib.dir=... -Djmh.args="CSVFormatterBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CSVFormatterBenchmark {
+
+    static final int MESSAGES = 1024;
+
+    @Param({ "4", "16" })
+    public int columns;
+
+    private ByteBuffer[] m_messages;
+    private int m_next = 0;
+    private VoltCSVFormatter m_formatter;
+    private FormattedRow m_row;
+    private ByteBuffer m_buf;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        m_messages = new ByteBuffer[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int c = 0; c < columns; c++) {
+                if (c > 0) {
+                    sb.append(',');
+                }
+                switch (c % 4) {
+                case 0:
+                    sb.append(random.nextInt());
+                    break;
+                case 1:
+                    sb.append("\"name ").append(random.nextInt(1000)).append(", quoted\"");
+                    break;
+                case 2:
+                    sb.append(random.nextDouble());
+                    break;
+                default:
+                    sb.append(random.nextInt(10) == 0 ? "NULL" : "plain" + random.nextInt(100));
+                }
+            }
+            m_messages[i] = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        m_formatter = new VoltCSVFormatter("csv", new Properties());
+        m_row = new FormattedRow();
+        m_buf = ByteBuffer.allocate(64 * 1024);
+    }
+
+    private ByteBuffer next() {
+        ByteBuffer message = m_messages[m_next];
+        m_next = (m_next + 1) % MESSAGES;
+        return message;
+    }
+
+    @Benchmark
+    public int transform() throws IOException {
+        m_buf.clear();
+        ParameterSet.fromArrayNoCopy(m_formatter.transform(next())).flattenToBuffer(m_buf);
+        return m_buf.position();
+    }
+
+    @Benchmark
+    public int row() {
+        m_formatter.transform(next(), m_row);
+        m_buf.clear();
+        m_row.flattenToBuffer(m_buf);
+        return m_buf.position();
+    }
+}
@@ -0,0 +1,221 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltdb.SiteProcedureConnection;
+import org.voltdb.StarvationTracker;
+import org.voltdb.rejoin.TaskLog;
+
+/**
+ * Latency of handing a task to a site thread while other threads keep its queue busy. Each
+ * benchmark thread offers a task and waits for the site thread to run it, so the sampled
+ * time is the round trip through the queue with three other producers offering alongside.
+ * Compares the LinkedTransferQueue the SiteTaskerQueue used to wrap, taken the way it was
+ * taken, with the lock free queue it is now, and the site thread parking as soon as the
+ * queue is empty with it spinning and yielding for a while first.
+ *
+ *   ant jmh -Djmh.lib.dir=... -Djmh.args=SiteTaskerQueueBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class SiteTaskerQueueBenchmark {
+
+    @Param({ "LinkedTransferQueue", "SiteTaskerQueue" })
+    public String queue;
+
+    // How long the site thread spins, then yields, on an empty queue before blocking
+    @Param({ "0", "50" })
+    public int waitMicros;
+
+    private interface TaskQueue {
+        void offer(SiteTasker task);
+        SiteTasker take() throws InterruptedException;
+    }
+
+    // The previous SiteTaskerQueue, with its queue depth accounting
+    private static class LinkedTaskQueue implements TaskQueue {
+        final LinkedTransferQueue<SiteTasker> m_tasks = new LinkedTransferQueue<SiteTasker>();
+        final AtomicInteger m_depth = new AtomicInteger();
+        final StarvationTracker m_starvationTracker = new StarvationTracker(0);
+        final long m_spinNanos;
+        long m_lastWaitTime;
+
+        LinkedTaskQueue(long spinNanos) {
+            m_spinNanos = spinNanos;
+        }
+
+        @Override
+        public void offer(SiteTasker task) {
+            task.setQueueOfferTime();
+            m_depth.incrementAndGet();
+            m_tasks.offer(task);
+        }
+
+        @Override
+        public SiteTasker take() throws InterruptedException {
+            SiteTasker task = m_tasks.poll();
+            if (task == null) {
+                m_starvationTracker.beginStarvation();
+                try {
+                    task = spinTake();
+                } finally {
+                    m_starvationTracker.endStarvation();
+                }
+            }
+            m_depth.decrementAndGet();
+            m_lastWaitTime = System.nanoTime() - task.getQueueOfferTime();
+            return task;
+        }
+
+        // CoreUtils.queueSpinTake with the spin as a parameter
+        private SiteTasker spinTake() throws InterruptedException {
+            if (m_spinNanos > 0) {
+                final long start = System.nanoTime();
+                SiteTasker task;
+                while ((task = m_tasks.poll()) == null) {
+                    if (System.nanoTime() - start > m_spinNanos) {
+                        return m_tasks.take();
+                    }
+                }
+                return task;
+            }
+            return m_tasks.take();
+        }
+    }
+
+    private static class MpscTaskQueue implements TaskQueue {
+        final SiteTaskerQueue m_queue;
+
+        MpscTaskQueue(long spinNanos, long yieldNanos) {
+            m_queue = new SiteTaskerQueue(0, spinNanos, yieldNanos);
+            m_queue.setStarvationTracker(new StarvationTracker(0));
+            m_queue.setupQueueDepthTracker(0);
+        }
+
+        @Override
+        public void offer(SiteTasker task) {
+            m_queue.offer(task);
+        }
+
+        @Override
+        public SiteTasker take() throws InterruptedException {
+            return m_queue.take();
+        }
+    }
+
+    private static class RoundTripTask extends SiteTasker {
+        volatile boolean m_ran;
+
+        @Override
+        public void run(SiteProcedureConnection siteConnection) {
+            m_ran = true;
+        }
+
+        @Override
+        public void runForRejoin(SiteProcedureConnection siteConnection, TaskLog taskLog) {
+            m_ran = true;
+        }
+    }
+
+    // Makes the site thread leave its loop
+    private static class StopTask extends SiteTasker {
+        @Override
+        public void run(SiteProcedureConnection siteConnection) {}
+
+        @Override
+        public void runForRejoin(SiteProcedureConnection siteConnection, TaskLog taskLog) {}
+    }
+
+    private TaskQueue m_queue;
+    private Thread m_site;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final long waitNanos = TimeUnit.MICROSECONDS.toNanos(waitMicros);
+        if (queue.equals("LinkedTransferQueue")) {
+            m_queue = new LinkedTaskQueue(waitNanos);
+        } else {
+            // Split the wait between spinning and yielding
+            m_queue = new MpscTaskQueue(waitNanos / 2, waitNanos - waitNanos / 2);
+        }
+        final TaskQueue tasks = m_queue;
+        m_site = new Thread("Site") {
+            @Override
+            public void run() {
+                try {
+                    SiteTasker task;
+                    while (!((task = tasks.take()) instanceof StopTask)) {
+                        task.run(null);
+                    }
+                } catch (InterruptedException ignore) {}
+            }
+        };
+        m_site.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws InterruptedException {
+        m_queue.offer(new StopTask());
+        m_site.join();
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        final RoundTripTask m_task = new RoundTripTask();
+    }
+
+    @Benchmark
+    public boolean roundTrip(Producer producer) {
+        final RoundTripTask task = producer.m_task;
+        task.m_ran = false;
+        m_queue.offer(task);
+        while (!task.m_ran) {
+            Thread.yield();
+        }
+        return task.m_ran;
+    }
+}
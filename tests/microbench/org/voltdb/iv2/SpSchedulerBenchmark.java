@@ -0,0 +1,150 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltcore.messaging.Mailbox;
+import org.voltcore.messaging.Subject;
+import org.voltcore.messaging.VoltMessage;
+import org.voltdb.DummyCommandLog;
+import org.voltdb.MockVoltDB;
+import org.voltdb.SnapshotCompletionMonitor;
+import org.voltdb.StarvationTracker;
+import org.voltdb.StoredProcedureInvocation;
+import org.voltdb.VoltDB;
+import org.voltdb.messaging.InitiateResponseMessage;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+
+/**
+ * SpScheduler message handling on a partition leader without k-safety: an initiate task
+ * is sequenced and queued for the site, the queued task is taken off the site queue, and
+ * the site's response is handled and forwarded to the initiator. The mailbox and command
+ * log do nothing, so only the scheduler's own work is measured.
+ *
+ *   ant jmh -Djmh.lib.dir=... -Djmh.args=SpSchedulerBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpSchedulerBenchmark {
+
+    private static final long SITE_HSID = 11223344L;
+    private static final long INITIATOR_HSID = 55667788L;
+
+    @Param({ "false", "true" })
+    public boolean readOnly;
+
+    private static final MockVoltDB s_mockVoltDB = new MockVoltDB();
+
+    private SpScheduler m_scheduler;
+    private SiteTaskerQueue m_queue;
+    private StoredProcedureInvocation m_invocation;
+    private Iv2InitiateTaskMessage m_lastLogged;
+    private long m_clientHandle;
+
+    private static class NullMailbox implements Mailbox {
+        long m_sent;
+        @Override public void send(long hsId, VoltMessage message) { m_sent++; }
+        @Override public void send(long[] hsIds, VoltMessage message) { m_sent++; }
+        @Override public void deliver(VoltMessage message) {}
+        @Override public void deliverFront(VoltMessage message) {}
+        @Override public VoltMessage recv() { return null; }
+        @Override public VoltMessage recvBlocking() { return null; }
+        @Override public VoltMessage recvBlocking(long timeout) { return null; }
+        @Override public VoltMessage recv(Subject[] s) { return null; }
+        @Override public VoltMessage recvBlocking(Subject[] s) { return null; }
+        @Override public VoltMessage recvBlocking(Subject[] s, long timeout) { return null; }
+        @Override public long getHSId() { return SITE_HSID; }
+        @Override public void setHSId(long hsId) {}
+    }
+
+    @Setup
+    public void setup() {
+        s_mockVoltDB.setKFactor(0);
+        VoltDB.replaceVoltDBInstanceForTest(s_mockVoltDB);
+
+        m_queue = new SiteTaskerQueue(0);
+        m_queue.setStarvationTracker(new StarvationTracker(0));
+        m_queue.setupQueueDepthTracker(0);
+        m_scheduler = new SpScheduler(0, m_queue, new SnapshotCompletionMonitor(), false);
+        NullMailbox mailbox = new NullMailbox();
+        m_scheduler.setMailbox(mailbox);
+        m_scheduler.setLock(mailbox);
+        // The site responds to the sequenced copy of the initiate task, which the command log sees
+        m_scheduler.setCommandLog(new DummyCommandLog() {
+            @Override
+            public ListenableFuture<Object> log(Iv2InitiateTaskMessage message, long spHandle,
+                    int[] involvedPartitions, DurabilityListener l, TransactionTask handle) {
+                m_lastLogged = message;
+                return null;
+            }
+        });
+        RepairLog repairLog = new RepairLog();
+        repairLog.setLeaderState(true);
+        m_scheduler.m_repairLog = repairLog;
+        m_scheduler.setLeaderState(true);
+
+        m_invocation = new StoredProcedureInvocation();
+        m_invocation.setProcName("UpdateCustomer");
+        m_invocation.setParams(42L, "name");
+    }
+
+    @Benchmark
+    public Iv2InitiateTaskMessage initiateAndRespond() {
+        Iv2InitiateTaskMessage task = new Iv2InitiateTaskMessage(INITIATOR_HSID,
+                                                                  Long.MIN_VALUE,
+                                                                  Long.MIN_VALUE,
+                                                                  Long.MIN_VALUE,
+                                                                  Long.MIN_VALUE,
+                                                                  readOnly,
+                                                                  true,
+                                                                  m_invocation,
+                                                                  ++m_clientHandle,
+                                                                  1,
+                                                                  false);
+        m_scheduler.deliver(task);
+        if (m_queue.poll() == null) {
+            throw new IllegalStateException("Initiate task was not queued for the site");
+        }
+        m_scheduler.deliver(new InitiateResponseMessage(m_lastLogged));
+        return m_lastLogged;
+    }
+}
@@ -0,0 +1,225 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltcore.messaging.Mailbox;
+import org.voltcore.messaging.Subject;
+import org.voltcore.messaging.VoltMessage;
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.DummyCommandLog;
+import org.voltdb.MockVoltDB;
+import org.voltdb.SnapshotCompletionMonitor;
+import org.voltdb.StarvationTracker;
+import org.voltdb.StoredProcedureInvocation;
+import org.voltdb.VoltDB;
+import org.voltdb.VoltTable;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.iv2.SiteTasker.SiteTaskerRunnable;
+import org.voltdb.messaging.InitiateResponseMessage;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+
+/**
+ * Replays a recorded stream of single partition initiations through the SpScheduler of a
+ * partition leader with one replica, the k=1 case where every write gets a duplicate
+ * counter. Each operation delivers the next initiate task, runs what the scheduler queued
+ * for the site, and once more than window transactions are in flight delivers the local
+ * and the replica responses for the oldest one, completing it.
+ *
+ * Run with the GC profiler to see the allocation per operation. The two response messages
+ * each operation builds, like the site and the network would, are part of it.
+ *
+ *   ant jmh -Djmh.lib.dir=... -Djmh.args="SpSchedulerReplayBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpSchedulerReplayBenchmark {
+
+    private static final long SITE_HSID = 11223344L;
+    private static final long REPLICA_HSID = 11223345L;
+    private static final long INITIATOR_HSID = 55667788L;
+    private static final int STREAM_LENGTH = 4096;
+    private static final String[] PROCEDURES = { "NewOrder", "Payment", "Delivery", "OrderStatus" };
+
+    // Transactions initiated but not yet responded to
+    @Param({ "1", "64" })
+    public int window;
+
+    // Percentage of the stream that is reads, which have no duplicate counter
+    @Param({ "0", "20" })
+    public int readPercent;
+
+    private static final MockVoltDB s_mockVoltDB = new MockVoltDB();
+
+    private SpScheduler m_scheduler;
+    private SiteTaskerQueue m_queue;
+    private ReplicatingMailbox m_mailbox;
+    private Iv2InitiateTaskMessage m_stream[];
+    private int m_next;
+    private Iv2InitiateTaskMessage m_lastLogged;
+    private ClientResponseImpl m_response;
+
+    // In flight transactions as the sequenced task and the copy sent to the replica
+    private Iv2InitiateTaskMessage m_local[];
+    private Iv2InitiateTaskMessage m_replicated[];
+    private int m_oldest;
+    private int m_inFlight;
+
+    private static class ReplicatingMailbox implements Mailbox {
+        Iv2InitiateTaskMessage m_lastReplicated;
+        @Override public void send(long hsId, VoltMessage message) {}
+        @Override public void send(long[] hsIds, VoltMessage message) {
+            if (message instanceof Iv2InitiateTaskMessage) {
+                m_lastReplicated = (Iv2InitiateTaskMessage) message;
+            }
+        }
+        @Override public void deliver(VoltMessage message) {}
+        @Override public void deliverFront(VoltMessage message) {}
+        @Override public VoltMessage recv() { return null; }
+        @Override public VoltMessage recvBlocking() { return null; }
+        @Override public VoltMessage recvBlocking(long timeout) { return null; }
+        @Override public VoltMessage recv(Subject[] s) { return null; }
+        @Override public VoltMessage recvBlocking(Subject[] s) { return null; }
+        @Override public VoltMessage recvBlocking(Subject[] s, long timeout) { return null; }
+        @Override public long getHSId() { return SITE_HSID; }
+        @Override public void setHSId(long hsId) {}
+    }
+
+    @Setup
+    public void setup() {
+        s_mockVoltDB.setKFactor(1);
+        VoltDB.replaceVoltDBInstanceForTest(s_mockVoltDB);
+
+        m_queue = new SiteTaskerQueue(0);
+        m_queue.setStarvationTracker(new StarvationTracker(0));
+        m_queue.setupQueueDepthTracker(0);
+        m_scheduler = new SpScheduler(0, m_queue, new SnapshotCompletionMonitor(), false);
+        m_mailbox = new ReplicatingMailbox();
+        m_scheduler.setMailbox(m_mailbox);
+        m_scheduler.setLock(m_mailbox);
+        m_scheduler.setCommandLog(new DummyCommandLog() {
+            @Override
+            public ListenableFuture<Object> log(Iv2InitiateTaskMessage message, long spHandle,
+                    int[] involvedPartitions, DurabilityListener l, TransactionTask handle) {
+                m_lastLogged = message;
+                return null;
+            }
+        });
+        RepairLog repairLog = new RepairLog();
+        repairLog.setLeaderState(true);
+        m_scheduler.m_repairLog = repairLog;
+        m_scheduler.setLeaderState(true);
+        m_scheduler.updateReplicas(Arrays.asList(SITE_HSID, REPLICA_HSID), null, -1);
+
+        // The same deterministic results on both copies
+        m_response = new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[0], null);
+        m_response.setHashes(new int[] { 1, 0x5eed });
+
+        final Random r = new Random(0);
+        m_stream = new Iv2InitiateTaskMessage[STREAM_LENGTH];
+        for (int ii = 0; ii < STREAM_LENGTH; ii++) {
+            StoredProcedureInvocation invocation = new StoredProcedureInvocation();
+            invocation.setProcName(PROCEDURES[r.nextInt(PROCEDURES.length)]);
+            invocation.setParams((long) r.nextInt(1000), "customer" + r.nextInt(1000));
+            m_stream[ii] = new Iv2InitiateTaskMessage(INITIATOR_HSID,
+                                                      Long.MIN_VALUE,
+                                                      Long.MIN_VALUE,
+                                                      Long.MIN_VALUE,
+                                                      Long.MIN_VALUE,
+                                                      r.nextInt(100) < readPercent,
+                                                      true,
+                                                      invocation,
+                                                      ii,
+                                                      1,
+                                                      false);
+        }
+        m_local = new Iv2InitiateTaskMessage[window + 1];
+        m_replicated = new Iv2InitiateTaskMessage[window + 1];
+        m_next = 0;
+        m_oldest = 0;
+        m_inFlight = 0;
+    }
+
+    @Benchmark
+    public int replay() {
+        final Iv2InitiateTaskMessage task = m_stream[m_next];
+        m_next = (m_next + 1) % STREAM_LENGTH;
+        m_mailbox.m_lastReplicated = null;
+        m_scheduler.deliver(task);
+        runQueuedTasks();
+
+        final int slot = (m_oldest + m_inFlight++) % m_local.length;
+        m_local[slot] = m_lastLogged;
+        m_replicated[slot] = task.isReadOnly() ? null : m_mailbox.m_lastReplicated;
+        if (m_inFlight > window) {
+            respond(m_local[m_oldest], SITE_HSID);
+            if (m_replicated[m_oldest] != null) {
+                respond(m_replicated[m_oldest], REPLICA_HSID);
+            }
+            m_local[m_oldest] = null;
+            m_replicated[m_oldest] = null;
+            m_oldest = (m_oldest + 1) % m_local.length;
+            m_inFlight--;
+            runQueuedTasks();
+        }
+        return m_inFlight;
+    }
+
+    private void respond(Iv2InitiateTaskMessage task, long sourceHSId) {
+        InitiateResponseMessage response = new InitiateResponseMessage(task);
+        response.m_sourceHSId = sourceHSId;
+        response.setResults(m_response);
+        m_scheduler.deliver(response);
+    }
+
+    // Take the transaction off the site queue, and run the scheduler's own tasks like truncation
+    private void runQueuedTasks() {
+        SiteTasker task;
+        while ((task = m_queue.poll()) != null) {
+            if (task instanceof SiteTaskerRunnable) {
+                ((SiteTaskerRunnable) task).run();
+            }
+        }
+    }
+}
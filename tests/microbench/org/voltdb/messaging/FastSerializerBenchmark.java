@@ -0,0 +1,116 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.messaging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * FastSerializer and FastDeserializer over records shaped like a message payload: a long id,
+ * an int, a double, a short string and a small varbinary. The serializer is reused across
+ * invocations the way the messaging layer reuses its per connection serializer.
+ *
+ *   ant jmh -Djmh.lib.dir=... -Djmh.args=FastSerializerBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FastSerializerBenchmark {
+
+    @Param({ "1", "100" })
+    public int records;
+
+    private long[] m_ids;
+    private String[] m_names;
+    private byte[][] m_payloads;
+    private FastSerializer m_serializer;
+    private ByteBuffer m_serialized;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(0);
+        m_ids = new long[records];
+        m_names = new String[records];
+        m_payloads = new byte[records][];
+        for (int ii = 0; ii < records; ii++) {
+            m_ids[ii] = random.nextLong();
+            m_names[ii] = "procedure" + random.nextInt(1000);
+            m_payloads[ii] = new byte[16 + random.nextInt(48)];
+            random.nextBytes(m_payloads[ii]);
+        }
+        m_serializer = new FastSerializer();
+        m_serialized = ByteBuffer.allocate(serialize());
+        m_serialized.put(m_serializer.getBuffer());
+        m_serialized.flip();
+    }
+
+    @TearDown
+    public void tearDown() {
+        m_serializer.discard();
+    }
+
+    @Benchmark
+    public int serialize() throws IOException {
+        m_serializer.clear();
+        for (int ii = 0; ii < records; ii++) {
+            m_serializer.writeLong(m_ids[ii]);
+            m_serializer.writeInt(ii);
+            m_serializer.writeDouble(ii * 0.5);
+            m_serializer.writeString(m_names[ii]);
+            m_serializer.writeVarbinary(m_payloads[ii]);
+        }
+        return m_serializer.size();
+    }
+
+    @Benchmark
+    public void deserialize(Blackhole bh) throws IOException {
+        FastDeserializer fds = new FastDeserializer(m_serialized.duplicate());
+        for (int ii = 0; ii < records; ii++) {
+            bh.consume(fds.readLong());
+            bh.consume(fds.readInt());
+            bh.consume(fds.readDouble());
+            bh.consume(fds.readString());
+            bh.consume(fds.readVarbinary());
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.utils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.SnapshotSiteProcessor;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.types.TimestampType;
+
+/**
+ * Compression and decompression throughput of each codec over a snapshot sized block of
+ * serialized VoltTable rows, the same bytes a snapshot compresses per chunk.
+ *
+ * The customer table is mostly text, the order line table mostly numbers, both modelled
+ * on TPC-C. The compression ratio of each codec and table is printed during setup.
+ *
+ *   ant jmh -Djmh.lib.dir=... -Djmh.args=CompressionCodecBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionCodecBenchmark {
+
+    @Param({ "SNAPPY", "LZ4", "LZ4HC" })
+    public CompressionCodec codec;
+
+    @Param({ "customer", "orderline" })
+    public String table;
+
+    private BBContainer m_block;
+    private BBContainer m_compressed;
+    private BBContainer m_uncompressed;
+
+    private static final String ALPHA = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    private static final String[] SYLLABLES =
+        { "BAR", "OUGHT", "ABLE", "PRI", "PRES", "ESE", "ANTI", "CALLY", "ATION", "EING" };
+
+    private static String randomString(Random random, int min, int max) {
+        StringBuilder sb = new StringBuilder();
+        int length = min + random.nextInt(max - min + 1);
+        for (int ii = 0; ii < length; ii++) {
+            sb.append(ALPHA.charAt(random.nextInt(ALPHA.length())));
+        }
+        return sb.toString();
+    }
+
+    // Text made of words, real addresses and notes repeat far more than random letters
+    private static String randomText(Random random, int min, int max) {
+        StringBuilder sb = new StringBuilder();
+        int length = min + random.nextInt(max - min + 1);
+        while (sb.length() < length) {
+            sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)].toLowerCase());
+            sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)].toLowerCase());
+            sb.append(' ');
+        }
+        sb.setLength(length);
+        return sb.toString();
+    }
+
+    private static String lastName(Random random) {
+        int num = random.nextInt(1000);
+        return SYLLABLES[num / 100] + SYLLABLES[(num / 10) % 10] + SYLLABLES[num % 10];
+    }
+
+    private static VoltTable customerTable() {
+        return new VoltTable(
+                new ColumnInfo("C_ID", VoltType.INTEGER),
+                new ColumnInfo("C_D_ID", VoltType.TINYINT),
+                new ColumnInfo("C_W_ID", VoltType.SMALLINT),
+                new ColumnInfo("C_FIRST", VoltType.STRING),
+                new ColumnInfo("C_LAST", VoltType.STRING),
+                new ColumnInfo("C_STREET_1", VoltType.STRING),
+                new ColumnInfo("C_CITY", VoltType.STRING),
+                new ColumnInfo("C_SINCE", VoltType.TIMESTAMP),
+                new ColumnInfo("C_CREDIT", VoltType.STRING),
+                new ColumnInfo("C_BALANCE", VoltType.FLOAT),
+                new ColumnInfo("C_DATA", VoltType.STRING));
+    }
+
+    private static void addCustomer(VoltTable t, Random random, int id) {
+        t.addRow(id, (byte) (id % 10), (short) (id / 30000), randomString(random, 8, 16), lastName(random),
+                randomText(random, 10, 20), randomText(random, 10, 20),
+                new TimestampType(1500000000000000L + random.nextInt(1000000)),
+                random.nextInt(10) == 0 ? "BC" : "GC", -10.0 + random.nextInt(100000) / 100.0,
+                randomText(random, 300, 500));
+    }
+
+    private static VoltTable orderLineTable() {
+        return new VoltTable(
+                new ColumnInfo("OL_O_ID", VoltType.INTEGER),
+                new ColumnInfo("OL_D_ID", VoltType.TINYINT),
+                new ColumnInfo("OL_W_ID", VoltType.SMALLINT),
+                new ColumnInfo("OL_NUMBER", VoltType.TINYINT),
+                new ColumnInfo("OL_I_ID", VoltType.INTEGER),
+                new ColumnInfo("OL_DELIVERY_D", VoltType.TIMESTAMP),
+                new ColumnInfo("OL_QUANTITY", VoltType.INTEGER),
+                new ColumnInfo("OL_AMOUNT", VoltType.DECIMAL),
+                new ColumnInfo("OL_DIST_INFO", VoltType.STRING));
+    }
+
+    private static void addOrderLine(VoltTable t, Random random, int id) {
+        t.addRow(id / 10, (byte) (id % 10), (short) 1, (byte) (id % 15), random.nextInt(100000),
+                new TimestampType(1500000000000000L + id * 1000L), 5,
+                new BigDecimal(random.nextInt(1000000)).movePointLeft(2), randomString(random, 24, 24));
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Random random = new Random(0);
+        boolean customer = "customer".equals(table);
+        VoltTable t = customer ? customerTable() : orderLineTable();
+        // Fill one snapshot buffer, less the slack left for the row that overflows it
+        int target = SnapshotSiteProcessor.m_snapshotBufferLength - Short.MAX_VALUE;
+        for (int id = 0; t.getSerializedSize() < target; id++) {
+            if (customer) {
+                addCustomer(t, random, id);
+            } else {
+                addOrderLine(t, random, id);
+            }
+        }
+
+        m_block = DBBPool.allocateDirect(t.getSerializedSize());
+        t.flattenToBuffer(m_block.b());
+        m_block.b().flip();
+        m_compressed = DBBPool.allocateDirect(CompressionService.maxCompressedLength(m_block.b().remaining()));
+        m_uncompressed = DBBPool.allocateDirect(m_block.b().remaining());
+
+        int compressedSize = codec.compress(m_block.b(), m_compressed.b());
+        System.out.printf("%n%s %s: %d bytes compressed to %d, ratio %.2f%n", codec, table,
+                m_block.b().remaining(), compressedSize, m_block.b().remaining() / (double) compressedSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        m_block.discard();
+        m_compressed.discard();
+        m_uncompressed.discard();
+    }
+
+    @Benchmark
+    public int compress() throws IOException {
+        m_compressed.b().clear();
+        return codec.compress(m_block.b(), m_compressed.b());
+    }
+
+    @Benchmark
+    public int decompress() throws IOException {
+        m_uncompressed.b().clear();
+        return codec.decompress(m_compressed.b(), m_uncompressed.b());
+    }
+}
@@ -0,0 +1,213 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2018 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.DBBPool.MBBContainer;
+import org.voltdb.utils.BinaryDeque.BinaryDequeReader;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+/**
+ * Compares offer and poll throughput of PersistentBinaryDeque with regular (FileChannel)
+ * and memory mapped segments for objects from 1KB to 2MB.
+ *
+ * Objects are offered uncompressed so the numbers reflect the segment I/O rather than Snappy.
+ * The deque lives in java.io.tmpdir, point that at the device you want to measure. A tmpfs
+ * keeps every page in memory and says nothing about the page cache.
+ *
+ * Each iteration prints how much of the segment files is in the page cache, from mincore(2),
+ * and how many file pages are mapped into the process, RssFile of /proc/self/status, once
+ * the backlog is written and again after the offer/poll cycles. Linux only.
+ *
+ *   ant jmh -Djmh.lib.dir=... -Djmh.args=PersistentBinaryDequeBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistentBinaryDequeBenchmark {
+
+    private static final String CURSOR_ID = "bench";
+    // Objects kept in the deque between the writer and the reader
+    private static final int BACKLOG = 16;
+
+    @Param({ "false", "true" })
+    public boolean mmap;
+
+    @Param({ "1024", "65536", "2097152" })
+    public int objectSize;
+
+    private File m_dir;
+    private PersistentBinaryDeque m_pbd;
+    private BinaryDequeReader m_reader;
+    private ByteBuffer m_object;
+    private long m_residentBefore;
+    private long m_segmentBytesBefore;
+    private long m_rssFileBefore;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        m_dir = Files.createTempDirectory("pbdbench").toFile();
+        m_pbd = new PersistentBinaryDeque("bench", m_dir, new VoltLogger("HOST"), true, mmap);
+        m_reader = m_pbd.openForRead(CURSOR_ID);
+        m_object = ByteBuffer.allocateDirect(objectSize);
+        while (m_object.remaining() >= 8) {
+            m_object.putLong(m_object.position());
+        }
+        m_object.clear();
+        for (int ii = 0; ii < BACKLOG; ii++) {
+            offer();
+        }
+        m_segmentBytesBefore = segmentBytes(m_dir);
+        m_residentBefore = PageCache.residentBytes(m_dir);
+        m_rssFileBefore = rssFileBytes();
+    }
+
+    @TearDown(Level.Iteration)
+    public void teardown() throws IOException {
+        System.out.printf("%n%s segments, %d byte objects: %dKB of %dKB of segment files in page cache"
+                + " before, %dKB of %dKB after; RssFile %dKB before, %dKB after%n",
+                mmap ? "mapped" : "regular", objectSize,
+                m_residentBefore >> 10, m_segmentBytesBefore >> 10,
+                PageCache.residentBytes(m_dir) >> 10, segmentBytes(m_dir) >> 10,
+                m_rssFileBefore >> 10, rssFileBytes() >> 10);
+        m_pbd.closeAndDelete();
+        for (File f : m_dir.listFiles()) {
+            f.delete();
+        }
+        m_dir.delete();
+        DBBPool.wrapBB(m_object).discard();
+    }
+
+    private void offer() throws IOException {
+        // The deque discards what it is offered, hand it a view of the shared object
+        m_pbd.offer(DBBPool.dummyWrapBB(m_object.duplicate()), false);
+    }
+
+    /*
+     * The reader trails the writer by BACKLOG objects so polls read sealed segments
+     * as well as the tail and the deque stays the same size across the iteration
+     */
+    @Benchmark
+    public long offerThenPoll() throws IOException {
+        offer();
+        BBContainer cont = m_reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+        try {
+            // Touch both ends of the object so a lazily faulted mapping is paid for
+            final ByteBuffer b = cont.b();
+            return b.getLong(b.position()) + b.getLong(b.limit() - 8);
+        } finally {
+            cont.discard();
+        }
+    }
+
+    private static long segmentBytes(File dir) {
+        long bytes = 0;
+        for (File f : dir.listFiles()) {
+            bytes += f.length();
+        }
+        return bytes;
+    }
+
+    // File backed pages mapped into this process
+    private static long rssFileBytes() throws IOException {
+        for (String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.US_ASCII)) {
+            if (line.startsWith("RssFile:")) {
+                return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Maps each segment file just long enough to ask mincore(2) which of its pages are in
+     * the page cache, regular segments aren't mapped by the deque itself
+     */
+    private static final class PageCache {
+        private static final int PAGE_SIZE = 4096;
+
+        static {
+            Native.register("c");
+        }
+
+        private static native int mincore(Pointer addr, long length, byte[] vec);
+
+        static long residentBytes(File dir) throws IOException {
+            long bytes = 0;
+            for (File f : dir.listFiles()) {
+                final long length = f.length();
+                if (length == 0) {
+                    continue;
+                }
+                try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+                    final MBBContainer cont = DBBPool.wrapMBB(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length));
+                    try {
+                        final byte[] vec = new byte[(int)((length + PAGE_SIZE - 1) / PAGE_SIZE)];
+                        if (mincore(new Pointer(cont.address()), length, vec) != 0) {
+                            throw new IOException("mincore failed for " + f);
+                        }
+                        long pages = 0;
+                        for (byte b : vec) {
+                            pages += b & 1;
+                        }
+                        // The last page is only partly the file's
+                        bytes += Math.min(pages * PAGE_SIZE, length);
+                    } finally {
+                        cont.discard();
+                    }
+                }
+            }
+            return bytes;
+        }
+    }
+}